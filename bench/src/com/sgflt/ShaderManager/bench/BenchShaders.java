@@ -0,0 +1,87 @@
+/**
+ *	Author: Jack Ramey
+ *	File: BenchShaders.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager.bench;
+
+import com.sgflt.ShaderManager.ShaderHandle;
+import com.sgflt.ShaderManager.ShaderManager;
+
+/**
+ * Shader sources and registration shared by the benchmarks. The benchmarks run
+ * against the fake GL driver from the library's tests, which takes the active
+ * uniforms from the sources.
+ */
+final class BenchShaders {
+
+	//JVM argument every benchmark forks with
+	static final String FAKE_GL = "-Dcom.sgflt.ShaderManager.backend=com.sgflt.ShaderManager.FakeGLBackend";
+
+	//Bones in the skinning palette
+	static final int BONES = 64;
+
+	private BenchShaders() {
+	}
+
+	/**
+	 * Name of the i-th vec4 uniform of the generated sources.
+	 */
+	static String uniformName(int i) {
+		return "param" + i;
+	}
+
+	/**
+	 * Vertex shader with a skinning palette and a light position.
+	 */
+	static String vertexSource() {
+		return "#version 120\n"
+				+ "uniform mat4 bones[" + BONES + "];\n"
+				+ "uniform vec3 lightPos;\n"
+				+ "void main() {\n"
+				+ "	gl_Position = bones[0] * gl_Vertex;\n"
+				+ "}\n";
+	}
+
+	/**
+	 * Fragment shader with the given number of vec4 uniforms.
+	 */
+	static String fragmentSource(int uniforms) {
+		StringBuilder sb = new StringBuilder("#version 120\n");
+		for(int i = 0; i < uniforms; i++) {
+			sb.append("uniform vec4 ").append(uniformName(i)).append(";\n");
+		}
+		sb.append("uniform float alpha;\n");
+		sb.append("uniform sampler2D tex;\n");
+		sb.append("void main() {\n	gl_FragColor = vec4(alpha);\n}\n");
+		return sb.toString();
+	}
+
+	/**
+	 * Register count shaders under prefix0, prefix1...
+	 */
+	static ShaderHandle[] create(String prefix, int count, int uniforms) {
+		ShaderManager sm = ShaderManager.INSTANCE;
+		String vertex = vertexSource();
+		String fragment = fragmentSource(uniforms);
+		ShaderHandle[] handles = new ShaderHandle[count];
+		for(int i = 0; i < count; i++) {
+			handles[i] = sm.createShader(prefix + i, vertex, fragment);
+		}
+		return handles;
+	}
+}
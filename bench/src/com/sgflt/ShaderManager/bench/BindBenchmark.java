@@ -0,0 +1,95 @@
+/**
+ *	Author: Jack Ramey
+ *	File: BindBenchmark.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sgflt.ShaderManager.ShaderHandle;
+import com.sgflt.ShaderManager.ShaderManager;
+
+/**
+ * Bind churn: every operation binds the next of N programs, the way a scene
+ * drawn in object order does. With one program every bind after the first is
+ * redundant and never reaches GL.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = BenchShaders.FAKE_GL)
+public class BindBenchmark {
+
+	@Param({"1", "8", "64"})
+	public int programs;
+
+	private final ShaderManager sm = ShaderManager.INSTANCE;
+	private ShaderHandle[] handles;
+	private String[] keys;
+	private int mask;
+	private int next = 0;
+
+	@Setup
+	public void setup() {
+		//The params are powers of two, so the rotation is a mask instead of a modulo
+		int count = Integer.highestOneBit(programs);
+		handles = BenchShaders.create("bind", count, 4);
+		keys = new String[count];
+		for(int i = 0; i < count; i++) {
+			keys[i] = "bind" + i;
+		}
+		mask = count - 1;
+	}
+
+	@Benchmark
+	public boolean bindHandle() {
+		return sm.bind(handles[next++ & mask]);
+	}
+
+	@Benchmark
+	public boolean bindKey() {
+		return sm.bind(keys[next++ & mask]);
+	}
+
+	@Benchmark
+	public boolean setActiveShaderThenBind() {
+		sm.setActiveShader(keys[next++ & mask]);
+		return sm.bind();
+	}
+
+	@Benchmark
+	public boolean bindThenUnbind() {
+		boolean bound = sm.bind(handles[next++ & mask]);
+		sm.unbind();
+		return bound;
+	}
+}
@@ -0,0 +1,91 @@
+/**
+ *	Author: Jack Ramey
+ *	File: LookupBenchmark.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sgflt.ShaderManager.ShaderHandle;
+import com.sgflt.ShaderManager.ShaderManager;
+
+/**
+ * String key lookups at different registry sizes. The keys are copies of the
+ * registered ones, like keys built at runtime, so equals has to compare them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = BenchShaders.FAKE_GL)
+public class LookupBenchmark {
+
+	@Param({"16", "256", "4096"})
+	public int shaders;
+
+	private final ShaderManager sm = ShaderManager.INSTANCE;
+	private String[] keys;
+	private int mask;
+	private int next = 0;
+
+	@Setup
+	public void setup() {
+		int count = Integer.highestOneBit(shaders);
+		BenchShaders.create("lookup", count, 1);
+		keys = new String[count];
+		for(int i = 0; i < count; i++) {
+			keys[i] = new String("lookup" + i);
+		}
+		//Visit the keys out of registration order
+		for(int i = count - 1; i > 0; i--) {
+			int j = (i * 7919) % (i + 1);
+			String k = keys[i];
+			keys[i] = keys[j];
+			keys[j] = k;
+		}
+		mask = count - 1;
+	}
+
+	@Benchmark
+	public ShaderHandle getHandle() {
+		return sm.getHandle(keys[next++ & mask]);
+	}
+
+	@Benchmark
+	public boolean setActiveShader() {
+		return sm.setActiveShader(keys[next++ & mask]);
+	}
+
+	@Benchmark
+	public ShaderHandle getHandleMiss() {
+		return sm.getHandle("missing");
+	}
+}
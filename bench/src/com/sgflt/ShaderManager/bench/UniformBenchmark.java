@@ -0,0 +1,131 @@
+/**
+ *	Author: Jack Ramey
+ *	File: UniformBenchmark.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sgflt.ShaderManager.ShaderHandle;
+import com.sgflt.ShaderManager.ShaderManager;
+import com.sgflt.ShaderManager.UniformRef;
+
+/**
+ * Uniform heavy draws: every operation is one draw that binds its program and
+ * sets N vec4 uniforms, a float and a sampler. The values change every draw
+ * unless the benchmark says otherwise, so the uploads are not skipped.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = BenchShaders.FAKE_GL)
+public class UniformBenchmark {
+
+	@Param({"4", "16", "64"})
+	public int uniforms;
+
+	private final ShaderManager sm = ShaderManager.INSTANCE;
+	private ShaderHandle handle;
+	private String[] names;
+	private UniformRef[] refs;
+	private UniformRef alpha;
+	private UniformRef tex;
+	private float[] palette;
+	private float t = 0;
+
+	@Setup
+	public void setup() {
+		handle = BenchShaders.create("uniform", 1, uniforms)[0];
+		names = new String[uniforms];
+		refs = new UniformRef[uniforms];
+		for(int i = 0; i < uniforms; i++) {
+			names[i] = BenchShaders.uniformName(i);
+			refs[i] = sm.uniform(handle, names[i]);
+		}
+		alpha = sm.uniform(handle, "alpha");
+		tex = sm.uniform(handle, "tex");
+		palette = new float[BenchShaders.BONES * 16];
+	}
+
+	@Benchmark
+	public void putByName() {
+		float v = t++;
+		sm.bind(handle);
+		for(int i = 0; i < names.length; i++) {
+			sm.putVec4(names[i], v, v, v, i);
+		}
+		sm.putFloat("alpha", v);
+		sm.putInt("tex", 0);
+	}
+
+	@Benchmark
+	public void uniformRefs() {
+		float v = t++;
+		sm.bind(handle);
+		for(int i = 0; i < refs.length; i++) {
+			refs[i].set(v, v, v, i);
+		}
+		alpha.set(v);
+		tex.set(0);
+	}
+
+	@Benchmark
+	public void uniformRefsUnchanged() {
+		//Same values every draw, every upload is skipped by the shadow state
+		sm.bind(handle);
+		for(int i = 0; i < refs.length; i++) {
+			refs[i].set(1, 1, 1, i);
+		}
+		alpha.set(1f);
+		tex.set(0);
+	}
+
+	@Benchmark
+	public void uniformRefsRecorded() {
+		float v = t++;
+		sm.bind(handle);
+		sm.beginRecording();
+		for(int i = 0; i < refs.length; i++) {
+			refs[i].set(v, v, v, i);
+		}
+		alpha.set(v);
+		tex.set(0);
+		sm.endRecording();
+	}
+
+	@Benchmark
+	public void skinningPalette() {
+		palette[0] = t++;
+		sm.bind(handle);
+		sm.putMatrix4fArray("bones", palette, 0, BenchShaders.BONES, false);
+	}
+}
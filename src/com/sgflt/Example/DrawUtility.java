@@ -26,26 +26,19 @@ public class DrawUtility {
 		} GL11.glEnd();
 	}	
 
-	public static void drawFloor(int size) {
-		int end = size/2;
-		for(int x = -size/2; x < end; x++) {
-			for(int z = -size/2; z < end; z++) {
-				GL11.glPushMatrix();
-				GL11.glLoadIdentity();
-				GL11.glTranslatef((float) x, 0.0f, (float) z);
-				GL11.glColor3f(1.0f,1.0f,1.0f);
-				GL11.glBegin(GL11.GL_QUADS); {
-					GL11.glNormal3f(0.0f,1.0f,0.0f);
-					GL11.glVertex3f(-1.0f, 0.0f, -1.0f);
-					GL11.glNormal3f(0.0f,1.0f,0.0f);
-					GL11.glVertex3f(1.0f, 0.0f, -1.0f);
-					GL11.glNormal3f(0.0f,1.0f,0.0f);
-					GL11.glVertex3f(1.0f, 0.0f, 1.0f);
-					GL11.glNormal3f(0.0f,1.0f,0.0f);
-					GL11.glVertex3f(-1.0f, 0.0f, 1.0f);
-				} GL11.glEnd();
-				GL11.glPopMatrix();
-			}
+	/**
+	 * Draw a white floor of size by size tiles around the origin, in one draw
+	 * call. The grid is built once per size and kept in the cache.
+	 */
+	public static void drawFloor(MeshCache meshes, int size) {
+		Mesh floor = meshes.floor(size);
+		if(floor == null) {
+			return;
 		}
+		GL11.glPushMatrix();
+		GL11.glLoadIdentity();
+		GL11.glColor3f(1.0f,1.0f,1.0f);
+		floor.draw();
+		GL11.glPopMatrix();
 	}
 }
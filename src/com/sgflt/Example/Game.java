@@ -9,23 +9,46 @@ import org.lwjgl.opengl.Display;
 import org.lwjgl.opengl.DisplayMode;
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.util.glu.GLU;
-import org.lwjgl.util.glu.Sphere;
-import org.lwjgl.util.vector.Vector3f;
 
+import com.sgflt.ShaderManager.RenderQueue;
+import com.sgflt.ShaderManager.ShaderHandle;
 import com.sgflt.ShaderManager.ShaderManager;
+import com.sgflt.ShaderManager.ShaderSourceLoader;
+import com.sgflt.ShaderManager.UniformRef;
 
 public class Game {
 	public static final int WIDTH = 1024;
 	public static final int HEIGHT = 640;
+	//Time per frame that may be spent recompiling edited shaders
+	private static final long RELOAD_BUDGET_NANOS = 2000000;
+	//Print frame and tick time percentiles and the shader metrics on exit, -Dcom.sgflt.Example.stats=true
+	private static final boolean PRINT_STATS = Boolean.getBoolean("com.sgflt.Example.stats");
 	
 	public ShaderManager SM;
-	
-	public Sphere s;
+	private ShaderHandle hemi;
+	private UniformRef lightPos;
+	//Draws of a frame, executed grouped by shader
+	private RenderQueue queue;
+	private RenderQueue.Draw sphere;
+	
+	//Static geometry, built once and drawn from VBOs
+	private MeshCache meshes;
+	public Mesh s;
 	public LightBall lb;
 	
-	public Vector3f moveDir;
+	//Fixed-timestep simulation and the states the renderer interpolates between
+	private Simulation sim;
+	private Thread simThread;
+	private final SceneState previous = new SceneState();
+	private final SceneState current = new SceneState();
+	private final SceneState drawn = new SceneState();
+	
+	//Time between frame starts and time spent per simulation tick
+	private final Histogram frameTimes = new Histogram();
+	private final Histogram updateTimes = new Histogram();
 	
 	private boolean mouseActive = false;
+	private boolean running = true;
 	
 	public Game() {
 		initDisplay();
@@ -35,32 +58,75 @@ public class Game {
 	}
 	
 	private void createShaders() {
-		String fragShaderSource = new String();
-		String vertShaderSource = new String();
-		
+		ShaderSourceLoader loader = new ShaderSourceLoader();
+
 		try {
-			fragShaderSource = FileReader.readFile("res/basic.frag");
-			vertShaderSource = FileReader.readFile("res/hemisphere.vert");
+			hemi = SM.createShaderFromFiles("hemi", loader, "res/hemisphere.vert", "res/basic.frag");
+			lightPos = SM.uniform(hemi, "lightPos");
 		} catch (IOException e) {
 			e.printStackTrace();
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
 		}
 
+		//Pick up edits to the shader sources without restarting
 		try {
-			SM.createShader("hemi", vertShaderSource, fragShaderSource);
-		} catch (IllegalArgumentException e) {
-			System.err.println(e.getMessage());
+			SM.enableHotReload(100, "res");
+		} catch (IOException e) {
+			e.printStackTrace();
 		}
 	}
 	
 	public void gameLoop() {
-		while(!Display.isCloseRequested()) {
+		simThread = new Thread(sim, "Simulation");
+		simThread.setDaemon(true);
+		simThread.start();
+		
+		long frameStart = System.nanoTime();
+		while(running && !Display.isCloseRequested()) {
 			GL11.glClear(GL11.GL_COLOR_BUFFER_BIT | GL11.GL_DEPTH_BUFFER_BIT);
 			
+			SM.updateHotReload(RELOAD_BUDGET_NANOS);
+			interpolate();
 			render();
 			Display.update();
 			handleInput();
+			
+			long now = System.nanoTime();
+			frameTimes.record(now - frameStart);
+			frameStart = now;
 		}
+		
+		sim.stop();
+		try {
+			simThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		meshes.dispose();
+		SM.dispose();
 		Display.destroy();
+		if(PRINT_STATS) {
+			printStats();
+		}
+	}
+	
+	/*
+	 * Place the scene between the last two simulation ticks, by how far into
+	 * the next tick we are.
+	 */
+	private void interpolate() {
+		long tickAt = sim.read(previous, current);
+		float alpha = (float) (System.nanoTime() - tickAt) / Simulation.STEP_NANOS;
+		alpha = Math.max(0.0f, Math.min(1.0f, alpha));
+		drawn.lerp(previous, current, alpha);
+		lb.position.set(drawn.x, drawn.y, drawn.z);
+	}
+	
+	private void printStats() {
+		frameTimes.print(System.out, "frame");
+		updateTimes.print(System.out, "update");
+		System.out.println(SM.getMetrics());
 	}
 	
 	private void handleInput() {
@@ -72,7 +138,7 @@ public class Game {
 		while(Keyboard.next()) {
 			if (Keyboard.getEventKeyState()) {
 				if(Keyboard.getEventKey() == Keyboard.KEY_ESCAPE) {
-					System.exit(0);
+					running = false;
 				}
 				if(Keyboard.getEventKey() == Keyboard.KEY_RETURN) {
 					mouseActive = !mouseActive;
@@ -80,36 +146,26 @@ public class Game {
 			}
 		}
 		
-		moveDir.set(0.0f,0.0f,0.0f);
-		float MOVE_SPEED = 0.2f;
+		//Movement is applied by the simulation, once per tick
+		int keys = 0;
 		if(Keyboard.isKeyDown(Keyboard.KEY_LEFT)) {
-			moveDir.setX(-MOVE_SPEED);
+			keys |= Simulation.KEY_LEFT;
 		}
 		if(Keyboard.isKeyDown(Keyboard.KEY_RIGHT)) {
-			moveDir.setX(MOVE_SPEED);
+			keys |= Simulation.KEY_RIGHT;
 		}
 		if(Keyboard.isKeyDown(Keyboard.KEY_UP)) {
-			moveDir.setZ(-MOVE_SPEED);
+			keys |= Simulation.KEY_UP;
 		}
 		if(Keyboard.isKeyDown(Keyboard.KEY_DOWN)) {
-			moveDir.setZ(MOVE_SPEED);
+			keys |= Simulation.KEY_DOWN;
 		}
-		lb.move(moveDir);	
+		sim.setKeys(keys);
 	}
 	
 	private void handleMouseInput() {
-		float MOVE_SPEED = 0.25f;
-
-		if(mouseActive){
-			moveDir.set(0.0f, 0.0f, 0.0f);
-			float dy = (float)Mouse.getDY() * MOVE_SPEED;
-			moveDir.setY(dy);
-			lb.move(moveDir);
-		}
-		
-		float dy = ((float)Mouse.getDWheel() * MOVE_SPEED) / 100.0f;
-		moveDir.setY(dy);
-		lb.move(moveDir);
+		int dy = mouseActive ? Mouse.getDY() : 0;
+		sim.addLift(dy, Mouse.getDWheel());
 	}
 	
 	private void initDisplay() {
@@ -139,10 +195,18 @@ public class Game {
 	}
 	
 	private void initScene() {
-		s = new Sphere();
-		lb = new LightBall();
-		lb.move(new Vector3f(0.0f,40.0f,0.0f));
-		moveDir = new Vector3f();
+		meshes = new MeshCache();
+		s = meshes.sphere(25.0f, 50, 50);
+		lb = new LightBall(meshes);
+		SceneState start = new SceneState();
+		start.y = 40.0f;
+		sim = new Simulation(start, updateTimes);
+		queue = SM.createRenderQueue(16);
+		sphere = new RenderQueue.Draw() {
+			public void draw() {
+				s.draw();
+			}
+		};
 	}
 	
 	private void render() {
@@ -151,10 +215,11 @@ public class Game {
 		
 		GL11.glColor3f(1.0f, 1.0f, 1.0f);
 		lb.draw();
-		SM.setActiveShader("hemi");
-		SM.bind();
-		SM.putVector3f("lightPos", lb.position);
-		s.draw(25.0f, 50, 50);
+		queue.submit(hemi, 0, 0.0f, sphere);
+		if(hemi != null) {
+			queue.set(lightPos, lb.position.x, lb.position.y, lb.position.z);
+		}
+		queue.flush();
 		SM.unbind();
 		
 		DrawUtility.drawAxes(100);
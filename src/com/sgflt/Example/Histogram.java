@@ -0,0 +1,108 @@
+package com.sgflt.Example;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ * Histogram of durations in nanoseconds with log-linear buckets: every power
+ * of two is split into 16 buckets, so a reported percentile is within about
+ * 6% of the recorded value. Recording is an array increment and never
+ * allocates, so it can run every frame without disturbing what it measures.
+ *
+ * One thread records. Read it from another only after that thread has stopped.
+ */
+public class Histogram {
+	private static final int SUB_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	//Values below SUB_BUCKETS get a bucket each, then 16 per power of two up to 2^62
+	private static final int BUCKETS = SUB_BUCKETS * (64 - SUB_BITS);
+
+	private final long[] counts = new long[BUCKETS];
+	private long count = 0;
+	private long total = 0;
+	private long max = 0;
+
+	/**
+	 * Record a duration. Negative values count as 0.
+	 */
+	public void record(long nanos) {
+		if(nanos < 0) {
+			nanos = 0;
+		}
+		counts[index(nanos)]++;
+		count++;
+		total += nanos;
+		if(nanos > max) {
+			max = nanos;
+		}
+	}
+
+	private static int index(long value) {
+		if(value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exp = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (exp - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	/*
+	 * Largest value that falls in a bucket.
+	 */
+	private static long highest(int index) {
+		if(index < SUB_BUCKETS) {
+			return index;
+		}
+		int shift = index / SUB_BUCKETS - 1;
+		long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+
+	/**
+	 * @param percentile Percentile between 0 and 100, like 99.
+	 * @return value at or below which that percentage of recorded values lie, 0 if empty.
+	 */
+	public long getPercentile(double percentile) {
+		if(count == 0) {
+			return 0;
+		}
+		long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+		long seen = 0;
+		for(int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if(seen >= target) {
+				return Math.min(highest(i), max);
+			}
+		}
+		return max;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getMax() {
+		return max;
+	}
+
+	public double getMean() {
+		return (count == 0) ? 0.0 : (double) total / count;
+	}
+
+	public void reset() {
+		Arrays.fill(counts, 0);
+		count = 0;
+		total = 0;
+		max = 0;
+	}
+
+	/**
+	 * Print count, mean, percentiles and max in milliseconds on one line.
+	 */
+	public void print(PrintStream out, String name) {
+		out.printf("%s: %d samples, mean %.3f ms, p50 %.3f, p90 %.3f, p99 %.3f, p99.9 %.3f, max %.3f ms%n",
+				name, count, getMean() / 1e6,
+				getPercentile(50) / 1e6, getPercentile(90) / 1e6, getPercentile(99) / 1e6,
+				getPercentile(99.9) / 1e6, max / 1e6);
+	}
+}
@@ -1,23 +1,22 @@
 package com.sgflt.Example;
 
 import org.lwjgl.opengl.GL11;
-import org.lwjgl.util.glu.Sphere;
 import org.lwjgl.util.vector.Vector3f;
 
 public class LightBall {
 	Vector3f position;
-	Sphere s;
+	Mesh s;
 	
-	public LightBall() {
+	public LightBall(MeshCache meshes) {
 		position = new Vector3f();
-		s = new Sphere();
+		s = meshes.sphere(1.0f, 20, 20);
 	}
 	
 	public void draw() {
 		GL11.glPushMatrix();
 		
 		GL11.glTranslatef(position.x, position.y, position.z);
-		s.draw(1.0f, 20, 20);
+		s.draw();
 		
 		GL11.glPopMatrix();
 	}
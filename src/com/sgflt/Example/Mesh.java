@@ -0,0 +1,190 @@
+package com.sgflt.Example;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.ContextCapabilities;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GLContext;
+
+/**
+ * Static geometry uploaded to the GPU once. Vertices are interleaved position
+ * and normal in one VBO, indexed by a second one. Where vertex array objects
+ * are available the pointer setup is recorded once, so a draw is a bind and a
+ * glDrawElements. Works with shaders that read gl_Vertex and gl_Normal.
+ */
+public class Mesh {
+	//x, y, z, nx, ny, nz
+	private static final int FLOATS_PER_VERTEX = 6;
+	private static final int STRIDE = FLOATS_PER_VERTEX * 4;
+	private static final int NORMAL_OFFSET = 3 * 4;
+
+	private final int vbo;
+	private final int ibo;
+	//0 if vertex array objects are not supported
+	private final int vao;
+	private final int mode;
+	private final int count;
+
+	/**
+	 * Upload a mesh.
+	 *
+	 * @param vertices Interleaved positions and normals, from position 0 to the limit.
+	 * @param indices Vertex indices, from position 0 to the limit.
+	 * @param mode Primitive type, like GL_TRIANGLES.
+	 */
+	public Mesh(FloatBuffer vertices, IntBuffer indices, int mode) {
+		this.mode = mode;
+		this.count = indices.limit();
+
+		vbo = GL15.glGenBuffers();
+		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vbo);
+		GL15.glBufferData(GL15.GL_ARRAY_BUFFER, vertices, GL15.GL_STATIC_DRAW);
+		ibo = GL15.glGenBuffers();
+
+		ContextCapabilities caps = GLContext.getCapabilities();
+		if(caps.OpenGL30 || caps.GL_ARB_vertex_array_object) {
+			vao = GL30.glGenVertexArrays();
+			GL30.glBindVertexArray(vao);
+			//Element buffer binding and pointers are recorded in the VAO
+			GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, ibo);
+			GL15.glBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, indices, GL15.GL_STATIC_DRAW);
+			setPointers();
+			GL30.glBindVertexArray(0);
+		} else {
+			vao = 0;
+			GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, ibo);
+			GL15.glBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, indices, GL15.GL_STATIC_DRAW);
+			GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, 0);
+		}
+		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+	}
+
+	private void setPointers() {
+		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vbo);
+		GL11.glVertexPointer(3, GL11.GL_FLOAT, STRIDE, 0);
+		GL11.glNormalPointer(GL11.GL_FLOAT, STRIDE, NORMAL_OFFSET);
+		GL11.glEnableClientState(GL11.GL_VERTEX_ARRAY);
+		GL11.glEnableClientState(GL11.GL_NORMAL_ARRAY);
+	}
+
+	/**
+	 * Draw the whole mesh with one draw call.
+	 */
+	public void draw() {
+		if(vao != 0) {
+			GL30.glBindVertexArray(vao);
+			GL11.glDrawElements(mode, count, GL11.GL_UNSIGNED_INT, 0);
+			GL30.glBindVertexArray(0);
+			return;
+		}
+		setPointers();
+		GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, ibo);
+		GL11.glDrawElements(mode, count, GL11.GL_UNSIGNED_INT, 0);
+		GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, 0);
+		GL11.glDisableClientState(GL11.GL_NORMAL_ARRAY);
+		GL11.glDisableClientState(GL11.GL_VERTEX_ARRAY);
+		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+	}
+
+	/**
+	 * Delete the buffers. The mesh can not be drawn afterwards.
+	 */
+	public void delete() {
+		if(vao != 0) {
+			GL30.glDeleteVertexArrays(vao);
+		}
+		GL15.glDeleteBuffers(vbo);
+		GL15.glDeleteBuffers(ibo);
+	}
+
+	/**
+	 * @return number of indices drawn.
+	 */
+	public int getCount() {
+		return count;
+	}
+
+////////////////////////////////////////////////////////////////////////////////
+////////////////////////////Tessellation////////////////////////////////////////
+////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Sphere around the origin with its poles on the z axis, like a GLU Sphere,
+	 * with smooth normals.
+	 *
+	 * @param radius Radius of the sphere.
+	 * @param slices Subdivisions around the z axis.
+	 * @param stacks Subdivisions along the z axis.
+	 */
+	public static Mesh sphere(float radius, int slices, int stacks) {
+		if(slices < 3 || stacks < 2) {
+			throw new IllegalArgumentException("A sphere needs at least 3 slices and 2 stacks: " + slices + ", " + stacks);
+		}
+		//Seam vertices are duplicated so each row has slices + 1
+		FloatBuffer vertices = BufferUtils.createFloatBuffer((stacks + 1) * (slices + 1) * FLOATS_PER_VERTEX);
+		for(int i = 0; i <= stacks; i++) {
+			double rho = Math.PI * i / stacks;
+			for(int j = 0; j <= slices; j++) {
+				double theta = 2.0 * Math.PI * j / slices;
+				float nx = (float) (Math.sin(rho) * Math.cos(theta));
+				float ny = (float) (Math.sin(rho) * Math.sin(theta));
+				float nz = (float) Math.cos(rho);
+				vertices.put(nx * radius).put(ny * radius).put(nz * radius);
+				vertices.put(nx).put(ny).put(nz);
+			}
+		}
+		vertices.flip();
+
+		IntBuffer indices = BufferUtils.createIntBuffer(stacks * slices * 6);
+		int row = slices + 1;
+		for(int i = 0; i < stacks; i++) {
+			for(int j = 0; j < slices; j++) {
+				int a = i * row + j;
+				int b = a + row;
+				indices.put(a).put(b).put(a + 1);
+				indices.put(a + 1).put(b).put(b + 1);
+			}
+		}
+		indices.flip();
+		return new Mesh(vertices, indices, GL11.GL_TRIANGLES);
+	}
+
+	/**
+	 * Flat grid on the xz plane facing up, cells one unit wide. Covers the same
+	 * area as DrawUtility.drawFloor used to draw tile by tile.
+	 *
+	 * @param min Lowest x and z.
+	 * @param cells Number of cells along each axis.
+	 */
+	public static Mesh grid(int min, int cells) {
+		if(cells < 1) {
+			throw new IllegalArgumentException("A grid needs at least one cell: " + cells);
+		}
+		int row = cells + 1;
+		FloatBuffer vertices = BufferUtils.createFloatBuffer(row * row * FLOATS_PER_VERTEX);
+		for(int x = 0; x <= cells; x++) {
+			for(int z = 0; z <= cells; z++) {
+				vertices.put((float) (min + x)).put(0.0f).put((float) (min + z));
+				vertices.put(0.0f).put(1.0f).put(0.0f);
+			}
+		}
+		vertices.flip();
+
+		IntBuffer indices = BufferUtils.createIntBuffer(cells * cells * 6);
+		for(int x = 0; x < cells; x++) {
+			for(int z = 0; z < cells; z++) {
+				int a = x * row + z;
+				int b = a + row;
+				//Same winding as the old quads: (x,z) (x+1,z) (x+1,z+1) (x,z+1)
+				indices.put(a).put(b).put(b + 1);
+				indices.put(a).put(b + 1).put(a + 1);
+			}
+		}
+		indices.flip();
+		return new Mesh(vertices, indices, GL11.GL_TRIANGLES);
+	}
+}
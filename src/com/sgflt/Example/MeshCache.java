@@ -0,0 +1,62 @@
+package com.sgflt.Example;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Meshes built on first use and shared afterwards, so asking for the same
+ * sphere every frame tessellates it once.
+ */
+public class MeshCache {
+
+	private final Map<Long, Mesh> spheres = new HashMap<Long, Mesh>();
+	private final Map<Integer, Mesh> floors = new HashMap<Integer, Mesh>();
+
+	/**
+	 * @return sphere mesh with the given radius, slices and stacks, built the first time.
+	 */
+	public Mesh sphere(float radius, int slices, int stacks) {
+		if(slices > 0xFFFF || stacks > 0xFFFF) {
+			throw new IllegalArgumentException("Too many slices or stacks: " + slices + ", " + stacks);
+		}
+		Long key = ((long) Float.floatToIntBits(radius) << 32) | ((long) slices << 16) | stacks;
+		Mesh mesh = spheres.get(key);
+		if(mesh == null) {
+			mesh = Mesh.sphere(radius, slices, stacks);
+			spheres.put(key, mesh);
+		}
+		return mesh;
+	}
+
+	/**
+	 * @return floor mesh of DrawUtility.drawFloor for the given size, or null if it is empty.
+	 */
+	public Mesh floor(int size) {
+		//Tiles ran from -size/2 to size/2 - 1 and each covered one unit to either side
+		int min = -size / 2 - 1;
+		int cells = size / 2 - min;
+		if(size / 2 <= -size / 2) {
+			return null;
+		}
+		Mesh mesh = floors.get(size);
+		if(mesh == null) {
+			mesh = Mesh.grid(min, cells);
+			floors.put(size, mesh);
+		}
+		return mesh;
+	}
+
+	/**
+	 * Delete every cached mesh. Call before destroying the display.
+	 */
+	public void dispose() {
+		for(Mesh mesh : spheres.values()) {
+			mesh.delete();
+		}
+		for(Mesh mesh : floors.values()) {
+			mesh.delete();
+		}
+		spheres.clear();
+		floors.clear();
+	}
+}
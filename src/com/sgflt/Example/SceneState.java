@@ -0,0 +1,29 @@
+package com.sgflt.Example;
+
+/**
+ * Everything the simulation moves, as of one tick. The render thread draws
+ * a blend of the last two ticks.
+ */
+public class SceneState {
+	//Light position
+	public float x;
+	public float y;
+	public float z;
+
+	public void set(SceneState o) {
+		x = o.x;
+		y = o.y;
+		z = o.z;
+	}
+
+	/**
+	 * Set this state between two others.
+	 *
+	 * @param alpha 0 for a, 1 for b.
+	 */
+	public void lerp(SceneState a, SceneState b, float alpha) {
+		x = a.x + (b.x - a.x) * alpha;
+		y = a.y + (b.y - a.y) * alpha;
+		z = a.z + (b.z - a.z) * alpha;
+	}
+}
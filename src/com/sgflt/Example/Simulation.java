@@ -0,0 +1,142 @@
+package com.sgflt.Example;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fixed-timestep simulation on its own thread. Movement is applied per tick,
+ * so it runs at the same speed at any frame rate. After every batch of ticks
+ * the last two states are published, and the render thread interpolates
+ * between them.
+ *
+ * Input is polled on the render thread, which owns the display, and handed
+ * over through setKeys and addLift.
+ */
+public class Simulation implements Runnable {
+	public static final int TICKS_PER_SECOND = 60;
+	public static final long STEP_NANOS = 1000000000L / TICKS_PER_SECOND;
+	//Ticks run at most per wake up before the simulation gives up catching up
+	private static final int MAX_CATCH_UP = 5;
+
+	private static final float MOVE_SPEED = 0.2f;
+	private static final float LIFT_SPEED = 0.25f;
+
+	public static final int KEY_LEFT = 1;
+	public static final int KEY_RIGHT = 2;
+	public static final int KEY_UP = 4;
+	public static final int KEY_DOWN = 8;
+
+	//Input from the render thread
+	private volatile int keys = 0;
+	private final AtomicInteger mouseDy = new AtomicInteger();
+	private final AtomicInteger wheel = new AtomicInteger();
+	private volatile boolean running = true;
+
+	//Simulation thread only
+	private final SceneState previous = new SceneState();
+	private final SceneState current = new SceneState();
+	private final Histogram updateTimes;
+
+	//Last two published states and the time the newer one was due, guarded by this
+	private final SceneState publishedPrevious = new SceneState();
+	private final SceneState publishedCurrent = new SceneState();
+	private long publishedAt;
+
+	public Simulation(SceneState start, Histogram updateTimes) {
+		this.updateTimes = updateTimes;
+		previous.set(start);
+		current.set(start);
+		publishedPrevious.set(start);
+		publishedCurrent.set(start);
+		publishedAt = System.nanoTime();
+	}
+
+	@Override
+	public void run() {
+		long next = System.nanoTime();
+		while(running) {
+			long now = System.nanoTime();
+			int ticks = 0;
+			while(now - next >= 0 && ticks < MAX_CATCH_UP) {
+				long start = System.nanoTime();
+				previous.set(current);
+				step();
+				updateTimes.record(System.nanoTime() - start);
+				next += STEP_NANOS;
+				ticks++;
+			}
+			if(ticks > 0) {
+				publish(next - STEP_NANOS);
+			}
+			now = System.nanoTime();
+			if(now - next >= 0) {
+				//Still behind after catching up, drop the missed ticks instead of spiralling
+				next = now;
+			} else {
+				LockSupport.parkNanos(next - now);
+			}
+		}
+	}
+
+	private void step() {
+		int k = keys;
+		float dx = 0.0f;
+		float dz = 0.0f;
+		if((k & KEY_LEFT) != 0) {
+			dx = -MOVE_SPEED;
+		}
+		if((k & KEY_RIGHT) != 0) {
+			dx = MOVE_SPEED;
+		}
+		if((k & KEY_UP) != 0) {
+			dz = -MOVE_SPEED;
+		}
+		if((k & KEY_DOWN) != 0) {
+			dz = MOVE_SPEED;
+		}
+		float dy = mouseDy.getAndSet(0) * LIFT_SPEED + (wheel.getAndSet(0) * LIFT_SPEED) / 100.0f;
+		current.x += dx;
+		current.y += dy;
+		current.z += dz;
+	}
+
+	private synchronized void publish(long tickAt) {
+		publishedPrevious.set(previous);
+		publishedCurrent.set(current);
+		publishedAt = tickAt;
+	}
+
+	/**
+	 * Copy out the last two ticks. Render thread.
+	 *
+	 * @return time the newer tick was due, to interpolate with.
+	 */
+	public synchronized long read(SceneState previous, SceneState current) {
+		previous.set(publishedPrevious);
+		current.set(publishedCurrent);
+		return publishedAt;
+	}
+
+	/**
+	 * @param keys KEY_ flags of the movement keys held down.
+	 */
+	public void setKeys(int keys) {
+		this.keys = keys;
+	}
+
+	/**
+	 * Add vertical movement, applied on the next tick.
+	 */
+	public void addLift(int mouseDy, int wheel) {
+		if(mouseDy != 0) {
+			this.mouseDy.addAndGet(mouseDy);
+		}
+		if(wheel != 0) {
+			this.wheel.addAndGet(wheel);
+		}
+	}
+
+	public void stop() {
+		running = false;
+	}
+}
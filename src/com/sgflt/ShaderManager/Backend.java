@@ -0,0 +1,72 @@
+/**
+ *	Author: Jack Ramey
+ *	File: Backend.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+/**
+ * Holds the GLBackend the library uses. It is picked once, when this class is
+ * loaded, and never changes. A static final field lets the JIT treat it as a
+ * constant, so every call site only ever sees one implementation.
+ */
+final class Backend {
+
+	/**
+	 * System property that selects the backend.
+	 */
+	static final String PROPERTY = "com.sgflt.ShaderManager.backend";
+
+	/**
+	 * System property that selects the backend the recording backend passes its calls on to.
+	 */
+	static final String RECORDED_PROPERTY = "com.sgflt.ShaderManager.backend.recorded";
+
+	static final GLBackend GL = select(System.getProperty(PROPERTY, "lwjgl"));
+
+	private Backend() {
+	}
+
+	private static GLBackend select(String name) {
+		if(name.equals("lwjgl")) {
+			return new LwjglBackend();
+		}
+		if(name.equals("noop")) {
+			return new NoOpBackend();
+		}
+		if(name.equals("recording")) {
+			return new RecordingBackend(select(System.getProperty(RECORDED_PROPERTY, "noop")));
+		}
+		//Anything else names the class of a backend with a public no-argument constructor, like a test fake
+		try {
+			return (GLBackend) Class.forName(name).newInstance();
+		} catch(ClassNotFoundException e) {
+			throw unknown(name, e);
+		} catch(InstantiationException e) {
+			throw unknown(name, e);
+		} catch(IllegalAccessException e) {
+			throw unknown(name, e);
+		} catch(ClassCastException e) {
+			throw unknown(name, e);
+		}
+	}
+
+	private static IllegalArgumentException unknown(String name, Exception cause) {
+		return new IllegalArgumentException("Unknown GL backend " + name
+				+ ", expected lwjgl, noop, recording or the class name of a GLBackend.", cause);
+	}
+}
@@ -0,0 +1,236 @@
+/**
+ *	Author: Jack Ramey
+ *	File: CompileBatch.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A batch of shaders that are compiled together. createShader asks for the
+ * compile status right after every compile, which makes the driver finish each
+ * shader before the next one is even started. A batch first submits every
+ * compile and link, then collects the results, so drivers with compiler threads
+ * work on the whole batch at once.
+ *
+ * With KHR_parallel_shader_compile the status of a program can be polled
+ * without blocking, so poll() can be called once per frame and only resolves
+ * the shaders the driver has finished.
+ *
+ * Example:
+ * <pre>
+ * CompileBatch batch = ShaderManager.newCompileBatch();
+ * Future&lt;ShaderHandle&gt; hemi = batch.add("hemi", vertSource, fragSource);
+ * batch.submit();
+ * //...later, or once per frame until it returns true
+ * batch.poll();
+ * </pre>
+ *
+ * A batch must only be used from the thread that owns the GL context.
+ */
+public final class CompileBatch {
+
+	/*
+	 * Future of one shader in the batch. Resolved on the GL thread when the
+	 * batch collects it.
+	 */
+	private static final class Pending implements Future<ShaderHandle> {
+		private final CompileBatch batch;
+		private final String key;
+		private final Shader.Builder builder;
+		private final long cacheKey;
+		private final CountDownLatch done = new CountDownLatch(1);
+		private volatile ShaderHandle handle;
+		private volatile IllegalArgumentException failure;
+
+		Pending(CompileBatch batch, String key, Shader.Builder builder, long cacheKey) {
+			this.batch = batch;
+			this.key = key;
+			this.builder = builder;
+			this.cacheKey = cacheKey;
+		}
+
+		void resolve(ShaderManager manager) {
+			try {
+				handle = manager.install(key, builder, cacheKey);
+			} catch(IllegalArgumentException e) {
+				failure = new IllegalArgumentException(key + ": " + e.getMessage(), e);
+			}
+			done.countDown();
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			return false;
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return false;
+		}
+
+		@Override
+		public boolean isDone() {
+			return done.getCount() == 0;
+		}
+
+		@Override
+		public ShaderHandle get() throws InterruptedException, ExecutionException {
+			//Waiting on the GL thread would never end, collect the batch instead
+			if(!isDone() && Thread.currentThread() == batch.owner) {
+				batch.finish();
+			}
+			done.await();
+			return result();
+		}
+
+		@Override
+		public ShaderHandle get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+			if(!isDone() && Thread.currentThread() == batch.owner) {
+				batch.finish();
+			}
+			if(!done.await(timeout, unit)) {
+				throw new TimeoutException("Shader " + key + " has not been collected yet.");
+			}
+			return result();
+		}
+
+		private ShaderHandle result() throws ExecutionException {
+			if(failure != null) {
+				throw new ExecutionException(failure);
+			}
+			return handle;
+		}
+	}
+
+	private final ShaderManager manager;
+	//Thread that created the batch. It owns the GL context.
+	private final Thread owner;
+	private final List<Pending> queued = new ArrayList<Pending>();
+	private final List<Pending> submitted = new ArrayList<Pending>();
+	private final boolean parallel;
+
+	CompileBatch(ShaderManager manager) {
+		this.manager = manager;
+		this.owner = Thread.currentThread();
+		this.parallel = manager.supportsParallelCompile();
+	}
+
+	/**
+	 * Add a shader to the batch. Nothing is sent to the driver until submit is called.
+	 * A cached program binary is restored right away and resolves on the next poll.
+	 *
+	 * @param key String key that the shader will be referenced by.
+	 * @param vertexShaderSource Source of the vertex shader to be compiled into shader.
+	 * @param fragmentShaderSource Source of the fragment shader to be compiled into the shader.
+	 * @return Future that resolves to the handle of the shader, or fails with the
+	 * 			IllegalArgumentException createShader would have thrown.
+	 */
+	public Future<ShaderHandle> add(String key, String vertexShaderSource, String fragmentShaderSource) {
+		return add(key, ShaderSource.of(vertexShaderSource), ShaderSource.of(fragmentShaderSource));
+	}
+
+	/**
+	 * Add a shader to the batch, with its sources as bytes. See add.
+	 *
+	 * @param key String key that the shader will be referenced by.
+	 * @param vertexShaderSource ShaderSource of the vertex shader.
+	 * @param fragmentShaderSource ShaderSource of the fragment shader.
+	 * @return Future that resolves to the handle of the shader.
+	 */
+	public Future<ShaderHandle> add(String key, ShaderSource vertexShaderSource, ShaderSource fragmentShaderSource) {
+		ShaderSource[] stages = ShaderManager.stages(vertexShaderSource, fragmentShaderSource);
+		Shader.Builder builder = manager.newBuilder(stages);
+		long cacheKey = manager.restoreCached(builder, stages);
+		Pending pending = new Pending(this, key, builder, cacheKey);
+		if(builder.isRestored()) {
+			submitted.add(pending);
+		} else {
+			queued.add(pending);
+		}
+		return pending;
+	}
+
+	/**
+	 * Send every queued compile and link to the driver without asking for any status.
+	 */
+	public void submit() {
+		for(int i = 0; i < queued.size(); i++) {
+			Pending pending = queued.get(i);
+			pending.builder.submit();
+			submitted.add(pending);
+		}
+		queued.clear();
+	}
+
+	/**
+	 * Resolve the shaders the driver has finished. Without parallel compile
+	 * support every submitted shader is resolved, which may block.
+	 *
+	 * @return true if every shader in the batch has been resolved.
+	 */
+	public boolean poll() {
+		for(int i = 0; i < submitted.size(); i++) {
+			Pending pending = submitted.get(i);
+			if(pending.builder.isRestored() || pending.builder.isComplete(parallel)) {
+				if(!pending.builder.isRestored()) {
+					pending.builder.collect();
+				}
+				pending.resolve(manager);
+				submitted.remove(i--);
+			}
+		}
+		return queued.isEmpty() && submitted.isEmpty();
+	}
+
+	/**
+	 * Submit anything still queued and resolve every shader, blocking until the
+	 * driver has finished them all.
+	 */
+	public void finish() {
+		submit();
+		for(int i = 0; i < submitted.size(); i++) {
+			Pending pending = submitted.get(i);
+			if(!pending.builder.isRestored()) {
+				pending.builder.collect();
+			}
+			pending.resolve(manager);
+		}
+		submitted.clear();
+	}
+
+	/**
+	 * @return number of shaders that have not been resolved yet.
+	 */
+	public int getPending() {
+		return queued.size() + submitted.size();
+	}
+
+	/**
+	 * @return true if the context reports compile completion without blocking.
+	 */
+	public boolean isParallel() {
+		return parallel;
+	}
+}
@@ -0,0 +1,163 @@
+/**
+ *	Author: Jack Ramey
+ *	File: GLBackend.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Every GL call the library makes. Every method has the meaning and arguments
+ * of the GL function it is named after, as exposed by LWJGL.
+ *
+ * The backend is picked once when the library is loaded, from the system
+ * property <code>com.sgflt.ShaderManager.backend</code>:
+ * <ul>
+ * <li><code>lwjgl</code> (default) calls the driver through LWJGL.</li>
+ * <li><code>noop</code> needs no context and does nothing, for benchmarks and headless runs.</li>
+ * <li><code>recording</code> records every call with its arguments and passes it on to the backend
+ * named by <code>com.sgflt.ShaderManager.backend.recorded</code>, noop by default, for tests.</li>
+ * <li>The class name of any other implementation with a public no-argument constructor.</li>
+ * </ul>
+ * Since only one implementation is ever loaded the calls stay monomorphic and
+ * the JIT inlines them straight into the LWJGL calls.
+ */
+public interface GLBackend {
+
+	//Context
+	/**
+	 * Check a capability of the current context.
+	 *
+	 * @param capability Name of a field of LWJGL's ContextCapabilities, like OpenGL31 or GL_ARB_get_program_binary.
+	 * @return true if the context has it.
+	 */
+	boolean isSupported(String capability);
+
+	int getInteger(int pname);
+
+	String getString(int name);
+
+	String getStringi(int name, int index);
+
+	//Programs and shaders
+	int createProgram();
+
+	int createShader(int type);
+
+	/**
+	 * Set the source of a shader from ASCII or UTF-8 bytes, the remaining bytes of a direct buffer.
+	 */
+	void shaderSource(int shader, ByteBuffer source);
+
+	void compileShader(int shader);
+
+	int getShader(int shader, int pname);
+
+	void attachShader(int program, int shader);
+
+	void detachShader(int program, int shader);
+
+	void deleteShader(int shader);
+
+	void linkProgram(int program);
+
+	void validateProgram(int program);
+
+	int getProgram(int program, int pname);
+
+	void deleteProgram(int program);
+
+	void programParameteri(int program, int pname, int value);
+
+	void programBinary(int program, int format, ByteBuffer binary);
+
+	void getProgramBinary(int program, IntBuffer length, IntBuffer format, ByteBuffer binary);
+
+	//Reflection
+	String getActiveUniform(int program, int index, int maxLength, IntBuffer sizeType);
+
+	int getUniformLocation(int program, CharSequence name);
+
+	//First component of an int uniform (glGetUniformiv), like the unit of a sampler
+	int getUniformi(int program, int location);
+
+	//Binding
+	void useProgram(int program);
+
+	//Buffers
+	int genBuffers();
+
+	void bindBuffer(int target, int buffer);
+
+	void bufferData(int target, long size, int usage);
+
+	void bufferSubData(int target, long offset, ByteBuffer data);
+
+	void bindBufferBase(int target, int index, int buffer);
+
+	void deleteBuffers(int buffer);
+
+	//Textures
+	/**
+	 * Select a texture unit, 0 for GL_TEXTURE0.
+	 */
+	void activeTexture(int unit);
+
+	void bindTexture(int target, int texture);
+
+	void deleteTextures(int texture);
+
+	//Compute
+	void dispatchCompute(int groupsX, int groupsY, int groupsZ);
+
+	void memoryBarrier(int barriers);
+
+	//Uniform blocks
+	int getUniformBlockIndex(int program, CharSequence name);
+
+	void uniformBlockBinding(int program, int index, int binding);
+
+	//Uniforms
+	void uniform1f(int location, float x);
+
+	void uniform2f(int location, float x, float y);
+
+	void uniform3f(int location, float x, float y, float z);
+
+	void uniform4f(int location, float x, float y, float z, float w);
+
+	void uniform1i(int location, int x);
+
+	void uniform1fv(int location, FloatBuffer values);
+
+	void uniform2fv(int location, FloatBuffer values);
+
+	void uniform3fv(int location, FloatBuffer values);
+
+	void uniform4fv(int location, FloatBuffer values);
+
+	void uniform1iv(int location, IntBuffer values);
+
+	void uniformMatrix2fv(int location, boolean transpose, FloatBuffer values);
+
+	void uniformMatrix3fv(int location, boolean transpose, FloatBuffer values);
+
+	void uniformMatrix4fv(int location, boolean transpose, FloatBuffer values);
+}
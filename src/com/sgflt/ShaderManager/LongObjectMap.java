@@ -0,0 +1,152 @@
+/**
+ *	Author: Jack Ramey
+ *	File: LongObjectMap.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+/**
+ * Open addressing map from primitive long keys to objects. Lookups neither box
+ * the key nor allocate. Values can not be null, an empty bucket holds a null value.
+ */
+final class LongObjectMap<V> {
+
+	private long[] keys;
+	private Object[] values;
+	private int mask;
+	private int size = 0;
+
+	LongObjectMap() {
+		this(16);
+	}
+
+	LongObjectMap(int capacity) {
+		int buckets = 2;
+		while(buckets < capacity * 2) {
+			buckets <<= 1;
+		}
+		keys = new long[buckets];
+		values = new Object[buckets];
+		mask = buckets - 1;
+	}
+
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	/**
+	 * @return the value stored under the key, or null.
+	 */
+	@SuppressWarnings("unchecked")
+	V get(long key) {
+		int i = hash(key) & mask;
+		Object v;
+		while((v = values[i]) != null) {
+			if(keys[i] == key) {
+				return (V) v;
+			}
+			i = (i + 1) & mask;
+		}
+		return null;
+	}
+
+	/**
+	 * Store a value under the key, replacing any value already there.
+	 */
+	void put(long key, V value) {
+		if(value == null) {
+			throw new NullPointerException("LongObjectMap can not hold null values.");
+		}
+		int i = hash(key) & mask;
+		while(values[i] != null) {
+			if(keys[i] == key) {
+				values[i] = value;
+				return;
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		values[i] = value;
+		if(++size * 2 > values.length) {
+			grow();
+		}
+	}
+
+	/**
+	 * Remove the value stored under the key.
+	 *
+	 * @return the value that was removed, or null.
+	 */
+	@SuppressWarnings("unchecked")
+	V remove(long key) {
+		int i = hash(key) & mask;
+		Object v;
+		while((v = values[i]) != null) {
+			if(keys[i] == key) {
+				values[i] = null;
+				size--;
+				//Re-insert the rest of the cluster so no lookup stops early
+				int j = (i + 1) & mask;
+				while(values[j] != null) {
+					long k = keys[j];
+					Object moved = values[j];
+					values[j] = null;
+					size--;
+					put(k, (V) moved);
+					j = (j + 1) & mask;
+				}
+				return (V) v;
+			}
+			i = (i + 1) & mask;
+		}
+		return null;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void grow() {
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		keys = new long[oldKeys.length * 2];
+		values = new Object[oldValues.length * 2];
+		mask = values.length - 1;
+		size = 0;
+		for(int i = 0; i < oldValues.length; i++) {
+			if(oldValues[i] != null) {
+				put(oldKeys[i], (V) oldValues[i]);
+			}
+		}
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Copy of the keys in no particular order.
+	 */
+	long[] keys() {
+		long[] out = new long[size];
+		int n = 0;
+		for(int i = 0; i < values.length; i++) {
+			if(values[i] != null) {
+				out[n++] = keys[i];
+			}
+		}
+		return out;
+	}
+}
@@ -0,0 +1,300 @@
+/**
+ *	Author: Jack Ramey
+ *	File: LwjglBackend.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.ContextCapabilities;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL13;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL31;
+import org.lwjgl.opengl.GL41;
+import org.lwjgl.opengl.GL42;
+import org.lwjgl.opengl.GL43;
+import org.lwjgl.opengl.GLContext;
+
+/**
+ * GLBackend that calls the driver through LWJGL. Needs a current context.
+ */
+public final class LwjglBackend implements GLBackend {
+
+	//Result of glGetUniformiv, room for an ivec4
+	private final IntBuffer uniformScratch = BufferUtils.createIntBuffer(4);
+
+	@Override
+	public boolean isSupported(String capability) {
+		//Only asked when a feature is first used, so a reflective lookup is fine
+		try {
+			return ContextCapabilities.class.getField(capability).getBoolean(GLContext.getCapabilities());
+		} catch(NoSuchFieldException e) {
+			return false;
+		} catch(IllegalAccessException e) {
+			return false;
+		}
+	}
+
+	@Override
+	public int getInteger(int pname) {
+		return GL11.glGetInteger(pname);
+	}
+
+	@Override
+	public String getString(int name) {
+		return GL11.glGetString(name);
+	}
+
+	@Override
+	public String getStringi(int name, int index) {
+		return GL30.glGetStringi(name, index);
+	}
+
+	@Override
+	public int createProgram() {
+		return GL20.glCreateProgram();
+	}
+
+	@Override
+	public int createShader(int type) {
+		return GL20.glCreateShader(type);
+	}
+
+	@Override
+	public void shaderSource(int shader, ByteBuffer source) {
+		GL20.glShaderSource(shader, source);
+	}
+
+	@Override
+	public void compileShader(int shader) {
+		GL20.glCompileShader(shader);
+	}
+
+	@Override
+	public int getShader(int shader, int pname) {
+		return GL20.glGetShader(shader, pname);
+	}
+
+	@Override
+	public void attachShader(int program, int shader) {
+		GL20.glAttachShader(program, shader);
+	}
+
+	@Override
+	public void detachShader(int program, int shader) {
+		GL20.glDetachShader(program, shader);
+	}
+
+	@Override
+	public void deleteShader(int shader) {
+		GL20.glDeleteShader(shader);
+	}
+
+	@Override
+	public void linkProgram(int program) {
+		GL20.glLinkProgram(program);
+	}
+
+	@Override
+	public void validateProgram(int program) {
+		GL20.glValidateProgram(program);
+	}
+
+	@Override
+	public int getProgram(int program, int pname) {
+		return GL20.glGetProgram(program, pname);
+	}
+
+	@Override
+	public void deleteProgram(int program) {
+		GL20.glDeleteProgram(program);
+	}
+
+	@Override
+	public void programParameteri(int program, int pname, int value) {
+		GL41.glProgramParameteri(program, pname, value);
+	}
+
+	@Override
+	public void programBinary(int program, int format, ByteBuffer binary) {
+		GL41.glProgramBinary(program, format, binary);
+	}
+
+	@Override
+	public void getProgramBinary(int program, IntBuffer length, IntBuffer format, ByteBuffer binary) {
+		GL41.glGetProgramBinary(program, length, format, binary);
+	}
+
+	@Override
+	public String getActiveUniform(int program, int index, int maxLength, IntBuffer sizeType) {
+		return GL20.glGetActiveUniform(program, index, maxLength, sizeType);
+	}
+
+	@Override
+	public int getUniformLocation(int program, CharSequence name) {
+		return GL20.glGetUniformLocation(program, name);
+	}
+
+	@Override
+	public int getUniformi(int program, int location) {
+		uniformScratch.clear();
+		GL20.glGetUniform(program, location, uniformScratch);
+		return uniformScratch.get(0);
+	}
+
+	@Override
+	public void useProgram(int program) {
+		GL20.glUseProgram(program);
+	}
+
+	@Override
+	public int genBuffers() {
+		return GL15.glGenBuffers();
+	}
+
+	@Override
+	public void bindBuffer(int target, int buffer) {
+		GL15.glBindBuffer(target, buffer);
+	}
+
+	@Override
+	public void bufferData(int target, long size, int usage) {
+		GL15.glBufferData(target, size, usage);
+	}
+
+	@Override
+	public void bufferSubData(int target, long offset, ByteBuffer data) {
+		GL15.glBufferSubData(target, offset, data);
+	}
+
+	@Override
+	public void bindBufferBase(int target, int index, int buffer) {
+		GL30.glBindBufferBase(target, index, buffer);
+	}
+
+	@Override
+	public void deleteBuffers(int buffer) {
+		GL15.glDeleteBuffers(buffer);
+	}
+
+	@Override
+	public void activeTexture(int unit) {
+		GL13.glActiveTexture(GL13.GL_TEXTURE0 + unit);
+	}
+
+	@Override
+	public void bindTexture(int target, int texture) {
+		GL11.glBindTexture(target, texture);
+	}
+
+	@Override
+	public void deleteTextures(int texture) {
+		GL11.glDeleteTextures(texture);
+	}
+
+	@Override
+	public void dispatchCompute(int groupsX, int groupsY, int groupsZ) {
+		GL43.glDispatchCompute(groupsX, groupsY, groupsZ);
+	}
+
+	@Override
+	public void memoryBarrier(int barriers) {
+		GL42.glMemoryBarrier(barriers);
+	}
+
+	@Override
+	public int getUniformBlockIndex(int program, CharSequence name) {
+		return GL31.glGetUniformBlockIndex(program, name);
+	}
+
+	@Override
+	public void uniformBlockBinding(int program, int index, int binding) {
+		GL31.glUniformBlockBinding(program, index, binding);
+	}
+
+	@Override
+	public void uniform1f(int location, float x) {
+		GL20.glUniform1f(location, x);
+	}
+
+	@Override
+	public void uniform2f(int location, float x, float y) {
+		GL20.glUniform2f(location, x, y);
+	}
+
+	@Override
+	public void uniform3f(int location, float x, float y, float z) {
+		GL20.glUniform3f(location, x, y, z);
+	}
+
+	@Override
+	public void uniform4f(int location, float x, float y, float z, float w) {
+		GL20.glUniform4f(location, x, y, z, w);
+	}
+
+	@Override
+	public void uniform1i(int location, int x) {
+		GL20.glUniform1i(location, x);
+	}
+
+	@Override
+	public void uniform1fv(int location, FloatBuffer values) {
+		GL20.glUniform1(location, values);
+	}
+
+	@Override
+	public void uniform2fv(int location, FloatBuffer values) {
+		GL20.glUniform2(location, values);
+	}
+
+	@Override
+	public void uniform3fv(int location, FloatBuffer values) {
+		GL20.glUniform3(location, values);
+	}
+
+	@Override
+	public void uniform4fv(int location, FloatBuffer values) {
+		GL20.glUniform4(location, values);
+	}
+
+	@Override
+	public void uniform1iv(int location, IntBuffer values) {
+		GL20.glUniform1(location, values);
+	}
+
+	@Override
+	public void uniformMatrix2fv(int location, boolean transpose, FloatBuffer values) {
+		GL20.glUniformMatrix2(location, transpose, values);
+	}
+
+	@Override
+	public void uniformMatrix3fv(int location, boolean transpose, FloatBuffer values) {
+		GL20.glUniformMatrix3(location, transpose, values);
+	}
+
+	@Override
+	public void uniformMatrix4fv(int location, boolean transpose, FloatBuffer values) {
+		GL20.glUniformMatrix4(location, transpose, values);
+	}
+}
@@ -0,0 +1,289 @@
+/**
+ *	Author: Jack Ramey
+ *	File: NoOpBackend.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL31;
+
+/**
+ * GLBackend that needs no context and no GPU, and does nothing. Every shader
+ * compiles and every program links, with no active uniforms. Binds and uniform
+ * and buffer uploads only count the call. Every capability is reported as
+ * supported, but there are no program binary formats and no uniform blocks.
+ *
+ * Runs code that creates and binds shaders headlessly. Tests and benchmarks that
+ * need the uniforms of a program to be found use a fake driver from test/ instead,
+ * selected by its class name.
+ */
+public final class NoOpBackend implements GLBackend {
+
+	//Last object name handed out
+	private int names = 0;
+	//Binds and uniform and buffer uploads made
+	private long calls = 0;
+
+	/**
+	 * @return number of binds and uniform and buffer uploads made.
+	 */
+	public long getCalls() {
+		return calls;
+	}
+
+	@Override
+	public boolean isSupported(String capability) {
+		return true;
+	}
+
+	@Override
+	public int getInteger(int pname) {
+		return 0;
+	}
+
+	@Override
+	public String getString(int name) {
+		return "";
+	}
+
+	@Override
+	public String getStringi(int name, int index) {
+		return "";
+	}
+
+	@Override
+	public int createProgram() {
+		return ++names;
+	}
+
+	@Override
+	public int createShader(int type) {
+		return ++names;
+	}
+
+	@Override
+	public void shaderSource(int shader, ByteBuffer source) {
+	}
+
+	@Override
+	public void compileShader(int shader) {
+	}
+
+	@Override
+	public int getShader(int shader, int pname) {
+		return GL11.GL_TRUE;
+	}
+
+	@Override
+	public void attachShader(int program, int shader) {
+	}
+
+	@Override
+	public void detachShader(int program, int shader) {
+	}
+
+	@Override
+	public void deleteShader(int shader) {
+	}
+
+	@Override
+	public void linkProgram(int program) {
+	}
+
+	@Override
+	public void validateProgram(int program) {
+	}
+
+	@Override
+	public int getProgram(int program, int pname) {
+		switch(pname) {
+		case GL20.GL_ACTIVE_UNIFORMS:
+		case GL20.GL_ACTIVE_UNIFORM_MAX_LENGTH:
+			return 0;
+		default:
+			//Link, validate and completion status
+			return GL11.GL_TRUE;
+		}
+	}
+
+	@Override
+	public void deleteProgram(int program) {
+	}
+
+	@Override
+	public void programParameteri(int program, int pname, int value) {
+	}
+
+	@Override
+	public void programBinary(int program, int format, ByteBuffer binary) {
+	}
+
+	@Override
+	public void getProgramBinary(int program, IntBuffer length, IntBuffer format, ByteBuffer binary) {
+		length.put(length.position(), 0);
+		format.put(format.position(), 0);
+	}
+
+	@Override
+	public String getActiveUniform(int program, int index, int maxLength, IntBuffer sizeType) {
+		//There are no active uniforms to ask for
+		return "";
+	}
+
+	@Override
+	public int getUniformLocation(int program, CharSequence name) {
+		return -1;
+	}
+
+	@Override
+	public int getUniformi(int program, int location) {
+		return 0;
+	}
+
+	@Override
+	public void useProgram(int program) {
+		calls++;
+	}
+
+	@Override
+	public int genBuffers() {
+		return ++names;
+	}
+
+	@Override
+	public void bindBuffer(int target, int buffer) {
+	}
+
+	@Override
+	public void bufferData(int target, long size, int usage) {
+	}
+
+	@Override
+	public void bufferSubData(int target, long offset, ByteBuffer data) {
+		calls++;
+	}
+
+	@Override
+	public void bindBufferBase(int target, int index, int buffer) {
+	}
+
+	@Override
+	public void deleteBuffers(int buffer) {
+	}
+
+	@Override
+	public void activeTexture(int unit) {
+	}
+
+	@Override
+	public void bindTexture(int target, int texture) {
+		calls++;
+	}
+
+	@Override
+	public void deleteTextures(int texture) {
+	}
+
+	@Override
+	public void dispatchCompute(int groupsX, int groupsY, int groupsZ) {
+		calls++;
+	}
+
+	@Override
+	public void memoryBarrier(int barriers) {
+	}
+
+	@Override
+	public int getUniformBlockIndex(int program, CharSequence name) {
+		return GL31.GL_INVALID_INDEX;
+	}
+
+	@Override
+	public void uniformBlockBinding(int program, int index, int binding) {
+	}
+
+	@Override
+	public void uniform1f(int location, float x) {
+		calls++;
+	}
+
+	@Override
+	public void uniform2f(int location, float x, float y) {
+		calls++;
+	}
+
+	@Override
+	public void uniform3f(int location, float x, float y, float z) {
+		calls++;
+	}
+
+	@Override
+	public void uniform4f(int location, float x, float y, float z, float w) {
+		calls++;
+	}
+
+	@Override
+	public void uniform1i(int location, int x) {
+		calls++;
+	}
+
+	@Override
+	public void uniform1fv(int location, FloatBuffer values) {
+		calls++;
+	}
+
+	@Override
+	public void uniform2fv(int location, FloatBuffer values) {
+		calls++;
+	}
+
+	@Override
+	public void uniform3fv(int location, FloatBuffer values) {
+		calls++;
+	}
+
+	@Override
+	public void uniform4fv(int location, FloatBuffer values) {
+		calls++;
+	}
+
+	@Override
+	public void uniform1iv(int location, IntBuffer values) {
+		calls++;
+	}
+
+	@Override
+	public void uniformMatrix2fv(int location, boolean transpose, FloatBuffer values) {
+		calls++;
+	}
+
+	@Override
+	public void uniformMatrix3fv(int location, boolean transpose, FloatBuffer values) {
+		calls++;
+	}
+
+	@Override
+	public void uniformMatrix4fv(int location, boolean transpose, FloatBuffer values) {
+		calls++;
+	}
+}
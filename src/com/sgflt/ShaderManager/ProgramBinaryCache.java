@@ -0,0 +1,298 @@
+/**
+ *	Author: Jack Ramey
+ *	File: ProgramBinaryCache.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL41;
+
+/**
+ * On-disk cache of linked program binaries (ARB_get_program_binary). Entries are
+ * keyed by a hash of the shader sources and the GL vendor, renderer and version
+ * strings, so a driver update never gets handed a binary from another driver.
+ *
+ * The cache lives in a single file: a small header, an index of
+ * (key, format, offset, length) entries and the binaries themselves. The file is
+ * read into one direct buffer when opened and binaries are passed to the driver
+ * straight from it. It is not kept open or mapped, so save() can replace it on
+ * every platform. New binaries are kept in memory until save() is called.
+ *
+ * Hand an instance to ShaderManager.setProgramBinaryCache to have createShader
+ * use it. A binary the driver rejects is dropped and the shader is compiled from
+ * source.
+ */
+public final class ProgramBinaryCache {
+
+	private static final int MAGIC = 0x534d5042; //"SMPB"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 12;
+	private static final int ENTRY_SIZE = 24;
+
+	private static final class Entry {
+		final int format;
+		final ByteBuffer binary;
+
+		Entry(int format, ByteBuffer binary) {
+			this.format = format;
+			this.binary = binary;
+		}
+	}
+
+	private final File file;
+	private final Map<Long, Entry> entries = new LinkedHashMap<Long, Entry>();
+	//Contents of the file the cache was opened from, the loaded entries are slices of it
+	private ByteBuffer contents;
+	private boolean dirty = false;
+	//Driver identity, queried from the context the first time it is needed
+	private long driverHash;
+	private int supported = -1;
+	//Scratch buffers for glGetProgramBinary
+	private final IntBuffer lengthBuffer = BufferUtils.createIntBuffer(1);
+	private final IntBuffer formatBuffer = BufferUtils.createIntBuffer(1);
+	//Statistics
+	private int hits = 0;
+	private int misses = 0;
+	private int rejected = 0;
+	private long loadNanos = 0;
+
+	/**
+	 * Open the cache stored in a file. A missing file starts an empty cache,
+	 * a file that is not a cache of this version is ignored and overwritten on save.
+	 *
+	 * @param file File the cache is stored in.
+	 * @throws IOException If the file exists but could not be read.
+	 */
+	public ProgramBinaryCache(File file) throws IOException {
+		this.file = file;
+		if(file.isFile() && file.length() >= HEADER_SIZE) {
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				FileChannel fc = raf.getChannel();
+				//A mapping would pin the file until it is collected, and Windows refuses to replace a mapped file
+				ByteBuffer data = ByteBuffer.allocateDirect((int) Math.min(fc.size(), Integer.MAX_VALUE));
+				while(data.hasRemaining() && fc.read(data) >= 0) {
+				}
+				data.flip();
+				contents = data;
+			} finally {
+				raf.close();
+			}
+			readIndex();
+		}
+	}
+
+	private void readIndex() {
+		ByteBuffer map = contents;
+		if(map.limit() < HEADER_SIZE || map.getInt(0) != MAGIC || map.getInt(4) != VERSION) {
+			contents = null;
+			return;
+		}
+		int count = map.getInt(8);
+		if(count < 0 || HEADER_SIZE + (long) count * ENTRY_SIZE > map.limit()) {
+			contents = null;
+			return;
+		}
+		for(int i = 0; i < count; i++) {
+			int p = HEADER_SIZE + i * ENTRY_SIZE;
+			long key = map.getLong(p);
+			int format = map.getInt(p + 8);
+			long offset = map.getLong(p + 12);
+			int length = map.getInt(p + 20);
+			if(offset < 0 || length < 0 || offset + length > map.limit()) {
+				continue;
+			}
+			ByteBuffer binary = map.duplicate();
+			binary.position((int) offset);
+			binary.limit((int) offset + length);
+			entries.put(key, new Entry(format, binary.slice()));
+		}
+	}
+
+	/**
+	 * Check if the current context can load program binaries. Needs a current context.
+	 *
+	 * @return true if ARB_get_program_binary is available and the driver has a binary format.
+	 */
+	public boolean isSupported() {
+		if(supported == -1) {
+			boolean ok = (Backend.GL.isSupported("OpenGL41") || Backend.GL.isSupported("GL_ARB_get_program_binary"))
+					&& Backend.GL.getInteger(GL41.GL_NUM_PROGRAM_BINARY_FORMATS) > 0;
+			supported = ok ? 1 : 0;
+		}
+		return supported == 1;
+	}
+
+	/*
+	 * Key of a program on the current driver, by the sources of its stages indexed
+	 * by ShaderType ordinal. Needs a current context.
+	 */
+	long key(ShaderSource[] stages) {
+		return SourceHash.hash(driverHash(), stages);
+	}
+
+	private long driverHash() {
+		if(driverHash == 0) {
+			long h = SourceHash.hash(SourceHash.SEED, Backend.GL.getString(GL11.GL_VENDOR));
+			h = SourceHash.hash(h, Backend.GL.getString(GL11.GL_RENDERER));
+			driverHash = SourceHash.hash(h, Backend.GL.getString(GL11.GL_VERSION));
+		}
+		return driverHash;
+	}
+
+	/**
+	 * Try to restore a program from the cache. On a hit the binary is loaded
+	 * into the builder's program. If the driver rejects it the entry is dropped
+	 * and the builder is left to be compiled from source.
+	 *
+	 * @return true if the builder now holds a linked program.
+	 */
+	boolean restore(long key, Shader.Builder builder) {
+		Entry entry = entries.get(key);
+		if(entry == null) {
+			misses++;
+			return false;
+		}
+		long start = System.nanoTime();
+		builder.loadBinary(entry.format, entry.binary.duplicate());
+		loadNanos += System.nanoTime() - start;
+		if(!builder.isShaderProgramLinkStatus()) {
+			rejected++;
+			misses++;
+			entries.remove(key);
+			dirty = true;
+			return false;
+		}
+		hits++;
+		return true;
+	}
+
+	/**
+	 * Store the binary of a linked program. The program should have been linked
+	 * with the retrievable hint set.
+	 */
+	void store(long key, int program) {
+		int length = Backend.GL.getProgram(program, GL41.GL_PROGRAM_BINARY_LENGTH);
+		if(length <= 0) {
+			return;
+		}
+		ByteBuffer binary = BufferUtils.createByteBuffer(length);
+		lengthBuffer.clear();
+		formatBuffer.clear();
+		Backend.GL.getProgramBinary(program, lengthBuffer, formatBuffer, binary);
+		binary.limit(lengthBuffer.get(0));
+		entries.put(key, new Entry(formatBuffer.get(0), binary));
+		dirty = true;
+	}
+
+	/**
+	 * Write the cache back to its file if anything changed since it was opened.
+	 * The file is written next to the old one and moved into place.
+	 *
+	 * @throws IOException If the cache file could not be written.
+	 */
+	public void save() throws IOException {
+		if(!dirty) {
+			return;
+		}
+		int count = entries.size();
+		ByteBuffer index = ByteBuffer.allocate(HEADER_SIZE + count * ENTRY_SIZE);
+		index.putInt(MAGIC).putInt(VERSION).putInt(count);
+		long offset = index.capacity();
+		for(Map.Entry<Long, Entry> e : entries.entrySet()) {
+			int length = e.getValue().binary.remaining();
+			index.putLong(e.getKey()).putInt(e.getValue().format).putLong(offset).putInt(length);
+			offset += length;
+		}
+		index.flip();
+
+		File tmp = new File(file.getPath() + ".tmp");
+		RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+		try {
+			FileChannel fc = raf.getChannel();
+			fc.truncate(0);
+			while(index.hasRemaining()) {
+				fc.write(index);
+			}
+			for(Entry e : entries.values()) {
+				ByteBuffer binary = e.binary.duplicate();
+				while(binary.hasRemaining()) {
+					fc.write(binary);
+				}
+			}
+		} finally {
+			raf.close();
+		}
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		dirty = false;
+	}
+
+	//GETTERS
+	/**
+	 * @return number of programs restored from the cache.
+	 */
+	public int getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return number of programs that had to be compiled, including rejected binaries.
+	 */
+	public int getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return number of cached binaries the driver refused to load.
+	 */
+	public int getRejected() {
+		return rejected;
+	}
+
+	/**
+	 * @return total time spent loading binaries into the driver, in nanoseconds.
+	 */
+	public long getLoadNanos() {
+		return loadNanos;
+	}
+
+	/**
+	 * @return number of binaries held by the cache.
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	@Override
+	public String toString() {
+		return "ProgramBinaryCache[" + file + ": " + hits + " hits, " + misses + " misses, "
+				+ rejected + " rejected, " + (loadNanos / 1000000.0) + " ms loading]";
+	}
+}
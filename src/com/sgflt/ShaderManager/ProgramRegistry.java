@@ -0,0 +1,259 @@
+/**
+ *	Author: Jack Ramey
+ *	File: ProgramRegistry.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Bookkeeping for a capacity bounded set of programs. Remembers when each
+ * handle was last bound and keeps a deflated copy of the sources of every
+ * program that may be evicted, so it can be rebuilt when it is bound again.
+ * The manager does the evicting and rebuilding. GL thread only.
+ */
+final class ProgramRegistry {
+
+	//Most programs allowed at once, 0 for no limit
+	private int capacity = 0;
+	//Bind clock and the tick each handle id was last bound at
+	private long clock = 0;
+	private long[] lastBound = new long[16];
+	//Deflated sources of every stage of each evictable handle id, one after another. null if it is pinned.
+	private byte[][] sources = new byte[16][];
+	//Inflated length, length of every stage (-1 for stages it does not have) and source hash of each entry of sources
+	private int[] lengths = new int[16];
+	private int[][] stageLengths = new int[16][];
+	private long[] hashes = new long[16];
+	//Handle ids whose program was evicted and must be rebuilt before it is bound
+	private boolean[] evicted = new boolean[16];
+	//Bytes held by sources
+	private long retainedBytes = 0;
+	//Programs stored under a handle and not deleted or evicted
+	private int resident = 0;
+
+	private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+	private final Inflater inflater = new Inflater();
+	//Sources to deflate and deflated output, reused
+	private byte[] input = new byte[4096];
+	private byte[] scratch = new byte[4096];
+
+	void setCapacity(int capacity) {
+		if(capacity < 0) {
+			throw new IllegalArgumentException("Capacity can not be negative: " + capacity);
+		}
+		this.capacity = capacity;
+	}
+
+	int getCapacity() {
+		return capacity;
+	}
+
+	boolean isBounded() {
+		return capacity > 0;
+	}
+
+	private void ensure(int id) {
+		if(id >= lastBound.length) {
+			int size = Math.max(id + 1, lastBound.length * 2);
+			lastBound = Arrays.copyOf(lastBound, size);
+			sources = Arrays.copyOf(sources, size);
+			lengths = Arrays.copyOf(lengths, size);
+			stageLengths = Arrays.copyOf(stageLengths, size);
+			hashes = Arrays.copyOf(hashes, size);
+			evicted = Arrays.copyOf(evicted, size);
+		}
+	}
+
+	/*
+	 * Mark a handle id as just bound. On every bind, so only an array store.
+	 */
+	void touch(int id) {
+		if(id < lastBound.length) {
+			lastBound[id] = ++clock;
+		}
+	}
+
+	boolean isEvicted(int id) {
+		return id < evicted.length && evicted[id];
+	}
+
+	/**
+	 * A program was stored under a handle id. Keeps its sources if the registry
+	 * is bounded, unless the same sources are kept already. Programs stored while
+	 * unbounded are pinned and never evicted.
+	 */
+	void installed(int id, long hash, ShaderSource[] stages) {
+		ensure(id);
+		evicted[id] = false;
+		lastBound[id] = ++clock;
+		if(!isBounded()) {
+			forget(id);
+			return;
+		}
+		if(sources[id] != null && hashes[id] == hash) {
+			return;
+		}
+		forget(id);
+		int[] stageLength = new int[ShaderType.COUNT];
+		int length = 0;
+		for(int i = 0; i < ShaderType.COUNT; i++) {
+			stageLength[i] = (stages[i] != null) ? stages[i].length() : -1;
+			length += Math.max(stageLength[i], 0);
+		}
+		if(input.length < length) {
+			input = new byte[length];
+		}
+		int at = 0;
+		for(int i = 0; i < ShaderType.COUNT; i++) {
+			if(stages[i] != null) {
+				stages[i].bytes().get(input, at, stageLength[i]);
+				at += stageLength[i];
+			}
+		}
+		deflater.reset();
+		deflater.setInput(input, 0, length);
+		deflater.finish();
+		int n = 0;
+		while(!deflater.finished()) {
+			if(n == scratch.length) {
+				scratch = Arrays.copyOf(scratch, scratch.length * 2);
+			}
+			n += deflater.deflate(scratch, n, scratch.length - n);
+		}
+		sources[id] = Arrays.copyOf(scratch, n);
+		lengths[id] = length;
+		stageLengths[id] = stageLength;
+		hashes[id] = hash;
+		retainedBytes += n;
+	}
+
+	/**
+	 * The program of a handle id was evicted.
+	 */
+	void evicted(int id) {
+		evicted[id] = true;
+	}
+
+	/**
+	 * Drop everything kept for a handle id, because its shader was deleted.
+	 */
+	void forget(int id) {
+		if(id < sources.length) {
+			if(sources[id] != null) {
+				retainedBytes -= sources[id].length;
+				sources[id] = null;
+			}
+			evicted[id] = false;
+		}
+	}
+
+	/**
+	 * @return the sources kept for a handle id, indexed by ShaderType ordinal.
+	 */
+	ShaderSource[] sources(int id) {
+		int length = lengths[id];
+		if(input.length < length) {
+			input = new byte[length];
+		}
+		inflate(inflater, sources[id], input, length);
+		ShaderSource[] stages = new ShaderSource[ShaderType.COUNT];
+		int at = 0;
+		for(int i = 0; i < ShaderType.COUNT; i++) {
+			int stageLength = stageLengths[id][i];
+			if(stageLength != -1) {
+				stages[i] = ShaderSource.wrap(ByteBuffer.wrap(input, at, stageLength));
+				at += stageLength;
+			}
+		}
+		return stages;
+	}
+
+	/*
+	 * Inflate exactly length bytes into output. A stream that ends or runs out of
+	 * input before that would otherwise make the loop spin forever.
+	 */
+	static void inflate(Inflater inflater, byte[] deflated, byte[] output, int length) {
+		inflater.reset();
+		inflater.setInput(deflated);
+		try {
+			int n = 0;
+			while(n < length) {
+				int read = inflater.inflate(output, n, length - n);
+				if(read == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+					throw new IllegalStateException("Kept shader source is truncated: " + n + " of " + length + " bytes.");
+				}
+				n += read;
+			}
+		} catch(DataFormatException e) {
+			throw new IllegalStateException("Kept shader source is corrupt.", e);
+		}
+	}
+
+	/**
+	 * A program was stored under a handle id or deleted from it. The count is
+	 * what the capacity is enforced against, independent of the metrics.
+	 */
+	void resident(int delta) {
+		resident += delta;
+	}
+
+	int getResident() {
+		return resident;
+	}
+
+	/**
+	 * Least recently bound handle id that may be evicted, or -1. A scan over
+	 * every handle, which is cheap next to the compile it makes room for.
+	 *
+	 * @param shaders Shaders of the manager by handle id.
+	 * @param count Number of handle ids in use.
+	 * @param keep Handle id that must not be picked, like the one just built.
+	 * @param active Shader that must not be picked because it is the active one.
+	 */
+	int leastRecentlyBound(Shader[] shaders, int count, int keep, Shader active) {
+		int lru = -1;
+		long oldest = Long.MAX_VALUE;
+		for(int id = 0; id < count && id < sources.length; id++) {
+			if(id != keep && sources[id] != null && !evicted[id] && shaders[id] != active && lastBound[id] < oldest) {
+				oldest = lastBound[id];
+				lru = id;
+			}
+		}
+		return lru;
+	}
+
+	long getRetainedBytes() {
+		return retainedBytes;
+	}
+
+	/**
+	 * Forget every handle id, for dispose. The capacity is kept.
+	 */
+	void clear() {
+		Arrays.fill(sources, null);
+		Arrays.fill(evicted, false);
+		Arrays.fill(lastBound, 0);
+		retainedBytes = 0;
+		resident = 0;
+	}
+}
@@ -0,0 +1,670 @@
+/**
+ *	Author: Jack Ramey
+ *	File: RecordingBackend.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * GLBackend that records every call with its arguments and passes it on to
+ * another backend. Calls are packed into a single int array: the opcode, the
+ * number of arguments, then the arguments. Floats are stored by their bits,
+ * strings by their index in a string table and buffers by their remaining
+ * element count. An int a call returns is recorded as its last argument.
+ *
+ * Selected with <code>-Dcom.sgflt.ShaderManager.backend=recording</code>, which
+ * records on top of the backend named by <code>com.sgflt.ShaderManager.backend.recorded</code>,
+ * the noop backend by default. Get it from ShaderManager.getBackend().
+ *
+ * Example:
+ * <pre>
+ * ShaderManager sm = ShaderManager.INSTANCE;
+ * RecordingBackend gl = (RecordingBackend) sm.getBackend();
+ * gl.clear();
+ * sm.bind(hemi);
+ * sm.putFloat("time", t);
+ * assert gl.getOpcode(gl.getCallCount() - 1) == RecordingBackend.UNIFORM_1F;
+ * </pre>
+ */
+public final class RecordingBackend implements GLBackend {
+
+	//Opcodes
+	public static final int IS_SUPPORTED = 0;
+	public static final int GET_INTEGER = 1;
+	public static final int GET_STRING = 2;
+	public static final int GET_STRINGI = 3;
+	public static final int CREATE_PROGRAM = 4;
+	public static final int CREATE_SHADER = 5;
+	public static final int SHADER_SOURCE = 6;
+	public static final int COMPILE_SHADER = 7;
+	public static final int GET_SHADER = 8;
+	public static final int ATTACH_SHADER = 9;
+	public static final int LINK_PROGRAM = 10;
+	public static final int VALIDATE_PROGRAM = 11;
+	public static final int GET_PROGRAM = 12;
+	public static final int PROGRAM_PARAMETERI = 13;
+	public static final int PROGRAM_BINARY = 14;
+	public static final int GET_PROGRAM_BINARY = 15;
+	public static final int GET_ACTIVE_UNIFORM = 16;
+	public static final int GET_UNIFORM_LOCATION = 17;
+	public static final int USE_PROGRAM = 18;
+	public static final int GEN_BUFFERS = 19;
+	public static final int BIND_BUFFER = 20;
+	public static final int BUFFER_DATA = 21;
+	public static final int BUFFER_SUB_DATA = 22;
+	public static final int BIND_BUFFER_BASE = 23;
+	public static final int GET_UNIFORM_BLOCK_INDEX = 24;
+	public static final int UNIFORM_BLOCK_BINDING = 25;
+	public static final int UNIFORM_1F = 26;
+	public static final int UNIFORM_2F = 27;
+	public static final int UNIFORM_3F = 28;
+	public static final int UNIFORM_4F = 29;
+	public static final int UNIFORM_1I = 30;
+	public static final int UNIFORM_1FV = 31;
+	public static final int UNIFORM_2FV = 32;
+	public static final int UNIFORM_3FV = 33;
+	public static final int UNIFORM_4FV = 34;
+	public static final int UNIFORM_1IV = 35;
+	public static final int UNIFORM_MATRIX_2FV = 36;
+	public static final int UNIFORM_MATRIX_3FV = 37;
+	public static final int UNIFORM_MATRIX_4FV = 38;
+	public static final int DETACH_SHADER = 39;
+	public static final int DELETE_SHADER = 40;
+	public static final int DELETE_PROGRAM = 41;
+	public static final int DELETE_BUFFERS = 42;
+	public static final int ACTIVE_TEXTURE = 43;
+	public static final int BIND_TEXTURE = 44;
+	public static final int DELETE_TEXTURES = 45;
+	public static final int GET_UNIFORMIV = 46;
+	public static final int DISPATCH_COMPUTE = 47;
+	public static final int MEMORY_BARRIER = 48;
+
+	private static final String[] NAMES = {
+		"isSupported", "glGetInteger", "glGetString", "glGetStringi", "glCreateProgram", "glCreateShader",
+		"glShaderSource", "glCompileShader", "glGetShader", "glAttachShader", "glLinkProgram",
+		"glValidateProgram", "glGetProgram", "glProgramParameteri", "glProgramBinary", "glGetProgramBinary",
+		"glGetActiveUniform", "glGetUniformLocation", "glUseProgram", "glGenBuffers", "glBindBuffer",
+		"glBufferData", "glBufferSubData", "glBindBufferBase", "glGetUniformBlockIndex", "glUniformBlockBinding",
+		"glUniform1f", "glUniform2f", "glUniform3f", "glUniform4f", "glUniform1i", "glUniform1fv",
+		"glUniform2fv", "glUniform3fv", "glUniform4fv", "glUniform1iv", "glUniformMatrix2fv",
+		"glUniformMatrix3fv", "glUniformMatrix4fv", "glDetachShader", "glDeleteShader", "glDeleteProgram",
+		"glDeleteBuffers", "glActiveTexture", "glBindTexture", "glDeleteTextures", "glGetUniformiv",
+		"glDispatchCompute", "glMemoryBarrier"
+	};
+
+	private final GLBackend delegate;
+	//opcode, argument count, arguments... for every call
+	private int[] words = new int[1024];
+	private int size = 0;
+	//Index of every call in words
+	private int[] calls = new int[256];
+	private int callCount = 0;
+	//Strings passed to or returned by calls, each stored once
+	private final List<String> strings = new ArrayList<String>();
+	private final Map<String, Integer> stringIds = new HashMap<String, Integer>();
+
+	/**
+	 * @param delegate Backend every call is passed on to after it is recorded.
+	 */
+	public RecordingBackend(GLBackend delegate) {
+		this.delegate = delegate;
+	}
+
+	/*
+	 * Start recording a call with argc arguments.
+	 */
+	private void call(int opcode, int argc) {
+		if(callCount == calls.length) {
+			int[] grown = new int[calls.length * 2];
+			System.arraycopy(calls, 0, grown, 0, callCount);
+			calls = grown;
+		}
+		if(size + 2 + argc > words.length) {
+			int[] grown = new int[Math.max(words.length * 2, size + 2 + argc)];
+			System.arraycopy(words, 0, grown, 0, size);
+			words = grown;
+		}
+		calls[callCount++] = size;
+		words[size++] = opcode;
+		words[size++] = argc;
+	}
+
+	private void arg(int x) {
+		words[size++] = x;
+	}
+
+	private void arg(float x) {
+		words[size++] = Float.floatToRawIntBits(x);
+	}
+
+	private void arg(boolean x) {
+		words[size++] = x ? 1 : 0;
+	}
+
+	private void arg(CharSequence s) {
+		String key = (s == null) ? null : s.toString();
+		Integer id = stringIds.get(key);
+		if(id == null) {
+			id = strings.size();
+			strings.add(key);
+			stringIds.put(key, id);
+		}
+		words[size++] = id;
+	}
+
+	private int result(int x) {
+		arg(x);
+		return x;
+	}
+
+	/**
+	 * @return backend every call is passed on to.
+	 */
+	public GLBackend getDelegate() {
+		return delegate;
+	}
+
+	/**
+	 * @return number of calls recorded since the last clear.
+	 */
+	public int getCallCount() {
+		return callCount;
+	}
+
+	/**
+	 * @return opcode of a recorded call.
+	 */
+	public int getOpcode(int call) {
+		return words[calls[call]];
+	}
+
+	/**
+	 * @return number of recorded arguments of a call, including its result.
+	 */
+	public int getArgCount(int call) {
+		return words[calls[call] + 1];
+	}
+
+	/**
+	 * @return an int, boolean (0 or 1) or buffer length argument of a call.
+	 */
+	public int getInt(int call, int arg) {
+		return words[calls[call] + 2 + arg];
+	}
+
+	/**
+	 * @return a float argument of a call.
+	 */
+	public float getFloat(int call, int arg) {
+		return Float.intBitsToFloat(getInt(call, arg));
+	}
+
+	/**
+	 * @return a string argument or result of a call.
+	 */
+	public String getString(int call, int arg) {
+		return strings.get(getInt(call, arg));
+	}
+
+	/**
+	 * Count the recorded calls with an opcode.
+	 */
+	public int count(int opcode) {
+		int n = 0;
+		for(int i = 0; i < callCount; i++) {
+			if(words[calls[i]] == opcode) {
+				n++;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Forget every recorded call. The string table is kept.
+	 */
+	public void clear() {
+		size = 0;
+		callCount = 0;
+	}
+
+	/**
+	 * @return GL function name of an opcode.
+	 */
+	public static String name(int opcode) {
+		return NAMES[opcode];
+	}
+
+	/**
+	 * @return the recorded call in readable form, with raw int arguments.
+	 */
+	public String toString(int call) {
+		StringBuilder sb = new StringBuilder(name(getOpcode(call))).append('(');
+		int argc = getArgCount(call);
+		for(int i = 0; i < argc; i++) {
+			if(i > 0) {
+				sb.append(", ");
+			}
+			sb.append(getInt(call, i));
+		}
+		return sb.append(')').toString();
+	}
+
+	@Override
+	public String toString() {
+		return "RecordingBackend[" + callCount + " calls, " + size * 4 + " bytes]";
+	}
+
+	@Override
+	public boolean isSupported(String capability) {
+		boolean supported = delegate.isSupported(capability);
+		call(IS_SUPPORTED, 2);
+		arg(capability);
+		arg(supported);
+		return supported;
+	}
+
+	@Override
+	public int getInteger(int pname) {
+		call(GET_INTEGER, 2);
+		arg(pname);
+		return result(delegate.getInteger(pname));
+	}
+
+	@Override
+	public String getString(int name) {
+		String s = delegate.getString(name);
+		call(GET_STRING, 2);
+		arg(name);
+		arg(s);
+		return s;
+	}
+
+	@Override
+	public String getStringi(int name, int index) {
+		String s = delegate.getStringi(name, index);
+		call(GET_STRINGI, 3);
+		arg(name);
+		arg(index);
+		arg(s);
+		return s;
+	}
+
+	@Override
+	public int createProgram() {
+		call(CREATE_PROGRAM, 1);
+		return result(delegate.createProgram());
+	}
+
+	@Override
+	public int createShader(int type) {
+		call(CREATE_SHADER, 2);
+		arg(type);
+		return result(delegate.createShader(type));
+	}
+
+	@Override
+	public void shaderSource(int shader, ByteBuffer source) {
+		call(SHADER_SOURCE, 2);
+		arg(shader);
+		arg(source.remaining());
+		delegate.shaderSource(shader, source);
+	}
+
+	@Override
+	public void compileShader(int shader) {
+		call(COMPILE_SHADER, 1);
+		arg(shader);
+		delegate.compileShader(shader);
+	}
+
+	@Override
+	public int getShader(int shader, int pname) {
+		call(GET_SHADER, 3);
+		arg(shader);
+		arg(pname);
+		return result(delegate.getShader(shader, pname));
+	}
+
+	@Override
+	public void attachShader(int program, int shader) {
+		call(ATTACH_SHADER, 2);
+		arg(program);
+		arg(shader);
+		delegate.attachShader(program, shader);
+	}
+
+	@Override
+	public void detachShader(int program, int shader) {
+		call(DETACH_SHADER, 2);
+		arg(program);
+		arg(shader);
+		delegate.detachShader(program, shader);
+	}
+
+	@Override
+	public void deleteShader(int shader) {
+		call(DELETE_SHADER, 1);
+		arg(shader);
+		delegate.deleteShader(shader);
+	}
+
+	@Override
+	public void linkProgram(int program) {
+		call(LINK_PROGRAM, 1);
+		arg(program);
+		delegate.linkProgram(program);
+	}
+
+	@Override
+	public void validateProgram(int program) {
+		call(VALIDATE_PROGRAM, 1);
+		arg(program);
+		delegate.validateProgram(program);
+	}
+
+	@Override
+	public int getProgram(int program, int pname) {
+		call(GET_PROGRAM, 3);
+		arg(program);
+		arg(pname);
+		return result(delegate.getProgram(program, pname));
+	}
+
+	@Override
+	public void deleteProgram(int program) {
+		call(DELETE_PROGRAM, 1);
+		arg(program);
+		delegate.deleteProgram(program);
+	}
+
+	@Override
+	public void programParameteri(int program, int pname, int value) {
+		call(PROGRAM_PARAMETERI, 3);
+		arg(program);
+		arg(pname);
+		arg(value);
+		delegate.programParameteri(program, pname, value);
+	}
+
+	@Override
+	public void programBinary(int program, int format, ByteBuffer binary) {
+		call(PROGRAM_BINARY, 3);
+		arg(program);
+		arg(format);
+		arg(binary.remaining());
+		delegate.programBinary(program, format, binary);
+	}
+
+	@Override
+	public void getProgramBinary(int program, IntBuffer length, IntBuffer format, ByteBuffer binary) {
+		call(GET_PROGRAM_BINARY, 2);
+		arg(program);
+		arg(binary.remaining());
+		delegate.getProgramBinary(program, length, format, binary);
+	}
+
+	@Override
+	public String getActiveUniform(int program, int index, int maxLength, IntBuffer sizeType) {
+		String name = delegate.getActiveUniform(program, index, maxLength, sizeType);
+		call(GET_ACTIVE_UNIFORM, 3);
+		arg(program);
+		arg(index);
+		arg(name);
+		return name;
+	}
+
+	@Override
+	public int getUniformLocation(int program, CharSequence name) {
+		call(GET_UNIFORM_LOCATION, 3);
+		arg(program);
+		arg(name);
+		return result(delegate.getUniformLocation(program, name));
+	}
+
+	@Override
+	public int getUniformi(int program, int location) {
+		call(GET_UNIFORMIV, 3);
+		arg(program);
+		arg(location);
+		return result(delegate.getUniformi(program, location));
+	}
+
+	@Override
+	public void useProgram(int program) {
+		call(USE_PROGRAM, 1);
+		arg(program);
+		delegate.useProgram(program);
+	}
+
+	@Override
+	public int genBuffers() {
+		call(GEN_BUFFERS, 1);
+		return result(delegate.genBuffers());
+	}
+
+	@Override
+	public void bindBuffer(int target, int buffer) {
+		call(BIND_BUFFER, 2);
+		arg(target);
+		arg(buffer);
+		delegate.bindBuffer(target, buffer);
+	}
+
+	@Override
+	public void bufferData(int target, long size, int usage) {
+		call(BUFFER_DATA, 3);
+		arg(target);
+		arg((int) size);
+		arg(usage);
+		delegate.bufferData(target, size, usage);
+	}
+
+	@Override
+	public void bufferSubData(int target, long offset, ByteBuffer data) {
+		call(BUFFER_SUB_DATA, 3);
+		arg(target);
+		arg((int) offset);
+		arg(data.remaining());
+		delegate.bufferSubData(target, offset, data);
+	}
+
+	@Override
+	public void bindBufferBase(int target, int index, int buffer) {
+		call(BIND_BUFFER_BASE, 3);
+		arg(target);
+		arg(index);
+		arg(buffer);
+		delegate.bindBufferBase(target, index, buffer);
+	}
+
+	@Override
+	public void deleteBuffers(int buffer) {
+		call(DELETE_BUFFERS, 1);
+		arg(buffer);
+		delegate.deleteBuffers(buffer);
+	}
+
+	@Override
+	public void activeTexture(int unit) {
+		call(ACTIVE_TEXTURE, 1);
+		arg(unit);
+		delegate.activeTexture(unit);
+	}
+
+	@Override
+	public void bindTexture(int target, int texture) {
+		call(BIND_TEXTURE, 2);
+		arg(target);
+		arg(texture);
+		delegate.bindTexture(target, texture);
+	}
+
+	@Override
+	public void deleteTextures(int texture) {
+		call(DELETE_TEXTURES, 1);
+		arg(texture);
+		delegate.deleteTextures(texture);
+	}
+
+	@Override
+	public void dispatchCompute(int groupsX, int groupsY, int groupsZ) {
+		call(DISPATCH_COMPUTE, 3);
+		arg(groupsX);
+		arg(groupsY);
+		arg(groupsZ);
+		delegate.dispatchCompute(groupsX, groupsY, groupsZ);
+	}
+
+	@Override
+	public void memoryBarrier(int barriers) {
+		call(MEMORY_BARRIER, 1);
+		arg(barriers);
+		delegate.memoryBarrier(barriers);
+	}
+
+	@Override
+	public int getUniformBlockIndex(int program, CharSequence name) {
+		call(GET_UNIFORM_BLOCK_INDEX, 3);
+		arg(program);
+		arg(name);
+		return result(delegate.getUniformBlockIndex(program, name));
+	}
+
+	@Override
+	public void uniformBlockBinding(int program, int index, int binding) {
+		call(UNIFORM_BLOCK_BINDING, 3);
+		arg(program);
+		arg(index);
+		arg(binding);
+		delegate.uniformBlockBinding(program, index, binding);
+	}
+
+	@Override
+	public void uniform1f(int location, float x) {
+		call(UNIFORM_1F, 2);
+		arg(location);
+		arg(x);
+		delegate.uniform1f(location, x);
+	}
+
+	@Override
+	public void uniform2f(int location, float x, float y) {
+		call(UNIFORM_2F, 3);
+		arg(location);
+		arg(x);
+		arg(y);
+		delegate.uniform2f(location, x, y);
+	}
+
+	@Override
+	public void uniform3f(int location, float x, float y, float z) {
+		call(UNIFORM_3F, 4);
+		arg(location);
+		arg(x);
+		arg(y);
+		arg(z);
+		delegate.uniform3f(location, x, y, z);
+	}
+
+	@Override
+	public void uniform4f(int location, float x, float y, float z, float w) {
+		call(UNIFORM_4F, 5);
+		arg(location);
+		arg(x);
+		arg(y);
+		arg(z);
+		arg(w);
+		delegate.uniform4f(location, x, y, z, w);
+	}
+
+	@Override
+	public void uniform1i(int location, int x) {
+		call(UNIFORM_1I, 2);
+		arg(location);
+		arg(x);
+		delegate.uniform1i(location, x);
+	}
+
+	private void vector(int opcode, int location, int count) {
+		call(opcode, 2);
+		arg(location);
+		arg(count);
+	}
+
+	private void matrix(int opcode, int location, boolean transpose, int count) {
+		call(opcode, 3);
+		arg(location);
+		arg(transpose);
+		arg(count);
+	}
+
+	@Override
+	public void uniform1fv(int location, FloatBuffer values) {
+		vector(UNIFORM_1FV, location, values.remaining());
+		delegate.uniform1fv(location, values);
+	}
+
+	@Override
+	public void uniform2fv(int location, FloatBuffer values) {
+		vector(UNIFORM_2FV, location, values.remaining());
+		delegate.uniform2fv(location, values);
+	}
+
+	@Override
+	public void uniform3fv(int location, FloatBuffer values) {
+		vector(UNIFORM_3FV, location, values.remaining());
+		delegate.uniform3fv(location, values);
+	}
+
+	@Override
+	public void uniform4fv(int location, FloatBuffer values) {
+		vector(UNIFORM_4FV, location, values.remaining());
+		delegate.uniform4fv(location, values);
+	}
+
+	@Override
+	public void uniform1iv(int location, IntBuffer values) {
+		vector(UNIFORM_1IV, location, values.remaining());
+		delegate.uniform1iv(location, values);
+	}
+
+	@Override
+	public void uniformMatrix2fv(int location, boolean transpose, FloatBuffer values) {
+		matrix(UNIFORM_MATRIX_2FV, location, transpose, values.remaining());
+		delegate.uniformMatrix2fv(location, transpose, values);
+	}
+
+	@Override
+	public void uniformMatrix3fv(int location, boolean transpose, FloatBuffer values) {
+		matrix(UNIFORM_MATRIX_3FV, location, transpose, values.remaining());
+		delegate.uniformMatrix3fv(location, transpose, values);
+	}
+
+	@Override
+	public void uniformMatrix4fv(int location, boolean transpose, FloatBuffer values) {
+		matrix(UNIFORM_MATRIX_4FV, location, transpose, values.remaining());
+		delegate.uniformMatrix4fv(location, transpose, values);
+	}
+}
@@ -0,0 +1,357 @@
+/**
+ *	Author: Jack Ramey
+ *	File: RenderQueue.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import java.util.Arrays;
+
+/**
+ * Collects the draws of a frame and executes them grouped by program. Every
+ * draw is submitted with the shader it uses, a material, a depth and the
+ * uniform values it needs. On flush the draws are sorted by program, then
+ * material, then depth, so each program is bound once and draws sharing a
+ * material upload their uniforms once.
+ *
+ * Example:
+ * <pre>
+ * RenderQueue queue = ShaderManager.createRenderQueue(256);
+ * //every frame
+ * queue.submit(hemi, STONE, distance, sphere);
+ * queue.set(lightPos, x, y, z);
+ * queue.submit(phong, METAL, distance2, teapot);
+ * queue.flush();
+ * ShaderManager.unbind();
+ * </pre>
+ *
+ * The sort is a radix sort over packed 64 bit keys, so a flush neither compares
+ * objects nor allocates once the queue has grown to the size of a frame.
+ * GL thread only.
+ */
+public final class RenderQueue {
+
+	/**
+	 * Draw call of a queued item. Runs with the item's program bound and its
+	 * uniform values set.
+	 */
+	public interface Draw {
+		void draw();
+	}
+
+	private static final int UNIFORM_1F = 1;
+	private static final int UNIFORM_2F = 2;
+	private static final int UNIFORM_3F = 3;
+	private static final int UNIFORM_4F = 4;
+	private static final int UNIFORM_1I = 5;
+
+	/**
+	 * Largest material a draw can be submitted with.
+	 */
+	public static final int MAX_MATERIAL = 0xFFFF;
+	//Program bits of draws with the default pipeline, sorted after every shader
+	private static final long DEFAULT_PROGRAM = 0xFFFFL;
+
+	private final ShaderManager manager;
+
+	//Items: sort key, handle, draw and first value
+	private int size = 0;
+	private long[] keys;
+	private ShaderHandle[] handles;
+	private Draw[] draws;
+	private int[] firstValue;
+
+	//Uniform values of every item, in submission order
+	private int valueCount = 0;
+	private UniformRef[] refs;
+	private int[] kinds;
+	private float[] floats;
+	private int[] ints;
+
+	//Radix sort scratch: item order, its double buffer and the key double buffer
+	private int[] order;
+	private int[] orderScratch;
+	private long[] keyScratch;
+	private final int[] counts = new int[8 * 256];
+
+	RenderQueue(ShaderManager manager, int capacity) {
+		if(capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+		}
+		this.manager = manager;
+		keys = new long[capacity];
+		handles = new ShaderHandle[capacity];
+		draws = new Draw[capacity];
+		firstValue = new int[capacity];
+		order = new int[capacity];
+		orderScratch = new int[capacity];
+		keyScratch = new long[capacity];
+		refs = new UniformRef[capacity];
+		kinds = new int[capacity];
+		floats = new float[capacity * 4];
+		ints = new int[capacity];
+	}
+
+	/**
+	 * Queue a draw.
+	 *
+	 * @param handle Shader to draw with, or null for the default pipeline.
+	 * @param material Draws with the same material are kept together, 0 to MAX_MATERIAL.
+	 * @param depth Draws of a material run from the smallest depth to the largest. Pass
+	 * 				the negated distance to draw back to front.
+	 * @param draw Draw call, run with the shader bound and the values set after this submit.
+	 * @throws IllegalArgumentException If the material is out of range, or the
+	 * 									manager holds more shaders than the queue can sort.
+	 */
+	public void submit(ShaderHandle handle, int material, float depth, Draw draw) throws IllegalArgumentException {
+		if(handle != null && handle.id >= DEFAULT_PROGRAM) {
+			throw new IllegalArgumentException("A RenderQueue sorts at most " + DEFAULT_PROGRAM + " shaders: " + handle);
+		}
+		if(material < 0 || material > MAX_MATERIAL) {
+			throw new IllegalArgumentException("Material must be between 0 and " + MAX_MATERIAL + ": " + material);
+		}
+		if(size == keys.length) {
+			growItems();
+		}
+		long program = (handle != null) ? handle.id : DEFAULT_PROGRAM;
+		keys[size] = (program << 48) | ((long) material << 32) | (sortableBits(depth) & 0xFFFFFFFFL);
+		handles[size] = handle;
+		draws[size] = draw;
+		firstValue[size] = valueCount;
+		size++;
+	}
+
+	/*
+	 * Bits of a float that sort as unsigned ints in the order of the floats.
+	 */
+	private static int sortableBits(float f) {
+		int bits = Float.floatToIntBits(f);
+		return bits ^ ((bits >> 31) | 0x80000000);
+	}
+
+	/**
+	 * Set a float for the last submitted draw.
+	 */
+	public void set(UniformRef ref, float x) {
+		int i = claim(ref, UNIFORM_1F);
+		floats[i * 4] = x;
+	}
+
+	/**
+	 * Set a vec2 for the last submitted draw.
+	 */
+	public void set(UniformRef ref, float x, float y) {
+		int f = claim(ref, UNIFORM_2F) * 4;
+		floats[f] = x;
+		floats[f + 1] = y;
+	}
+
+	/**
+	 * Set a vec3 for the last submitted draw.
+	 */
+	public void set(UniformRef ref, float x, float y, float z) {
+		int f = claim(ref, UNIFORM_3F) * 4;
+		floats[f] = x;
+		floats[f + 1] = y;
+		floats[f + 2] = z;
+	}
+
+	/**
+	 * Set a vec4 for the last submitted draw.
+	 */
+	public void set(UniformRef ref, float x, float y, float z, float w) {
+		int f = claim(ref, UNIFORM_4F) * 4;
+		floats[f] = x;
+		floats[f + 1] = y;
+		floats[f + 2] = z;
+		floats[f + 3] = w;
+	}
+
+	/**
+	 * Set an integer (or sampler unit) for the last submitted draw.
+	 */
+	public void set(UniformRef ref, int x) {
+		int i = claim(ref, UNIFORM_1I);
+		ints[i] = x;
+	}
+
+	/*
+	 * Index of a new value of the last submitted draw.
+	 */
+	private int claim(UniformRef ref, int kind) {
+		if(size == 0) {
+			throw new IllegalStateException("Submit a draw before setting its uniforms.");
+		}
+		ShaderHandle handle = handles[size - 1];
+		if(handle == null || ref.id != handle.id) {
+			throw new IllegalArgumentException("Uniform " + ref.getName() + " does not belong to the shader of the draw.");
+		}
+		if(valueCount == refs.length) {
+			growValues();
+		}
+		refs[valueCount] = ref;
+		kinds[valueCount] = kind;
+		return valueCount++;
+	}
+
+	/**
+	 * Sort the queued draws and execute them, then empty the queue. Programs
+	 * are bound as needed, so afterwards the program of the last draw is bound.
+	 *
+	 * @return number of draws executed.
+	 */
+	public int flush() {
+		int n = size;
+		sort();
+		//Handle id of the bound shader, -1 for the default pipeline
+		int bound = -2;
+		for(int k = 0; k < n; k++) {
+			int i = order[k];
+			ShaderHandle handle = handles[i];
+			int id = (handle != null) ? handle.id : -1;
+			if(id != bound) {
+				manager.bind(handle);
+				bound = id;
+			}
+			int end = (i + 1 < n) ? firstValue[i + 1] : valueCount;
+			for(int v = firstValue[i]; v < end; v++) {
+				apply(v);
+			}
+			draws[i].draw();
+		}
+		clear();
+		return n;
+	}
+
+	/*
+	 * Set a queued uniform value. Values the program already has are skipped
+	 * by the shadow state, so draws sharing a material upload nothing.
+	 */
+	private void apply(int v) {
+		UniformRef ref = refs[v];
+		int f = v * 4;
+		switch(kinds[v]) {
+		case UNIFORM_1F:
+			ref.set(floats[f]);
+			break;
+		case UNIFORM_2F:
+			ref.set(floats[f], floats[f + 1]);
+			break;
+		case UNIFORM_3F:
+			ref.set(floats[f], floats[f + 1], floats[f + 2]);
+			break;
+		case UNIFORM_4F:
+			ref.set(floats[f], floats[f + 1], floats[f + 2], floats[f + 3]);
+			break;
+		default:
+			ref.set(ints[v]);
+			break;
+		}
+	}
+
+	/*
+	 * Least significant byte first radix sort of the keys into order. Stable,
+	 * so draws with equal keys run in submission order. Bytes every key shares
+	 * are skipped, which with few programs and materials is most of them.
+	 */
+	private void sort() {
+		int n = size;
+		Arrays.fill(counts, 0);
+		for(int i = 0; i < n; i++) {
+			long key = keys[i];
+			for(int b = 0; b < 8; b++) {
+				counts[(b << 8) | (int) ((key >>> (b << 3)) & 0xFF)]++;
+			}
+			order[i] = i;
+		}
+
+		long[] srcKeys = keys;
+		long[] dstKeys = keyScratch;
+		int[] src = order;
+		int[] dst = orderScratch;
+		for(int b = 0; b < 8; b++) {
+			int base = b << 8;
+			int shift = b << 3;
+			if(n == 0 || counts[base | (int) ((srcKeys[0] >>> shift) & 0xFF)] == n) {
+				continue;
+			}
+			//Counts to start offsets
+			int sum = 0;
+			for(int d = 0; d < 256; d++) {
+				int c = counts[base | d];
+				counts[base | d] = sum;
+				sum += c;
+			}
+			for(int i = 0; i < n; i++) {
+				long key = srcKeys[i];
+				int at = counts[base | (int) ((key >>> shift) & 0xFF)]++;
+				dstKeys[at] = key;
+				dst[at] = src[i];
+			}
+			long[] tk = srcKeys;
+			srcKeys = dstKeys;
+			dstKeys = tk;
+			int[] t = src;
+			src = dst;
+			dst = t;
+		}
+		//Keep whichever buffers hold the result. The keys are not needed after
+		//the sort, flush empties the queue.
+		order = src;
+		orderScratch = dst;
+		keys = srcKeys;
+		keyScratch = dstKeys;
+	}
+
+	/**
+	 * Drop every queued draw without executing it.
+	 */
+	public void clear() {
+		//Do not keep draws and refs reachable from an empty queue
+		Arrays.fill(draws, 0, size, null);
+		Arrays.fill(handles, 0, size, null);
+		Arrays.fill(refs, 0, valueCount, null);
+		size = 0;
+		valueCount = 0;
+	}
+
+	private void growItems() {
+		int capacity = keys.length * 2;
+		keys = Arrays.copyOf(keys, capacity);
+		handles = Arrays.copyOf(handles, capacity);
+		draws = Arrays.copyOf(draws, capacity);
+		firstValue = Arrays.copyOf(firstValue, capacity);
+		order = new int[capacity];
+		orderScratch = new int[capacity];
+		keyScratch = new long[capacity];
+	}
+
+	private void growValues() {
+		int capacity = refs.length * 2;
+		refs = Arrays.copyOf(refs, capacity);
+		kinds = Arrays.copyOf(kinds, capacity);
+		floats = Arrays.copyOf(floats, capacity * 4);
+		ints = Arrays.copyOf(ints, capacity);
+	}
+
+	/**
+	 * @return number of queued draws.
+	 */
+	public int getSize() {
+		return size;
+	}
+}
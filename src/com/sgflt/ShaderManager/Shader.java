@@ -19,70 +19,142 @@
 
 package com.sgflt.ShaderManager;
 
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Collections;
+
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL41;
 
 class Shader {
 
+	//KHR_parallel_shader_compile / ARB_parallel_shader_compile, not exposed by LWJGL
+	static final int GL_COMPLETION_STATUS_KHR = 0x91B1;
+
 	//Handle for the shader program. Set to Package-Private
 	final int shaderProgram;
-	//Handles for the shaders
-	private final int fragmentShader;
-	private final int vertexShader;
-	//Strings to hold the shader code that will be compiled
-	private final String fragmentShaderSource;
-	private final String vertexShaderSource;
-	//Shader status variables
-	private final boolean fragmentShaderCompileStatus;
-	private final boolean vertexShaderCompileStatus;
+	//Compiled stages by ShaderType ordinal, shared with other programs. null for stages the
+	//program does not have, and for all of them in the default shader and restored programs.
+	private final ShaderStageCache.Stage[] stages;
+	//Bit (1 << ordinal) of every ShaderType the program was built from
+	private final int stageMask;
+	//Hash of the stage sources. The sources themselves are not kept.
+	private final long sourceHash;
+	//First stage that failed to compile, null if every stage compiled
+	private final ShaderType failedStage;
 	//Shader program link status
 	private final boolean shaderProgramLinkStatus;
+	//Active uniforms of the program, reflected once after linking. Set to Package-Private
+	final UniformTable uniforms;
+	//Time spent compiling the shaders and linking (or restoring) the program
+	private final long compileNanos;
+	private final long linkNanos;
 
 	static class Builder {
 		//Handle for the shader program
 		private final int shaderProgram;
-		//Handles for the shaders
-		private final int fragmentShader;
-		private final int vertexShader;
-		//Strings to hold the shader code that will be compiled
-		private String fragmentShaderSource;
-		private String vertexShaderSource;
-		//Shader status variables
-		private boolean fragmentShaderCompileStatus;
-		private boolean vertexShaderCompileStatus;
+		//Compiled stages by ShaderType ordinal, taken from the stage cache when the sources are loaded
+		private final ShaderStageCache.Stage[] stages = new ShaderStageCache.Stage[ShaderType.COUNT];
+		private boolean acquired = false;
+		//Cache the stages are shared through
+		private ShaderStageCache stageCache;
+		//Shader code that will be compiled, by ShaderType ordinal
+		private final ShaderSource[] sources = new ShaderSource[ShaderType.COUNT];
+		//First stage that failed to compile
+		private ShaderType failedStage = null;
 		//Shader program link status
 		private boolean shaderProgramLinkStatus;
+		//Active uniforms of the linked program
+		private UniformTable uniforms = UniformTable.EMPTY;
+		//Run glValidateProgram after linking. Only worth it while debugging.
+		private boolean validate = false;
+		//Set when the program was restored from a binary instead of compiled
+		private boolean restored = false;
+		//Uniform blocks the linked program is pointed at
+		private Collection<UniformBlock> uniformBlocks = Collections.emptyList();
+		//Time spent in compile and link calls and their status queries
+		private long compileNanos = 0;
+		private long linkNanos = 0;
 		
 		/**
 		 * Shader internal builder class. Used to stage the data
 		 * and create an immutable shader object in one step.
 		 */
 		Builder() {
-			//Initialize the shader program and vertex shader and fragment shader
-			shaderProgram = GL20.glCreateProgram();
-			vertexShader = GL20.glCreateShader(GL20.GL_VERTEX_SHADER);
-			fragmentShader = GL20.glCreateShader(GL20.GL_FRAGMENT_SHADER);
+			//Initialize the shader program. The stages are taken when the sources are loaded,
+			//a program restored from a binary never needs them.
+			shaderProgram = Backend.GL.createProgram();
 		}
 
 		/**
-		 * Set the Fragment Shader source code.
+		 * Set the source code of a stage.
 		 * 
-		 * @param src String containing the fragment shader source.
+		 * @param type Stage the source is for.
+		 * @param src String containing the shader source.
 		 * @return Builder object to allow for a single line instantiation.
 		 */
-		Builder fragmentShaderSource(String src) {
-			fragmentShaderSource = src;
+		Builder source(ShaderType type, String src) {
+			return source(type, ShaderSource.of(src));
+		}
+		
+		/**
+		 * Set the source bytes of a stage.
+		 * 
+		 * @param type Stage the source is for.
+		 * @param src ShaderSource of the stage, null to leave the stage out.
+		 * @return Builder object to allow for a single line instantiation.
+		 */
+		Builder source(ShaderType type, ShaderSource src) {
+			sources[type.ordinal()] = src;
 			return this;
 		}
-
+		
+		/**
+		 * Set the source of every stage.
+		 * 
+		 * @param stages Sources by ShaderType ordinal, null for stages the program does not have.
+		 * @return Builder object to allow for a single line instantiation.
+		 */
+		Builder sources(ShaderSource[] stages) {
+			System.arraycopy(stages, 0, sources, 0, ShaderType.COUNT);
+			return this;
+		}
+		
+		/**
+		 * Validate the program after linking. Validation stalls until the link
+		 * has finished, so it should only be turned on while debugging.
+		 * 
+		 * @param validate true to run glValidateProgram after linking.
+		 * @return Builder object to allow for a single line instantiation.
+		 */
+		Builder validate(boolean validate) {
+			this.validate = validate;
+			return this;
+		}
+		
+		/**
+		 * Set the uniform blocks the program picks up once it is linked. Every block
+		 * the program declares under one of these names is bound to the block's
+		 * binding point.
+		 * 
+		 * @param blocks Uniform blocks shared by all programs.
+		 * @return Builder object to allow for a single line instantiation.
+		 */
+		Builder uniformBlocks(Collection<UniformBlock> blocks) {
+			uniformBlocks = blocks;
+			return this;
+		}
+		
 		/**
-		 * Set the Vertex Shader source code.
+		 * Set the cache compiled stages are shared through. Programs with the same
+		 * source for a stage compile it once.
 		 * 
-		 * @param src String containing the vertex shader source.
+		 * @param cache ShaderStageCache of the manager.
 		 * @return Builder object to allow for a single line instantiation.
 		 */
-		Builder vertexShaderSource(String src) {
-			vertexShaderSource = src;
+		Builder stageCache(ShaderStageCache cache) {
+			stageCache = cache;
 			return this;
 		}
 		
@@ -108,48 +180,190 @@ class Shader {
 		}
 		
 		/**
-		 * Attach the shaders to the program and then link and validate.
+		 * Submit the compiles and the link to the driver without asking for any
+		 * status. Querying a status forces the driver to finish that piece of work,
+		 * so a batch submits everything first and collects afterwards.
+		 * 
+		 * @return Builder object to allow for a single line instantiation.
+		 */
+		Builder submit() {
+			long start = System.nanoTime();
+			compileShaders();
+			long compiled = System.nanoTime();
+			attachAndLink();
+			compileNanos += compiled - start;
+			linkNanos += System.nanoTime() - compiled;
+			
+			return this;
+		}
+		
+		/**
+		 * Check if the driver has finished the link started by submit without
+		 * blocking. Only meaningful with KHR_parallel_shader_compile.
+		 * 
+		 * @param parallel true if the context supports KHR_parallel_shader_compile.
+		 * @return true if collect will not stall. Always true without parallel compile.
+		 */
+		boolean isComplete(boolean parallel) {
+			return !parallel || Backend.GL.getProgram(shaderProgram, GL_COMPLETION_STATUS_KHR) == GL11.GL_TRUE;
+		}
+		
+		/**
+		 * Collect the compile and link status of work started by submit.
+		 * 
+		 * @return Builder object to allow for a single line instantiation.
+		 */
+		Builder collect() {
+			long start = System.nanoTime();
+			queryCompileStatus();
+			long compiled = System.nanoTime();
+			queryLinkStatus();
+			compileNanos += compiled - start;
+			linkNanos += System.nanoTime() - compiled;
+			
+			return this;
+		}
+		
+		/**
+		 * Attach the shaders to the program and then link. The program is only
+		 * validated if validation was asked for.
 		 * 
 		 * @return Builder object to allow for a single line instantiation.
 		 */
 		Builder linkShaders() {
-			//Attach the shader to the shader program
-			GL20.glAttachShader(shaderProgram, vertexShader);
-			GL20.glAttachShader(shaderProgram, fragmentShader);
+			long start = System.nanoTime();
+			attachAndLink();
+			queryLinkStatus();
+			linkNanos += System.nanoTime() - start;
+			
+			return this;
+		}
+		
+		private void attachAndLink() {
+			//Attach the shaders to the shader program
+			for(ShaderStageCache.Stage stage : stages) {
+				if(stage != null) {
+					Backend.GL.attachShader(shaderProgram, stage.shader);
+				}
+			}
 			//Link the shader program (I have no idea what this does).
-			GL20.glLinkProgram(shaderProgram);
-	        //Validate the shader program
-			GL20.glValidateProgram(shaderProgram);
+			Backend.GL.linkProgram(shaderProgram);
+		}
+		
+		private void queryLinkStatus() {
+			//Validate the shader program
+			if(validate) {
+				Backend.GL.validateProgram(shaderProgram);
+			}
 			//Check to see if the shader program was linked correctly
-			shaderProgramLinkStatus = (GL20.glGetProgram(shaderProgram, GL20.GL_LINK_STATUS) == GL11.GL_TRUE);
-			
+			shaderProgramLinkStatus = (Backend.GL.getProgram(shaderProgram, GL20.GL_LINK_STATUS) == GL11.GL_TRUE);
+			//The linked program no longer needs the stages, detached they are freed with their last program
+			for(ShaderStageCache.Stage stage : stages) {
+				if(stage != null) {
+					Backend.GL.detachShader(shaderProgram, stage.shader);
+				}
+			}
+			//Enumerate the uniforms once so they never have to be looked up through the driver again
+			if(shaderProgramLinkStatus) {
+				uniforms = UniformTable.reflect(shaderProgram);
+				attachUniformBlocks();
+			}
+		}
+		
+		private void attachUniformBlocks() {
+			for(UniformBlock block : uniformBlocks) {
+				block.attach(shaderProgram);
+			}
+		}
+		
+		/**
+		 * Ask the driver to keep the linked program retrievable as a binary.
+		 * Must be called before linking.
+		 * 
+		 * @return Builder object to allow for a single line instantiation.
+		 */
+		Builder retrievableBinary() {
+			Backend.GL.programParameteri(shaderProgram, GL41.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GL11.GL_TRUE);
 			return this;
 		}
 		
 		/**
-		 * Load the shader source code and compile the frag and vert shaders
+		 * Load a program binary saved from an earlier link instead of compiling the
+		 * sources. The link status tells if the driver accepted the binary. If it did
+		 * not, the builder can still be compiled from source.
+		 * 
+		 * @param format Binary format reported by the driver when the binary was saved.
+		 * @param binary Program binary.
+		 * @return Builder object to allow for a single line instantiation.
+		 */
+		Builder loadBinary(int format, ByteBuffer binary) {
+			long start = System.nanoTime();
+			Backend.GL.programBinary(shaderProgram, format, binary);
+			shaderProgramLinkStatus = (Backend.GL.getProgram(shaderProgram, GL20.GL_LINK_STATUS) == GL11.GL_TRUE);
+			//A restored program has no shader objects, so there is nothing that failed to compile
+			if(shaderProgramLinkStatus) {
+				uniforms = UniformTable.reflect(shaderProgram);
+				attachUniformBlocks();
+			}
+			restored = shaderProgramLinkStatus;
+			linkNanos += System.nanoTime() - start;
+			return this;
+		}
+		
+		boolean isShaderProgramLinkStatus() {
+			return shaderProgramLinkStatus;
+		}
+		
+		boolean isRestored() {
+			return restored;
+		}
+		
+		/*
+		 * Sources by ShaderType ordinal. The array itself, do not change it.
+		 */
+		ShaderSource[] getSources() {
+			return sources;
+		}
+		
+		/**
+		 * Load the shader source code and compile every stage
 		 * 
 		 * @return Builder object to allow for a single line instantiation.
 		 */
 		Builder loadShaders() {
-			//Fragment shader...
-			//Attach the shader source to the shader
-	        GL20.glShaderSource(fragmentShader, fragmentShaderSource);
-	        //Compile the shader
-	        GL20.glCompileShader(fragmentShader);
-	        //Check to see if the fragment shader compiled correctly
-	        fragmentShaderCompileStatus =(GL20.glGetShader(fragmentShader, GL20.GL_COMPILE_STATUS) == GL11.GL_TRUE);
-	        //Vertex Shader...
-	        //Attach the shader source to the shader
-	        GL20.glShaderSource(vertexShader, vertexShaderSource);
-	        //Compile the shader
-	        GL20.glCompileShader(vertexShader);
-	        //Check to see if the vertex shader compiled correctly
-	        vertexShaderCompileStatus =(GL20.glGetShader(vertexShader, GL20.GL_COMPILE_STATUS) == GL11.GL_TRUE);
+			long start = System.nanoTime();
+			compileShaders();
+			queryCompileStatus();
+			compileNanos += System.nanoTime() - start;
 	        
 	        return this;
 		}
 		
+		private void compileShaders() {
+			//Stages another program already compiled are shared, the rest are compiled now
+			if(acquired) {
+				return;
+			}
+			acquired = true;
+			for(ShaderType type : ShaderType.VALUES) {
+				ShaderSource source = sources[type.ordinal()];
+				if(source != null) {
+					stages[type.ordinal()] = stageCache.acquire(type.glType, source);
+				}
+			}
+		}
+		
+		private void queryCompileStatus() {
+			//Check to see if every stage compiled correctly
+			failedStage = null;
+			for(ShaderType type : ShaderType.VALUES) {
+				ShaderStageCache.Stage stage = stages[type.ordinal()];
+				if(stage != null && !ShaderStageCache.isCompiled(stage) && failedStage == null) {
+					failedStage = type;
+				}
+			}
+		}
+		
 	}//End Builder class
 	
 	/**
@@ -158,29 +372,37 @@ class Shader {
 	 * @param builder Builder object that has been staged for Shader instantiation.
 	 */
 	private Shader(Builder builder) {
-		this.fragmentShaderSource = builder.fragmentShaderSource;
-		this.vertexShaderSource = builder.vertexShaderSource;
-		this.fragmentShader = builder.fragmentShader;
-		this.vertexShader = builder.vertexShader;
+		this.sourceHash = SourceHash.hash(SourceHash.SEED, builder.sources);
+		int mask = 0;
+		for(int i = 0; i < ShaderType.COUNT; i++) {
+			if(builder.sources[i] != null) {
+				mask |= 1 << i;
+			}
+		}
+		this.stageMask = mask;
+		this.stages = builder.acquired ? builder.stages.clone() : null;
 		this.shaderProgram = builder.shaderProgram;
-		this.fragmentShaderCompileStatus = builder.fragmentShaderCompileStatus;
-		this.vertexShaderCompileStatus = builder.vertexShaderCompileStatus;
+		this.failedStage = builder.failedStage;
 		this.shaderProgramLinkStatus = builder.shaderProgramLinkStatus;
+		this.uniforms = builder.uniforms;
+		this.compileNanos = builder.compileNanos;
+		this.linkNanos = builder.linkNanos;
 	}
 	
 	/**
 	 * Constructor to "build" the default OpenGL shader program. Just sets 
-	 * shaderProgram to 0 and everything else to Null strings.
+	 * shaderProgram to 0 and everything else to nothing.
 	 */
 	Shader() {
 		this.shaderProgram = 0;
-		this.fragmentShaderSource = "";
-		this.vertexShaderSource = "";
-		this.fragmentShader = 0;
-		this.vertexShader = 0;
-		this.fragmentShaderCompileStatus = true;
-		this.vertexShaderCompileStatus = true;
+		this.sourceHash = 0;
+		this.stages = null;
+		this.stageMask = 0;
+		this.failedStage = null;
 		this.shaderProgramLinkStatus = true;
+		this.uniforms = UniformTable.EMPTY;
+		this.compileNanos = 0;
+		this.linkNanos = 0;
 	}
 	
 	/**
@@ -188,7 +410,29 @@ class Shader {
 	 * 
 	 */
 	public void bind() {
-		GL20.glUseProgram(shaderProgram);
+		Backend.GL.useProgram(shaderProgram);
+		//Sampler units assigned at link time are set the first time the program is bound
+		uniforms.uploadTextureUnits();
+	}
+
+	/**
+	 * Delete the program and release its stages. The stages are deleted with the
+	 * last program that uses them. Does nothing for the default shader.
+	 * 
+	 * @param stageCache Cache the stages were taken from.
+	 */
+	void delete(ShaderStageCache stageCache) {
+		if(shaderProgram == 0) {
+			return;
+		}
+		if(stages != null) {
+			for(ShaderStageCache.Stage stage : stages) {
+				if(stage != null) {
+					stageCache.release(stage);
+				}
+			}
+		}
+		Backend.GL.deleteProgram(shaderProgram);
 	}
 
 	//GETTERS
@@ -196,32 +440,42 @@ class Shader {
 		return shaderProgram;
 	}
 
-	int getFragmentShader() {
-		return fragmentShader;
+	/**
+	 * @return shader object of a stage, 0 if the program has no compiled stage of the type.
+	 */
+	int getShader(ShaderType type) {
+		return (stages != null && stages[type.ordinal()] != null) ? stages[type.ordinal()].shader : 0;
+	}
+
+	/**
+	 * @return true if the program was built from a compute shader.
+	 */
+	boolean isCompute() {
+		return (stageMask & (1 << ShaderType.COMPUTE.ordinal())) != 0;
 	}
 
-	int getVertexShader() {
-		return vertexShader;
+	long getSourceHash() {
+		return sourceHash;
 	}
 
-	String getFragmentShaderSource() {
-		return fragmentShaderSource;
+	ShaderType getFailedStage() {
+		return failedStage;
 	}
 
-	String getVertexShaderSource() {
-		return vertexShaderSource;
+	boolean isShaderProgramLinkStatus() {
+		return shaderProgramLinkStatus;
 	}
 
-	boolean isFragmentShaderCompileStatus() {
-		return fragmentShaderCompileStatus;
+	UniformTable getUniforms() {
+		return uniforms;
 	}
 
-	boolean isVertexShaderCompileStatus() {
-		return vertexShaderCompileStatus;
+	long getCompileNanos() {
+		return compileNanos;
 	}
 
-	boolean isShaderProgramLinkStatus() {
-		return shaderProgramLinkStatus;
+	long getLinkNanos() {
+		return linkNanos;
 	}
 	
 	
@@ -0,0 +1,52 @@
+/**
+ *	Author: Jack Ramey
+ *	File: ShaderHandle.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+/**
+ * Handle to a shader registered with the ShaderManager. Binding by handle is
+ * an array access instead of a String hash lookup. The handle stays valid when
+ * the shader stored under its key is replaced.
+ */
+public final class ShaderHandle {
+
+	//Index of the shader in the manager. Set to Package-Private
+	final int id;
+	//Key the shader was registered with
+	private final String key;
+
+	ShaderHandle(int id, String key) {
+		this.id = id;
+		this.key = key;
+	}
+
+	//GETTERS
+	public int getId() {
+		return id;
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	@Override
+	public String toString() {
+		return "ShaderHandle[" + id + ", " + key + "]";
+	}
+}
@@ -0,0 +1,208 @@
+/**
+ *	Author: Jack Ramey
+ *	File: ShaderHotReloader.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches shader source directories on a background thread and hands settled
+ * file changes to the GL thread. Only the watching and debouncing happen off the
+ * GL thread, all compiling is done in tick. Directories are watched with all of
+ * their subdirectories, and directories created later are watched as they appear.
+ */
+final class ShaderHotReloader implements Runnable {
+
+	//How often the watch thread wakes up to check for settled files
+	private static final long POLL_MILLIS = 25;
+
+	private final ShaderManager manager;
+	private final long debounceNanos;
+	private final WatchService watcher;
+	private final Thread thread;
+	//Files with recent events and the time of their last event. Watch thread only.
+	private final Map<Path, Long> unsettled = new HashMap<Path, Long>();
+	//Files that stopped changing, handed from the watch thread to the GL thread
+	private final ConcurrentLinkedQueue<Path> settled = new ConcurrentLinkedQueue<Path>();
+	//Shaders waiting to be rebuilt. GL thread only.
+	private final Set<String> pending = new LinkedHashSet<String>();
+
+	ShaderHotReloader(ShaderManager manager, long debounceMillis, String... directories) throws IOException {
+		this.manager = manager;
+		this.debounceNanos = TimeUnit.MILLISECONDS.toNanos(debounceMillis);
+		this.watcher = FileSystems.getDefault().newWatchService();
+		try {
+			for(String dir : directories) {
+				watch(Paths.get(dir).toAbsolutePath().normalize(), null);
+			}
+		} catch(IOException e) {
+			watcher.close();
+			throw e;
+		}
+		thread = new Thread(this, "ShaderHotReloader");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/*
+	 * Register a directory and every directory below it. With found set, the
+	 * files already in them are added to it, for a directory that was created
+	 * while watching: its files may have been written before it was registered.
+	 */
+	private void watch(Path root, final List<Path> found) throws IOException {
+		Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				if(found != null) {
+					found.add(ShaderSourceLoader.normalize(file));
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	@Override
+	public void run() {
+		try {
+			while(true) {
+				WatchKey key = watcher.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+				long now = System.nanoTime();
+				if(key != null) {
+					Path dir = (Path) key.watchable();
+					for(WatchEvent<?> event : key.pollEvents()) {
+						if(event.kind() == StandardWatchEventKinds.OVERFLOW) {
+							continue;
+						}
+						Path file = ShaderSourceLoader.normalize(dir.resolve((Path) event.context()));
+						if(event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(file, LinkOption.NOFOLLOW_LINKS)) {
+							created(file, now);
+						} else {
+							unsettled.put(file, now);
+						}
+					}
+					key.reset();
+				}
+				//Hand over files that have been quiet long enough
+				Iterator<Map.Entry<Path, Long>> it = unsettled.entrySet().iterator();
+				while(it.hasNext()) {
+					Map.Entry<Path, Long> e = it.next();
+					if(now - e.getValue() >= debounceNanos) {
+						it.remove();
+						settled.add(e.getKey());
+					}
+				}
+			}
+		} catch(InterruptedException e) {
+			//Closed
+		} catch(ClosedWatchServiceException e) {
+			//Closed
+		}
+	}
+
+	/*
+	 * Start watching a directory that was created below a watched one.
+	 */
+	private void created(Path dir, long now) {
+		List<Path> found = new ArrayList<Path>();
+		try {
+			watch(dir, found);
+		} catch(IOException e) {
+			//Deleted again before it could be walked, or not readable
+			System.err.println("Failed to watch shader directory " + dir + ": " + e.getMessage());
+		}
+		for(Path file : found) {
+			unsettled.put(file, now);
+		}
+	}
+
+	/**
+	 * Rebuild the shaders depending on settled files. Runs on the GL thread.
+	 *
+	 * @param budgetNanos Time that may be spent rebuilding this frame.
+	 * @return number of shaders that were replaced.
+	 */
+	int tick(long budgetNanos) {
+		long start = System.nanoTime();
+		if(!settled.isEmpty()) {
+			List<Path> changed = new ArrayList<Path>();
+			Path path;
+			while((path = settled.poll()) != null) {
+				changed.add(path);
+			}
+			pending.addAll(manager.staleShaders(changed));
+		}
+		int replaced = 0;
+		Iterator<String> it = pending.iterator();
+		while(it.hasNext()) {
+			String key = it.next();
+			it.remove();
+			if(manager.reloadShader(key)) {
+				replaced++;
+			}
+			if(System.nanoTime() - start >= budgetNanos) {
+				break;
+			}
+		}
+		return replaced;
+	}
+
+	/**
+	 * @return number of shaders waiting to be rebuilt.
+	 */
+	int getPending() {
+		return pending.size();
+	}
+
+	void close() {
+		try {
+			watcher.close();
+		} catch(IOException e) {
+			System.err.println("Failed to close shader watcher: " + e.getMessage());
+		}
+		thread.interrupt();
+	}
+}
@@ -20,12 +20,36 @@
 package com.sgflt.ShaderManager;
 
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.Set;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL31;
+import org.lwjgl.opengl.GL42;
+import org.lwjgl.opengl.GL43;
+import org.lwjgl.util.vector.Matrix3f;
+import org.lwjgl.util.vector.Matrix4f;
 import org.lwjgl.util.vector.Vector2f;
 import org.lwjgl.util.vector.Vector3f;
 import org.lwjgl.util.vector.Vector4f;
@@ -33,8 +57,29 @@ import org.lwjgl.util.vector.Vector4f;
 public enum ShaderManager {
 	INSTANCE;
 
-	private Map<String, Shader> shaderMap = new HashMap<String, Shader>();
-	
+	/*
+	 * Source files a shader was created from, kept so it can be rebuilt when they change.
+	 */
+	private static final class FileShader {
+		final ShaderSourceLoader loader;
+		final Path vertexPath;
+		final Path fragmentPath;
+
+		FileShader(ShaderSourceLoader loader, Path vertexPath, Path fragmentPath) {
+			this.loader = loader;
+			this.vertexPath = vertexPath;
+			this.fragmentPath = fragmentPath;
+		}
+	}
+
+	private Map<String, ShaderHandle> shaderMap = new HashMap<String, ShaderHandle>();
+	/*
+	 * Shaders indexed by handle id. A handle keeps its id when the shader under its key
+	 * is replaced, so handle based lookups are a plain array access.
+	 */
+	Shader[] shaders = new Shader[16];
+	private int shaderCount = 0;
+	private Map<String, FileShader> fileShaders = new HashMap<String, FileShader>();
 	
 	/*
 	 * Default OpenGL pipeline. This shader is bound when unbind() is called
@@ -46,6 +91,75 @@ public enum ShaderManager {
 	 * and it will be set when shaders are bound.
 	 */
 	private Shader activeShader = defaultShader;
+	/*
+	 * Counters and timers, written by the GL thread and readable from anywhere.
+	 */
+	private ShaderMetrics metrics = new ShaderMetrics(ShaderMetrics.ENABLED);
+	/*
+	 * Program the context currently has bound, as far as the manager knows.
+	 * -1 means unknown, which forces the next bind to reach the driver.
+	 */
+	private int boundProgram = -1;
+	/*
+	 * Uniform uploads recorded while recording is on, issued on flush.
+	 */
+	private boolean recording = false;
+	private UniformCommandBuffer commandBuffer = new UniformCommandBuffer();
+	/*
+	 * Direct buffer array and matrix uploads are staged through, and room to
+	 * transpose matrices into. Both are reused and only grow.
+	 */
+	private FloatBuffer floatScratch = BufferUtils.createFloatBuffer(64);
+	private IntBuffer intScratch = BufferUtils.createIntBuffer(16);
+	private float[] matrixScratch = new float[16];
+	/*
+	 * Optional on-disk cache of linked program binaries.
+	 */
+	private ProgramBinaryCache binaryCache = null;
+	/*
+	 * Debug mode validates every program after linking.
+	 */
+	private boolean debug = false;
+	/*
+	 * KHR_parallel_shader_compile support of the context. -1 until queried.
+	 */
+	private int parallelCompile = -1;
+	/*
+	 * Uniform buffer binding points of the context. -1 until queried.
+	 */
+	private int uniformBufferBindings = -1;
+	/*
+	 * Binding points every GL 3.1 context has, assumed if the context reports none.
+	 */
+	private static final int MIN_UNIFORM_BUFFER_BINDINGS = 36;
+	/*
+	 * Watches source directories while hot reload is enabled.
+	 */
+	private ShaderHotReloader hotReloader = null;
+	/*
+	 * Uniform blocks shared by every program, in binding point order.
+	 */
+	private Map<String, UniformBlock> uniformBlocks = new LinkedHashMap<String, UniformBlock>();
+	/*
+	 * Stages worker threads publish uniform values through, applied on the GL thread.
+	 */
+	private List<UniformStage> uniformStages = new ArrayList<UniformStage>();
+	/*
+	 * Shaders registered without compiling, compiled a few per frame or when first bound.
+	 */
+	private ShaderWarmup warmup = new ShaderWarmup(this);
+	/*
+	 * Compiled shader stages, shared by every program with the same stage source.
+	 */
+	private ShaderStageCache stageCache = new ShaderStageCache();
+	/*
+	 * Bind order and kept sources of the programs, used when the number of programs is bounded.
+	 */
+	private ProgramRegistry registry = new ProgramRegistry();
+	/*
+	 * Texture bound to every texture unit, as far as the manager knows.
+	 */
+	private TextureBindings textures = new TextureBindings(metrics);
 
 	/**
 	 * Bind the shader to the OpenGL pipeline. If the key for the
@@ -57,16 +171,42 @@ public enum ShaderManager {
 	 * was bound or false if the provided shader was null.
 	 */
 	public boolean bind(String key) {
-		Shader s = shaderMap.get(key);
+		return bind(shaderMap.get(key));
+	}
+
+	/**
+	 * Bind the shader referenced by the handle to the OpenGL pipeline. If the
+	 * handle is null, the default OpenGL shaders are used. Whichever shader is
+	 * used is set to be the active shader.
+	 * 
+	 * @param handle ShaderHandle returned by createShader or getHandle.
+	 * A shader registered with registerShader that has not been compiled yet, or
+	 * that was evicted to stay within the program capacity, is compiled first.
+	 * 
+	 * @return boolean value that returns true if the provided shader
+	 * was bound or false if the provided handle was null or its shader
+	 * failed to compile.
+	 */
+	public boolean bind(ShaderHandle handle) {
 		boolean ret = false;
-		if(s != null) {
-			activeShader = s;
+		if(handle != null) {
+			if(warmup.isWaiting(handle.id) && !warmup.compileNow(handle.id)) {
+				handle = null;
+			} else if(registry.isEvicted(handle.id) && !rebuild(handle)) {
+				handle = null;
+			} else {
+				registry.touch(handle.id);
+			}
+		}
+		if(handle != null) {
+			activeShader = shaders[handle.id];
+			metrics.bound(handle.id);
 			ret = true;
 		} else {
 			activeShader = defaultShader;
 			ret = false;
 		}
-		activeShader.bind();
+		use(activeShader);
 		return ret;
 	}
 
@@ -86,7 +226,7 @@ public enum ShaderManager {
 			activeShader = defaultShader;
 			ret = false;
 		}
-		activeShader.bind();
+		use(activeShader);
 		return ret;
 	}
 	
@@ -95,7 +235,7 @@ public enum ShaderManager {
 	 */
 	public void bindDefault() {
 		activeShader = defaultShader;
-		defaultShader.bind();
+		use(defaultShader);
 	}
 
 	/**
@@ -104,172 +244,1499 @@ public enum ShaderManager {
 	 * @param key String key that the shader will be referenced by.
 	 * @param vertexShaderSource Source of the vertex shader to be compiled into shader.
 	 * @param fragmentShaderSource Source of the fragment shader to be compiled into the shader.
+	 * @return ShaderHandle the shader can be bound and addressed by without a String lookup.
 	 * @throws Exception If the vertex shader or fragment shader failed to compile or if the
 	 * 						shader program failed to link, an exception will be thrown with a message
 	 * 						regarding which component broke.
 	 */
-	public void createShader(String key, String vertexShaderSource, String fragmentShaderSource) throws IllegalArgumentException {
-		Shader shader = defaultShader;
-		
-		/*
-		 * Try to build a new shader. If building the shader fails, an exception is thrown and the default shader
-		 * is put into the shader map under the key that was given to the shader.
-		 * 
-		 */
-		shader = new Shader.Builder().vertexShaderSource(vertexShaderSource).fragmentShaderSource(fragmentShaderSource)
-							.compile().build();
-		//Throw an exception if the fragment shader did not compile properly
-		if(!shader.isFragmentShaderCompileStatus()) {
-			shader = defaultShader;
-			throw new IllegalArgumentException("Fragment shader failed to compile.");
-		}
-		//Throw an exception if the vertex shader did not compile properly
-		if(!shader.isVertexShaderCompileStatus()) {
-			shader = defaultShader;
-			throw new IllegalArgumentException("Vertex shader failed to compile.");
+	public ShaderHandle createShader(String key, String vertexShaderSource, String fragmentShaderSource) throws IllegalArgumentException {
+		return createShader(key, ShaderSource.of(vertexShaderSource), ShaderSource.of(fragmentShaderSource));
+	}
+	
+	/**
+	 * Create a shader from source bytes, for example files read with ShaderSource.read. The bytes
+	 * go to the driver as they are, without being turned into Strings.
+	 * 
+	 * @param key String key that the shader will be referenced by.
+	 * @param vertexShaderSource ShaderSource of the vertex shader.
+	 * @param fragmentShaderSource ShaderSource of the fragment shader.
+	 * @return ShaderHandle the shader can be bound and addressed by without a String lookup.
+	 * @throws IllegalArgumentException If the shader failed to compile or link, see createShader.
+	 */
+	public ShaderHandle createShader(String key, ShaderSource vertexShaderSource, ShaderSource fragmentShaderSource) throws IllegalArgumentException {
+		return createShader(key, stages(vertexShaderSource, fragmentShaderSource));
+	}
+	
+	/**
+	 * Create a shader from any set of stages, for example with a geometry shader
+	 * or tessellation shaders. It needs a vertex shader, or a compute shader and
+	 * nothing else.
+	 * 
+	 * Example:
+	 * <pre>
+	 * Map&lt;ShaderType, ShaderSource&gt; stages = new EnumMap&lt;ShaderType, ShaderSource&gt;(ShaderType.class);
+	 * stages.put(ShaderType.VERTEX, ShaderSource.read("res/grass.vert"));
+	 * stages.put(ShaderType.GEOMETRY, ShaderSource.read("res/grass.geom"));
+	 * stages.put(ShaderType.FRAGMENT, ShaderSource.read("res/grass.frag"));
+	 * ShaderManager.createShader("grass", stages);
+	 * </pre>
+	 * 
+	 * @param key String key that the shader will be referenced by.
+	 * @param stages Source of every stage of the program.
+	 * @return ShaderHandle the shader can be bound and addressed by without a String lookup.
+	 * @throws IllegalArgumentException If the stages do not make a program, the context does not
+	 * 									support one of them, or the shader failed to compile or link.
+	 */
+	public ShaderHandle createShader(String key, Map<ShaderType, ShaderSource> stages) throws IllegalArgumentException {
+		ShaderSource[] sources = new ShaderSource[ShaderType.COUNT];
+		for(Map.Entry<ShaderType, ShaderSource> stage : stages.entrySet()) {
+			sources[stage.getKey().ordinal()] = stage.getValue();
 		}
-		//Throw an exception if the shader program did not link properly
-		if(!shader.isShaderProgramLinkStatus()) {
-			shader = defaultShader;
-			throw new IllegalArgumentException("Shader program failed to link shaders.");
+		return createShader(key, sources);
+	}
+	
+	/**
+	 * Create a compute shader. Run it with dispatch.
+	 * 
+	 * @param key String key that the shader will be referenced by.
+	 * @param computeShaderSource Source of the compute shader.
+	 * @return ShaderHandle of the shader.
+	 * @throws IllegalArgumentException If the context has no compute shaders or the shader failed to compile or link.
+	 */
+	public ShaderHandle createComputeShader(String key, String computeShaderSource) throws IllegalArgumentException {
+		return createComputeShader(key, ShaderSource.of(computeShaderSource));
+	}
+	
+	/**
+	 * Create a compute shader from source bytes. Run it with dispatch.
+	 * 
+	 * @param key String key that the shader will be referenced by.
+	 * @param computeShaderSource ShaderSource of the compute shader.
+	 * @return ShaderHandle of the shader.
+	 * @throws IllegalArgumentException If the context has no compute shaders or the shader failed to compile or link.
+	 */
+	public ShaderHandle createComputeShader(String key, ShaderSource computeShaderSource) throws IllegalArgumentException {
+		ShaderSource[] sources = new ShaderSource[ShaderType.COUNT];
+		sources[ShaderType.COMPUTE.ordinal()] = computeShaderSource;
+		return createShader(key, sources);
+	}
+	
+	/*
+	 * Create a shader from sources by ShaderType ordinal. Every other createShader ends up here.
+	 */
+	private ShaderHandle createShader(String key, ShaderSource[] stages) throws IllegalArgumentException {
+		ShaderType.check(stages);
+		Shader.Builder builder = newBuilder(stages);
+		//Restore the program from the binary cache if possible, compile it otherwise
+		long cacheKey = restoreCached(builder, stages);
+		if(!builder.isRestored()) {
+			builder.compile();
 		}
-		shaderMap.put(key, shader);
+		return install(key, builder, cacheKey);
+	}
+	
+	/*
+	 * Sources of a vertex and fragment program by ShaderType ordinal.
+	 */
+	static ShaderSource[] stages(ShaderSource vertexShaderSource, ShaderSource fragmentShaderSource) {
+		ShaderSource[] stages = new ShaderSource[ShaderType.COUNT];
+		stages[ShaderType.VERTEX.ordinal()] = vertexShaderSource;
+		stages[ShaderType.FRAGMENT.ordinal()] = fragmentShaderSource;
+		return stages;
 	}
 	
 	/**
-	 * Pass a FloatBuffer to the active shader. The shader to which the value will be passed must be bound.
+	 * Register a shader without compiling it. The sources are kept and compiled
+	 * by the warm-up, a few per frame in priority order, or when the shader is
+	 * first bound, whichever comes first. Until then the handle refers to the
+	 * default pipeline, or to the shader already stored under the key.
 	 * 
-	 * @param varName Name of the variable that is in the shader program. Must be an exact match.
-	 * @param buf FloatBuffer to be passed to the shader.
+	 * @param key String key that the shader will be referenced by.
+	 * @param vertexShaderSource Source of the vertex shader to be compiled into shader.
+	 * @param fragmentShaderSource Source of the fragment shader to be compiled into the shader.
+	 * @param priority Shaders with a higher priority are compiled first.
+	 * @return ShaderHandle the shader can be bound and addressed by.
 	 */
-	public void putFloatBuffer(String varName, FloatBuffer buf) {
-		if(activeShader != null) {
-			//Courtesy of Drew Malin (that dick made me put this in here)
-			int location = GL20.glGetUniformLocation(activeShader.shaderProgram, varName); 
-			buf.flip();
-			GL20.glUniform1(location, buf);
+	public ShaderHandle registerShader(String key, String vertexShaderSource, String fragmentShaderSource, int priority) {
+		return registerShader(key, ShaderSource.of(vertexShaderSource), ShaderSource.of(fragmentShaderSource), priority);
+	}
+	
+	/**
+	 * Register a shader from source bytes without compiling it. See registerShader.
+	 */
+	public ShaderHandle registerShader(String key, ShaderSource vertexShaderSource, ShaderSource fragmentShaderSource, int priority) {
+		ShaderHandle handle = shaderMap.get(key);
+		if(handle == null) {
+			handle = register(key, defaultShader);
 		}
+		warmup.add(handle, vertexShaderSource, fragmentShaderSource, priority);
+		return handle;
 	}
 	
 	/**
-	 * Pass a float to the active shader. The shader to which the value will be passed must be bound.
+	 * Register a shader without compiling it, with priority 0. See registerShader.
+	 */
+	public ShaderHandle registerShader(String key, String vertexShaderSource, String fragmentShaderSource) {
+		return registerShader(key, vertexShaderSource, fragmentShaderSource, 0);
+	}
+	
+	/**
+	 * Warm-up that compiles the shaders registered with registerShader. Call its
+	 * tick once per frame with the time it may spend.
 	 * 
-	 * @param varName Name of the variable that is in the shader program. Must be an exact match.
-	 * @param x Primitive float to be passed to the shader.
+	 * @return ShaderWarmup of the manager.
 	 */
-	public void putFloat(String varName, float x) {
-		if(activeShader != null) {
-			int location = GL20.glGetUniformLocation(activeShader.shaderProgram, varName);
-			GL20.glUniform1f(location, x);
+	public ShaderWarmup getWarmup() {
+		return warmup;
+	}
+	
+	/**
+	 * Create a shader from source files. Includes are resolved by the loader, and the
+	 * shader is remembered so reloadChangedShaders can rebuild it when any of its
+	 * files change.
+	 * 
+	 * @param key String key that the shader will be referenced by.
+	 * @param loader ShaderSourceLoader that reads and caches the files.
+	 * @param vertexPath Path of the vertex shader source.
+	 * @param fragmentPath Path of the fragment shader source.
+	 * @return ShaderHandle the shader can be bound and addressed by without a String lookup.
+	 * @throws IOException If a source file could not be read.
+	 * @throws IllegalArgumentException If the shader failed to compile or link, see createShader.
+	 */
+	public ShaderHandle createShaderFromFiles(String key, ShaderSourceLoader loader, String vertexPath, String fragmentPath) 
+			throws IOException, IllegalArgumentException {
+		Path vertex = ShaderSourceLoader.normalize(Paths.get(vertexPath));
+		Path fragment = ShaderSourceLoader.normalize(Paths.get(fragmentPath));
+		ShaderHandle handle = createShader(key, loader.load(vertex), loader.load(fragment));
+		fileShaders.put(key, new FileShader(loader, vertex, fragment));
+		return handle;
+	}
+	
+	/**
+	 * Rebuild every shader created from files whose sources, or anything they
+	 * include, changed on disk. A shader that fails to rebuild keeps its old
+	 * program and the error is printed.
+	 * 
+	 * @return number of shaders that were rebuilt.
+	 */
+	public int reloadChangedShaders() {
+		int reloaded = 0;
+		for(String key : staleShaders(null)) {
+			if(reloadShader(key)) {
+				reloaded++;
+			}
 		}
+		return reloaded;
 	}
 	
 	/**
-	 * Pass an LWJGL Vector2f to the active shader. The shader to which the value will be passed must be bound.
+	 * Watch source directories and rebuild shaders created from files when their
+	 * sources change. Change events are collected on a background thread and
+	 * debounced, so an editor saving a file in several writes causes a single
+	 * rebuild. The rebuilds themselves happen in updateHotReload, which has to be
+	 * called once per frame from the GL thread.
 	 * 
-	 * @param varName Name of the variable that is in the shader program. Must be an exact match.
-	 * @param v LWJGL Vector2f.
+	 * @param debounceMillis Time a file has to stay unchanged before it is reloaded.
+	 * @param directories Directories holding the shader sources and their includes.
+	 * Their subdirectories are watched too, including ones created later.
+	 * @throws IOException If a directory could not be watched.
 	 */
-	public void putVector2f(String varName, Vector2f v) throws NullPointerException {
-		if(v == null) {
-			throw new NullPointerException("Vector2f passed is null.");
+	public void enableHotReload(long debounceMillis, String... directories) throws IOException {
+		disableHotReload();
+		hotReloader = new ShaderHotReloader(this, debounceMillis, directories);
+	}
+	
+	/**
+	 * Stop watching the source directories. Rebuilds that were already scheduled are dropped.
+	 */
+	public void disableHotReload() {
+		if(hotReloader != null) {
+			hotReloader.close();
+			hotReloader = null;
 		}
-		if(activeShader != null) {
-			int location = GL20.glGetUniformLocation(activeShader.shaderProgram, varName);
-			GL20.glUniform2f(location, v.x, v.y);
+	}
+	
+	/**
+	 * Rebuild shaders whose source files changed, spending at most about budgetNanos
+	 * on it. At least one shader is rebuilt per call if any are waiting, the rest
+	 * wait for the next frame. A rebuilt shader replaces the old one only if it
+	 * compiled and linked, otherwise the old program stays in use and the error is
+	 * printed. Does nothing unless hot reload is enabled.
+	 * 
+	 * @param budgetNanos Time that may be spent rebuilding shaders this frame.
+	 * @return number of shaders that were replaced.
+	 */
+	public int updateHotReload(long budgetNanos) {
+		return (hotReloader != null) ? hotReloader.tick(budgetNanos) : 0;
+	}
+	
+	/*
+	 * Keys of the shaders created from files whose sources are stale. With changed set
+	 * to null every loader checks its files on disk, otherwise the changed files are
+	 * dropped from every loader. Each loader is asked once, it only reports a stale
+	 * source the first time.
+	 */
+	Set<String> staleShaders(Collection<Path> changed) {
+		Map<ShaderSourceLoader, Set<Path>> stale = new IdentityHashMap<ShaderSourceLoader, Set<Path>>();
+		for(FileShader fs : fileShaders.values()) {
+			if(!stale.containsKey(fs.loader)) {
+				Set<Path> paths;
+				if(changed == null) {
+					paths = fs.loader.refresh();
+				} else {
+					paths = new HashSet<Path>();
+					for(Path path : changed) {
+						paths.addAll(fs.loader.invalidate(path));
+					}
+				}
+				stale.put(fs.loader, paths);
+			}
+		}
+		Set<String> keys = new LinkedHashSet<String>();
+		for(Map.Entry<String, FileShader> e : fileShaders.entrySet()) {
+			FileShader fs = e.getValue();
+			Set<Path> paths = stale.get(fs.loader);
+			if(paths.contains(fs.vertexPath) || paths.contains(fs.fragmentPath)) {
+				keys.add(e.getKey());
+			}
+		}
+		return keys;
+	}
+	
+	/*
+	 * Rebuild a shader from its files. The old program stays in place if anything fails.
+	 */
+	boolean reloadShader(String key) {
+		FileShader fs = fileShaders.get(key);
+		if(fs == null) {
+			return false;
+		}
+		try {
+			createShader(key, fs.loader.load(fs.vertexPath), fs.loader.load(fs.fragmentPath));
+			return true;
+		} catch(IOException e) {
+			System.err.println("Failed to reload shader " + key + ": " + e.getMessage());
+		} catch(IllegalArgumentException e) {
+			System.err.println("Failed to reload shader " + key + ": " + e.getMessage());
 		}
+		return false;
 	}
 	
 	/**
-	 * Pass an LWJGL Vector3f to the active shader. The shader to which the value will be passed must be bound.
+	 * Register a shader that comes in variants selected by <code>#define</code> keywords.
+	 * Nothing is compiled until a variant is asked for.
 	 * 
-	 * @param varName Name of the variable that is in the shader program. Must be an exact match.
-	 * @param v
+	 * @param key String key of the base shader. Variants are stored under key#mask.
+	 * @param vertexShaderSource Source of the vertex shader, without the keyword defines.
+	 * @param fragmentShaderSource Source of the fragment shader, without the keyword defines.
+	 * @param keywords Keywords in bit order. Bit i of a variant mask defines keywords[i].
+	 * @return ShaderVariants to get the variants from.
 	 */
-	public void putVector3f(String varName, Vector3f v) throws NullPointerException {
-		if(v == null) {
-			throw new NullPointerException("Vector3f passed is null.");
+	public ShaderVariants registerVariants(String key, String vertexShaderSource, String fragmentShaderSource, String... keywords) {
+		return new ShaderVariants(this, key, vertexShaderSource, fragmentShaderSource, keywords);
+	}
+	
+	/**
+	 * Create a uniform block shared by all programs. The block gets its own binding
+	 * point and uniform buffer. Every program that declares a block of this name,
+	 * whether it is already created or created later, is bound to it.
+	 * 
+	 * @param name Name of the block as declared in GLSL.
+	 * @param size Size of the block in bytes, laid out with std140.
+	 * @return UniformBlock to write and upload the block data with.
+	 * @throws IllegalArgumentException If a block with this name already exists.
+	 * @throws IllegalStateException If the context does not support uniform buffer objects
+	 * 			or every binding point (GL_MAX_UNIFORM_BUFFER_BINDINGS) is taken by a block.
+	 */
+	public UniformBlock createUniformBlock(String name, int size) throws IllegalArgumentException, IllegalStateException {
+		if(uniformBlocks.containsKey(name)) {
+			throw new IllegalArgumentException("Uniform block " + name + " already exists.");
 		}
-		if(activeShader != null) {
-			int location = GL20.glGetUniformLocation(activeShader.shaderProgram, varName);
-			GL20.glUniform3f(location, v.x, v.y, v.z);
+		if(!Backend.GL.isSupported("OpenGL31") && !Backend.GL.isSupported("GL_ARB_uniform_buffer_object")) {
+			throw new IllegalStateException("Uniform buffer objects are not supported by this context.");
 		}
+		if(uniformBufferBindings == -1) {
+			int reported = Backend.GL.getInteger(GL31.GL_MAX_UNIFORM_BUFFER_BINDINGS);
+			uniformBufferBindings = (reported > 0) ? reported : MIN_UNIFORM_BUFFER_BINDINGS;
+		}
+		if(uniformBlocks.size() >= uniformBufferBindings) {
+			throw new IllegalStateException("Uniform block " + name + " needs a binding point, but all "
+					+ uniformBufferBindings + " are taken.");
+		}
+		UniformBlock block = new UniformBlock(name, uniformBlocks.size(), size);
+		uniformBlocks.put(name, block);
+		//Programs linked before the block existed pick it up now
+		for(int i = 0; i < shaderCount; i++) {
+			if(shaders[i].shaderProgram != 0) {
+				block.attach(shaders[i].shaderProgram);
+			}
+		}
+		return block;
 	}
 	
 	/**
-	 * Pass an LWJGL Vector4f to the active shader. The shader to which the value will be passed must be bound.
+	 * Get a uniform block created with createUniformBlock.
 	 * 
-	 * @param varName  Name of the variable that is in the shader program. Must be an exact match.
-	 * @param v
+	 * @param name Name of the block.
+	 * @return UniformBlock or null if there is none with this name.
 	 */
-	public void putVector4f(String varName, Vector4f v) throws NullPointerException {
-		if(v == null) {
-			throw new NullPointerException("Vector4f passed is null.");
+	public UniformBlock getUniformBlock(String name) {
+		return uniformBlocks.get(name);
+	}
+	
+	/**
+	 * Create a stage a worker thread can publish uniform values through without
+	 * locking. The values are applied on the GL thread by applyStagedUniforms.
+	 * Create the stage and the UniformRefs it is used with on the GL thread, then
+	 * hand them to the worker. Only the last value staged for a uniform before
+	 * an apply is applied.
+	 * 
+	 * @param capacity Number of distinct uniforms the stage can carry. Rounded up to a power of two.
+	 * @return UniformStage for a single worker thread.
+	 */
+	public UniformStage createUniformStage(int capacity) {
+		UniformStage stage = new UniformStage(this, capacity);
+		uniformStages.add(stage);
+		return stage;
+	}
+	
+	/**
+	 * Apply every uniform value staged by worker threads since the last call.
+	 * Call this once at the start of the frame, before binding the first shader.
+	 * Programs are bound as needed, so afterwards the program that got the
+	 * last value is bound.
+	 * 
+	 * @return number of staged values applied.
+	 */
+	public int applyStagedUniforms() {
+		int applied = 0;
+		for(int i = 0; i < uniformStages.size(); i++) {
+			applied += uniformStages.get(i).apply();
 		}
-		if(activeShader != null) {
-			int location = GL20.glGetUniformLocation(activeShader.shaderProgram, varName);
-			GL20.glUniform4f(location, v.x, v.y, v.z, v.w);
+		return applied;
+	}
+	
+	/**
+	 * Create a queue that executes the draws of a frame grouped by program and
+	 * material instead of in submission order. See RenderQueue.
+	 * 
+	 * @param capacity Number of draws and of uniform values the queue holds before it grows.
+	 * @return empty RenderQueue.
+	 */
+	public RenderQueue createRenderQueue(int capacity) {
+		return new RenderQueue(this, capacity);
+	}
+	
+	/**
+	 * Texture unit a sampler of a shader reads from. Every sampler is given its
+	 * own unit when the program is linked, in the order the driver reports them,
+	 * so there is no need to set sampler uniforms. Do not change them with putInt.
+	 * 
+	 * @param handle ShaderHandle of the shader.
+	 * @param sampler Name of the sampler. Must be an exact match.
+	 * @return texture unit of the sampler, 0 for GL_TEXTURE0, or -1 if the shader has no such sampler.
+	 */
+	public int getTextureUnit(ShaderHandle handle, String sampler) {
+		UniformTable table = shaders[handle.id].uniforms;
+		int slot = table.slot(sampler);
+		return (slot == -1) ? -1 : table.getTextureUnit(slot);
+	}
+	
+	/**
+	 * Bind a texture to a texture unit unless the unit holds it already. Bind
+	 * textures through the manager only, or call invalidateState after binding
+	 * them directly.
+	 * 
+	 * @param unit Texture unit, 0 for GL_TEXTURE0.
+	 * @param target Texture target, like GL_TEXTURE_2D.
+	 * @param texture GL texture name, 0 to unbind.
+	 * @return true if the bind reached the driver.
+	 */
+	public boolean bindTexture(int unit, int target, int texture) {
+		return textures.bind(unit, target, texture);
+	}
+	
+	/**
+	 * Bind a texture to the unit of a sampler, with the target of the sampler's type.
+	 * Looks the sampler up by name, use a TextureSet per draw instead.
+	 * 
+	 * @param handle ShaderHandle of the shader that has the sampler.
+	 * @param sampler Name of the sampler. Must be an exact match.
+	 * @param texture GL texture name, 0 to unbind.
+	 * @return true if the bind reached the driver, false if it was redundant or the shader has no such sampler.
+	 */
+	public boolean bindTexture(ShaderHandle handle, String sampler, int texture) {
+		UniformTable table = shaders[handle.id].uniforms;
+		int slot = table.slot(sampler);
+		if(slot == -1 || table.getTextureUnit(slot) == -1) {
+			return false;
 		}
+		return textures.bind(table.getTextureUnit(slot), UniformTable.textureTarget(table.getType(slot)), texture);
 	}
 	
 	/**
-	 * Pass an IntBuffer to the active shader. The shader to which the value will be passed must be bound.
+	 * Create a set of textures bound together, like the textures of a material.
+	 * See TextureSet.
 	 * 
-	 * @param varName String name of the variable that is in the shader program. Must be an exact match.
-	 * @param buf IntBuffer to be passed to the shader.
+	 * @param handle ShaderHandle of the shader whose samplers read the textures.
+	 * @param samplers Names of the samplers, in the order their textures are set by index.
+	 * @return TextureSet with every texture 0.
 	 */
-	public void putIntBuffer(String varName, IntBuffer buf) {
-		if(activeShader != null) {
-			int location = GL20.glGetUniformLocation(activeShader.shaderProgram, varName);
-			buf.flip();
-			GL20.glUniform1(location, buf);
+	public TextureSet createTextureSet(ShaderHandle handle, String... samplers) throws NullPointerException {
+		if(handle == null) {
+			throw new NullPointerException("ShaderHandle passed is null.");
 		}
+		return new TextureSet(this, handle.id, samplers);
 	}
-
+	
 	/**
-	 * Pass an integer to the active shader. The shader to which the value will be passed must be bound.
+	 * Delete a texture and forget the units it was bound to, so a texture that
+	 * later gets the same name is bound again.
 	 * 
-	 * @param varName String name of the variable that is in the shader program. Must be an exact match.
-	 * @param x Primitive integer to be passed to the shader.
+	 * @param texture GL texture name.
 	 */
-	public void putInt(String varName, int x) {
-		if(activeShader != null) {
-			//Grab the location of the variable
-			int location = GL20.glGetUniformLocation(activeShader.shaderProgram, varName);
-			//Pass the value to the variable location
-			GL20.glUniform1i(location, x);
+	public void deleteTexture(int texture) {
+		Backend.GL.deleteTextures(texture);
+		textures.deleted(texture);
+	}
+	
+	/**
+	 * Bind a compute shader and run it. See dispatch(int, int, int).
+	 * 
+	 * @param handle ShaderHandle of a compute shader.
+	 * @throws IllegalStateException If the shader is not a compute shader.
+	 */
+	public void dispatch(ShaderHandle handle, int groupsX, int groupsY, int groupsZ) throws IllegalStateException {
+		bind(handle);
+		dispatch(groupsX, groupsY, groupsZ);
+	}
+	
+	/**
+	 * Run the active compute shader over a grid of work groups. Uniform uploads
+	 * recorded for it are issued first. What the shader writes is only visible
+	 * to later draws and dispatches after a matching memoryBarrier.
+	 * 
+	 * Example:
+	 * <pre>
+	 * ShaderManager.bindStorageBuffer(0, particles);
+	 * ShaderManager.dispatch(simulate, (count + 63) / 64, 1, 1);
+	 * ShaderManager.drawBarrier();
+	 * </pre>
+	 * 
+	 * @param groupsX Work groups along x.
+	 * @param groupsY Work groups along y.
+	 * @param groupsZ Work groups along z.
+	 * @throws IllegalStateException If the active shader is not a compute shader.
+	 * @throws IllegalArgumentException If a group count is negative.
+	 */
+	public void dispatch(int groupsX, int groupsY, int groupsZ) throws IllegalStateException, IllegalArgumentException {
+		if(!activeShader.isCompute()) {
+			throw new IllegalStateException("The active shader is not a compute shader.");
 		}
+		if(groupsX < 0 || groupsY < 0 || groupsZ < 0) {
+			throw new IllegalArgumentException("Work group counts can not be negative: " + groupsX + ", " + groupsY + ", " + groupsZ);
+		}
+		use(activeShader);
+		flush();
+		Backend.GL.dispatchCompute(groupsX, groupsY, groupsZ);
 	}
 	
 	/**
-	 * Set the active shader to the shader bound to the key provided. If no shader
-	 * exists at this location, return false.
+	 * Order memory accesses of shaders, see glMemoryBarrier.
 	 * 
-	 * @param key Name the shader is registered with.
-	 * @return boolean - returns true if a value is at that location or false if it's null
+	 * @param barriers GL42/GL43 *_BARRIER_BIT flags of the ways the written data is read afterwards.
 	 */
-	public boolean setActiveShader(String key) {
-		activeShader = shaderMap.get(key);
-		return (activeShader != null);
+	public void memoryBarrier(int barriers) {
+		Backend.GL.memoryBarrier(barriers);
 	}
 	
 	/**
-	 * Get the singleton instance of the ShaderManager
+	 * Make shader storage writes visible to shaders that read the same buffers
+	 * afterwards, like a second compute pass.
+	 */
+	public void storageBarrier() {
+		Backend.GL.memoryBarrier(GL43.GL_SHADER_STORAGE_BARRIER_BIT);
+	}
+	
+	/**
+	 * Make buffer writes visible to draws that read them as vertices, indices or
+	 * indirect commands, like particles or culled draw lists written by compute.
+	 */
+	public void drawBarrier() {
+		Backend.GL.memoryBarrier(GL42.GL_VERTEX_ATTRIB_ARRAY_BARRIER_BIT | GL42.GL_ELEMENT_ARRAY_BARRIER_BIT
+				| GL42.GL_COMMAND_BARRIER_BIT);
+	}
+	
+	/**
+	 * Bind a buffer to a shader storage binding point, the binding of a
+	 * layout(binding = n) buffer block.
 	 * 
-	 * @return singleton instance of ShaderManager
+	 * @param binding Binding point.
+	 * @param buffer GL buffer name, 0 to unbind.
 	 */
-	public static ShaderManager getInstance() {
-		return INSTANCE;
-	}	
+	public void bindStorageBuffer(int binding, int buffer) {
+		Backend.GL.bindBufferBase(GL43.GL_SHADER_STORAGE_BUFFER, binding, buffer);
+	}
 	
 	/**
-	 * Unbind any shader program currently in use. This sets to use the
-	 * default OpenGL pipeline.
+	 * Start a batch of shader compiles. All compiles and links of a batch are
+	 * submitted to the driver before any status is asked for, so a driver with
+	 * compiler threads can work on them in parallel.
 	 * 
+	 * @return empty CompileBatch.
 	 */
-	public void unbind() {
-		//Set OpenGL to use the default pipeline.
-		defaultShader.bind();
+	public CompileBatch newCompileBatch() {
+		return new CompileBatch(this);
+	}
+	
+	/**
+	 * Turn debug mode on or off. In debug mode every program is validated after
+	 * it is linked, which stalls until the driver has finished linking.
+	 * 
+	 * @param debug true to validate programs.
+	 */
+	public void setDebug(boolean debug) {
+		this.debug = debug;
+	}
+	
+	public boolean isDebug() {
+		return debug;
+	}
+	
+	/*
+	 * Builder configured with the manager wide options.
+	 */
+	Shader.Builder newBuilder(ShaderSource[] stages) {
+		return new Shader.Builder().sources(stages)
+							.validate(debug).uniformBlocks(uniformBlocks.values()).stageCache(stageCache);
+	}
+	
+	/*
+	 * Try to restore the builder's program from the binary cache. Returns the cache key
+	 * needed to store the program once it is compiled, or 0 without a usable cache.
+	 */
+	long restoreCached(Shader.Builder builder, ShaderSource[] stages) {
+		if(binaryCache == null || !binaryCache.isSupported()) {
+			return 0;
+		}
+		long cacheKey = binaryCache.key(stages);
+		if(!binaryCache.restore(cacheKey, builder)) {
+			builder.retrievableBinary();
+		}
+		return cacheKey;
+	}
+	
+	/*
+	 * Check a compiled or restored builder and store the shader under the key.
+	 */
+	ShaderHandle install(String key, Shader.Builder builder, long cacheKey) throws IllegalArgumentException {
+		Shader shader = defaultShader;
+		
+		/*
+		 * Try to build a new shader. If building the shader fails, its program and stages are deleted and
+		 * an exception is thrown. Whatever was stored under the key before stays there.
+		 * 
+		 */
+		shader = builder.build();
+		metrics.add(ShaderMetrics.COMPILE_NANOS, shader.getCompileNanos());
+		metrics.add(ShaderMetrics.LINK_NANOS, shader.getLinkNanos());
+		metrics.add(ShaderMetrics.UNIFORM_LOCATION_QUERIES, shader.uniforms.getLocationQueries());
+		//Throw an exception if a stage did not compile properly
+		ShaderType failed = shader.getFailedStage();
+		if(failed != null) {
+			metrics.count(ShaderMetrics.FAILED_COMPILES);
+			shader.delete(stageCache);
+			throw new IllegalArgumentException(failed.getLabel() + " shader failed to compile.");
+		}
+		//Throw an exception if the shader program did not link properly
+		if(!shader.isShaderProgramLinkStatus()) {
+			metrics.count(ShaderMetrics.FAILED_LINKS);
+			shader.delete(stageCache);
+			throw new IllegalArgumentException("Shader program failed to link shaders.");
+		}
+		if(cacheKey != 0 && !builder.isRestored()) {
+			binaryCache.store(cacheKey, shader.shaderProgram);
+		}
+		ShaderHandle handle = register(key, shader);
+		//Sources still waiting in the warm-up are older than this shader
+		warmup.remove(handle.id);
+		registry.installed(handle.id, shader.getSourceHash(), builder.getSources());
+		metrics.set(ShaderMetrics.RETAINED_SOURCE_BYTES, registry.getRetainedBytes());
+		evictOverCapacity(handle.id);
+		metrics.built(handle.id, shader.getCompileNanos(), shader.getLinkNanos());
+		return handle;
+	}
+	
+	/**
+	 * Use a program binary cache when creating shaders. createShader will load
+	 * a cached binary when there is one and fall back to compiling the sources
+	 * when there is not or the driver rejects it. Call save() on the cache to
+	 * keep newly compiled programs for the next run.
+	 * 
+	 * @param cache ProgramBinaryCache to use, or null to always compile from source.
+	 */
+	public void setProgramBinaryCache(ProgramBinaryCache cache) {
+		binaryCache = cache;
+	}
+	
+	/**
+	 * Get the handle of the shader stored under the key provided.
+	 * 
+	 * @param key Name the shader is registered with.
+	 * @return ShaderHandle of the shader or null if no shader is registered under the key.
+	 */
+	public ShaderHandle getHandle(String key) {
+		return shaderMap.get(key);
+	}
+	
+	/**
+	 * Resolve a uniform of a shader once so it can be set repeatedly without
+	 * any name lookups. The reference stays valid if the shader under the
+	 * handle is replaced.
+	 * 
+	 * @param handle ShaderHandle of the shader that owns the uniform.
+	 * @param varName Name of the variable that is in the shader program. Must be an exact match.
+	 * @return UniformRef that sets the variable directly.
+	 */
+	public UniformRef uniform(ShaderHandle handle, String varName) throws NullPointerException {
+		if(handle == null) {
+			throw new NullPointerException("ShaderHandle passed is null.");
+		}
+		return new UniformRef(handle.id, varName);
+	}
+	
+	/*
+	 * Store a shader under a key. A key that is already taken keeps its handle and
+	 * the new shader replaces the old one in place.
+	 */
+	private ShaderHandle register(String key, Shader shader) {
+		ShaderHandle handle = shaderMap.get(key);
+		if(handle == null) {
+			if(shaderCount == shaders.length) {
+				shaders = Arrays.copyOf(shaders, shaderCount * 2);
+			}
+			handle = new ShaderHandle(shaderCount++, key);
+			shaderMap.put(key, handle);
+			metrics.program(handle.id, key);
+		} else if(shaders[handle.id] != defaultShader && activeShader == shaders[handle.id]) {
+			//A queued or evicted slot holds the shared default shader, which being active says nothing about the handle
+			activeShader = shader;
+		}
+		Shader old = shaders[handle.id];
+		shaders[handle.id] = shader;
+		if(shader != defaultShader) {
+			registry.resident(1);
+			metrics.set(ShaderMetrics.RESIDENT_PROGRAMS, registry.getResident());
+		}
+		if(old != null && old != shader) {
+			release(old);
+		}
+		return handle;
+	}
+	
+	/**
+	 * Bound the number of programs the manager keeps in the driver. When a new
+	 * program would exceed it, the least recently bound programs are deleted.
+	 * Their sources are kept deflated, and an evicted shader is built again
+	 * (from the binary cache if there is one) the next time it is bound. Shaders
+	 * created while the capacity is 0 keep no sources and are never evicted, so
+	 * set the capacity before creating the shaders it should apply to.
+	 * 
+	 * @param capacity Most programs to keep, 0 for no limit.
+	 * @throws IllegalArgumentException If the capacity is negative.
+	 */
+	public void setProgramCapacity(int capacity) throws IllegalArgumentException {
+		registry.setCapacity(capacity);
+		evictOverCapacity(-1);
+	}
+	
+	public int getProgramCapacity() {
+		return registry.getCapacity();
+	}
+	
+	/*
+	 * Evict least recently bound programs until the resident ones fit the capacity
+	 * or none are left that may be evicted. The active shader and keep are spared.
+	 */
+	private void evictOverCapacity(int keep) {
+		if(!registry.isBounded()) {
+			return;
+		}
+		while(registry.getResident() > registry.getCapacity()) {
+			int id = registry.leastRecentlyBound(shaders, shaderCount, keep, activeShader);
+			if(id == -1) {
+				return;
+			}
+			Shader shader = shaders[id];
+			shaders[id] = defaultShader;
+			release(shader);
+			registry.evicted(id);
+			metrics.count(ShaderMetrics.PROGRAM_EVICTIONS);
+		}
+	}
+	
+	/*
+	 * Build an evicted shader again from its kept sources.
+	 */
+	private boolean rebuild(ShaderHandle handle) {
+		try {
+			createShader(handle.getKey(), registry.sources(handle.id));
+			metrics.count(ShaderMetrics.PROGRAM_REBUILDS);
+			return true;
+		} catch(IllegalArgumentException e) {
+			System.err.println("Failed to rebuild shader " + handle.getKey() + ": " + e.getMessage());
+			//Do not try again on every bind, the handle binds the default pipeline from now on
+			registry.forget(handle.id);
+			metrics.set(ShaderMetrics.RETAINED_SOURCE_BYTES, registry.getRetainedBytes());
+			return false;
+		}
+	}
+	
+	/*
+	 * Delete a shader that is no longer stored under any key.
+	 */
+	private void release(Shader shader) {
+		if(shader == defaultShader) {
+			return;
+		}
+		registry.resident(-1);
+		metrics.set(ShaderMetrics.RESIDENT_PROGRAMS, registry.getResident());
+		//Recorded uploads for it can never be issued
+		if(commandBuffer.getShader() == shader) {
+			commandBuffer.clear();
+		}
+		//The driver deletes a bound program once it is unbound, after which its name may be reused
+		if(shader.shaderProgram == boundProgram) {
+			boundProgram = -1;
+		}
+		shader.delete(stageCache);
+	}
+	
+	/**
+	 * Delete the shader stored under the key and release its program. Stages it
+	 * shares with other programs stay alive until they are deleted as well. The
+	 * key is free afterwards and handles to the shader bind the default pipeline.
+	 * 
+	 * @param key Name the shader is registered with.
+	 * @return true if a shader was stored under the key.
+	 */
+	public boolean deleteShader(String key) {
+		ShaderHandle handle = shaderMap.remove(key);
+		if(handle == null) {
+			return false;
+		}
+		fileShaders.remove(key);
+		warmup.remove(handle.id);
+		registry.forget(handle.id);
+		metrics.released(handle.id);
+		metrics.set(ShaderMetrics.RETAINED_SOURCE_BYTES, registry.getRetainedBytes());
+		Shader shader = shaders[handle.id];
+		shaders[handle.id] = defaultShader;
+		if(activeShader == shader) {
+			activeShader = defaultShader;
+		}
+		release(shader);
+		return true;
+	}
+	
+	/**
+	 * Delete every shader, stage and uniform block and stop hot reload, for
+	 * shutting down or switching contexts. The context must still be current.
+	 * The manager can be used again afterwards, but handles, UniformRefs,
+	 * variants, stages and queues created before must not.
+	 */
+	public void dispose() {
+		disableHotReload();
+		commandBuffer.clear();
+		for(int i = 0; i < shaderCount; i++) {
+			release(shaders[i]);
+			metrics.released(i);
+		}
+		for(UniformBlock block : uniformBlocks.values()) {
+			block.delete();
+		}
+		Backend.GL.useProgram(0);
+		shaders = new Shader[16];
+		shaderCount = 0;
+		shaderMap.clear();
+		fileShaders.clear();
+		uniformBlocks.clear();
+		uniformStages.clear();
+		warmup = new ShaderWarmup(this);
+		registry.clear();
+		textures.invalidate();
+		//The next context may have other limits
+		uniformBufferBindings = -1;
+		metrics.set(ShaderMetrics.RETAINED_SOURCE_BYTES, 0);
+		activeShader = defaultShader;
+		boundProgram = 0;
+	}
+	
+	/**
+	 * Pass a FloatBuffer to the active shader. The shader to which the value will be passed must be bound.
+	 * 
+	 * @param varName Name of the variable that is in the shader program. Must be an exact match.
+	 * @param buf FloatBuffer to be passed to the shader.
+	 */
+	public void putFloatBuffer(String varName, FloatBuffer buf) {
+		if(activeShader != null) {
+			//Courtesy of Drew Malin (that dick made me put this in here)
+			int slot = activeShader.uniforms.slot(varName);
+			buf.flip();
+			upload1f(activeShader, slot, buf);
+		}
+	}
+	
+	/**
+	 * Pass a float to the active shader. The shader to which the value will be passed must be bound.
+	 * 
+	 * @param varName Name of the variable that is in the shader program. Must be an exact match.
+	 * @param x Primitive float to be passed to the shader.
+	 */
+	public void putFloat(String varName, float x) {
+		if(activeShader != null) {
+			upload1f(activeShader, activeShader.uniforms.slot(varName), x);
+		}
+	}
+	
+	/**
+	 * Pass an LWJGL Vector2f to the active shader. The shader to which the value will be passed must be bound.
+	 * 
+	 * @param varName Name of the variable that is in the shader program. Must be an exact match.
+	 * @param v LWJGL Vector2f.
+	 */
+	public void putVector2f(String varName, Vector2f v) throws NullPointerException {
+		if(v == null) {
+			throw new NullPointerException("Vector2f passed is null.");
+		}
+		if(activeShader != null) {
+			upload2f(activeShader, activeShader.uniforms.slot(varName), v.x, v.y);
+		}
+	}
+	
+	/**
+	 * Pass an LWJGL Vector3f to the active shader. The shader to which the value will be passed must be bound.
+	 * 
+	 * @param varName Name of the variable that is in the shader program. Must be an exact match.
+	 * @param v
+	 */
+	public void putVector3f(String varName, Vector3f v) throws NullPointerException {
+		if(v == null) {
+			throw new NullPointerException("Vector3f passed is null.");
+		}
+		if(activeShader != null) {
+			upload3f(activeShader, activeShader.uniforms.slot(varName), v.x, v.y, v.z);
+		}
+	}
+	
+	/**
+	 * Pass an LWJGL Vector4f to the active shader. The shader to which the value will be passed must be bound.
+	 * 
+	 * @param varName  Name of the variable that is in the shader program. Must be an exact match.
+	 * @param v
+	 */
+	public void putVector4f(String varName, Vector4f v) throws NullPointerException {
+		if(v == null) {
+			throw new NullPointerException("Vector4f passed is null.");
+		}
+		if(activeShader != null) {
+			upload4f(activeShader, activeShader.uniforms.slot(varName), v.x, v.y, v.z, v.w);
+		}
+	}
+	
+	/**
+	 * Pass an IntBuffer to the active shader. The shader to which the value will be passed must be bound.
+	 * 
+	 * @param varName String name of the variable that is in the shader program. Must be an exact match.
+	 * @param buf IntBuffer to be passed to the shader.
+	 */
+	public void putIntBuffer(String varName, IntBuffer buf) {
+		if(activeShader != null) {
+			int slot = activeShader.uniforms.slot(varName);
+			buf.flip();
+			upload1i(activeShader, slot, buf);
+		}
+	}
+
+	/**
+	 * Pass an integer to the active shader. The shader to which the value will be passed must be bound.
+	 * 
+	 * @param varName String name of the variable that is in the shader program. Must be an exact match.
+	 * @param x Primitive integer to be passed to the shader.
+	 */
+	public void putInt(String varName, int x) {
+		if(activeShader != null) {
+			//Grab the slot of the variable and pass the value to it
+			upload1i(activeShader, activeShader.uniforms.slot(varName), x);
+		}
+	}
+	
+	/**
+	 * Pass a vec2 to the active shader. The shader to which the value will be passed must be bound.
+	 * 
+	 * @param varName Name of the variable that is in the shader program. Must be an exact match.
+	 */
+	public void putVec2(String varName, float x, float y) {
+		if(activeShader != null) {
+			upload2f(activeShader, activeShader.uniforms.slot(varName), x, y);
+		}
+	}
+	
+	/**
+	 * Pass a vec3 to the active shader. The shader to which the value will be passed must be bound.
+	 * 
+	 * @param varName Name of the variable that is in the shader program. Must be an exact match.
+	 */
+	public void putVec3(String varName, float x, float y, float z) {
+		if(activeShader != null) {
+			upload3f(activeShader, activeShader.uniforms.slot(varName), x, y, z);
+		}
+	}
+	
+	/**
+	 * Pass a vec4 to the active shader. The shader to which the value will be passed must be bound.
+	 * 
+	 * @param varName Name of the variable that is in the shader program. Must be an exact match.
+	 */
+	public void putVec4(String varName, float x, float y, float z, float w) {
+		if(activeShader != null) {
+			upload4f(activeShader, activeShader.uniforms.slot(varName), x, y, z, w);
+		}
+	}
+	
+	/**
+	 * Pass part of a float array to a float array uniform of the active shader.
+	 * The shader to which the values will be passed must be bound.
+	 * 
+	 * @param varName Name of the variable that is in the shader program. Must be an exact match.
+	 * @param values Array holding the values.
+	 * @param offset Index of the first value.
+	 * @param count Number of floats to pass.
+	 */
+	public void putFloatArray(String varName, float[] values, int offset, int count) {
+		if(activeShader != null) {
+			uploadFloats(activeShader, activeShader.uniforms.slot(varName), UniformCommandBuffer.UNIFORM_1FV,
+					GL11.GL_FLOAT, values, offset, count);
+		}
+	}
+	
+	/**
+	 * Pass part of a float array to a vec2 array uniform of the active shader.
+	 * The shader to which the values will be passed must be bound.
+	 * 
+	 * @param varName Name of the variable that is in the shader program. Must be an exact match.
+	 * @param values Array holding the vectors, packed x, y, x, y...
+	 * @param offset Index of the first float.
+	 * @param count Number of vectors to pass.
+	 */
+	public void putVec2Array(String varName, float[] values, int offset, int count) {
+		if(activeShader != null) {
+			uploadFloats(activeShader, activeShader.uniforms.slot(varName), UniformCommandBuffer.UNIFORM_2FV,
+					GL20.GL_FLOAT_VEC2, values, offset, count * 2);
+		}
+	}
+	
+	/**
+	 * Pass part of a float array to a vec3 array uniform of the active shader.
+	 * The shader to which the values will be passed must be bound.
+	 * 
+	 * @param varName Name of the variable that is in the shader program. Must be an exact match.
+	 * @param values Array holding the vectors, packed x, y, z, x, y, z...
+	 * @param offset Index of the first float.
+	 * @param count Number of vectors to pass.
+	 */
+	public void putVec3Array(String varName, float[] values, int offset, int count) {
+		if(activeShader != null) {
+			uploadFloats(activeShader, activeShader.uniforms.slot(varName), UniformCommandBuffer.UNIFORM_3FV,
+					GL20.GL_FLOAT_VEC3, values, offset, count * 3);
+		}
+	}
+	
+	/**
+	 * Pass part of a float array to a vec4 array uniform of the active shader.
+	 * The shader to which the values will be passed must be bound.
+	 * 
+	 * @param varName Name of the variable that is in the shader program. Must be an exact match.
+	 * @param values Array holding the vectors, packed x, y, z, w, x, y, z, w...
+	 * @param offset Index of the first float.
+	 * @param count Number of vectors to pass.
+	 */
+	public void putVec4Array(String varName, float[] values, int offset, int count) {
+		if(activeShader != null) {
+			uploadFloats(activeShader, activeShader.uniforms.slot(varName), UniformCommandBuffer.UNIFORM_4FV,
+					GL20.GL_FLOAT_VEC4, values, offset, count * 4);
+		}
+	}
+	
+	/**
+	 * Pass part of an int array to an int (or sampler) array uniform of the active shader.
+	 * The shader to which the values will be passed must be bound.
+	 * 
+	 * @param varName Name of the variable that is in the shader program. Must be an exact match.
+	 * @param values Array holding the values.
+	 * @param offset Index of the first value.
+	 * @param count Number of ints to pass.
+	 */
+	public void putIntArray(String varName, int[] values, int offset, int count) {
+		if(activeShader != null) {
+			uploadInts(activeShader, activeShader.uniforms.slot(varName), values, offset, count);
+		}
+	}
+	
+	/**
+	 * Pass a 3x3 matrix to the active shader. The shader to which the value will be passed must be bound.
+	 * 
+	 * @param varName Name of the variable that is in the shader program. Must be an exact match.
+	 * @param m Array holding the matrix.
+	 * @param offset Index of the first element.
+	 * @param transpose false if the matrix is stored column major, true if it is stored row major.
+	 */
+	public void putMatrix3f(String varName, float[] m, int offset, boolean transpose) {
+		putMatrix3fArray(varName, m, offset, 1, transpose);
+	}
+	
+	/**
+	 * Pass an LWJGL Matrix3f to the active shader. The shader to which the value will be passed must be bound.
+	 * 
+	 * @param varName Name of the variable that is in the shader program. Must be an exact match.
+	 * @param m LWJGL Matrix3f.
+	 */
+	public void putMatrix3f(String varName, Matrix3f m) throws NullPointerException {
+		if(m == null) {
+			throw new NullPointerException("Matrix3f passed is null.");
+		}
+		float[] s = matrixScratch;
+		s[0] = m.m00; s[1] = m.m01; s[2] = m.m02;
+		s[3] = m.m10; s[4] = m.m11; s[5] = m.m12;
+		s[6] = m.m20; s[7] = m.m21; s[8] = m.m22;
+		putMatrix3fArray(varName, s, 0, 1, false);
+	}
+	
+	/**
+	 * Pass a 4x4 matrix to the active shader. The shader to which the value will be passed must be bound.
+	 * 
+	 * @param varName Name of the variable that is in the shader program. Must be an exact match.
+	 * @param m Array holding the matrix.
+	 * @param offset Index of the first element.
+	 * @param transpose false if the matrix is stored column major, true if it is stored row major.
+	 */
+	public void putMatrix4f(String varName, float[] m, int offset, boolean transpose) {
+		putMatrix4fArray(varName, m, offset, 1, transpose);
+	}
+	
+	/**
+	 * Pass an LWJGL Matrix4f to the active shader. The shader to which the value will be passed must be bound.
+	 * 
+	 * @param varName Name of the variable that is in the shader program. Must be an exact match.
+	 * @param m LWJGL Matrix4f.
+	 */
+	public void putMatrix4f(String varName, Matrix4f m) throws NullPointerException {
+		if(m == null) {
+			throw new NullPointerException("Matrix4f passed is null.");
+		}
+		float[] s = matrixScratch;
+		s[0] = m.m00; s[1] = m.m01; s[2] = m.m02; s[3] = m.m03;
+		s[4] = m.m10; s[5] = m.m11; s[6] = m.m12; s[7] = m.m13;
+		s[8] = m.m20; s[9] = m.m21; s[10] = m.m22; s[11] = m.m23;
+		s[12] = m.m30; s[13] = m.m31; s[14] = m.m32; s[15] = m.m33;
+		putMatrix4fArray(varName, s, 0, 1, false);
+	}
+	
+	/**
+	 * Pass an array of 3x3 matrices to the active shader. The shader to which the values will be passed must be bound.
+	 * 
+	 * @param varName Name of the variable that is in the shader program. Must be an exact match.
+	 * @param m Array holding the matrices, 9 floats each.
+	 * @param offset Index of the first element.
+	 * @param count Number of matrices to pass.
+	 * @param transpose false if the matrices are stored column major, true if they are stored row major.
+	 */
+	public void putMatrix3fArray(String varName, float[] m, int offset, int count, boolean transpose) {
+		if(activeShader != null) {
+			if(transpose) {
+				m = transpose(m, offset, count, 3);
+				offset = 0;
+			}
+			uploadFloats(activeShader, activeShader.uniforms.slot(varName), UniformCommandBuffer.MATRIX_3FV,
+					GL20.GL_FLOAT_MAT3, m, offset, count * 9);
+		}
+	}
+	
+	/**
+	 * Pass an array of 4x4 matrices, like a skinning palette, to the active shader.
+	 * The shader to which the values will be passed must be bound.
+	 * 
+	 * @param varName Name of the variable that is in the shader program. Must be an exact match.
+	 * @param m Array holding the matrices, 16 floats each.
+	 * @param offset Index of the first element.
+	 * @param count Number of matrices to pass.
+	 * @param transpose false if the matrices are stored column major, true if they are stored row major.
+	 */
+	public void putMatrix4fArray(String varName, float[] m, int offset, int count, boolean transpose) {
+		if(activeShader != null) {
+			if(transpose) {
+				m = transpose(m, offset, count, 4);
+				offset = 0;
+			}
+			uploadFloats(activeShader, activeShader.uniforms.slot(varName), UniformCommandBuffer.MATRIX_4FV,
+					GL20.GL_FLOAT_MAT4, m, offset, count * 16);
+		}
+	}
+	
+	/*
+	 * Transpose row major matrices into the scratch array. Matrices are always
+	 * shadowed and uploaded column major, so the same matrix compares equal
+	 * whichever way it was passed.
+	 */
+	private float[] transpose(float[] m, int offset, int count, int dim) {
+		int size = dim * dim;
+		if(matrixScratch.length < count * size) {
+			matrixScratch = new float[Math.max(count * size, matrixScratch.length * 2)];
+		}
+		float[] s = matrixScratch;
+		for(int k = 0; k < count; k++) {
+			int base = k * size;
+			for(int col = 0; col < dim; col++) {
+				for(int row = 0; row < dim; row++) {
+					s[base + col * dim + row] = m[offset + base + row * dim + col];
+				}
+			}
+		}
+		return s;
+	}
+	
+	/**
+	 * Set the active shader to the shader bound to the key provided. If no shader
+	 * exists at this location, return false.
+	 * 
+	 * @param key Name the shader is registered with.
+	 * @return boolean - returns true if a value is at that location or false if it's null
+	 */
+	public boolean setActiveShader(String key) {
+		return setActiveShader(shaderMap.get(key));
+	}
+	
+	/**
+	 * Set the active shader to the shader referenced by the handle. If the
+	 * handle is null, return false.
+	 * 
+	 * @param handle ShaderHandle returned by createShader or getHandle.
+	 * @return boolean - returns true if the handle references a shader or false if it's null
+	 */
+	public boolean setActiveShader(ShaderHandle handle) {
+		if(handle != null && warmup.isWaiting(handle.id)) {
+			warmup.compileNow(handle.id);
+		} else if(handle != null && registry.isEvicted(handle.id)) {
+			rebuild(handle);
+		}
+		activeShader = (handle != null) ? shaders[handle.id] : null;
+		return (activeShader != null);
+	}
+	
+	/**
+	 * Number of uniform uploads that were sent to the driver since the last reset.
+	 * 
+	 * @return count of issued glUniform calls
+	 */
+	public long getUniformUploadsIssued() {
+		return metrics.get(ShaderMetrics.UNIFORM_UPLOADS_ISSUED);
+	}
+	
+	/**
+	 * Number of uniform uploads that were skipped since the last reset because
+	 * the program already held the value being passed.
+	 * 
+	 * @return count of skipped glUniform calls
+	 */
+	public long getUniformUploadsSkipped() {
+		return metrics.get(ShaderMetrics.UNIFORM_UPLOADS_SKIPPED);
+	}
+	
+	/**
+	 * Counters and timers of the manager: program binds, uniform uploads, uniform
+	 * location queries, compile and link times and failed builds. The counters are
+	 * cheap enough to stay on, read them with snapshot() or through JMX. They stay
+	 * at 0 when the system property com.sgflt.ShaderManager.metrics is false.
+	 * 
+	 * @return ShaderMetrics of the manager.
+	 */
+	public ShaderMetrics getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * The GL backend the library was loaded with, picked by the system property
+	 * com.sgflt.ShaderManager.backend. Cast it to RecordingBackend to read the
+	 * calls the manager made.
+	 * 
+	 * @return GLBackend every GL call of the library goes through.
+	 */
+	public GLBackend getBackend() {
+		return Backend.GL;
+	}
+	
+	/**
+	 * Register the metrics with the platform MBean server under ShaderMetrics.OBJECT_NAME.
+	 * 
+	 * @throws IllegalStateException If the MBean could not be registered, for example because it already is.
+	 */
+	public void registerMetricsMBean() throws IllegalStateException {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName(ShaderMetrics.OBJECT_NAME));
+		} catch(JMException e) {
+			throw new IllegalStateException("Could not register " + ShaderMetrics.OBJECT_NAME, e);
+		}
+	}
+	
+	/**
+	 * Reset the issued and skipped uniform upload counters to zero.
+	 */
+	public void resetUniformUploadCounters() {
+		metrics.reset(ShaderMetrics.UNIFORM_UPLOADS_ISSUED);
+		metrics.reset(ShaderMetrics.UNIFORM_UPLOADS_SKIPPED);
+	}
+	
+	/*
+	 * Count an upload that matched the shadow as skipped. Returns the value passed
+	 * so it can guard the upload.
+	 */
+	private boolean mustUpload(boolean changed) {
+		if(!changed) {
+			metrics.count(ShaderMetrics.UNIFORM_UPLOADS_SKIPPED);
+		}
+		return changed;
+	}
+	
+	/**
+	 * Start recording uniform uploads instead of issuing them. The put methods and
+	 * UniformRefs then write compact commands into a reusable off-heap buffer, and
+	 * a uniform written several times keeps only its last value. The commands are
+	 * issued by flush, which also happens automatically before another program is
+	 * bound. Call flush right before drawing.
+	 */
+	public void beginRecording() {
+		recording = true;
+	}
+	
+	/**
+	 * Issue all recorded uniform uploads and go back to issuing them immediately.
+	 */
+	public void endRecording() {
+		flush();
+		recording = false;
+	}
+	
+	public boolean isRecording() {
+		return recording;
+	}
+	
+	/**
+	 * Issue all recorded uniform uploads to the bound program in one pass.
+	 * Does nothing if nothing was recorded.
+	 */
+	public void flush() {
+		if(!commandBuffer.isEmpty()) {
+			metrics.add(ShaderMetrics.UNIFORM_UPLOADS_ISSUED, commandBuffer.flush());
+		}
+	}
+	
+	/*
+	 * Command buffer to record into for a shader. Commands recorded for another
+	 * program are flushed first, they only apply to the program they were recorded for.
+	 */
+	private UniformCommandBuffer recorder(Shader shader) {
+		if(!commandBuffer.isEmpty() && commandBuffer.getShader() != shader) {
+			flush();
+		}
+		return commandBuffer;
+	}
+	
+	/*
+	 * Uniform uploads shared by the put methods and UniformRef. The shader must be bound.
+	 * A slot of -1 is a uniform the program does not have and is ignored. While
+	 * recording, changed values are recorded instead of issued.
+	 */
+	void upload1f(Shader shader, int slot, float x) {
+		if(slot != -1 && mustUpload(shader.uniforms.update1f(slot, x))) {
+			if(recording) {
+				recorder(shader).record1f(shader, slot, x);
+			} else {
+				Backend.GL.uniform1f(shader.uniforms.getLocation(slot), x);
+				metrics.count(ShaderMetrics.UNIFORM_UPLOADS_ISSUED);
+			}
+		}
+	}
+	
+	void upload2f(Shader shader, int slot, float x, float y) {
+		if(slot != -1 && mustUpload(shader.uniforms.update2f(slot, x, y))) {
+			if(recording) {
+				recorder(shader).record2f(shader, slot, x, y);
+			} else {
+				Backend.GL.uniform2f(shader.uniforms.getLocation(slot), x, y);
+				metrics.count(ShaderMetrics.UNIFORM_UPLOADS_ISSUED);
+			}
+		}
+	}
+	
+	void upload3f(Shader shader, int slot, float x, float y, float z) {
+		if(slot != -1 && mustUpload(shader.uniforms.update3f(slot, x, y, z))) {
+			if(recording) {
+				recorder(shader).record3f(shader, slot, x, y, z);
+			} else {
+				Backend.GL.uniform3f(shader.uniforms.getLocation(slot), x, y, z);
+				metrics.count(ShaderMetrics.UNIFORM_UPLOADS_ISSUED);
+			}
+		}
+	}
+	
+	void upload4f(Shader shader, int slot, float x, float y, float z, float w) {
+		if(slot != -1 && mustUpload(shader.uniforms.update4f(slot, x, y, z, w))) {
+			if(recording) {
+				recorder(shader).record4f(shader, slot, x, y, z, w);
+			} else {
+				Backend.GL.uniform4f(shader.uniforms.getLocation(slot), x, y, z, w);
+				metrics.count(ShaderMetrics.UNIFORM_UPLOADS_ISSUED);
+			}
+		}
+	}
+	
+	void upload1i(Shader shader, int slot, int x) {
+		if(slot != -1 && mustUpload(shader.uniforms.update1i(slot, x))) {
+			if(recording) {
+				recorder(shader).record1i(shader, slot, x);
+			} else {
+				Backend.GL.uniform1i(shader.uniforms.getLocation(slot), x);
+				metrics.count(ShaderMetrics.UNIFORM_UPLOADS_ISSUED);
+			}
+		}
+	}
+	
+	void upload1f(Shader shader, int slot, FloatBuffer buf) {
+		if(slot != -1 && mustUpload(shader.uniforms.update1f(slot, buf))) {
+			if(recording) {
+				recorder(shader).record1f(shader, slot, buf);
+			} else {
+				Backend.GL.uniform1fv(shader.uniforms.getLocation(slot), buf);
+				metrics.count(ShaderMetrics.UNIFORM_UPLOADS_ISSUED);
+			}
+		}
+	}
+	
+	void upload1i(Shader shader, int slot, IntBuffer buf) {
+		if(slot != -1 && mustUpload(shader.uniforms.update1i(slot, buf))) {
+			if(recording) {
+				recorder(shader).record1i(shader, slot, buf);
+			} else {
+				Backend.GL.uniform1iv(shader.uniforms.getLocation(slot), buf);
+				metrics.count(ShaderMetrics.UNIFORM_UPLOADS_ISSUED);
+			}
+		}
+	}
+	
+	/*
+	 * Vector, matrix and array uploads from a float array. The values are staged
+	 * through the pooled direct buffer, the caller's array is never kept.
+	 */
+	void uploadFloats(Shader shader, int slot, int kind, int type, float[] src, int offset, int n) {
+		if(slot != -1 && mustUpload(shader.uniforms.updateFloats(slot, type, src, offset, n))) {
+			if(recording) {
+				recorder(shader).recordFloats(shader, slot, kind, src, offset, n);
+			} else {
+				if(floatScratch.capacity() < n) {
+					floatScratch = BufferUtils.createFloatBuffer(Math.max(n, floatScratch.capacity() * 2));
+				}
+				floatScratch.clear();
+				floatScratch.put(src, offset, n).flip();
+				UniformCommandBuffer.uniformv(kind, shader.uniforms.getLocation(slot), floatScratch);
+				metrics.count(ShaderMetrics.UNIFORM_UPLOADS_ISSUED);
+			}
+		}
+	}
+	
+	void uploadInts(Shader shader, int slot, int[] src, int offset, int n) {
+		if(slot != -1 && mustUpload(shader.uniforms.updateInts(slot, src, offset, n))) {
+			if(recording) {
+				recorder(shader).recordInts(shader, slot, src, offset, n);
+			} else {
+				if(intScratch.capacity() < n) {
+					intScratch = BufferUtils.createIntBuffer(Math.max(n, intScratch.capacity() * 2));
+				}
+				intScratch.clear();
+				intScratch.put(src, offset, n).flip();
+				Backend.GL.uniform1iv(shader.uniforms.getLocation(slot), intScratch);
+				metrics.count(ShaderMetrics.UNIFORM_UPLOADS_ISSUED);
+			}
+		}
+	}
+	
+	/**
+	 * Get the singleton instance of the ShaderManager
+	 * 
+	 * @return singleton instance of ShaderManager
+	 */
+	public static ShaderManager getInstance() {
+		return INSTANCE;
+	}	
+	
+	/**
+	 * Unbind any shader program currently in use. This sets to use the
+	 * default OpenGL pipeline.
+	 * 
+	 */
+	public void unbind() {
+		//Set OpenGL to use the default pipeline.
+		use(defaultShader);
+	}
+	
+	/**
+	 * Forget all GL state the manager has cached. Call this after touching the
+	 * program binding, texture bindings or uniforms through GL directly so the
+	 * next binds and uniform uploads go to the driver again. Uniform uploads that
+	 * were recorded and not flushed yet are dropped.
+	 */
+	public void invalidateState() {
+		//Recorded commands may be meant for a program that is no longer bound
+		commandBuffer.clear();
+		boundProgram = -1;
+		textures.invalidate();
+		for(int i = 0; i < shaderCount; i++) {
+			shaders[i].uniforms.invalidate();
+		}
+	}
+	
+	/*
+	 * Check once if the context can report compile completion without blocking.
+	 */
+	boolean supportsParallelCompile() {
+		if(parallelCompile == -1) {
+			boolean found = false;
+			if(Backend.GL.isSupported("OpenGL30")) {
+				int count = Backend.GL.getInteger(GL30.GL_NUM_EXTENSIONS);
+				for(int i = 0; i < count && !found; i++) {
+					String name = Backend.GL.getStringi(GL11.GL_EXTENSIONS, i);
+					found = "GL_KHR_parallel_shader_compile".equals(name) || "GL_ARB_parallel_shader_compile".equals(name);
+				}
+			} else {
+				String extensions = Backend.GL.getString(GL11.GL_EXTENSIONS);
+				found = extensions != null && (extensions.contains("GL_KHR_parallel_shader_compile")
+						|| extensions.contains("GL_ARB_parallel_shader_compile"));
+			}
+			parallelCompile = found ? 1 : 0;
+		}
+		return parallelCompile == 1;
+	}
+	
+	/*
+	 * Bind a shader program unless the context already has it bound.
+	 */
+	void use(Shader shader) {
+		if(shader.shaderProgram != boundProgram) {
+			//Recorded uniforms belong to the program that is bound now
+			flush();
+			shader.bind();
+			boundProgram = shader.shaderProgram;
+			metrics.count(ShaderMetrics.PROGRAM_SWITCHES);
+		}
 	}
 
 }
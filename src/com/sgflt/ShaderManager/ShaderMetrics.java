@@ -0,0 +1,491 @@
+/**
+ *	Author: Jack Ramey
+ *	File: ShaderMetrics.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and timers of the ShaderManager.
+ *
+ * Every counter is written by the GL thread only, so an increment is a plain
+ * read and an ordered store: no lock, no CAS and no contention, while monitoring
+ * threads still read whole, up to date values. Take a snapshot for a consistent
+ * copy, or read the counters live through JMX.
+ *
+ * Setting the system property com.sgflt.ShaderManager.metrics to false turns
+ * every write into a no-op and leaves the counters at 0. The property is read
+ * once, when this class is loaded.
+ */
+public final class ShaderMetrics implements ShaderMetricsMXBean {
+
+	/**
+	 * Name the MBean is registered under.
+	 */
+	public static final String OBJECT_NAME = "com.sgflt.ShaderManager:type=ShaderMetrics";
+
+	/**
+	 * System property that turns the metrics off when set to false.
+	 */
+	static final String PROPERTY = "com.sgflt.ShaderManager.metrics";
+
+	//Whether the metrics of the manager are kept, picked once like the GL backend
+	static final boolean ENABLED = Boolean.parseBoolean(System.getProperty(PROPERTY, "true"));
+
+	//Counters
+	static final int UNIFORM_UPLOADS_ISSUED = 0;
+	static final int UNIFORM_UPLOADS_SKIPPED = 1;
+	static final int PROGRAM_SWITCHES = 2;
+	static final int UNIFORM_LOCATION_QUERIES = 3;
+	static final int SHADERS_BUILT = 4;
+	static final int FAILED_COMPILES = 5;
+	static final int FAILED_LINKS = 6;
+	static final int COMPILE_NANOS = 7;
+	static final int LINK_NANOS = 8;
+	static final int PROGRAM_EVICTIONS = 9;
+	static final int PROGRAM_REBUILDS = 10;
+	static final int TEXTURE_BINDS = 11;
+	static final int TEXTURE_BINDS_SKIPPED = 12;
+	//Gauges
+	static final int RESIDENT_PROGRAMS = 13;
+	static final int RETAINED_SOURCE_BYTES = 14;
+	private static final int COUNTERS = 15;
+
+	//Per program values, PROGRAM_STRIDE per handle id
+	private static final int BINDS = 0;
+	private static final int PROGRAM_COMPILE_NANOS = 1;
+	private static final int PROGRAM_LINK_NANOS = 2;
+	private static final int PROGRAM_STRIDE = 3;
+
+	private final AtomicLongArray counters = new AtomicLongArray(COUNTERS);
+	//Replaced when more handles are created. Only the GL thread grows them.
+	private volatile AtomicLongArray programs = new AtomicLongArray(16 * PROGRAM_STRIDE);
+	private volatile String[] keys = new String[16];
+	//false if every write is ignored
+	private final boolean enabled;
+
+	ShaderMetrics(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	boolean isEnabled() {
+		return enabled;
+	}
+
+	/*
+	 * Single writer add. Only ever called from the GL thread.
+	 */
+	void add(int counter, long n) {
+		if(enabled) {
+			counters.lazySet(counter, counters.get(counter) + n);
+		}
+	}
+
+	void count(int counter) {
+		if(enabled) {
+			counters.lazySet(counter, counters.get(counter) + 1);
+		}
+	}
+
+	void reset(int counter) {
+		counters.lazySet(counter, 0);
+	}
+
+	void set(int gauge, long value) {
+		if(enabled) {
+			counters.lazySet(gauge, value);
+		}
+	}
+
+	long get(int counter) {
+		return counters.get(counter);
+	}
+
+	/*
+	 * Start tracking the program of a new handle id.
+	 */
+	void program(int id, String key) {
+		if(!enabled) {
+			return;
+		}
+		if(id >= keys.length) {
+			int capacity = Math.max(id + 1, keys.length * 2);
+			AtomicLongArray old = programs;
+			AtomicLongArray grown = new AtomicLongArray(capacity * PROGRAM_STRIDE);
+			for(int i = 0; i < old.length(); i++) {
+				grown.lazySet(i, old.get(i));
+			}
+			String[] names = new String[capacity];
+			System.arraycopy(keys, 0, names, 0, keys.length);
+			names[id] = key;
+			programs = grown;
+			keys = names;
+		} else {
+			//Publish the key by writing the array reference again
+			String[] names = keys;
+			clear(id);
+			names[id] = key;
+			keys = names;
+		}
+	}
+
+	/*
+	 * Stop tracking a handle id whose shader was deleted, so its values are
+	 * neither reported under its key nor picked up by a later handle with that id.
+	 */
+	void released(int id) {
+		if(id < keys.length) {
+			clear(id);
+			String[] names = keys;
+			names[id] = null;
+			keys = names;
+		}
+	}
+
+	private void clear(int id) {
+		AtomicLongArray p = programs;
+		for(int i = 0; i < PROGRAM_STRIDE; i++) {
+			p.lazySet(id * PROGRAM_STRIDE + i, 0);
+		}
+	}
+
+	void bound(int id) {
+		if(!enabled) {
+			return;
+		}
+		AtomicLongArray p = programs;
+		int i = id * PROGRAM_STRIDE + BINDS;
+		p.lazySet(i, p.get(i) + 1);
+	}
+
+	/*
+	 * Record the build times of the program now stored under a handle id.
+	 */
+	void built(int id, long compileNanos, long linkNanos) {
+		if(!enabled) {
+			return;
+		}
+		AtomicLongArray p = programs;
+		p.lazySet(id * PROGRAM_STRIDE + PROGRAM_COMPILE_NANOS, compileNanos);
+		p.lazySet(id * PROGRAM_STRIDE + PROGRAM_LINK_NANOS, linkNanos);
+		count(SHADERS_BUILT);
+	}
+
+	/**
+	 * Copy every counter. Safe to call from any thread.
+	 *
+	 * @return Snapshot of the counters at the time of the call.
+	 */
+	public Snapshot snapshot() {
+		return new Snapshot(this);
+	}
+
+	@Override
+	public long getUniformUploadsIssued() {
+		return counters.get(UNIFORM_UPLOADS_ISSUED);
+	}
+
+	@Override
+	public long getUniformUploadsSkipped() {
+		return counters.get(UNIFORM_UPLOADS_SKIPPED);
+	}
+
+	@Override
+	public long getProgramSwitches() {
+		return counters.get(PROGRAM_SWITCHES);
+	}
+
+	@Override
+	public long getUniformLocationQueries() {
+		return counters.get(UNIFORM_LOCATION_QUERIES);
+	}
+
+	@Override
+	public long getShadersBuilt() {
+		return counters.get(SHADERS_BUILT);
+	}
+
+	@Override
+	public long getFailedCompiles() {
+		return counters.get(FAILED_COMPILES);
+	}
+
+	@Override
+	public long getFailedLinks() {
+		return counters.get(FAILED_LINKS);
+	}
+
+	@Override
+	public long getCompileNanos() {
+		return counters.get(COMPILE_NANOS);
+	}
+
+	@Override
+	public long getLinkNanos() {
+		return counters.get(LINK_NANOS);
+	}
+
+	@Override
+	public long getProgramEvictions() {
+		return counters.get(PROGRAM_EVICTIONS);
+	}
+
+	@Override
+	public long getProgramRebuilds() {
+		return counters.get(PROGRAM_REBUILDS);
+	}
+
+	@Override
+	public long getTextureBinds() {
+		return counters.get(TEXTURE_BINDS);
+	}
+
+	@Override
+	public long getTextureBindsSkipped() {
+		return counters.get(TEXTURE_BINDS_SKIPPED);
+	}
+
+	@Override
+	public long getResidentPrograms() {
+		return counters.get(RESIDENT_PROGRAMS);
+	}
+
+	@Override
+	public long getRetainedSourceBytes() {
+		return counters.get(RETAINED_SOURCE_BYTES);
+	}
+
+	@Override
+	public Map<String, Long> getProgramBinds() {
+		return perProgram(BINDS);
+	}
+
+	@Override
+	public Map<String, Long> getProgramCompileNanos() {
+		return perProgram(PROGRAM_COMPILE_NANOS);
+	}
+
+	@Override
+	public Map<String, Long> getProgramLinkNanos() {
+		return perProgram(PROGRAM_LINK_NANOS);
+	}
+
+	private Map<String, Long> perProgram(int field) {
+		String[] names = keys;
+		AtomicLongArray p = programs;
+		Map<String, Long> values = new LinkedHashMap<String, Long>();
+		for(int id = 0; id < names.length; id++) {
+			if(names[id] != null) {
+				values.put(names[id], p.get(id * PROGRAM_STRIDE + field));
+			}
+		}
+		return values;
+	}
+
+	@Override
+	public String toString() {
+		return snapshot().toString();
+	}
+
+	/**
+	 * Copy of the counters at one point in time.
+	 */
+	public static final class Snapshot {
+		private final long[] values = new long[COUNTERS];
+		private final Map<String, Integer> ids = new HashMap<String, Integer>();
+		private final long[] programs;
+
+		private Snapshot(ShaderMetrics metrics) {
+			for(int i = 0; i < COUNTERS; i++) {
+				values[i] = metrics.counters.get(i);
+			}
+			String[] names = metrics.keys;
+			AtomicLongArray p = metrics.programs;
+			int n = 0;
+			for(int id = 0; id < names.length; id++) {
+				if(names[id] != null) {
+					ids.put(names[id], id);
+					n = id + 1;
+				}
+			}
+			programs = new long[n * PROGRAM_STRIDE];
+			for(int i = 0; i < programs.length; i++) {
+				programs[i] = p.get(i);
+			}
+		}
+
+		/**
+		 * @return uniform uploads sent to the driver.
+		 */
+		public long getUniformUploadsIssued() {
+			return values[UNIFORM_UPLOADS_ISSUED];
+		}
+
+		/**
+		 * @return uniform uploads skipped because the program already held the value.
+		 */
+		public long getUniformUploadsSkipped() {
+			return values[UNIFORM_UPLOADS_SKIPPED];
+		}
+
+		/**
+		 * @return glUseProgram calls, binds of the program already bound are not counted.
+		 */
+		public long getProgramSwitches() {
+			return values[PROGRAM_SWITCHES];
+		}
+
+		/**
+		 * @return glGetUniformLocation calls, made once per uniform when a program is linked.
+		 */
+		public long getUniformLocationQueries() {
+			return values[UNIFORM_LOCATION_QUERIES];
+		}
+
+		/**
+		 * @return programs compiled or restored successfully.
+		 */
+		public long getShadersBuilt() {
+			return values[SHADERS_BUILT];
+		}
+
+		/**
+		 * @return programs with a vertex or fragment shader that failed to compile.
+		 */
+		public long getFailedCompiles() {
+			return values[FAILED_COMPILES];
+		}
+
+		/**
+		 * @return programs that failed to link.
+		 */
+		public long getFailedLinks() {
+			return values[FAILED_LINKS];
+		}
+
+		/**
+		 * @return total time spent compiling shaders, failed ones included, in nanoseconds.
+		 */
+		public long getCompileNanos() {
+			return values[COMPILE_NANOS];
+		}
+
+		/**
+		 * @return total time spent linking programs and loading binaries, in nanoseconds.
+		 */
+		public long getLinkNanos() {
+			return values[LINK_NANOS];
+		}
+
+		/**
+		 * @return programs deleted to stay within the program capacity.
+		 */
+		public long getProgramEvictions() {
+			return values[PROGRAM_EVICTIONS];
+		}
+
+		/**
+		 * @return evicted programs built again because they were bound.
+		 */
+		public long getProgramRebuilds() {
+			return values[PROGRAM_REBUILDS];
+		}
+
+		/**
+		 * @return glBindTexture calls issued by the manager.
+		 */
+		public long getTextureBinds() {
+			return values[TEXTURE_BINDS];
+		}
+
+		/**
+		 * @return texture binds skipped because the unit already had the texture.
+		 */
+		public long getTextureBindsSkipped() {
+			return values[TEXTURE_BINDS_SKIPPED];
+		}
+
+		/**
+		 * @return programs the manager holds in the driver right now.
+		 */
+		public long getResidentPrograms() {
+			return values[RESIDENT_PROGRAMS];
+		}
+
+		/**
+		 * @return bytes of compressed source kept to rebuild evicted programs.
+		 */
+		public long getRetainedSourceBytes() {
+			return values[RETAINED_SOURCE_BYTES];
+		}
+
+		/**
+		 * @return shader keys the snapshot has per program values for.
+		 */
+		public Iterable<String> getKeys() {
+			return Collections.unmodifiableSet(ids.keySet());
+		}
+
+		/**
+		 * @return bind calls of the shader, 0 for an unknown key.
+		 */
+		public long getBinds(String key) {
+			return program(key, BINDS);
+		}
+
+		/**
+		 * @return compile time of the current program of the shader, in nanoseconds.
+		 */
+		public long getCompileNanos(String key) {
+			return program(key, PROGRAM_COMPILE_NANOS);
+		}
+
+		/**
+		 * @return link time of the current program of the shader, in nanoseconds.
+		 */
+		public long getLinkNanos(String key) {
+			return program(key, PROGRAM_LINK_NANOS);
+		}
+
+		private long program(String key, int field) {
+			Integer id = ids.get(key);
+			return (id == null) ? 0 : programs[id * PROGRAM_STRIDE + field];
+		}
+
+		@Override
+		public String toString() {
+			return "ShaderMetrics[" + values[UNIFORM_UPLOADS_ISSUED] + " uploads issued, "
+					+ values[UNIFORM_UPLOADS_SKIPPED] + " skipped, "
+					+ values[PROGRAM_SWITCHES] + " program switches, "
+					+ values[SHADERS_BUILT] + " shaders built, "
+					+ (values[FAILED_COMPILES] + values[FAILED_LINKS]) + " failed, "
+					+ (values[COMPILE_NANOS] / 1000000.0) + " ms compiling, "
+					+ (values[LINK_NANOS] / 1000000.0) + " ms linking, "
+					+ values[RESIDENT_PROGRAMS] + " resident, "
+					+ values[PROGRAM_EVICTIONS] + " evicted, "
+					+ values[PROGRAM_REBUILDS] + " rebuilt, "
+					+ values[TEXTURE_BINDS] + " texture binds, "
+					+ values[TEXTURE_BINDS_SKIPPED] + " skipped]";
+		}
+	}
+}
@@ -0,0 +1,74 @@
+/**
+ *	Author: Jack Ramey
+ *	File: ShaderMetricsMXBean.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import java.util.Map;
+
+/**
+ * JMX view of the ShaderManager counters. Registered with
+ * ShaderManager.registerMetricsMBean under {@link ShaderMetrics#OBJECT_NAME}.
+ */
+public interface ShaderMetricsMXBean {
+
+	long getUniformUploadsIssued();
+
+	long getUniformUploadsSkipped();
+
+	long getProgramSwitches();
+
+	long getUniformLocationQueries();
+
+	long getShadersBuilt();
+
+	long getFailedCompiles();
+
+	long getFailedLinks();
+
+	long getCompileNanos();
+
+	long getLinkNanos();
+
+	long getProgramEvictions();
+
+	long getProgramRebuilds();
+
+	long getTextureBinds();
+
+	long getTextureBindsSkipped();
+
+	long getResidentPrograms();
+
+	long getRetainedSourceBytes();
+
+	/**
+	 * @return bind calls per shader key.
+	 */
+	Map<String, Long> getProgramBinds();
+
+	/**
+	 * @return compile time of the current program of every shader key, in nanoseconds.
+	 */
+	Map<String, Long> getProgramCompileNanos();
+
+	/**
+	 * @return link time of the current program of every shader key, in nanoseconds.
+	 */
+	Map<String, Long> getProgramLinkNanos();
+}
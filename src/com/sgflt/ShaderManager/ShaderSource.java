@@ -0,0 +1,286 @@
+/**
+ *	Author: Jack Ramey
+ *	File: ShaderSource.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.lwjgl.BufferUtils;
+
+/**
+ * Shader source held as ASCII or UTF-8 bytes in a direct buffer. The bytes are
+ * handed to glShaderSource as they are, so a source read from a file never
+ * becomes a String: nothing is decoded, encoded again or copied on the heap.
+ *
+ * Example:
+ * <pre>
+ * ShaderSource vert = ShaderSource.read("res/hemisphere.vert");
+ * ShaderSource frag = ShaderSource.resource("shaders/basic.frag");
+ * ShaderManager.createShader("hemi", vert, frag);
+ * </pre>
+ *
+ * A source is immutable and can be handed between threads, so the bulk loader
+ * reads a whole directory on worker threads while the GL thread compiles.
+ */
+public final class ShaderSource {
+
+	private final String name;
+	//Source bytes from position 0 to the limit. Never moved, only duplicated.
+	private final ByteBuffer bytes;
+	//SourceHash of the bytes, 0 until it is first asked for
+	private long hash = 0;
+
+	private ShaderSource(String name, ByteBuffer bytes) {
+		this.name = name;
+		this.bytes = bytes;
+	}
+
+	/**
+	 * Read a source file straight into a direct buffer. Includes are not
+	 * resolved, use a ShaderSourceLoader for that.
+	 *
+	 * The file is read rather than memory-mapped. A mapping would stay in place
+	 * until the buffer is collected, keeping the file locked on Windows so an
+	 * editor could not save it during hot reload. A file truncated while mapped
+	 * would also crash the JVM on the next access instead of failing here.
+	 *
+	 * @param path Path of the shader source file.
+	 * @return ShaderSource holding the file in a direct buffer.
+	 * @throws IOException If the file could not be read.
+	 */
+	public static ShaderSource read(Path path) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			if(size > Integer.MAX_VALUE) {
+				throw new IOException("Shader source too large: " + path);
+			}
+			ByteBuffer buffer = BufferUtils.createByteBuffer((int) size);
+			//A file that shrank meanwhile ends early, the limit is what was read
+			while(buffer.hasRemaining() && channel.read(buffer) >= 0) {
+			}
+			buffer.flip();
+			return new ShaderSource(path.toString(), buffer);
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Read a source file straight into a direct buffer.
+	 *
+	 * @param path Path of the shader source file.
+	 * @return ShaderSource holding the file in a direct buffer.
+	 * @throws IOException If the file could not be read.
+	 */
+	public static ShaderSource read(String path) throws IOException {
+		return read(Paths.get(path));
+	}
+
+	/**
+	 * Read a source from the classpath of the class loader that loaded the library.
+	 *
+	 * @param name Resource name, like shaders/basic.frag.
+	 * @return ShaderSource holding the resource in a direct buffer.
+	 * @throws IOException If the resource does not exist or could not be read.
+	 */
+	public static ShaderSource resource(String name) throws IOException {
+		return resource(ShaderSource.class.getClassLoader(), name);
+	}
+
+	/**
+	 * Read a source from the classpath straight into a direct buffer.
+	 *
+	 * @param loader ClassLoader to find the resource with.
+	 * @param name Resource name, like shaders/basic.frag.
+	 * @return ShaderSource holding the resource in a direct buffer.
+	 * @throws IOException If the resource does not exist or could not be read.
+	 */
+	public static ShaderSource resource(ClassLoader loader, String name) throws IOException {
+		InputStream in = loader.getResourceAsStream(name);
+		if(in == null) {
+			throw new IOException("Shader resource not found: " + name);
+		}
+		try {
+			ByteBuffer buffer = BufferUtils.createByteBuffer(Math.max(in.available(), 4096));
+			byte[] chunk = new byte[4096];
+			int n;
+			while((n = in.read(chunk)) != -1) {
+				if(buffer.remaining() < n) {
+					ByteBuffer grown = BufferUtils.createByteBuffer(buffer.capacity() * 2 + n);
+					buffer.flip();
+					grown.put(buffer);
+					buffer = grown;
+				}
+				buffer.put(chunk, 0, n);
+			}
+			buffer.flip();
+			return new ShaderSource(name, buffer);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Use the remaining bytes of a buffer as a source. A direct buffer is used
+	 * without copying and must not be changed afterwards; a heap buffer is
+	 * copied into a direct one.
+	 *
+	 * @param bytes ASCII or UTF-8 source.
+	 * @return ShaderSource of the bytes.
+	 */
+	public static ShaderSource wrap(ByteBuffer bytes) {
+		ByteBuffer source;
+		if(bytes.isDirect()) {
+			source = bytes.slice();
+		} else {
+			source = BufferUtils.createByteBuffer(bytes.remaining());
+			source.put(bytes.duplicate());
+			source.flip();
+		}
+		return new ShaderSource("<buffer>", source);
+	}
+
+	/**
+	 * Encode a source held as text. This is the copy the other factories avoid,
+	 * it is what every String source costs.
+	 *
+	 * @param source Shader source code.
+	 * @return ShaderSource of the UTF-8 bytes of the text.
+	 */
+	public static ShaderSource of(CharSequence source) {
+		byte[] encoded = source.toString().getBytes(StandardCharsets.UTF_8);
+		ByteBuffer buffer = BufferUtils.createByteBuffer(encoded.length);
+		buffer.put(encoded);
+		buffer.flip();
+		return new ShaderSource("<string>", buffer);
+	}
+
+	/**
+	 * Read every file of a directory and its subdirectories whose name matches a
+	 * glob, in parallel. Each file is read into its direct buffer on the executor,
+	 * so the GL thread never waits on the disk when it compiles the source.
+	 *
+	 * Example:
+	 * <pre>
+	 * ExecutorService io = Executors.newFixedThreadPool(4);
+	 * Map&lt;Path, Future&lt;ShaderSource&gt;&gt; sources = ShaderSource.loadDirectory(Paths.get("res"), "*.{vert,frag}", io);
+	 * </pre>
+	 *
+	 * @param directory Directory to read.
+	 * @param glob Pattern the file names have to match, like *.glsl.
+	 * @param executor Executor that reads the files.
+	 * @return Future source of every matching file by its normalized path, in directory order.
+	 * @throws IOException If the directory could not be listed.
+	 */
+	public static Map<Path, Future<ShaderSource>> loadDirectory(Path directory, String glob, ExecutorService executor)
+			throws IOException {
+		final PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+		final List<Path> paths = new ArrayList<Path>();
+		Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				if(attrs.isRegularFile() && matcher.matches(file.getFileName())) {
+					paths.add(ShaderSourceLoader.normalize(file));
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		Map<Path, Future<ShaderSource>> sources = new LinkedHashMap<Path, Future<ShaderSource>>();
+		for(final Path path : paths) {
+			sources.put(path, executor.submit(new Callable<ShaderSource>() {
+				@Override
+				public ShaderSource call() throws IOException {
+					return read(path);
+				}
+			}));
+		}
+		return sources;
+	}
+
+	/**
+	 * @return the source bytes, from position 0 to the limit. The buffer is a
+	 * 			view that can be moved freely, its contents must not be changed.
+	 */
+	public ByteBuffer bytes() {
+		return bytes.duplicate();
+	}
+
+	/**
+	 * @return length of the source in bytes.
+	 */
+	public int length() {
+		return bytes.limit();
+	}
+
+	/**
+	 * SourceHash of the bytes, computed once. For ASCII text it is the hash of
+	 * the same text as a String, so both forms share stages and cached binaries.
+	 */
+	long hash(long seed) {
+		if(seed == SourceHash.SEED) {
+			if(hash == 0) {
+				hash = SourceHash.hash(SourceHash.SEED, bytes);
+			}
+			return hash;
+		}
+		return SourceHash.hash(seed, bytes);
+	}
+
+	/**
+	 * Decode the source into a String, for code that has to edit it.
+	 *
+	 * @return the source text.
+	 */
+	public String asString() {
+		return StandardCharsets.UTF_8.decode(bytes.duplicate()).toString();
+	}
+
+	/**
+	 * @return the file or resource the source was read from.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public String toString() {
+		return "ShaderSource[" + name + ", " + length() + " bytes]";
+	}
+}
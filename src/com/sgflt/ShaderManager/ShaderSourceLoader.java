@@ -0,0 +1,345 @@
+/**
+ *	Author: Jack Ramey
+ *	File: ShaderSourceLoader.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Loads shader source files and resolves <code>#include "file"</code> directives.
+ * Included paths are relative to the file that includes them.
+ *
+ * Every file is read and parsed once and kept in a cache together with the
+ * include graph. When a file changes only the cached sources that depend on it
+ * are dropped, so only those programs have to be preprocessed and compiled again.
+ * A file is included at most once into any source, which makes shared chunks
+ * safe to include from several places.
+ *
+ * Every spliced file is framed by <code>#line</code> directives so compiler
+ * errors name the line in the file it came from. Each file of a source gets its
+ * own source string number, the loaded file being 0, and getSourceFiles maps
+ * the numbers back to paths. The directives follow GLSL 3.30 and later, where
+ * <code>#line n</code> numbers the line after it n; older compilers report
+ * lines in included files one too high.
+ *
+ * Example:
+ * <pre>
+ * ShaderSourceLoader loader = new ShaderSourceLoader();
+ * ShaderManager.createShaderFromFiles("hemi", loader, "res/hemisphere.vert", "res/basic.frag");
+ * //...after editing res/lighting.glsl
+ * ShaderManager.reloadChangedShaders();
+ * </pre>
+ */
+public final class ShaderSourceLoader {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final String INCLUDE = "#include";
+
+	/*
+	 * A parsed file. The text is split around its include directives:
+	 * chunks[0], includes[0], chunks[1], includes[1], ... chunks[n].
+	 * lines[i] is the line number of the directive of includes[i].
+	 */
+	private static final class SourceFile {
+		final String[] chunks;
+		final Path[] includes;
+		final int[] lines;
+		final long lastModified;
+
+		SourceFile(String[] chunks, Path[] includes, int[] lines, long lastModified) {
+			this.chunks = chunks;
+			this.includes = includes;
+			this.lines = lines;
+			this.lastModified = lastModified;
+		}
+	}
+
+	//Parsed files
+	private final Map<Path, SourceFile> files = new HashMap<Path, SourceFile>();
+	//Fully expanded sources of the files that were loaded as roots
+	private final Map<Path, String> expanded = new HashMap<Path, String>();
+	//Files of every expanded source, in source string order
+	private final Map<Path, List<Path>> sourceFiles = new HashMap<Path, List<Path>>();
+	//Reverse include edges: file -> files that include it directly
+	private final Map<Path, Set<Path>> dependents = new HashMap<Path, Set<Path>>();
+	//Statistics
+	private int filesRead = 0;
+	private int cacheHits = 0;
+	private long preprocessNanos = 0;
+
+	/**
+	 * Load a shader source with all of its includes resolved.
+	 *
+	 * @param path Path of the shader source file.
+	 * @return Source code ready to be compiled.
+	 * @throws IOException If a file could not be read or the includes form a cycle.
+	 */
+	public String load(String path) throws IOException {
+		return load(Paths.get(path));
+	}
+
+	/**
+	 * Load a shader source with all of its includes resolved.
+	 *
+	 * @param path Path of the shader source file.
+	 * @return Source code ready to be compiled.
+	 * @throws IOException If a file could not be read or the includes form a cycle.
+	 */
+	public String load(Path path) throws IOException {
+		Path root = normalize(path);
+		String source = expanded.get(root);
+		if(source != null) {
+			cacheHits++;
+			return source;
+		}
+		long start = System.nanoTime();
+		StringBuilder sb = new StringBuilder();
+		List<Path> included = new ArrayList<Path>();
+		expand(root, sb, included, new ArrayList<Path>());
+		source = sb.toString();
+		expanded.put(root, source);
+		sourceFiles.put(root, Collections.unmodifiableList(included));
+		preprocessNanos += System.nanoTime() - start;
+		return source;
+	}
+
+	/*
+	 * Append a file and its includes. included holds every file already in this
+	 * source, its index being the source string number of the file, and stack
+	 * the chain of files currently being expanded.
+	 */
+	private void expand(Path path, StringBuilder sb, List<Path> included, List<Path> stack) throws IOException {
+		if(stack.contains(path)) {
+			throw new IOException("Include cycle: " + stack + " -> " + path);
+		}
+		int number = included.size();
+		included.add(path);
+		stack.add(path);
+		SourceFile file = parse(path);
+		for(int i = 0; i < file.includes.length; i++) {
+			sb.append(file.chunks[i]);
+			if(included.contains(file.includes[i]) && !stack.contains(file.includes[i])) {
+				//Keep the line of the skipped directive so the lines after it stay numbered
+				sb.append('\n');
+				continue;
+			}
+			sb.append("#line 1 ").append(included.size()).append('\n');
+			expand(file.includes[i], sb, included, stack);
+			sb.append("#line ").append(file.lines[i] + 1).append(' ').append(number).append('\n');
+		}
+		sb.append(file.chunks[file.includes.length]);
+		stack.remove(stack.size() - 1);
+	}
+
+	/*
+	 * Parsed form of a file, read from disk only if it is not cached.
+	 */
+	private SourceFile parse(Path path) throws IOException {
+		SourceFile file = files.get(path);
+		if(file != null) {
+			cacheHits++;
+			return file;
+		}
+		long lastModified = Files.getLastModifiedTime(path).toMillis();
+		String text = new String(Files.readAllBytes(path), UTF8);
+		filesRead++;
+
+		List<String> chunks = new ArrayList<String>();
+		List<Path> includes = new ArrayList<Path>();
+		List<Integer> lines = new ArrayList<Integer>();
+		Path dir = path.getParent();
+		int chunkStart = 0;
+		int lineStart = 0;
+		int lineNumber = 1;
+		int length = text.length();
+		while(lineStart < length) {
+			int lineEnd = text.indexOf('\n', lineStart);
+			int next = (lineEnd == -1) ? length : lineEnd + 1;
+			String line = text.substring(lineStart, (lineEnd == -1) ? length : lineEnd).trim();
+			if(line.startsWith(INCLUDE)) {
+				int open = line.indexOf('"', INCLUDE.length());
+				int close = (open == -1) ? -1 : line.indexOf('"', open + 1);
+				if(close == -1) {
+					throw new IOException(path + ": malformed include: " + line);
+				}
+				String name = line.substring(open + 1, close);
+				if(name.isEmpty()) {
+					throw new IOException(path + ": empty include: " + line);
+				}
+				Path include = normalize((dir == null) ? Paths.get(name) : dir.resolve(name));
+				chunks.add(text.substring(chunkStart, lineStart));
+				includes.add(include);
+				lines.add(lineNumber);
+				chunkStart = next;
+				Set<Path> users = dependents.get(include);
+				if(users == null) {
+					users = new HashSet<Path>();
+					dependents.put(include, users);
+				}
+				users.add(path);
+			}
+			lineStart = next;
+			lineNumber++;
+		}
+		//Keep included chunks on their own lines
+		String tail = text.substring(chunkStart);
+		if(!tail.endsWith("\n")) {
+			tail = tail + "\n";
+		}
+		chunks.add(tail);
+
+		int[] includeLines = new int[lines.size()];
+		for(int i = 0; i < includeLines.length; i++) {
+			includeLines[i] = lines.get(i);
+		}
+		file = new SourceFile(chunks.toArray(new String[chunks.size()]), includes.toArray(new Path[includes.size()]), includeLines, lastModified);
+		files.put(path, file);
+		return file;
+	}
+
+	/**
+	 * Drop a file from the cache along with every cached source that includes it,
+	 * directly or through other includes.
+	 *
+	 * @param path Path of the file that changed.
+	 * @return Paths of the loaded sources that have to be loaded again.
+	 */
+	public Set<Path> invalidate(Path path) {
+		Path changed = normalize(path);
+		SourceFile file = files.remove(changed);
+		if(file != null) {
+			//Its includes get their edges back when the file is parsed again
+			for(Path include : file.includes) {
+				Set<Path> users = dependents.get(include);
+				if(users != null) {
+					users.remove(changed);
+				}
+			}
+		}
+		//Files including it are unchanged, only their expanded sources are stale
+		Set<Path> affected = new LinkedHashSet<Path>();
+		dropExpanded(changed, affected, new HashSet<Path>());
+		return affected;
+	}
+
+	private void dropExpanded(Path path, Set<Path> affected, Set<Path> visited) {
+		if(!visited.add(path)) {
+			return;
+		}
+		if(expanded.remove(path) != null) {
+			sourceFiles.remove(path);
+			affected.add(path);
+		}
+		Set<Path> users = dependents.get(path);
+		if(users != null) {
+			for(Path user : users) {
+				dropExpanded(user, affected, visited);
+			}
+		}
+	}
+
+	/**
+	 * Check every cached file for changes on disk and invalidate the ones that
+	 * changed or disappeared. Costs one file stat per cached file.
+	 *
+	 * @return Paths of the loaded sources that have to be loaded again.
+	 */
+	public Set<Path> refresh() {
+		List<Path> changed = new ArrayList<Path>();
+		for(Map.Entry<Path, SourceFile> e : files.entrySet()) {
+			long lastModified;
+			try {
+				lastModified = Files.getLastModifiedTime(e.getKey()).toMillis();
+			} catch(IOException ex) {
+				lastModified = -1;
+			}
+			if(lastModified != e.getValue().lastModified) {
+				changed.add(e.getKey());
+			}
+		}
+		Set<Path> affected = new LinkedHashSet<Path>();
+		for(Path path : changed) {
+			affected.addAll(invalidate(path));
+		}
+		return affected;
+	}
+
+	/**
+	 * Normalize a path the way the loader keys its cache.
+	 *
+	 * @param path Path of a shader source file.
+	 * @return Absolute, normalized path.
+	 */
+	public static Path normalize(Path path) {
+		return path.toAbsolutePath().normalize();
+	}
+
+	/**
+	 * Files that make up a loaded source, indexed by the source string number
+	 * its #line directives give them. Use it to find the file a compiler error
+	 * is reported against.
+	 *
+	 * @param path Path of a loaded shader source file.
+	 * @return Files in source string order, the loaded file first, or null if
+	 * 			the source is not cached.
+	 */
+	public List<Path> getSourceFiles(Path path) {
+		return sourceFiles.get(normalize(path));
+	}
+
+	//GETTERS
+	/**
+	 * @return number of files read from disk.
+	 */
+	public int getFilesRead() {
+		return filesRead;
+	}
+
+	/**
+	 * @return number of files and expanded sources served from the cache.
+	 */
+	public int getCacheHits() {
+		return cacheHits;
+	}
+
+	/**
+	 * @return total time spent reading and preprocessing sources, in nanoseconds.
+	 */
+	public long getPreprocessNanos() {
+		return preprocessNanos;
+	}
+
+	@Override
+	public String toString() {
+		return "ShaderSourceLoader[" + filesRead + " files read, " + cacheHits + " cache hits, "
+				+ (preprocessNanos / 1000000.0) + " ms preprocessing]";
+	}
+}
@@ -0,0 +1,130 @@
+/**
+ *	Author: Jack Ramey
+ *	File: ShaderStageCache.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL20;
+
+/**
+ * Compiled shader stages shared between programs. A stage is keyed by its type
+ * and a hash of its source, so programs with the same vertex shader compile it
+ * once. Every program holding a stage counts as a reference, and the shader
+ * object is deleted when the last program holding it is.
+ */
+final class ShaderStageCache {
+
+	/*
+	 * A shader object and the programs that use it.
+	 */
+	static final class Stage {
+		final int shader;
+		final int type;
+		//Length of the source, checked on a hit next to the hash. The source is not kept.
+		final int length;
+		//Programs holding the stage
+		int references = 1;
+		//Compile status, queried once. -1 until then.
+		int status = -1;
+		//Cache key, or 0 for a stage whose hash collided with another source
+		final long key;
+
+		Stage(int shader, int type, int length, long key) {
+			this.shader = shader;
+			this.type = type;
+			this.length = length;
+			this.key = key;
+		}
+	}
+
+	private final LongObjectMap<Stage> stages = new LongObjectMap<Stage>();
+	//Stages shared instead of compiled
+	private long hits = 0;
+
+	/*
+	 * Type and source hashed together. 0 is reserved for uncached stages.
+	 */
+	private static long key(int type, ShaderSource source) {
+		long key = source.hash(SourceHash.SEED) ^ (type * 0x9E3779B97F4A7C15L);
+		return (key == 0) ? 1 : key;
+	}
+
+	/**
+	 * Get a stage for the source, sharing a compiled one if there is one. A new
+	 * stage is compiled without asking for its status, so batches stay parallel.
+	 * The caller holds a reference and must release it.
+	 */
+	Stage acquire(int type, ShaderSource source) {
+		long key = key(type, source);
+		Stage stage = stages.get(key);
+		//Sources are not kept, a 64 bit hash of the same type and length is taken as the same source
+		if(stage != null && stage.type == type && stage.length == source.length()) {
+			stage.references++;
+			hits++;
+			return stage;
+		}
+		int shader = Backend.GL.createShader(type);
+		Backend.GL.shaderSource(shader, source.bytes());
+		Backend.GL.compileShader(shader);
+		if(stage != null) {
+			//Hash collision, the new stage is not shared
+			return new Stage(shader, type, source.length(), 0);
+		}
+		stage = new Stage(shader, type, source.length(), key);
+		stages.put(key, stage);
+		return stage;
+	}
+
+	/**
+	 * Compile status of a stage. Asked from the driver the first time only.
+	 */
+	static boolean isCompiled(Stage stage) {
+		if(stage.status == -1) {
+			stage.status = Backend.GL.getShader(stage.shader, GL20.GL_COMPILE_STATUS);
+		}
+		return stage.status == GL11.GL_TRUE;
+	}
+
+	/**
+	 * Drop a reference to a stage, deleting the shader object with the last one.
+	 */
+	void release(Stage stage) {
+		if(--stage.references > 0) {
+			return;
+		}
+		if(stage.key != 0) {
+			stages.remove(stage.key);
+		}
+		Backend.GL.deleteShader(stage.shader);
+	}
+
+	/**
+	 * @return number of shared stages alive.
+	 */
+	int size() {
+		return stages.size();
+	}
+
+	/**
+	 * @return number of stages that were shared instead of compiled.
+	 */
+	long getHits() {
+		return hits;
+	}
+}
@@ -0,0 +1,106 @@
+/**
+ *	Author: Jack Ramey
+ *	File: ShaderType.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL32;
+import org.lwjgl.opengl.GL40;
+import org.lwjgl.opengl.GL43;
+
+/**
+ * Stage of a shader program, in pipeline order. A program is either a compute
+ * shader on its own, or a vertex shader with any of the other graphics stages.
+ */
+public enum ShaderType {
+	VERTEX(GL20.GL_VERTEX_SHADER, "Vertex", null, null),
+	TESS_CONTROL(GL40.GL_TESS_CONTROL_SHADER, "Tessellation control", "OpenGL40", "GL_ARB_tessellation_shader"),
+	TESS_EVALUATION(GL40.GL_TESS_EVALUATION_SHADER, "Tessellation evaluation", "OpenGL40", "GL_ARB_tessellation_shader"),
+	GEOMETRY(GL32.GL_GEOMETRY_SHADER, "Geometry", "OpenGL32", "GL_ARB_geometry_shader4"),
+	FRAGMENT(GL20.GL_FRAGMENT_SHADER, "Fragment", null, null),
+	COMPUTE(GL43.GL_COMPUTE_SHADER, "Compute", "OpenGL43", "GL_ARB_compute_shader");
+
+	//values() copies the array every call
+	static final ShaderType[] VALUES = values();
+	static final int COUNT = VALUES.length;
+
+	//GL shader type, like GL_VERTEX_SHADER
+	final int glType;
+	private final String label;
+	//Core version and extension that provide the stage, null if every context has it
+	private final String version;
+	private final String extension;
+
+	private ShaderType(int glType, String label, String version, String extension) {
+		this.glType = glType;
+		this.label = label;
+		this.version = version;
+		this.extension = extension;
+	}
+
+	/**
+	 * @return the GL shader type, like GL_VERTEX_SHADER.
+	 */
+	public int getGLType() {
+		return glType;
+	}
+
+	/**
+	 * @return name of the stage in messages, like "Geometry".
+	 */
+	String getLabel() {
+		return label;
+	}
+
+	/*
+	 * Check if the context can compile the stage. Asked once per program built.
+	 */
+	boolean isSupported() {
+		return version == null || Backend.GL.isSupported(version) || Backend.GL.isSupported(extension);
+	}
+
+	/**
+	 * Check that a set of stages, indexed by ordinal, makes a program and that
+	 * the context supports every stage.
+	 *
+	 * @throws IllegalArgumentException If it does not.
+	 */
+	static void check(ShaderSource[] stages) throws IllegalArgumentException {
+		boolean compute = stages[COMPUTE.ordinal()] != null;
+		int count = 0;
+		for(ShaderType type : VALUES) {
+			if(stages[type.ordinal()] == null) {
+				continue;
+			}
+			count++;
+			if(!type.isSupported()) {
+				throw new IllegalArgumentException(type.label + " shaders need " + type.version + " or " + type.extension + ".");
+			}
+		}
+		if(compute && count > 1) {
+			throw new IllegalArgumentException("A compute shader can not be linked with other stages.");
+		}
+		if(!compute && stages[VERTEX.ordinal()] == null) {
+			throw new IllegalArgumentException("A program needs a vertex shader or a compute shader.");
+		}
+		if(stages[TESS_CONTROL.ordinal()] != null && stages[TESS_EVALUATION.ordinal()] == null) {
+			throw new IllegalArgumentException("A tessellation control shader needs a tessellation evaluation shader.");
+		}
+	}
+}
@@ -0,0 +1,194 @@
+/**
+ *	Author: Jack Ramey
+ *	File: ShaderVariants.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+/**
+ * Permutations of a base shader that differ only by <code>#define</code> keywords.
+ * A variant is selected with a bitmask where bit i turns on keyword i, so no
+ * String has to be built to find it. Each variant is compiled the first time it
+ * is asked for and cached after that, so only the permutations that are actually
+ * used cost compile time and driver memory.
+ *
+ * Example:
+ * <pre>
+ * ShaderVariants lit = ShaderManager.registerVariants("lit", vertSource, fragSource, "FOG", "SKINNING", "SHADOWS");
+ * long FOG = 1L &lt;&lt; 0, SHADOWS = 1L &lt;&lt; 2;
+ * ShaderManager.bind(lit.get(FOG | SHADOWS));
+ * </pre>
+ */
+public final class ShaderVariants {
+
+	private final ShaderManager manager;
+	private final String key;
+	private final String vertexShaderSource;
+	private final String fragmentShaderSource;
+	private final String[] keywords;
+	//Bits that map to a keyword
+	private final long validBits;
+	private final LongObjectMap<ShaderHandle> variants = new LongObjectMap<ShaderHandle>();
+
+	ShaderVariants(ShaderManager manager, String key, String vertexShaderSource, String fragmentShaderSource, String[] keywords) {
+		if(keywords.length > 64) {
+			throw new IllegalArgumentException("A shader can have at most 64 variant keywords.");
+		}
+		this.manager = manager;
+		this.key = key;
+		this.vertexShaderSource = vertexShaderSource;
+		this.fragmentShaderSource = fragmentShaderSource;
+		this.keywords = keywords.clone();
+		this.validBits = (keywords.length == 64) ? -1L : (1L << keywords.length) - 1;
+	}
+
+	/**
+	 * Get the variant for a set of keywords, compiling it if this is the first time
+	 * it is asked for.
+	 *
+	 * @param mask Bitmask of the keywords to define. Bit i defines keyword i.
+	 * @return ShaderHandle of the variant.
+	 * @throws IllegalArgumentException If the mask has bits without a keyword or the
+	 * 						variant failed to compile or link.
+	 */
+	public ShaderHandle get(long mask) throws IllegalArgumentException {
+		ShaderHandle handle = variants.get(mask);
+		if(handle == null) {
+			handle = compile(mask);
+		}
+		return handle;
+	}
+
+	/**
+	 * Check if a variant has been compiled already.
+	 *
+	 * @param mask Bitmask of the keywords.
+	 * @return true if get will not compile.
+	 */
+	public boolean isCompiled(long mask) {
+		return variants.get(mask) != null;
+	}
+
+	private ShaderHandle compile(long mask) {
+		if((mask & ~validBits) != 0) {
+			throw new IllegalArgumentException("Variant mask 0x" + Long.toHexString(mask) + " has bits without a keyword.");
+		}
+		String defines = defines(mask);
+		ShaderHandle handle = manager.createShader(variantKey(mask),
+				inject(vertexShaderSource, defines), inject(fragmentShaderSource, defines));
+		variants.put(mask, handle);
+		return handle;
+	}
+
+	/**
+	 * Key the variant is registered with in the manager.
+	 *
+	 * @param mask Bitmask of the keywords.
+	 * @return base key followed by the mask in hex.
+	 */
+	public String variantKey(long mask) {
+		return key + "#" + Long.toHexString(mask);
+	}
+
+	private String defines(long mask) {
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < keywords.length; i++) {
+			if((mask & (1L << i)) != 0) {
+				sb.append("#define ").append(keywords[i]).append(" 1\n");
+			}
+		}
+		return sb.toString();
+	}
+
+	/*
+	 * Put the defines at the top of the source, but after #version which has to come
+	 * first. Comments and whitespace may come before #version, like a license header.
+	 */
+	static String inject(String source, String defines) {
+		if(defines.isEmpty()) {
+			return source;
+		}
+		int end = versionLineEnd(source);
+		if(end == -1) {
+			return defines + source;
+		}
+		if(end == source.length()) {
+			return source + "\n" + defines;
+		}
+		return source.substring(0, end + 1) + defines + source.substring(end + 1);
+	}
+
+	/*
+	 * Index of the newline ending the #version line (the length of the source if
+	 * nothing follows it), or -1 if the first thing after comments and whitespace
+	 * is not a #version directive.
+	 */
+	private static int versionLineEnd(String source) {
+		int n = source.length();
+		int i = 0;
+		while(i < n) {
+			char c = source.charAt(i);
+			if(Character.isWhitespace(c)) {
+				i++;
+			} else if(source.startsWith("//", i)) {
+				int eol = source.indexOf('\n', i);
+				i = (eol == -1) ? n : eol + 1;
+			} else if(source.startsWith("/*", i)) {
+				int close = source.indexOf("*/", i + 2);
+				if(close == -1) {
+					return -1;
+				}
+				i = close + 2;
+			} else {
+				break;
+			}
+		}
+		if(i == n || source.charAt(i) != '#') {
+			return -1;
+		}
+		//The preprocessor allows blanks between # and the directive
+		int d = i + 1;
+		while(d < n && (source.charAt(d) == ' ' || source.charAt(d) == '\t')) {
+			d++;
+		}
+		if(!source.startsWith("version", d)) {
+			return -1;
+		}
+		int eol = source.indexOf('\n', d);
+		return (eol == -1) ? n : eol;
+	}
+
+	//GETTERS
+	public String getKey() {
+		return key;
+	}
+
+	public int getKeywordCount() {
+		return keywords.length;
+	}
+
+	public String getKeyword(int bit) {
+		return keywords[bit];
+	}
+
+	/**
+	 * @return number of variants compiled so far.
+	 */
+	public int getCompiledCount() {
+		return variants.size();
+	}
+}
@@ -0,0 +1,253 @@
+/**
+ *	Author: Jack Ramey
+ *	File: ShaderWarmup.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * Compiles shaders registered with ShaderManager.registerShader a few at a time,
+ * so a level can register all of its shaders at load without stalling a frame.
+ * Call tick once per frame with the time it may spend. Shaders are compiled in
+ * priority order, and a shader that is bound before its turn is compiled right
+ * away.
+ *
+ * Example:
+ * <pre>
+ * ShaderHandle water = ShaderManager.registerShader("water", waterVert, waterFrag, 10);
+ * ShaderHandle foliage = ShaderManager.registerShader("foliage", foliageVert, foliageFrag, 0);
+ * //every frame
+ * ShaderManager.getWarmup().tick(2000000);
+ * </pre>
+ *
+ * GL thread only.
+ */
+public final class ShaderWarmup {
+
+	/*
+	 * Sources of a registered shader waiting to be compiled.
+	 */
+	private static final class Entry implements Comparable<Entry> {
+		final int id;
+		final String key;
+		final ShaderSource vertexShaderSource;
+		final ShaderSource fragmentShaderSource;
+		final int priority;
+		//Registration order, breaks ties between equal priorities
+		final long order;
+
+		Entry(int id, String key, ShaderSource vertexShaderSource, ShaderSource fragmentShaderSource, int priority, long order) {
+			this.id = id;
+			this.key = key;
+			this.vertexShaderSource = vertexShaderSource;
+			this.fragmentShaderSource = fragmentShaderSource;
+			this.priority = priority;
+			this.order = order;
+		}
+
+		@Override
+		public int compareTo(Entry o) {
+			if(priority != o.priority) {
+				return (priority > o.priority) ? -1 : 1;
+			}
+			return (order < o.order) ? -1 : (order > o.order) ? 1 : 0;
+		}
+	}
+
+	private final ShaderManager manager;
+	private final PriorityQueue<Entry> queue = new PriorityQueue<Entry>();
+	//Waiting entry of every handle id, null once it is compiled. Queue entries
+	//that no longer match are stale and skipped.
+	private Entry[] waiting = new Entry[16];
+	private int queued = 0;
+	private long registered = 0;
+
+	//Stats
+	private long averageCompileNanos = 0;
+	private long lastTickNanos = 0;
+	private int lastTickCompiled = 0;
+	private long compiled = 0;
+	private long compiledOnBind = 0;
+	private long failed = 0;
+
+	ShaderWarmup(ShaderManager manager) {
+		this.manager = manager;
+	}
+
+	/*
+	 * Queue the sources of a handle, replacing any sources still waiting for it.
+	 */
+	void add(ShaderHandle handle, ShaderSource vertexShaderSource, ShaderSource fragmentShaderSource, int priority) {
+		int id = handle.id;
+		if(id >= waiting.length) {
+			waiting = Arrays.copyOf(waiting, Math.max(waiting.length * 2, id + 1));
+		}
+		if(waiting[id] == null) {
+			queued++;
+		}
+		Entry e = new Entry(id, handle.getKey(), vertexShaderSource, fragmentShaderSource, priority, registered++);
+		waiting[id] = e;
+		queue.add(e);
+	}
+
+	/*
+	 * Forget the sources waiting for a handle, because the shader was created directly.
+	 */
+	void remove(int id) {
+		if(id < waiting.length && waiting[id] != null) {
+			waiting[id] = null;
+			queued--;
+		}
+	}
+
+	/*
+	 * Check if a handle is still waiting to be compiled. On every bind, so only an array access.
+	 */
+	boolean isWaiting(int id) {
+		return id < waiting.length && waiting[id] != null;
+	}
+
+	/*
+	 * Compile a waiting shader now because it is being bound.
+	 *
+	 * @return false if it failed to compile.
+	 */
+	boolean compileNow(int id) {
+		compiledOnBind++;
+		return compile(waiting[id]);
+	}
+
+	private boolean compile(Entry e) {
+		long start = System.nanoTime();
+		boolean ok;
+		try {
+			manager.createShader(e.key, e.vertexShaderSource, e.fragmentShaderSource);
+			ok = true;
+		} catch(IllegalArgumentException ex) {
+			System.err.println("Failed to compile shader " + e.key + ": " + ex.getMessage());
+			failed++;
+			ok = false;
+		}
+		//createShader removes the entry when it succeeds, a failed shader is not retried
+		remove(e.id);
+		long nanos = System.nanoTime() - start;
+		averageCompileNanos = (averageCompileNanos == 0) ? nanos : (averageCompileNanos * 3 + nanos) / 4;
+		compiled++;
+		return ok;
+	}
+
+	/**
+	 * Compile waiting shaders, highest priority first, until about budgetNanos
+	 * have been spent. A compile is not started if the average compile time
+	 * would overrun the budget, but at least one shader is compiled per tick
+	 * if any are waiting.
+	 *
+	 * @param budgetNanos Time that may be spent compiling this frame.
+	 * @return number of shaders compiled.
+	 */
+	public int tick(long budgetNanos) {
+		long start = System.nanoTime();
+		int n = 0;
+		Entry e;
+		while((e = queue.peek()) != null) {
+			if(waiting[e.id] != e) {
+				//Compiled on bind, created directly or registered again
+				queue.poll();
+				continue;
+			}
+			long elapsed = System.nanoTime() - start;
+			if(n > 0 && elapsed + averageCompileNanos > budgetNanos) {
+				break;
+			}
+			queue.poll();
+			compile(e);
+			n++;
+		}
+		lastTickNanos = System.nanoTime() - start;
+		lastTickCompiled = n;
+		return n;
+	}
+
+	/**
+	 * Compile every waiting shader, for a loading screen.
+	 *
+	 * @return number of shaders compiled.
+	 */
+	public int finish() {
+		return tick(Long.MAX_VALUE);
+	}
+
+	//GETTERS
+	/**
+	 * @return number of shaders waiting to be compiled.
+	 */
+	public int getQueued() {
+		return queued;
+	}
+
+	/**
+	 * @return time the last tick took.
+	 */
+	public long getLastTickNanos() {
+		return lastTickNanos;
+	}
+
+	/**
+	 * @return number of shaders the last tick compiled.
+	 */
+	public int getLastTickCompiled() {
+		return lastTickCompiled;
+	}
+
+	/**
+	 * @return moving average of the time a compile takes, 0 before the first one.
+	 */
+	public long getAverageCompileNanos() {
+		return averageCompileNanos;
+	}
+
+	/**
+	 * @return number of shaders compiled by ticks and binds, including failed ones.
+	 */
+	public long getCompiled() {
+		return compiled;
+	}
+
+	/**
+	 * @return number of shaders that were bound before a tick got to them and
+	 * 			were compiled during the bind. Raise their priority if this grows.
+	 */
+	public long getCompiledOnBind() {
+		return compiledOnBind;
+	}
+
+	/**
+	 * @return number of shaders that failed to compile or link.
+	 */
+	public long getFailed() {
+		return failed;
+	}
+
+	@Override
+	public String toString() {
+		return "ShaderWarmup[queued=" + queued + ", lastTick=" + lastTickCompiled + " in " + lastTickNanos
+				+ "ns, compiled=" + compiled + ", onBind=" + compiledOnBind + ", failed=" + failed + "]";
+	}
+}
@@ -0,0 +1,100 @@
+/**
+ *	Author: Jack Ramey
+ *	File: SourceHash.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 64 bit FNV-1a hashing of shader source text. Hashes can be chained by passing
+ * the result of one call as the seed of the next.
+ */
+final class SourceHash {
+
+	static final long SEED = 0xcbf29ce484222325L;
+	private static final long PRIME = 0x100000001b3L;
+
+	private SourceHash() {
+		//Static utility class should never be instantiated!
+	}
+
+	/**
+	 * Hash a string, chaining from a previous hash. The length is mixed in as well
+	 * so that chained strings can not run into each other.
+	 *
+	 * @param seed SEED for the first string or the hash of the previous string.
+	 * @param s String to hash. null hashes like the empty string.
+	 * @return 64 bit hash.
+	 */
+	static long hash(long seed, CharSequence s) {
+		long h = seed;
+		int length = (s == null) ? 0 : s.length();
+		for(int i = 0; i < length; i++) {
+			char c = s.charAt(i);
+			h = (h ^ (c & 0xff)) * PRIME;
+			h = (h ^ (c >>> 8)) * PRIME;
+		}
+		h = (h ^ length) * PRIME;
+		return h;
+	}
+
+	/**
+	 * Hash the bytes of a buffer from 0 to its limit, chaining from a previous
+	 * hash. Every byte is hashed like a char below 256, so ASCII bytes hash the
+	 * same as the String of the same text.
+	 *
+	 * @param seed SEED for the first source or the hash of the previous one.
+	 * @param bytes Source bytes.
+	 * @return 64 bit hash.
+	 */
+	static long hash(long seed, ByteBuffer bytes) {
+		long h = seed;
+		int length = bytes.limit();
+		for(int i = 0; i < length; i++) {
+			h = (h ^ (bytes.get(i) & 0xff)) * PRIME;
+			h = h * PRIME;
+		}
+		h = (h ^ length) * PRIME;
+		return h;
+	}
+
+	/**
+	 * Hash the sources of a program, indexed by ShaderType ordinal. Stages other
+	 * than vertex and fragment mix in their type, so a vertex and fragment
+	 * program hashes the same as its two sources chained.
+	 *
+	 * @param seed SEED, or a hash to chain from.
+	 * @param stages Source of every stage, null for stages the program does not have.
+	 * @return 64 bit hash.
+	 */
+	static long hash(long seed, ShaderSource[] stages) {
+		long h = seed;
+		for(ShaderType type : ShaderType.VALUES) {
+			ShaderSource source = stages[type.ordinal()];
+			if(source == null) {
+				continue;
+			}
+			if(type != ShaderType.VERTEX && type != ShaderType.FRAGMENT) {
+				h = (h ^ type.glType) * PRIME;
+			}
+			h = source.hash(h);
+		}
+		return h;
+	}
+}
@@ -0,0 +1,202 @@
+/**
+ *	Author: Jack Ramey
+ *	File: Std140Writer.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import java.nio.ByteBuffer;
+
+import org.lwjgl.util.vector.Matrix4f;
+
+/**
+ * Writes values into a buffer following the std140 layout rules, so members can
+ * be written in the order they are declared in the GLSL block without working out
+ * any offsets by hand. The writer is reused and never allocates.
+ *
+ * std140 in short: scalars align to 4 bytes, vec2 to 8, vec3 and vec4 to 16.
+ * Every array element and every matrix column is padded to 16 bytes, and structs
+ * start and end on 16 bytes.
+ */
+public final class Std140Writer {
+
+	private final ByteBuffer buffer;
+	//Furthest byte written since the last reset
+	private int end = 0;
+
+	Std140Writer(ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	/**
+	 * Go back to the start of the block.
+	 *
+	 * @return this writer.
+	 */
+	public Std140Writer reset() {
+		buffer.position(0);
+		end = 0;
+		return this;
+	}
+
+	/**
+	 * Move to the next multiple of an alignment.
+	 *
+	 * @param alignment Alignment in bytes, a power of two.
+	 * @return this writer.
+	 */
+	public Std140Writer align(int alignment) {
+		int p = buffer.position();
+		buffer.position((p + alignment - 1) & -alignment);
+		return this;
+	}
+
+	/**
+	 * Move to an explicit offset, for example one reported by glGetActiveUniformsiv.
+	 *
+	 * @param offset Byte offset in the block.
+	 * @return this writer.
+	 */
+	public Std140Writer position(int offset) {
+		buffer.position(offset);
+		return this;
+	}
+
+	/**
+	 * Start or end a struct member. Structs are aligned like a vec4.
+	 *
+	 * @return this writer.
+	 */
+	public Std140Writer struct() {
+		return align(16);
+	}
+
+	public Std140Writer putFloat(float x) {
+		align(4);
+		buffer.putFloat(x);
+		return mark();
+	}
+
+	public Std140Writer putInt(int x) {
+		align(4);
+		buffer.putInt(x);
+		return mark();
+	}
+
+	/**
+	 * Write a bool. GLSL bools take 4 bytes in a block.
+	 */
+	public Std140Writer putBool(boolean b) {
+		return putInt(b ? 1 : 0);
+	}
+
+	public Std140Writer putVec2(float x, float y) {
+		align(8);
+		buffer.putFloat(x).putFloat(y);
+		return mark();
+	}
+
+	public Std140Writer putVec3(float x, float y, float z) {
+		align(16);
+		buffer.putFloat(x).putFloat(y).putFloat(z);
+		return mark();
+	}
+
+	public Std140Writer putVec4(float x, float y, float z, float w) {
+		align(16);
+		buffer.putFloat(x).putFloat(y).putFloat(z).putFloat(w);
+		return mark();
+	}
+
+	/**
+	 * Write a mat3 from 9 column major floats. Every column is padded to a vec4.
+	 */
+	public Std140Writer putMat3(float[] m, int offset) {
+		align(16);
+		for(int c = 0; c < 3; c++) {
+			int i = offset + c * 3;
+			buffer.putFloat(m[i]).putFloat(m[i + 1]).putFloat(m[i + 2]).putFloat(0.0f);
+		}
+		return mark();
+	}
+
+	/**
+	 * Write a mat4 from 16 column major floats.
+	 */
+	public Std140Writer putMat4(float[] m, int offset) {
+		align(16);
+		for(int i = offset; i < offset + 16; i++) {
+			buffer.putFloat(m[i]);
+		}
+		return mark();
+	}
+
+	/**
+	 * Write an LWJGL Matrix4f.
+	 */
+	public Std140Writer putMat4(Matrix4f m) {
+		align(16);
+		buffer.putFloat(m.m00).putFloat(m.m01).putFloat(m.m02).putFloat(m.m03);
+		buffer.putFloat(m.m10).putFloat(m.m11).putFloat(m.m12).putFloat(m.m13);
+		buffer.putFloat(m.m20).putFloat(m.m21).putFloat(m.m22).putFloat(m.m23);
+		buffer.putFloat(m.m30).putFloat(m.m31).putFloat(m.m32).putFloat(m.m33);
+		return mark();
+	}
+
+	/**
+	 * Write a float array. Every element is padded to 16 bytes.
+	 */
+	public Std140Writer putFloatArray(float[] values, int offset, int count) {
+		align(16);
+		for(int i = offset; i < offset + count; i++) {
+			buffer.putFloat(values[i]).putFloat(0.0f).putFloat(0.0f).putFloat(0.0f);
+		}
+		return mark();
+	}
+
+	/**
+	 * Write a vec4 array from 4 floats per element.
+	 */
+	public Std140Writer putVec4Array(float[] values, int offset, int count) {
+		align(16);
+		for(int i = offset; i < offset + count * 4; i++) {
+			buffer.putFloat(values[i]);
+		}
+		return mark();
+	}
+
+	private Std140Writer mark() {
+		if(buffer.position() > end) {
+			end = buffer.position();
+		}
+		return this;
+	}
+
+	/**
+	 * @return current byte offset in the block.
+	 */
+	public int position() {
+		return buffer.position();
+	}
+
+	/**
+	 * @return number of bytes up to the furthest byte written since the last reset.
+	 */
+	int written() {
+		return end;
+	}
+}
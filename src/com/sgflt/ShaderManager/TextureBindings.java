@@ -0,0 +1,90 @@
+/**
+ *	Author: Jack Ramey
+ *	File: TextureBindings.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import java.util.Arrays;
+
+/**
+ * Shadow of the texture bound to every texture unit and of the active unit.
+ * A bind of the texture a unit already has is skipped, and glActiveTexture is
+ * only called when the unit changes. One texture is tracked per unit, so
+ * alternating targets on a unit binds again, which is never wrong. GL thread only.
+ */
+final class TextureBindings {
+
+	private final ShaderMetrics metrics;
+	//Target and texture last bound to every unit, valid where known is set
+	private int[] targets = new int[16];
+	private int[] textures = new int[16];
+	private boolean[] known = new boolean[16];
+	//Selected unit, -1 if unknown
+	private int activeUnit = -1;
+
+	TextureBindings(ShaderMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Bind a texture to a unit unless it is bound there already.
+	 *
+	 * @return true if the bind reached the driver.
+	 */
+	boolean bind(int unit, int target, int texture) {
+		if(unit >= textures.length) {
+			int size = Math.max(unit + 1, textures.length * 2);
+			targets = Arrays.copyOf(targets, size);
+			textures = Arrays.copyOf(textures, size);
+			known = Arrays.copyOf(known, size);
+		}
+		if(known[unit] && textures[unit] == texture && targets[unit] == target) {
+			metrics.count(ShaderMetrics.TEXTURE_BINDS_SKIPPED);
+			return false;
+		}
+		if(unit != activeUnit) {
+			Backend.GL.activeTexture(unit);
+			activeUnit = unit;
+		}
+		Backend.GL.bindTexture(target, texture);
+		targets[unit] = target;
+		textures[unit] = texture;
+		known[unit] = true;
+		metrics.count(ShaderMetrics.TEXTURE_BINDS);
+		return true;
+	}
+
+	/**
+	 * A texture was deleted. The driver unbinds it, and its name may be reused.
+	 */
+	void deleted(int texture) {
+		for(int unit = 0; unit < textures.length; unit++) {
+			if(textures[unit] == texture) {
+				known[unit] = false;
+			}
+		}
+	}
+
+	/**
+	 * Forget every binding, because GL was used directly.
+	 */
+	void invalidate() {
+		Arrays.fill(known, false);
+		activeUnit = -1;
+	}
+}
@@ -0,0 +1,128 @@
+/**
+ *	Author: Jack Ramey
+ *	File: TextureSet.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+/**
+ * The textures of a material, by the samplers of a shader that read them.
+ * The samplers are resolved to their texture units and targets once, so
+ * binding the set is an array walk. Textures the units already hold are not
+ * bound again, so draws sharing a material bind nothing.
+ *
+ * Example:
+ * <pre>
+ * TextureSet stone = ShaderManager.createTextureSet(hemi, "diffuse", "normalMap");
+ * stone.set(0, stoneDiffuse).set(1, stoneNormals);
+ * //per draw
+ * ShaderManager.bind(hemi);
+ * stone.bind();
+ * </pre>
+ *
+ * Like a UniformRef the set stays valid when the shader under the handle is
+ * replaced. A sampler array is bound at its first element. GL thread only.
+ */
+public final class TextureSet {
+
+	private final ShaderManager manager;
+	//Handle id of the shader whose samplers the set binds
+	final int id;
+	private final String[] samplers;
+	private final int[] textures;
+	//Shader the units were resolved against, and the unit and target of every sampler (-1 and 0 if inactive)
+	private Shader shader;
+	private final int[] units;
+	private final int[] targets;
+
+	TextureSet(ShaderManager manager, int id, String[] samplers) {
+		this.manager = manager;
+		this.id = id;
+		this.samplers = samplers.clone();
+		this.textures = new int[samplers.length];
+		this.units = new int[samplers.length];
+		this.targets = new int[samplers.length];
+	}
+
+	private void resolve() {
+		Shader s = manager.shaders[id];
+		if(s == shader) {
+			return;
+		}
+		shader = s;
+		UniformTable table = s.uniforms;
+		for(int i = 0; i < samplers.length; i++) {
+			int slot = table.slot(samplers[i]);
+			units[i] = (slot == -1) ? -1 : table.getTextureUnit(slot);
+			targets[i] = (slot == -1) ? 0 : UniformTable.textureTarget(table.getType(slot));
+		}
+	}
+
+	/**
+	 * Set the texture of a sampler by its position in the set.
+	 *
+	 * @param index Position of the sampler in createTextureSet.
+	 * @param texture GL texture name, 0 to unbind.
+	 * @return this TextureSet, to chain calls.
+	 */
+	public TextureSet set(int index, int texture) {
+		textures[index] = texture;
+		return this;
+	}
+
+	/**
+	 * Set the texture of a sampler by name.
+	 *
+	 * @param sampler Name of the sampler, as passed to createTextureSet.
+	 * @param texture GL texture name, 0 to unbind.
+	 * @return this TextureSet, to chain calls.
+	 * @throws IllegalArgumentException If the set has no such sampler.
+	 */
+	public TextureSet set(String sampler, int texture) throws IllegalArgumentException {
+		for(int i = 0; i < samplers.length; i++) {
+			if(samplers[i].equals(sampler)) {
+				textures[i] = texture;
+				return this;
+			}
+		}
+		throw new IllegalArgumentException("Texture set has no sampler " + sampler);
+	}
+
+	/**
+	 * Bind every texture of the set to the unit of its sampler. Samplers the
+	 * shader does not have are skipped. The shader does not have to be bound.
+	 *
+	 * @return number of binds that reached the driver.
+	 */
+	public int bind() {
+		resolve();
+		int n = 0;
+		for(int i = 0; i < textures.length; i++) {
+			if(units[i] != -1 && manager.bindTexture(units[i], targets[i], textures[i])) {
+				n++;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * @return number of samplers in the set.
+	 */
+	public int getSize() {
+		return samplers.length;
+	}
+}
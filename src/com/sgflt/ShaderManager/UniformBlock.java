@@ -0,0 +1,134 @@
+/**
+ *	Author: Jack Ramey
+ *	File: UniformBlock.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import java.nio.ByteBuffer;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL31;
+
+/**
+ * A named uniform block backed by a uniform buffer object. Data shared by many
+ * programs, like camera matrices and lights, is written once per frame and
+ * uploaded with a single glBufferSubData instead of being passed to every
+ * program one uniform at a time.
+ *
+ * Every block gets its own binding point. Each program the ShaderManager links
+ * that declares a block of the same name is pointed at that binding point.
+ *
+ * Creating and uploading a block bind its buffer to the generic
+ * GL_UNIFORM_BUFFER target and leave 0 bound there afterwards. Querying the
+ * previous binding to restore it would stall the pipeline on every upload, so
+ * code that relies on the generic binding has to bind its buffer again.
+ * Indexed binding points other than the block's own are never touched.
+ *
+ * Example:
+ * <pre>
+ * UniformBlock camera = ShaderManager.createUniformBlock("Camera", 144);
+ * //Every frame...
+ * camera.begin().putMat4(view).putMat4(projection).putVec3(eye.x, eye.y, eye.z);
+ * camera.upload();
+ * </pre>
+ */
+public final class UniformBlock {
+
+	private final String name;
+	private final int binding;
+	private final int buffer;
+	private final ByteBuffer data;
+	private final Std140Writer writer;
+
+	UniformBlock(String name, int binding, int size) {
+		this.name = name;
+		this.binding = binding;
+		this.data = BufferUtils.createByteBuffer(size);
+		this.writer = new Std140Writer(data);
+		//Allocate the buffer once, uploads only replace its contents
+		buffer = Backend.GL.genBuffers();
+		Backend.GL.bindBuffer(GL31.GL_UNIFORM_BUFFER, buffer);
+		Backend.GL.bufferData(GL31.GL_UNIFORM_BUFFER, size, GL15.GL_DYNAMIC_DRAW);
+		//Binding the indexed point binds the generic one as well, so clear it last
+		Backend.GL.bindBufferBase(GL31.GL_UNIFORM_BUFFER, binding, buffer);
+		Backend.GL.bindBuffer(GL31.GL_UNIFORM_BUFFER, 0);
+	}
+
+	/**
+	 * Start writing the block from its first member.
+	 *
+	 * @return the block's std140 writer, positioned at offset 0.
+	 */
+	public Std140Writer begin() {
+		return writer.reset();
+	}
+
+	/**
+	 * Upload everything written since begin to the uniform buffer.
+	 */
+	public void upload() {
+		int length = writer.written();
+		if(length == 0) {
+			return;
+		}
+		int position = data.position();
+		data.position(0);
+		data.limit(length);
+		Backend.GL.bindBuffer(GL31.GL_UNIFORM_BUFFER, buffer);
+		Backend.GL.bufferSubData(GL31.GL_UNIFORM_BUFFER, 0, data);
+		Backend.GL.bindBuffer(GL31.GL_UNIFORM_BUFFER, 0);
+		data.limit(data.capacity());
+		data.position(position);
+	}
+
+	/*
+	 * Point a program's block of the same name at this block's binding point.
+	 * Programs that do not declare the block are left alone.
+	 */
+	void attach(int program) {
+		int index = Backend.GL.getUniformBlockIndex(program, name);
+		if(index != GL31.GL_INVALID_INDEX) {
+			Backend.GL.uniformBlockBinding(program, index, binding);
+		}
+	}
+
+	/*
+	 * Delete the uniform buffer. The block must not be used afterwards.
+	 */
+	void delete() {
+		Backend.GL.deleteBuffers(buffer);
+	}
+
+	//GETTERS
+	public String getName() {
+		return name;
+	}
+
+	public int getBinding() {
+		return binding;
+	}
+
+	public int getSize() {
+		return data.capacity();
+	}
+
+	int getBuffer() {
+		return buffer;
+	}
+}
@@ -0,0 +1,294 @@
+/**
+ *	Author: Jack Ramey
+ *	File: UniformCommandBuffer.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import org.lwjgl.BufferUtils;
+
+/**
+ * Off-heap list of uniform uploads recorded for one program and issued later in
+ * a single pass. Every command is (slot, location, kind, words) followed by its
+ * values, one 4 byte word per float or int. A slot written more than once
+ * before the flush keeps only its last value: the command is overwritten in
+ * place, or killed and appended again if its size changed. A command that
+ * writes fewer elements than the one before it leaves that one live, and a slot
+ * sharing locations with another (an array and its element slots) is always
+ * appended, so the writes reach the driver in the order they were made. The
+ * buffer is reused from flush to flush and only grows.
+ */
+final class UniformCommandBuffer {
+
+	//Command kinds
+	static final int UNIFORM_1F = 1;
+	static final int UNIFORM_2F = 2;
+	static final int UNIFORM_3F = 3;
+	static final int UNIFORM_4F = 4;
+	static final int UNIFORM_1I = 5;
+	static final int UNIFORM_1FV = 6;
+	static final int UNIFORM_1IV = 7;
+	static final int UNIFORM_2FV = 8;
+	static final int UNIFORM_3FV = 9;
+	static final int UNIFORM_4FV = 10;
+	static final int MATRIX_2FV = 11;
+	static final int MATRIX_3FV = 12;
+	static final int MATRIX_4FV = 13;
+
+	//slot, location, kind, words
+	private static final int HEADER = 16;
+	//Location of a command that was replaced by a later write
+	private static final int DEAD = -1;
+
+	private ByteBuffer commands;
+	//Views of commands used to hand arrays to the driver without copying
+	private FloatBuffer floats;
+	private IntBuffer ints;
+	//Program the recorded commands belong to
+	private Shader shader = null;
+	//Byte offset + 1 of the live command of each slot, 0 if there is none
+	private int[] pending = new int[16];
+
+	UniformCommandBuffer() {
+		allocate(4096);
+	}
+
+	private void allocate(int capacity) {
+		ByteBuffer old = commands;
+		commands = BufferUtils.createByteBuffer(capacity);
+		floats = commands.asFloatBuffer();
+		ints = commands.asIntBuffer();
+		if(old != null) {
+			old.flip();
+			commands.put(old);
+		}
+	}
+
+	/*
+	 * Start a command and return the byte offset of its values. Reuses the slot's
+	 * live command if it has the same kind and size and no other slot writes its
+	 * locations, and kills it if the new command covers it.
+	 */
+	private int begin(Shader s, int slot, int kind, int words) {
+		shader = s;
+		if(slot >= pending.length) {
+			int[] grown = new int[Math.max(slot + 1, pending.length * 2)];
+			System.arraycopy(pending, 0, grown, 0, pending.length);
+			pending = grown;
+		}
+		int live = pending[slot] - 1;
+		if(live >= 0) {
+			int liveWords = commands.getInt(live + 12);
+			if(commands.getInt(live + 8) == kind && liveWords == words && !s.uniforms.isAliased(slot)) {
+				return live + HEADER;
+			}
+			if(words >= liveWords) {
+				commands.putInt(live + 4, DEAD);
+			}
+		}
+		int size = HEADER + words * 4;
+		if(commands.remaining() < size) {
+			allocate(Math.max(commands.capacity() * 2, commands.position() + size));
+		}
+		int at = commands.position();
+		commands.putInt(slot).putInt(s.uniforms.getLocation(slot)).putInt(kind).putInt(words);
+		commands.position(at + size);
+		pending[slot] = at + 1;
+		return at + HEADER;
+	}
+
+	void record1f(Shader s, int slot, float x) {
+		int p = begin(s, slot, UNIFORM_1F, 1);
+		commands.putFloat(p, x);
+	}
+
+	void record2f(Shader s, int slot, float x, float y) {
+		int p = begin(s, slot, UNIFORM_2F, 2);
+		commands.putFloat(p, x).putFloat(p + 4, y);
+	}
+
+	void record3f(Shader s, int slot, float x, float y, float z) {
+		int p = begin(s, slot, UNIFORM_3F, 3);
+		commands.putFloat(p, x).putFloat(p + 4, y).putFloat(p + 8, z);
+	}
+
+	void record4f(Shader s, int slot, float x, float y, float z, float w) {
+		int p = begin(s, slot, UNIFORM_4F, 4);
+		commands.putFloat(p, x).putFloat(p + 4, y).putFloat(p + 8, z).putFloat(p + 12, w);
+	}
+
+	void record1i(Shader s, int slot, int x) {
+		int p = begin(s, slot, UNIFORM_1I, 1);
+		commands.putInt(p, x);
+	}
+
+	/*
+	 * Copies the remaining elements, the caller's buffer is not touched.
+	 */
+	void record1f(Shader s, int slot, FloatBuffer buf) {
+		int n = buf.remaining();
+		int p = begin(s, slot, UNIFORM_1FV, n);
+		int from = buf.position();
+		for(int i = 0; i < n; i++) {
+			commands.putFloat(p + i * 4, buf.get(from + i));
+		}
+	}
+
+	void record1i(Shader s, int slot, IntBuffer buf) {
+		int n = buf.remaining();
+		int p = begin(s, slot, UNIFORM_1IV, n);
+		int from = buf.position();
+		for(int i = 0; i < n; i++) {
+			commands.putInt(p + i * 4, buf.get(from + i));
+		}
+	}
+
+	/*
+	 * Record n floats of an array as one vector, matrix or array upload of the given kind.
+	 */
+	void recordFloats(Shader s, int slot, int kind, float[] src, int offset, int n) {
+		int p = begin(s, slot, kind, n);
+		for(int i = 0; i < n; i++) {
+			commands.putFloat(p + i * 4, src[offset + i]);
+		}
+	}
+
+	void recordInts(Shader s, int slot, int[] src, int offset, int n) {
+		int p = begin(s, slot, UNIFORM_1IV, n);
+		for(int i = 0; i < n; i++) {
+			commands.putInt(p + i * 4, src[offset + i]);
+		}
+	}
+
+	/**
+	 * Issue every live command to the bound program and empty the buffer.
+	 *
+	 * @return number of glUniform calls issued.
+	 */
+	int flush() {
+		int end = commands.position();
+		int issued = 0;
+		int at = 0;
+		while(at < end) {
+			int slot = commands.getInt(at);
+			int location = commands.getInt(at + 4);
+			int kind = commands.getInt(at + 8);
+			int words = commands.getInt(at + 12);
+			int p = at + HEADER;
+			if(location != DEAD) {
+				issue(location, kind, words, p);
+				issued++;
+				pending[slot] = 0;
+			}
+			at = p + words * 4;
+		}
+		commands.clear();
+		shader = null;
+		return issued;
+	}
+
+	private void issue(int location, int kind, int words, int p) {
+		switch(kind) {
+		case UNIFORM_1F:
+			Backend.GL.uniform1f(location, commands.getFloat(p));
+			break;
+		case UNIFORM_2F:
+			Backend.GL.uniform2f(location, commands.getFloat(p), commands.getFloat(p + 4));
+			break;
+		case UNIFORM_3F:
+			Backend.GL.uniform3f(location, commands.getFloat(p), commands.getFloat(p + 4), commands.getFloat(p + 8));
+			break;
+		case UNIFORM_4F:
+			Backend.GL.uniform4f(location, commands.getFloat(p), commands.getFloat(p + 4), commands.getFloat(p + 8), commands.getFloat(p + 12));
+			break;
+		case UNIFORM_1I:
+			Backend.GL.uniform1i(location, commands.getInt(p));
+			break;
+		case UNIFORM_1IV:
+			ints.clear();
+			ints.position(p >> 2).limit((p >> 2) + words);
+			Backend.GL.uniform1iv(location, ints);
+			break;
+		default:
+			floats.clear();
+			floats.position(p >> 2).limit((p >> 2) + words);
+			uniformv(kind, location, floats);
+			break;
+		}
+	}
+
+	/**
+	 * Upload the remaining floats of a buffer with the glUniform call of a
+	 * vector, matrix or array kind. Matrices are always column major.
+	 */
+	static void uniformv(int kind, int location, FloatBuffer buf) {
+		switch(kind) {
+		case UNIFORM_1FV:
+			Backend.GL.uniform1fv(location, buf);
+			break;
+		case UNIFORM_2FV:
+			Backend.GL.uniform2fv(location, buf);
+			break;
+		case UNIFORM_3FV:
+			Backend.GL.uniform3fv(location, buf);
+			break;
+		case UNIFORM_4FV:
+			Backend.GL.uniform4fv(location, buf);
+			break;
+		case MATRIX_2FV:
+			Backend.GL.uniformMatrix2fv(location, false, buf);
+			break;
+		case MATRIX_3FV:
+			Backend.GL.uniformMatrix3fv(location, false, buf);
+			break;
+		case MATRIX_4FV:
+			Backend.GL.uniformMatrix4fv(location, false, buf);
+			break;
+		default:
+			throw new IllegalStateException("Unknown uniform command " + kind);
+		}
+	}
+
+	/**
+	 * Drop every recorded command without issuing it.
+	 */
+	void clear() {
+		int end = commands.position();
+		int at = 0;
+		while(at < end) {
+			pending[commands.getInt(at)] = 0;
+			at += HEADER + commands.getInt(at + 12) * 4;
+		}
+		commands.clear();
+		shader = null;
+	}
+
+	boolean isEmpty() {
+		return commands.position() == 0;
+	}
+
+	/**
+	 * @return program the recorded commands belong to, or null if the buffer is empty.
+	 */
+	Shader getShader() {
+		return shader;
+	}
+}
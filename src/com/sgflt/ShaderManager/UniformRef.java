@@ -0,0 +1,146 @@
+/**
+ *	Author: Jack Ramey
+ *	File: UniformRef.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Pre-resolved reference to a uniform of a shader. Setting a value is an array
+ * access and a slot lookup, no String is hashed and nothing is allocated.
+ * Like the put methods of the ShaderManager, the shader the uniform belongs to
+ * must be bound when a value is set.
+ */
+public final class UniformRef {
+
+	private final ShaderManager manager = ShaderManager.INSTANCE;
+	//Handle id of the shader that owns the uniform. Set to Package-Private
+	final int id;
+	private final String name;
+	//Shader the slot was resolved against. Re-resolved if the shader under the handle is replaced.
+	private Shader shader;
+	private int slot = -1;
+
+	UniformRef(int id, String name) {
+		this.id = id;
+		this.name = name;
+	}
+
+	/*
+	 * Current shader of the handle. The slot is only looked up again when the
+	 * shader stored under the handle has been replaced.
+	 */
+	private Shader resolve() {
+		Shader s = manager.shaders[id];
+		if(s != shader) {
+			shader = s;
+			slot = s.uniforms.slot(name);
+		}
+		return s;
+	}
+
+	/*
+	 * Shader the uniform belongs to, so it can be bound before a value is set.
+	 */
+	Shader shader() {
+		return resolve();
+	}
+
+	/**
+	 * Pass a float to the uniform.
+	 * 
+	 * @param x Primitive float to be passed to the shader.
+	 */
+	public void set(float x) {
+		Shader s = resolve();
+		manager.upload1f(s, slot, x);
+	}
+
+	/**
+	 * Pass a vec2 to the uniform.
+	 */
+	public void set(float x, float y) {
+		Shader s = resolve();
+		manager.upload2f(s, slot, x, y);
+	}
+
+	/**
+	 * Pass a vec3 to the uniform.
+	 */
+	public void set(float x, float y, float z) {
+		Shader s = resolve();
+		manager.upload3f(s, slot, x, y, z);
+	}
+
+	/**
+	 * Pass a vec4 to the uniform.
+	 */
+	public void set(float x, float y, float z, float w) {
+		Shader s = resolve();
+		manager.upload4f(s, slot, x, y, z, w);
+	}
+
+	/**
+	 * Pass an integer (or sampler unit) to the uniform.
+	 * 
+	 * @param x Primitive integer to be passed to the shader.
+	 */
+	public void set(int x) {
+		Shader s = resolve();
+		manager.upload1i(s, slot, x);
+	}
+
+	/**
+	 * Pass the remaining elements of a FloatBuffer to a float array uniform.
+	 * Unlike putFloatBuffer the buffer is not flipped.
+	 * 
+	 * @param buf FloatBuffer to be passed to the shader.
+	 */
+	public void set(FloatBuffer buf) {
+		Shader s = resolve();
+		manager.upload1f(s, slot, buf);
+	}
+
+	/**
+	 * Pass the remaining elements of an IntBuffer to an int array uniform.
+	 * Unlike putIntBuffer the buffer is not flipped.
+	 * 
+	 * @param buf IntBuffer to be passed to the shader.
+	 */
+	public void set(IntBuffer buf) {
+		Shader s = resolve();
+		manager.upload1i(s, slot, buf);
+	}
+
+	/**
+	 * Check if the shader has this uniform. Setting a uniform the shader does
+	 * not have is silently ignored.
+	 * 
+	 * @return true if the uniform is active in the shader.
+	 */
+	public boolean isActive() {
+		resolve();
+		return slot != -1;
+	}
+
+	public String getName() {
+		return name;
+	}
+}
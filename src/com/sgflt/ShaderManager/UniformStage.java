@@ -0,0 +1,304 @@
+/**
+ *	Author: Jack Ramey
+ *	File: UniformStage.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free hand-off of uniform values from one worker thread to the GL thread.
+ * The worker stages values for UniformRefs, the GL thread applies everything
+ * staged so far in one batch with ShaderManager.applyStagedUniforms. Neither
+ * side ever blocks or allocates.
+ *
+ * Example:
+ * <pre>
+ * //GL thread, once
+ * UniformStage stage = ShaderManager.createUniformStage(256);
+ * UniformRef lightPos = ShaderManager.uniform(hemi, "lightPos");
+ * //Simulation thread, every tick
+ * stage.set(lightPos, x, y, z);
+ * //GL thread, start of every frame
+ * ShaderManager.applyStagedUniforms();
+ * </pre>
+ *
+ * Every uniform has one entry holding its latest staged value, so a uniform set
+ * many times between two applies is applied once, with the last value. The
+ * entries of uniforms with a new value are queued in a single-producer/single-consumer
+ * ring that can hold every entry and never fills up. A value is only dropped
+ * when a stage is used with more uniforms than its capacity.
+ *
+ * Each stage must have exactly one producer thread. Use one stage per worker.
+ */
+public final class UniformStage {
+
+	private static final int UNIFORM_1F = 1;
+	private static final int UNIFORM_2F = 2;
+	private static final int UNIFORM_3F = 3;
+	private static final int UNIFORM_4F = 4;
+	private static final int UNIFORM_1I = 5;
+	//Ints per entry in data: kind followed by four values
+	private static final int STRIDE = 5;
+
+	private final ShaderManager manager;
+	//Entries, capacity is a power of two. The uniform of an entry is set by the worker before it is first queued.
+	private final int mask;
+	private final UniformRef[] refs;
+	private int entryCount = 0;
+	//Kind and values of every entry (floats as raw bits), guarded by the entry's sequence, odd while it is written
+	private final AtomicIntegerArray data;
+	private final AtomicIntegerArray sequences;
+	//1 while the entry is in the queue
+	private final AtomicIntegerArray queued;
+	//Worker side index from uniform to entry, open addressing by identity. Worker thread only.
+	private final UniformRef[] keys;
+	private final int[] entries;
+	//Ring of queued entries
+	private final int[] queue;
+	//Next queue position the GL thread reads. Written by the GL thread only.
+	private final AtomicLong head = new AtomicLong();
+	//Next queue position the worker writes. Written by the worker only.
+	private final AtomicLong tail = new AtomicLong();
+	//Worker's last view of head, saves a volatile read per queued entry while there is room
+	private long headCache = 0;
+	//Values the worker could not stage because every entry was taken by another uniform
+	private final AtomicLong dropped = new AtomicLong();
+
+	UniformStage(ShaderManager manager, int capacity) {
+		if(capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+		}
+		int size = Integer.highestOneBit(capacity);
+		if(size < capacity) {
+			size <<= 1;
+		}
+		this.manager = manager;
+		this.mask = size - 1;
+		this.refs = new UniformRef[size];
+		this.data = new AtomicIntegerArray(size * STRIDE);
+		this.sequences = new AtomicIntegerArray(size);
+		this.queued = new AtomicIntegerArray(size);
+		this.keys = new UniformRef[size * 2];
+		this.entries = new int[size * 2];
+		this.queue = new int[size];
+	}
+
+	/*
+	 * Entry of a uniform, taking a free one on its first use. -1 if every entry
+	 * is taken. Marks the entry as being written. Worker thread only.
+	 */
+	private int begin(UniformRef ref) {
+		int m = keys.length - 1;
+		int h = System.identityHashCode(ref);
+		int i = (h ^ (h >>> 16)) & m;
+		UniformRef key;
+		while((key = keys[i]) != null && key != ref) {
+			i = (i + 1) & m;
+		}
+		int e;
+		if(key == null) {
+			if(entryCount == refs.length) {
+				dropped.incrementAndGet();
+				return -1;
+			}
+			e = entryCount++;
+			refs[e] = ref;
+			keys[i] = ref;
+			entries[i] = e;
+		} else {
+			e = entries[i];
+		}
+		sequences.set(e, sequences.get(e) + 1);
+		return e;
+	}
+
+	/*
+	 * Finish writing an entry and queue it unless it is queued already. The
+	 * ordered store of the tail makes the queue position visible before the new tail.
+	 */
+	private void publish(int e, int kind) {
+		data.set(e * STRIDE, kind);
+		sequences.set(e, sequences.get(e) + 1);
+		if(queued.getAndSet(e, 1) == 0) {
+			long t = tail.get();
+			//The GL thread frees a position before it unqueues the entry, so this only waits for that store to show
+			while(t - headCache > mask) {
+				headCache = head.get();
+			}
+			queue[(int) t & mask] = e;
+			tail.lazySet(t + 1);
+		}
+	}
+
+	/**
+	 * Stage a float for the uniform.
+	 *
+	 * @return false if the stage has no room for another uniform and the value was dropped.
+	 */
+	public boolean set(UniformRef ref, float x) {
+		int e = begin(ref);
+		if(e == -1) {
+			return false;
+		}
+		data.set(e * STRIDE + 1, Float.floatToRawIntBits(x));
+		publish(e, UNIFORM_1F);
+		return true;
+	}
+
+	/**
+	 * Stage a vec2 for the uniform.
+	 *
+	 * @return false if the stage has no room for another uniform and the value was dropped.
+	 */
+	public boolean set(UniformRef ref, float x, float y) {
+		int e = begin(ref);
+		if(e == -1) {
+			return false;
+		}
+		int d = e * STRIDE;
+		data.set(d + 1, Float.floatToRawIntBits(x));
+		data.set(d + 2, Float.floatToRawIntBits(y));
+		publish(e, UNIFORM_2F);
+		return true;
+	}
+
+	/**
+	 * Stage a vec3 for the uniform.
+	 *
+	 * @return false if the stage has no room for another uniform and the value was dropped.
+	 */
+	public boolean set(UniformRef ref, float x, float y, float z) {
+		int e = begin(ref);
+		if(e == -1) {
+			return false;
+		}
+		int d = e * STRIDE;
+		data.set(d + 1, Float.floatToRawIntBits(x));
+		data.set(d + 2, Float.floatToRawIntBits(y));
+		data.set(d + 3, Float.floatToRawIntBits(z));
+		publish(e, UNIFORM_3F);
+		return true;
+	}
+
+	/**
+	 * Stage a vec4 for the uniform.
+	 *
+	 * @return false if the stage has no room for another uniform and the value was dropped.
+	 */
+	public boolean set(UniformRef ref, float x, float y, float z, float w) {
+		int e = begin(ref);
+		if(e == -1) {
+			return false;
+		}
+		int d = e * STRIDE;
+		data.set(d + 1, Float.floatToRawIntBits(x));
+		data.set(d + 2, Float.floatToRawIntBits(y));
+		data.set(d + 3, Float.floatToRawIntBits(z));
+		data.set(d + 4, Float.floatToRawIntBits(w));
+		publish(e, UNIFORM_4F);
+		return true;
+	}
+
+	/**
+	 * Stage an integer (or sampler unit) for the uniform.
+	 *
+	 * @return false if the stage has no room for another uniform and the value was dropped.
+	 */
+	public boolean set(UniformRef ref, int x) {
+		int e = begin(ref);
+		if(e == -1) {
+			return false;
+		}
+		data.set(e * STRIDE + 1, x);
+		publish(e, UNIFORM_1I);
+		return true;
+	}
+
+	/*
+	 * Apply the latest value of every queued entry. GL thread only. Each program is
+	 * bound before its values are set, binds of the same program in a row are skipped.
+	 *
+	 * An entry is taken off the queue before it is read. A value the worker writes
+	 * meanwhile queues the entry again, so a read that overlaps a write is skipped
+	 * and the entry is applied by the next call instead.
+	 */
+	int apply() {
+		long h = head.get();
+		long t = tail.get();
+		int applied = 0;
+		for(long n = h; n < t; n++) {
+			int e = queue[(int) n & mask];
+			head.lazySet(n + 1);
+			queued.set(e, 0);
+			int sequence = sequences.get(e);
+			int d = e * STRIDE;
+			int kind = data.get(d);
+			int a = data.get(d + 1);
+			int b = data.get(d + 2);
+			int c = data.get(d + 3);
+			int w = data.get(d + 4);
+			if((sequence & 1) != 0 || sequences.get(e) != sequence) {
+				continue;
+			}
+			UniformRef ref = refs[e];
+			manager.use(ref.shader());
+			switch(kind) {
+			case UNIFORM_1F:
+				ref.set(Float.intBitsToFloat(a));
+				break;
+			case UNIFORM_2F:
+				ref.set(Float.intBitsToFloat(a), Float.intBitsToFloat(b));
+				break;
+			case UNIFORM_3F:
+				ref.set(Float.intBitsToFloat(a), Float.intBitsToFloat(b), Float.intBitsToFloat(c));
+				break;
+			case UNIFORM_4F:
+				ref.set(Float.intBitsToFloat(a), Float.intBitsToFloat(b), Float.intBitsToFloat(c), Float.intBitsToFloat(w));
+				break;
+			default:
+				ref.set(a);
+				break;
+			}
+			applied++;
+		}
+		return applied;
+	}
+
+	/**
+	 * @return number of uniforms with a staged value waiting for the GL thread.
+	 */
+	public int getPending() {
+		return (int) (tail.get() - head.get());
+	}
+
+	/**
+	 * @return number of values dropped because every entry was taken by another uniform.
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * @return number of uniforms the stage can hold.
+	 */
+	public int getCapacity() {
+		return mask + 1;
+	}
+}
@@ -0,0 +1,747 @@
+/**
+ *	Author: Jack Ramey
+ *	File: UniformTable.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL12;
+import org.lwjgl.opengl.GL13;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL31;
+
+/**
+ * Name to location/type table for the active uniforms of a linked shader program.
+ * The table is filled once from link time reflection so that uniform lookups on
+ * the hot path never have to go back to the driver.
+ *
+ * The table also keeps a shadow copy of the last value uploaded to every uniform
+ * in two flat stores, one for float types and one for int/bool/sampler types.
+ * The update methods compare against the shadow and report whether the upload is
+ * actually needed. An array upload is only skipped when every element it covers
+ * was uploaded before and is unchanged.
+ *
+ * Every sampler is given its own texture unit when the table is filled, so units
+ * never have to be set per draw. Units set in the shader with layout(binding = n)
+ * are kept, the other samplers get the lowest free units in the order the driver
+ * reports them.
+ *
+ * An element of an array uniform, like colors[2], gets a slot of its own the
+ * first time it is looked up. Its location is the array's location plus the index
+ * and it shares the array's shadow, so writes through either are compared against
+ * the same values.
+ */
+final class UniformTable {
+
+	//Table used by the default pipeline and by programs that failed to link
+	static final UniformTable EMPTY = new UniformTable(0);
+	static {
+		EMPTY.floatValues = new float[0];
+		EMPTY.intValues = new int[0];
+	}
+
+	//Per uniform data, indexed by slot. Element slots follow the reflected ones.
+	private String[] names;
+	private int[] locations;
+	private int[] types;
+	private int[] sizes;
+	//Components per array element and offset of the slot in its shadow store (-1 if not shadowed)
+	private int[] components;
+	private int[] offsets;
+	private boolean[] intStore;
+	//Array slot an element slot belongs to, -1 for reflected slots
+	private int[] arrays;
+	//Set for slots whose locations another slot writes as well
+	private boolean[] aliased;
+	private int count;
+	//glGetUniformLocation calls made while reflecting
+	private int locationQueries;
+	//Shadow stores. A slot is only compared once a value was uploaded to it, initializers in the source
+	//mean the linked value is not necessarily zero.
+	private float[] floatValues;
+	private int[] intValues;
+	private int floatCount;
+	private int intCount;
+	//Number of leading array elements (1 for a plain uniform) whose uploaded value the shadow holds.
+	//Cleared when something outside of the manager may have touched the uniforms.
+	private int[] known;
+	//First texture unit of every sampler slot, -1 for other slots
+	private int[] units;
+	//One past the highest texture unit of the samplers, and whether units still have to be set in the program
+	private int textureUnits;
+	private boolean unitsPending;
+	//Sampler array units on their way to glUniform1iv. GL thread only.
+	private static IntBuffer unitScratch = BufferUtils.createIntBuffer(16);
+	//Open addressing index. keys[i] is a uniform name (or array alias) and slots[i] its slot.
+	private String[] keys;
+	private int[] slots;
+	private int mask;
+	private int keyCount;
+
+	private UniformTable(int capacity) {
+		names = new String[capacity];
+		locations = new int[capacity];
+		types = new int[capacity];
+		sizes = new int[capacity];
+		components = new int[capacity];
+		offsets = new int[capacity];
+		intStore = new boolean[capacity];
+		arrays = new int[capacity];
+		aliased = new boolean[capacity];
+		known = new int[capacity];
+		units = new int[capacity];
+		//Every uniform may register an alias, keep the load factor under one half
+		int buckets = 2;
+		while(buckets < capacity * 4) {
+			buckets <<= 1;
+		}
+		keys = new String[buckets];
+		slots = new int[buckets];
+		mask = buckets - 1;
+	}
+
+	/*
+	 * Make room for one more slot.
+	 */
+	private void grow() {
+		if(count < names.length) {
+			return;
+		}
+		int capacity = Math.max(4, names.length * 2);
+		names = Arrays.copyOf(names, capacity);
+		locations = Arrays.copyOf(locations, capacity);
+		types = Arrays.copyOf(types, capacity);
+		sizes = Arrays.copyOf(sizes, capacity);
+		components = Arrays.copyOf(components, capacity);
+		offsets = Arrays.copyOf(offsets, capacity);
+		intStore = Arrays.copyOf(intStore, capacity);
+		arrays = Arrays.copyOf(arrays, capacity);
+		aliased = Arrays.copyOf(aliased, capacity);
+		known = Arrays.copyOf(known, capacity);
+		units = Arrays.copyOf(units, capacity);
+	}
+
+	/**
+	 * Enumerate the active uniforms of a linked program. Built-in uniforms and
+	 * uniforms that live in uniform blocks have no location and are skipped.
+	 *
+	 * @param program Handle of a successfully linked shader program.
+	 * @return Table holding every uniform that can be set by location.
+	 */
+	static UniformTable reflect(int program) {
+		int active = Backend.GL.getProgram(program, GL20.GL_ACTIVE_UNIFORMS);
+		if(active <= 0) {
+			return EMPTY;
+		}
+		int maxLength = Backend.GL.getProgram(program, GL20.GL_ACTIVE_UNIFORM_MAX_LENGTH);
+		IntBuffer sizeType = BufferUtils.createIntBuffer(2);
+		UniformTable table = new UniformTable(active);
+		for(int i = 0; i < active; i++) {
+			String name = Backend.GL.getActiveUniform(program, i, maxLength, sizeType);
+			int location = Backend.GL.getUniformLocation(program, name);
+			table.locationQueries++;
+			if(location != -1) {
+				table.add(name, location, sizeType.get(1), sizeType.get(0));
+			}
+		}
+		table.floatValues = new float[table.floatCount];
+		table.intValues = new int[table.intCount];
+		table.assignTextureUnits(program);
+		return table;
+	}
+
+	/*
+	 * Give every sampler (every element of a sampler array) its own texture unit.
+	 * A sampler the program links with a unit other than 0, from layout(binding = n),
+	 * keeps it unless an earlier sampler has it already. The others get the lowest
+	 * free units. The shadow holds the units, the ones the program does not have
+	 * yet reach it on its first bind.
+	 */
+	private void assignTextureUnits(int program) {
+		BitSet taken = new BitSet();
+		boolean assign = false;
+		for(int slot = 0; slot < count; slot++) {
+			units[slot] = -1;
+			if(textureTarget(types[slot]) == 0) {
+				continue;
+			}
+			//An array binding covers its elements in order, so the first element tells
+			int linked = Backend.GL.getUniformi(program, locations[slot]);
+			int size = sizes[slot];
+			if(linked > 0 && taken.nextSetBit(linked) != -1 && taken.nextSetBit(linked) < linked + size) {
+				linked = 0;
+			}
+			if(linked > 0) {
+				taken.set(linked, linked + size);
+				setUnits(slot, linked);
+				known[slot] = size;
+			} else {
+				assign = true;
+			}
+		}
+		for(int slot = 0; assign && slot < count; slot++) {
+			if(units[slot] != -1 || textureTarget(types[slot]) == 0) {
+				continue;
+			}
+			int size = sizes[slot];
+			int unit = taken.nextClearBit(0);
+			while(taken.nextSetBit(unit) != -1 && taken.nextSetBit(unit) < unit + size) {
+				unit = taken.nextClearBit(taken.nextSetBit(unit));
+			}
+			taken.set(unit, unit + size);
+			setUnits(slot, unit);
+			//Linking left it at 0, a lone sampler on unit 0 is set already
+			known[slot] = (unit == 0 && size == 1) ? 1 : 0;
+			unitsPending |= known[slot] == 0;
+		}
+		textureUnits = taken.length();
+	}
+
+	private void setUnits(int slot, int unit) {
+		units[slot] = unit;
+		int o = offsets[slot];
+		for(int i = 0; i < sizes[slot]; i++) {
+			intValues[o + i] = unit + i;
+		}
+	}
+
+	/**
+	 * Set the assigned texture units the program does not have yet, once. The program must be bound.
+	 */
+	void uploadTextureUnits() {
+		if(!unitsPending) {
+			return;
+		}
+		unitsPending = false;
+		for(int slot = 0; slot < count; slot++) {
+			if(units[slot] == -1 || known[slot] == sizes[slot] || arrays[slot] != -1) {
+				continue;
+			}
+			int size = sizes[slot];
+			if(size == 1) {
+				Backend.GL.uniform1i(locations[slot], intValues[offsets[slot]]);
+			} else {
+				if(unitScratch.capacity() < size) {
+					unitScratch = BufferUtils.createIntBuffer(Math.max(size, unitScratch.capacity() * 2));
+				}
+				unitScratch.clear();
+				unitScratch.put(intValues, offsets[slot], size).flip();
+				Backend.GL.uniform1iv(locations[slot], unitScratch);
+			}
+			known[slot] = size;
+		}
+	}
+
+	/**
+	 * Texture target a sampler type samples, like GL_TEXTURE_2D for sampler2D.
+	 *
+	 * @return the target, or 0 if the type is not a sampler.
+	 */
+	static int textureTarget(int type) {
+		switch(type) {
+		case GL20.GL_SAMPLER_1D:
+		case GL20.GL_SAMPLER_1D_SHADOW:
+		case GL30.GL_INT_SAMPLER_1D:
+		case GL30.GL_UNSIGNED_INT_SAMPLER_1D:			return GL11.GL_TEXTURE_1D;
+		case GL20.GL_SAMPLER_2D:
+		case GL20.GL_SAMPLER_2D_SHADOW:
+		case GL30.GL_INT_SAMPLER_2D:
+		case GL30.GL_UNSIGNED_INT_SAMPLER_2D:			return GL11.GL_TEXTURE_2D;
+		case GL20.GL_SAMPLER_3D:
+		case GL30.GL_INT_SAMPLER_3D:
+		case GL30.GL_UNSIGNED_INT_SAMPLER_3D:			return GL12.GL_TEXTURE_3D;
+		case GL20.GL_SAMPLER_CUBE:
+		case GL30.GL_SAMPLER_CUBE_SHADOW:
+		case GL30.GL_INT_SAMPLER_CUBE:
+		case GL30.GL_UNSIGNED_INT_SAMPLER_CUBE:			return GL13.GL_TEXTURE_CUBE_MAP;
+		case GL30.GL_SAMPLER_1D_ARRAY:
+		case GL30.GL_SAMPLER_1D_ARRAY_SHADOW:
+		case GL30.GL_INT_SAMPLER_1D_ARRAY:
+		case GL30.GL_UNSIGNED_INT_SAMPLER_1D_ARRAY:		return GL30.GL_TEXTURE_1D_ARRAY;
+		case GL30.GL_SAMPLER_2D_ARRAY:
+		case GL30.GL_SAMPLER_2D_ARRAY_SHADOW:
+		case GL30.GL_INT_SAMPLER_2D_ARRAY:
+		case GL30.GL_UNSIGNED_INT_SAMPLER_2D_ARRAY:		return GL30.GL_TEXTURE_2D_ARRAY;
+		case GL31.GL_SAMPLER_2D_RECT:
+		case GL31.GL_SAMPLER_2D_RECT_SHADOW:			return GL31.GL_TEXTURE_RECTANGLE;
+		case GL30.GL_SAMPLER_BUFFER:
+		case GL30.GL_INT_SAMPLER_BUFFER:
+		case GL30.GL_UNSIGNED_INT_SAMPLER_BUFFER:		return GL31.GL_TEXTURE_BUFFER;
+		default:										return 0;
+		}
+	}
+
+	private void add(String name, int location, int type, int size) {
+		int slot = count++;
+		names[slot] = name;
+		locations[slot] = location;
+		types[slot] = type;
+		sizes[slot] = size;
+		arrays[slot] = -1;
+		//Reserve room in the matching shadow store
+		int n = floatComponents(type);
+		if(n > 0) {
+			offsets[slot] = floatCount;
+			floatCount += n * size;
+		} else {
+			n = intComponents(type);
+			if(n > 0) {
+				intStore[slot] = true;
+				offsets[slot] = intCount;
+				intCount += n * size;
+			} else {
+				offsets[slot] = -1;
+			}
+		}
+		components[slot] = n;
+		index(name, slot);
+		//Arrays are reported as "name[0]", let them be found by their plain name too
+		if(name.endsWith("[0]")) {
+			index(name.substring(0, name.length() - 3), slot);
+		}
+	}
+
+	private void index(String key, int slot) {
+		if((keyCount + 1) * 2 > keys.length) {
+			rehash();
+		}
+		int i = bucket(key);
+		while(keys[i] != null) {
+			if(keys[i].equals(key)) {
+				return;
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		slots[i] = slot;
+		keyCount++;
+	}
+
+	/*
+	 * Double the index, for element slots added after reflection.
+	 */
+	private void rehash() {
+		String[] oldKeys = keys;
+		int[] oldSlots = slots;
+		keys = new String[oldKeys.length * 2];
+		slots = new int[oldKeys.length * 2];
+		mask = keys.length - 1;
+		keyCount = 0;
+		for(int i = 0; i < oldKeys.length; i++) {
+			if(oldKeys[i] != null) {
+				index(oldKeys[i], oldSlots[i]);
+			}
+		}
+	}
+
+	private static int floatComponents(int type) {
+		switch(type) {
+		case GL11.GL_FLOAT:			return 1;
+		case GL20.GL_FLOAT_VEC2:	return 2;
+		case GL20.GL_FLOAT_VEC3:	return 3;
+		case GL20.GL_FLOAT_VEC4:	return 4;
+		case GL20.GL_FLOAT_MAT2:	return 4;
+		case GL20.GL_FLOAT_MAT3:	return 9;
+		case GL20.GL_FLOAT_MAT4:	return 16;
+		default:					return 0;
+		}
+	}
+
+	private static int intComponents(int type) {
+		switch(type) {
+		case GL11.GL_INT:
+		case GL20.GL_BOOL:				return 1;
+		case GL20.GL_INT_VEC2:
+		case GL20.GL_BOOL_VEC2:			return 2;
+		case GL20.GL_INT_VEC3:
+		case GL20.GL_BOOL_VEC3:			return 3;
+		case GL20.GL_INT_VEC4:
+		case GL20.GL_BOOL_VEC4:			return 4;
+		default:						return (textureTarget(type) != 0) ? 1 : 0;
+		}
+	}
+
+	private int bucket(String key) {
+		int h = key.hashCode();
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	/**
+	 * Look up the slot of a uniform. A miss costs a single failed probe, plus
+	 * parsing the index of a name that ends in ']'.
+	 *
+	 * @param name Name of the uniform or of an array element, like colors[2]. Must be an exact match.
+	 * @return Slot of the uniform or -1 if the program has no such active uniform.
+	 */
+	int slot(String name) {
+		int i = bucket(name);
+		String key;
+		while((key = keys[i]) != null) {
+			if(key == name || key.equals(name)) {
+				return slots[i];
+			}
+			i = (i + 1) & mask;
+		}
+		return element(name);
+	}
+
+	/*
+	 * Add a slot for an element of an array uniform, like colors[2] or
+	 * lights[1].colors[2]. The elements of an array have consecutive locations.
+	 * A write through the slot covers the element and the ones after it.
+	 *
+	 * @return the new slot, or -1 if the name is not an element of an array.
+	 */
+	private int element(String name) {
+		int end = name.length() - 1;
+		int open = name.lastIndexOf('[');
+		if(open <= 0 || end - open < 2 || end - open > 10 || name.charAt(end) != ']') {
+			return -1;
+		}
+		long index = 0;
+		for(int i = open + 1; i < end; i++) {
+			char c = name.charAt(i);
+			if(c < '0' || c > '9') {
+				return -1;
+			}
+			index = index * 10 + (c - '0');
+		}
+		int array = slot(name.substring(0, open));
+		if(array == -1 || arrays[array] != -1 || index >= sizes[array]) {
+			return -1;
+		}
+		if(index == 0) {
+			index(name, array);
+			return array;
+		}
+		grow();
+		int e = (int) index;
+		int slot = count++;
+		names[slot] = name;
+		locations[slot] = locations[array] + e;
+		types[slot] = types[array];
+		sizes[slot] = sizes[array] - e;
+		components[slot] = components[array];
+		offsets[slot] = (offsets[array] == -1) ? -1 : offsets[array] + e * components[array];
+		intStore[slot] = intStore[array];
+		arrays[slot] = array;
+		aliased[slot] = true;
+		aliased[array] = true;
+		known[slot] = 0;
+		units[slot] = (units[array] == -1) ? -1 : units[array] + e;
+		index(name, slot);
+		return slot;
+	}
+
+	/**
+	 * Look up the location of a uniform without going to the driver.
+	 *
+	 * @param name Name of the uniform. Must be an exact match.
+	 * @return Location of the uniform or -1 if the program has no such active uniform.
+	 */
+	int location(String name) {
+		int slot = slot(name);
+		return (slot == -1) ? -1 : locations[slot];
+	}
+
+	/*
+	 * Offset into the float shadow store if the slot is of the given type, -1 otherwise.
+	 */
+	private int floatOffset(int slot, int type) {
+		return (types[slot] != type) ? -1 : offsets[slot];
+	}
+
+	/*
+	 * Offset into the int shadow store if the slot takes n ints per element, -1 otherwise.
+	 */
+	private int intOffset(int slot, int n) {
+		return (!intStore[slot] || components[slot] != n) ? -1 : offsets[slot];
+	}
+
+	private static boolean same(float a, float b) {
+		return Float.floatToRawIntBits(a) == Float.floatToRawIntBits(b);
+	}
+
+	/**
+	 * Update the shadow of a float uniform.
+	 *
+	 * @return true if the value differs from the shadow and has to be uploaded.
+	 */
+	boolean update1f(int slot, float x) {
+		int o = floatOffset(slot, GL11.GL_FLOAT);
+		if(o == -1) {
+			return true;
+		}
+		float[] v = floatValues;
+		if(known[slot] != 0 && same(v[o], x)) {
+			return false;
+		}
+		v[o] = x;
+		known[slot] = Math.max(known[slot], 1);
+		return true;
+	}
+
+	/**
+	 * Update the shadow of a vec2 uniform.
+	 *
+	 * @return true if the value differs from the shadow and has to be uploaded.
+	 */
+	boolean update2f(int slot, float x, float y) {
+		int o = floatOffset(slot, GL20.GL_FLOAT_VEC2);
+		if(o == -1) {
+			return true;
+		}
+		float[] v = floatValues;
+		if(known[slot] != 0 && same(v[o], x) && same(v[o + 1], y)) {
+			return false;
+		}
+		v[o] = x;
+		v[o + 1] = y;
+		known[slot] = Math.max(known[slot], 1);
+		return true;
+	}
+
+	/**
+	 * Update the shadow of a vec3 uniform.
+	 *
+	 * @return true if the value differs from the shadow and has to be uploaded.
+	 */
+	boolean update3f(int slot, float x, float y, float z) {
+		int o = floatOffset(slot, GL20.GL_FLOAT_VEC3);
+		if(o == -1) {
+			return true;
+		}
+		float[] v = floatValues;
+		if(known[slot] != 0 && same(v[o], x) && same(v[o + 1], y) && same(v[o + 2], z)) {
+			return false;
+		}
+		v[o] = x;
+		v[o + 1] = y;
+		v[o + 2] = z;
+		known[slot] = Math.max(known[slot], 1);
+		return true;
+	}
+
+	/**
+	 * Update the shadow of a vec4 uniform.
+	 *
+	 * @return true if the value differs from the shadow and has to be uploaded.
+	 */
+	boolean update4f(int slot, float x, float y, float z, float w) {
+		int o = floatOffset(slot, GL20.GL_FLOAT_VEC4);
+		if(o == -1) {
+			return true;
+		}
+		float[] v = floatValues;
+		if(known[slot] != 0 && same(v[o], x) && same(v[o + 1], y) && same(v[o + 2], z) && same(v[o + 3], w)) {
+			return false;
+		}
+		v[o] = x;
+		v[o + 1] = y;
+		v[o + 2] = z;
+		v[o + 3] = w;
+		known[slot] = Math.max(known[slot], 1);
+		return true;
+	}
+
+	/**
+	 * Update the shadow of an int, bool or sampler uniform.
+	 *
+	 * @return true if the value differs from the shadow and has to be uploaded.
+	 */
+	boolean update1i(int slot, int x) {
+		int o = intOffset(slot, 1);
+		if(o == -1) {
+			return true;
+		}
+		if(known[slot] != 0 && intValues[o] == x) {
+			return false;
+		}
+		intValues[o] = x;
+		known[slot] = Math.max(known[slot], 1);
+		return true;
+	}
+
+	/**
+	 * Update the shadow of a float array uniform from the remaining elements of a buffer.
+	 * The buffer position is left untouched.
+	 *
+	 * @return true if the values differ from the shadow and have to be uploaded.
+	 */
+	boolean update1f(int slot, FloatBuffer buf) {
+		int o = floatOffset(slot, GL11.GL_FLOAT);
+		int n = buf.remaining();
+		if(o == -1 || n > sizes[slot]) {
+			return true;
+		}
+		float[] v = floatValues;
+		int p = buf.position();
+		boolean changed = known[slot] < n;
+		for(int i = 0; i < n; i++) {
+			float x = buf.get(p + i);
+			if(!same(v[o + i], x)) {
+				v[o + i] = x;
+				changed = true;
+			}
+		}
+		known[slot] = Math.max(known[slot], n);
+		return changed;
+	}
+
+	/**
+	 * Update the shadow of an int array uniform from the remaining elements of a buffer.
+	 * The buffer position is left untouched.
+	 *
+	 * @return true if the values differ from the shadow and have to be uploaded.
+	 */
+	boolean update1i(int slot, IntBuffer buf) {
+		int o = intOffset(slot, 1);
+		int n = buf.remaining();
+		if(o == -1 || n > sizes[slot]) {
+			return true;
+		}
+		int[] v = intValues;
+		int p = buf.position();
+		boolean changed = known[slot] < n;
+		for(int i = 0; i < n; i++) {
+			int x = buf.get(p + i);
+			if(v[o + i] != x) {
+				v[o + i] = x;
+				changed = true;
+			}
+		}
+		known[slot] = Math.max(known[slot], n);
+		return changed;
+	}
+
+	/**
+	 * Update the shadow of a float, vector or matrix uniform (or array of them)
+	 * from n floats of an array, laid out the way they are uploaded.
+	 *
+	 * @param type GL type the values are uploaded as.
+	 * @return true if the values differ from the shadow and have to be uploaded.
+	 */
+	boolean updateFloats(int slot, int type, float[] src, int offset, int n) {
+		int o = floatOffset(slot, type);
+		if(o == -1 || n > components[slot] * sizes[slot]) {
+			return true;
+		}
+		float[] v = floatValues;
+		//Whole elements the upload covers, the driver ignores a partial last one
+		int elements = n / components[slot];
+		boolean changed = known[slot] < elements;
+		for(int i = 0; i < n; i++) {
+			float x = src[offset + i];
+			if(!same(v[o + i], x)) {
+				v[o + i] = x;
+				changed = true;
+			}
+		}
+		known[slot] = Math.max(known[slot], elements);
+		return changed;
+	}
+
+	/**
+	 * Update the shadow of an int array uniform from n ints of an array.
+	 *
+	 * @return true if the values differ from the shadow and have to be uploaded.
+	 */
+	boolean updateInts(int slot, int[] src, int offset, int n) {
+		int o = intOffset(slot, 1);
+		if(o == -1 || n > sizes[slot]) {
+			return true;
+		}
+		int[] v = intValues;
+		boolean changed = known[slot] < n;
+		for(int i = 0; i < n; i++) {
+			int x = src[offset + i];
+			if(v[o + i] != x) {
+				v[o + i] = x;
+				changed = true;
+			}
+		}
+		known[slot] = Math.max(known[slot], n);
+		return changed;
+	}
+
+	/**
+	 * @return number of glGetUniformLocation calls made to fill the table.
+	 */
+	int getLocationQueries() {
+		return locationQueries;
+	}
+
+	/**
+	 * Forget the shadow values. The next update of every uniform is uploaded.
+	 */
+	void invalidate() {
+		Arrays.fill(known, 0, count, 0);
+		//The sampler units may have been changed as well
+		unitsPending = textureUnits > 0;
+	}
+
+	//GETTERS
+	int size() {
+		return count;
+	}
+
+	String getName(int slot) {
+		return names[slot];
+	}
+
+	int getLocation(int slot) {
+		return locations[slot];
+	}
+
+	int getType(int slot) {
+		return types[slot];
+	}
+
+	int getArraySize(int slot) {
+		return sizes[slot];
+	}
+
+	/**
+	 * @return true if another slot writes some of the locations of the slot, as
+	 * 			an array and its element slots do.
+	 */
+	boolean isAliased(int slot) {
+		return aliased[slot];
+	}
+
+	/**
+	 * @return first texture unit of a sampler slot, -1 if the slot is not a sampler.
+	 */
+	int getTextureUnit(int slot) {
+		return units[slot];
+	}
+
+	/**
+	 * @return one past the highest texture unit the samplers of the program take.
+	 */
+	int getTextureUnits() {
+		return textureUnits;
+	}
+}
@@ -0,0 +1,62 @@
+package com.sgflt.Example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HistogramTest {
+
+	@Test
+	public void emptyHistogramReportsZero() {
+		Histogram h = new Histogram();
+		assertEquals(0, h.getCount());
+		assertEquals(0, h.getPercentile(99));
+		assertEquals(0.0, h.getMean(), 0.0);
+	}
+
+	@Test
+	public void smallValuesAreExact() {
+		Histogram h = new Histogram();
+		for(int i = 1; i <= 10; i++) {
+			h.record(i);
+		}
+		assertEquals(5, h.getPercentile(50));
+		assertEquals(9, h.getPercentile(90));
+		assertEquals(10, h.getPercentile(100));
+		assertEquals(5.5, h.getMean(), 1e-9);
+	}
+
+	@Test
+	public void percentilesAreWithinTheBucketError() {
+		Histogram h = new Histogram();
+		for(long i = 1; i <= 1000; i++) {
+			h.record(i * 16667);
+		}
+		long[] expected = {500 * 16667L, 990 * 16667L, 999 * 16667L};
+		double[] percentiles = {50, 99, 99.9};
+		for(int i = 0; i < expected.length; i++) {
+			long p = h.getPercentile(percentiles[i]);
+			assertTrue(p + " for " + expected[i], p >= expected[i] && p <= expected[i] * 1.0625);
+		}
+		assertEquals(1000 * 16667L, h.getMax());
+	}
+
+	@Test
+	public void percentileNeverExceedsTheMax() {
+		Histogram h = new Histogram();
+		h.record(1000003);
+		assertEquals(1000003, h.getPercentile(50));
+	}
+
+	@Test
+	public void negativeValuesCountAsZeroAndResetEmpties() {
+		Histogram h = new Histogram();
+		h.record(-5);
+		assertEquals(1, h.getCount());
+		assertEquals(0, h.getMax());
+		h.reset();
+		assertEquals(0, h.getCount());
+		assertEquals(0, h.getPercentile(50));
+	}
+}
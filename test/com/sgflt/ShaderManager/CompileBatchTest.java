@@ -0,0 +1,151 @@
+/**
+ *	Author: Jack Ramey
+ *	File: CompileBatchTest.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Test;
+
+/*
+ * Compiles and links of a batch are all sent before any status is asked for.
+ */
+public class CompileBatchTest {
+
+	private static final String VS = "void main(){}";
+
+	private final ShaderManager sm = ShaderManager.INSTANCE;
+	private final RecordingBackend gl = (RecordingBackend) sm.getBackend();
+
+	@After
+	public void tearDown() {
+		sm.unbind();
+		gl.clear();
+	}
+
+	/*
+	 * Index of the first call with the opcode since the last clear, or -1.
+	 */
+	private int first(int opcode) {
+		for(int i = 0; i < gl.getCallCount(); i++) {
+			if(gl.getOpcode(i) == opcode) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/*
+	 * Index of the last call with the opcode since the last clear, or -1.
+	 */
+	private int last(int opcode) {
+		for(int i = gl.getCallCount() - 1; i >= 0; i--) {
+			if(gl.getOpcode(i) == opcode) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Test
+	public void nothingIsSentBeforeSubmit() {
+		CompileBatch batch = sm.newCompileBatch();
+		gl.clear();
+		batch.add("batch.queued", VS, "uniform float queued; void main(){}");
+		assertEquals(0, gl.count(RecordingBackend.COMPILE_SHADER));
+		assertEquals(0, gl.count(RecordingBackend.LINK_PROGRAM));
+		assertEquals(1, batch.getPending());
+		batch.finish();
+		assertEquals(0, batch.getPending());
+	}
+
+	@Test
+	public void submitAsksForNoStatus() {
+		CompileBatch batch = sm.newCompileBatch();
+		batch.add("batch.submit.a", VS, "uniform float submit_a; void main(){}");
+		batch.add("batch.submit.b", VS, "uniform float submit_b; void main(){}");
+		gl.clear();
+		batch.submit();
+		assertEquals(2, gl.count(RecordingBackend.LINK_PROGRAM));
+		assertEquals(0, gl.count(RecordingBackend.GET_SHADER));
+		assertEquals(0, gl.count(RecordingBackend.GET_PROGRAM));
+		assertEquals(2, batch.getPending());
+		assertTrue(batch.poll());
+	}
+
+	@Test
+	public void statusIsCollectedAfterEveryLink() {
+		CompileBatch batch = sm.newCompileBatch();
+		Future<ShaderHandle> a = batch.add("batch.order.a", VS, "uniform float order_a; void main(){}");
+		Future<ShaderHandle> b = batch.add("batch.order.b", VS, "uniform float order_b; void main(){}");
+		gl.clear();
+		batch.finish();
+		assertTrue(last(RecordingBackend.LINK_PROGRAM) < first(RecordingBackend.GET_SHADER));
+		assertTrue(a.isDone());
+		assertTrue(b.isDone());
+	}
+
+	@Test
+	public void futuresResolveToTheRegisteredHandles() throws Exception {
+		CompileBatch batch = sm.newCompileBatch();
+		Future<ShaderHandle> a = batch.add("batch.handle", VS, "uniform float handle; void main(){}");
+		assertFalse(a.isDone());
+		batch.submit();
+		assertTrue(batch.poll());
+		ShaderHandle h = a.get();
+		assertNotNull(h);
+		assertSame(h, sm.getHandle("batch.handle"));
+		assertTrue(sm.bind(h));
+	}
+
+	@Test
+	public void getOnTheOwnerThreadCollectsTheBatch() throws Exception {
+		CompileBatch batch = sm.newCompileBatch();
+		Future<ShaderHandle> a = batch.add("batch.get", VS, "uniform float get; void main(){}");
+		ShaderHandle h = a.get();
+		assertSame(sm.getHandle("batch.get"), h);
+		assertEquals(0, batch.getPending());
+	}
+
+	@Test
+	public void failuresStayWithTheirShader() throws Exception {
+		CompileBatch batch = sm.newCompileBatch();
+		Future<ShaderHandle> broken = batch.add("batch.broken", VS, "#error broken\nvoid main(){}");
+		Future<ShaderHandle> fine = batch.add("batch.fine", VS, "uniform float fine; void main(){}");
+		batch.finish();
+		try {
+			broken.get();
+			fail("A shader that fails to compile must fail its future.");
+		} catch(ExecutionException e) {
+			assertTrue(e.getCause() instanceof IllegalArgumentException);
+			assertTrue(e.getCause().getMessage().startsWith("batch.broken"));
+		}
+		assertNotNull(fine.get());
+		assertEquals(null, sm.getHandle("batch.broken"));
+	}
+}
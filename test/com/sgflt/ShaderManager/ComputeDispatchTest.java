@@ -0,0 +1,159 @@
+/**
+ *	Author: Jack Ramey
+ *	File: ComputeDispatchTest.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Test;
+import org.lwjgl.opengl.GL42;
+import org.lwjgl.opengl.GL43;
+
+public class ComputeDispatchTest {
+
+	private static final String CS = "layout(local_size_x = 64) in; uniform float dt; void main(){}";
+
+	private final ShaderManager sm = ShaderManager.INSTANCE;
+	private final RecordingBackend gl = (RecordingBackend) sm.getBackend();
+
+	@After
+	public void tearDown() {
+		sm.endRecording();
+		sm.dispose();
+		gl.clear();
+	}
+
+	/*
+	 * Index of the first recorded call with the opcode, -1 if there is none.
+	 */
+	private int first(int opcode) {
+		for(int i = 0; i < gl.getCallCount(); i++) {
+			if(gl.getOpcode(i) == opcode) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Test
+	public void computeProgramHasOneStage() {
+		gl.clear();
+		ShaderHandle h = sm.createComputeShader("particles", CS);
+		assertEquals(1, gl.count(RecordingBackend.CREATE_SHADER));
+		assertEquals(ShaderType.COMPUTE.getGLType(), gl.getInt(first(RecordingBackend.CREATE_SHADER), 0));
+		assertEquals(1, gl.count(RecordingBackend.ATTACH_SHADER));
+		assertTrue(sm.shaders[h.id].isCompute());
+	}
+
+	@Test
+	public void dispatchBindsAndRunsTheProgram() {
+		ShaderHandle h = sm.createComputeShader("particles", CS);
+		gl.clear();
+		sm.dispatch(h, 16, 2, 1);
+		int use = first(RecordingBackend.USE_PROGRAM);
+		int dispatch = first(RecordingBackend.DISPATCH_COMPUTE);
+		assertTrue(use != -1 && use < dispatch);
+		assertEquals(sm.shaders[h.id].shaderProgram, gl.getInt(use, 0));
+		assertEquals(16, gl.getInt(dispatch, 0));
+		assertEquals(2, gl.getInt(dispatch, 1));
+		assertEquals(1, gl.getInt(dispatch, 2));
+		//Already bound, the second dispatch is just the dispatch
+		gl.clear();
+		sm.dispatch(h, 1, 1, 1);
+		assertEquals(1, gl.getCallCount());
+	}
+
+	@Test
+	public void recordedUniformsAreIssuedBeforeTheDispatch() {
+		ShaderHandle h = sm.createComputeShader("particles", CS);
+		sm.bind(h);
+		sm.beginRecording();
+		gl.clear();
+		sm.putFloat("dt", 0.016f);
+		assertEquals(0, gl.count(RecordingBackend.UNIFORM_1F));
+		sm.dispatch(4, 1, 1);
+		int upload = first(RecordingBackend.UNIFORM_1F);
+		assertTrue(upload != -1 && upload < first(RecordingBackend.DISPATCH_COMPUTE));
+	}
+
+	@Test
+	public void dispatchRejectsGraphicsPrograms() {
+		ShaderHandle h = sm.createShader("lit", "void main(){}", "void main(){}");
+		sm.bind(h);
+		gl.clear();
+		try {
+			sm.dispatch(1, 1, 1);
+			fail("Expected a graphics program to be rejected");
+		} catch(IllegalStateException e) {
+			//expected
+		}
+		try {
+			sm.dispatch(h, 1, 1, 1);
+			fail("Expected a graphics program to be rejected");
+		} catch(IllegalStateException e) {
+			//expected
+		}
+		sm.bindDefault();
+		try {
+			sm.dispatch(1, 1, 1);
+			fail("Expected the default pipeline to be rejected");
+		} catch(IllegalStateException e) {
+			//expected
+		}
+		assertEquals(0, gl.count(RecordingBackend.DISPATCH_COMPUTE));
+	}
+
+	@Test
+	public void dispatchRejectsNegativeGroupCounts() {
+		ShaderHandle h = sm.createComputeShader("particles", CS);
+		try {
+			sm.dispatch(h, 1, -1, 1);
+			fail("Expected a negative group count to be rejected");
+		} catch(IllegalArgumentException e) {
+			//expected
+		}
+		assertEquals(0, gl.count(RecordingBackend.DISPATCH_COMPUTE));
+	}
+
+	@Test
+	public void barriersPassTheirBits() {
+		gl.clear();
+		sm.storageBarrier();
+		sm.drawBarrier();
+		sm.memoryBarrier(GL42.GL_TEXTURE_FETCH_BARRIER_BIT);
+		assertEquals(3, gl.count(RecordingBackend.MEMORY_BARRIER));
+		assertEquals(GL43.GL_SHADER_STORAGE_BARRIER_BIT, gl.getInt(0, 0));
+		assertEquals(GL42.GL_VERTEX_ATTRIB_ARRAY_BARRIER_BIT | GL42.GL_ELEMENT_ARRAY_BARRIER_BIT
+				| GL42.GL_COMMAND_BARRIER_BIT, gl.getInt(1, 0));
+		assertEquals(GL42.GL_TEXTURE_FETCH_BARRIER_BIT, gl.getInt(2, 0));
+	}
+
+	@Test
+	public void storageBufferIsBoundToItsBinding() {
+		gl.clear();
+		sm.bindStorageBuffer(3, 42);
+		assertEquals(RecordingBackend.BIND_BUFFER_BASE, gl.getOpcode(0));
+		assertEquals(GL43.GL_SHADER_STORAGE_BUFFER, gl.getInt(0, 0));
+		assertEquals(3, gl.getInt(0, 1));
+		assertEquals(42, gl.getInt(0, 2));
+	}
+}
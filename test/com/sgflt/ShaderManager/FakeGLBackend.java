@@ -0,0 +1,677 @@
+/**
+ *	Author: Jack Ramey
+ *	File: FakeGLBackend.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL31;
+import org.lwjgl.opengl.GL41;
+
+/**
+ * GLBackend for tests that acts like a small driver without a context or a GPU.
+ * Binds and uniform and buffer uploads do nothing but count the call.
+ *
+ * A shader fails to compile if its source has an #error directive, and a program
+ * fails to link if one of its shaders did not compile or has no main function.
+ * The active uniforms of a linked program are taken from the <code>uniform</code>
+ * declarations of its sources, so uniform lookups and uploads behave like they do
+ * with a driver. Struct uniforms are reported member by member and the elements of
+ * an array take consecutive locations. A uniform reads back as its layout(binding = n) or 0, uploads
+ * are not stored. Every capability is reported as supported, but there are no
+ * uniform blocks.
+ *
+ * A program binary holds the sources the program was linked from, in the single
+ * format BINARY_FORMAT, so a ProgramBinaryCache can be tested. A binary in
+ * another format, or one that can not be read back, fails to link.
+ *
+ * Selected with <code>-Dcom.sgflt.ShaderManager.backend=com.sgflt.ShaderManager.FakeGLBackend</code>,
+ * or recorded with <code>-Dcom.sgflt.ShaderManager.backend=recording</code> and
+ * <code>-Dcom.sgflt.ShaderManager.backend.recorded=com.sgflt.ShaderManager.FakeGLBackend</code>,
+ * which is how the tests run.
+ */
+public final class FakeGLBackend implements GLBackend {
+
+	/**
+	 * The one program binary format of the backend.
+	 */
+	public static final int BINARY_FORMAT = 0x46414b45; //"FAKE"
+
+	/**
+	 * Uniform buffer binding points of the backend.
+	 */
+	public static final int UNIFORM_BUFFER_BINDINGS = 8;
+
+	//A struct declaration: its type name and the member declarations
+	private static final Pattern STRUCT = Pattern.compile("struct\\s+(\\w+)\\s*\\{([^}]*)\\}\\s*;");
+
+	//A shader object. Only the source is kept.
+	private static final class ShaderObject {
+		String source = "";
+		boolean compiled = false;
+	}
+
+	//A program object and the uniforms found when it was linked
+	private static final class ProgramObject {
+		final List<ShaderObject> shaders = new ArrayList<ShaderObject>();
+		final List<String> names = new ArrayList<String>();
+		//Type, array size, layout binding and location of every uniform
+		final List<int[]> typeSize = new ArrayList<int[]>();
+		int maxLength = 0;
+		//Location of the next uniform, each array element takes one
+		int nextLocation = 0;
+		//Sources of the shaders the program was linked from, its binary
+		final List<String> linkedSources = new ArrayList<String>();
+		boolean linked = false;
+	}
+
+	//A buffer object. Nothing is stored.
+	private static final class BufferObject {
+	}
+
+	//Program, shader and buffer objects, the GL name of objects[i] is i + 1. Deleted objects are null.
+	private final List<Object> objects = new ArrayList<Object>();
+	//Objects created and not deleted
+	private int live = 0;
+	//Binds and uniform and buffer uploads made
+	private long calls = 0;
+	//Values of the last float vector or matrix upload, read in place so uploads stay allocation free
+	private FloatBuffer uploaded = null;
+	private int uploadedPosition = 0;
+	private int uploadedCount = 0;
+
+	/**
+	 * @return number of binds and uniform and buffer uploads made.
+	 */
+	public long getCalls() {
+		return calls;
+	}
+
+	/**
+	 * @return number of floats passed by the last float vector or matrix upload.
+	 */
+	public int getUploadedCount() {
+		return uploadedCount;
+	}
+
+	/**
+	 * Value of the last float vector or matrix upload. Only valid until the
+	 * caller of the upload reuses its buffer.
+	 *
+	 * @param index Index of the float within the upload.
+	 * @return float that was passed.
+	 */
+	public float getUploaded(int index) {
+		return uploaded.get(uploadedPosition + index);
+	}
+
+	private void upload(FloatBuffer values) {
+		uploaded = values;
+		uploadedPosition = values.position();
+		uploadedCount = values.remaining();
+		calls++;
+	}
+
+	/**
+	 * @return number of program, shader and buffer objects that were created and
+	 * 			not deleted yet.
+	 */
+	public int getLiveObjects() {
+		return live;
+	}
+
+	private int create(Object o) {
+		objects.add(o);
+		live++;
+		return objects.size();
+	}
+
+	private void delete(int name, Class<?> type) {
+		if(type.isInstance(get(name))) {
+			objects.set(name - 1, null);
+			live--;
+		}
+	}
+
+	private Object get(int name) {
+		return (name > 0 && name <= objects.size()) ? objects.get(name - 1) : null;
+	}
+
+	private ProgramObject program(int name) {
+		Object o = get(name);
+		return (o instanceof ProgramObject) ? (ProgramObject) o : null;
+	}
+
+	@Override
+	public boolean isSupported(String capability) {
+		return true;
+	}
+
+	@Override
+	public int getInteger(int pname) {
+		if(pname == GL31.GL_MAX_UNIFORM_BUFFER_BINDINGS) {
+			return UNIFORM_BUFFER_BINDINGS;
+		}
+		return (pname == GL41.GL_NUM_PROGRAM_BINARY_FORMATS) ? 1 : 0;
+	}
+
+	@Override
+	public String getString(int name) {
+		return "";
+	}
+
+	@Override
+	public String getStringi(int name, int index) {
+		return "";
+	}
+
+	@Override
+	public int createProgram() {
+		return create(new ProgramObject());
+	}
+
+	@Override
+	public int createShader(int type) {
+		return create(new ShaderObject());
+	}
+
+	@Override
+	public void shaderSource(int shader, ByteBuffer source) {
+		Object o = get(shader);
+		if(o instanceof ShaderObject) {
+			((ShaderObject) o).source = StandardCharsets.UTF_8.decode(source.duplicate()).toString();
+		}
+	}
+
+	@Override
+	public void compileShader(int shader) {
+		Object o = get(shader);
+		if(o instanceof ShaderObject) {
+			ShaderObject s = (ShaderObject) o;
+			s.compiled = !s.source.contains("#error");
+		}
+	}
+
+	@Override
+	public int getShader(int shader, int pname) {
+		Object o = get(shader);
+		if(pname == GL20.GL_COMPILE_STATUS && o instanceof ShaderObject) {
+			return ((ShaderObject) o).compiled ? GL11.GL_TRUE : GL11.GL_FALSE;
+		}
+		return GL11.GL_TRUE;
+	}
+
+	@Override
+	public void attachShader(int program, int shader) {
+		ProgramObject p = program(program);
+		Object o = get(shader);
+		if(p != null && o instanceof ShaderObject) {
+			p.shaders.add((ShaderObject) o);
+		}
+	}
+
+	@Override
+	public void detachShader(int program, int shader) {
+		ProgramObject p = program(program);
+		if(p != null) {
+			p.shaders.remove(get(shader));
+		}
+	}
+
+	@Override
+	public void deleteShader(int shader) {
+		delete(shader, ShaderObject.class);
+	}
+
+	@Override
+	public void linkProgram(int program) {
+		ProgramObject p = program(program);
+		if(p == null) {
+			return;
+		}
+		boolean ok = !p.shaders.isEmpty();
+		p.linkedSources.clear();
+		for(ShaderObject shader : p.shaders) {
+			ok &= shader.compiled && shader.source.contains("main");
+			p.linkedSources.add(shader.source);
+		}
+		link(p, ok);
+	}
+
+	/*
+	 * Take the uniforms from the linked sources, or clear them if linking failed.
+	 */
+	private static void link(ProgramObject p, boolean ok) {
+		p.names.clear();
+		p.typeSize.clear();
+		p.maxLength = 0;
+		p.nextLocation = 0;
+		p.linked = ok;
+		if(!ok) {
+			p.linkedSources.clear();
+			return;
+		}
+		for(String source : p.linkedSources) {
+			declareUniforms(p, source);
+		}
+	}
+
+	/*
+	 * Add the uniforms declared in a source. Uniform blocks and nested structs are skipped.
+	 */
+	private static void declareUniforms(ProgramObject p, String source) {
+		StringBuilder code = new StringBuilder(source.length());
+		for(String line : source.split("\n")) {
+			//Preprocessor lines have no semicolon and would swallow the next statement
+			if(line.trim().startsWith("#")) {
+				continue;
+			}
+			int comment = line.indexOf("//");
+			code.append((comment == -1) ? line : line.substring(0, comment)).append('\n');
+		}
+		Map<String, String[]> structs = new HashMap<String, String[]>();
+		Matcher struct = STRUCT.matcher(code);
+		while(struct.find()) {
+			structs.put(struct.group(1), struct.group(2).split(";"));
+		}
+		for(String statement : STRUCT.matcher(code).replaceAll("").split(";")) {
+			String s = statement.trim();
+			int binding = 0;
+			if(s.startsWith("layout")) {
+				binding = binding(s.substring(s.indexOf('(') + 1, s.indexOf(')')));
+				s = s.substring(s.indexOf(')') + 1).trim();
+			}
+			if(!s.startsWith("uniform") || s.indexOf('{') != -1) {
+				continue;
+			}
+			String[] tokens = s.substring("uniform".length()).trim().split("\\s+", 2);
+			boolean precision = tokens[0].equals("lowp") || tokens[0].equals("mediump") || tokens[0].equals("highp");
+			if(precision && tokens.length == 2) {
+				tokens = tokens[1].split("\\s+", 2);
+			}
+			if(tokens.length < 2) {
+				continue;
+			}
+			String[] members = structs.get(tokens[0]);
+			int type = type(tokens[0]);
+			for(String declarator : tokens[1].split(",")) {
+				String d = declarator.replaceAll("\\s+", "");
+				int init = d.indexOf('=');
+				if(init != -1) {
+					d = d.substring(0, init);
+				}
+				if(members != null) {
+					int size = size(d);
+					String name = (size == 0) ? d : d.substring(0, d.lastIndexOf('['));
+					for(int i = 0; i < Math.max(size, 1); i++) {
+						String prefix = (size == 0) ? name : name + "[" + i + "]";
+						for(String member : members) {
+							String[] m = member.trim().split("\\s+", 2);
+							if(m.length == 2 && type(m[0]) != 0) {
+								declare(p, prefix + "." + m[1].replaceAll("\\s+", ""), type(m[0]), 0);
+							}
+						}
+					}
+				} else if(type != 0) {
+					declare(p, d, type, binding);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Array size of a declarator like lights[4], 0 if it is not an array.
+	 */
+	private static int size(String declarator) {
+		if(!declarator.endsWith("]")) {
+			return 0;
+		}
+		return Integer.parseInt(declarator.substring(declarator.lastIndexOf('[') + 1, declarator.length() - 1));
+	}
+
+	/*
+	 * Add a uniform by its declarator. Arrays are reported as name[0].
+	 */
+	private static void declare(ProgramObject p, String declarator, int type, int binding) {
+		int size = Math.max(size(declarator), 1);
+		String d = declarator;
+		if(d.endsWith("]")) {
+			d = d.substring(0, d.lastIndexOf('[')) + "[0]";
+		}
+		if(!d.isEmpty() && !p.names.contains(d)) {
+			p.names.add(d);
+			p.typeSize.add(new int[] {type, size, binding, p.nextLocation});
+			p.maxLength = Math.max(p.maxLength, d.length() + 1);
+			p.nextLocation += size;
+		}
+	}
+
+	/*
+	 * Value of binding = n in a layout qualifier list, 0 if there is none.
+	 */
+	private static int binding(String qualifiers) {
+		for(String qualifier : qualifiers.split(",")) {
+			String[] kv = qualifier.split("=");
+			if(kv.length == 2 && kv[0].trim().equals("binding")) {
+				try {
+					return Integer.parseInt(kv[1].trim());
+				} catch(NumberFormatException e) {
+					return 0;
+				}
+			}
+		}
+		return 0;
+	}
+
+	private static int type(String name) {
+		if(name.equals("float"))		return GL11.GL_FLOAT;
+		if(name.equals("vec2"))			return GL20.GL_FLOAT_VEC2;
+		if(name.equals("vec3"))			return GL20.GL_FLOAT_VEC3;
+		if(name.equals("vec4"))			return GL20.GL_FLOAT_VEC4;
+		if(name.equals("mat2"))			return GL20.GL_FLOAT_MAT2;
+		if(name.equals("mat3"))			return GL20.GL_FLOAT_MAT3;
+		if(name.equals("mat4"))			return GL20.GL_FLOAT_MAT4;
+		if(name.equals("int"))			return GL11.GL_INT;
+		if(name.equals("bool"))			return GL20.GL_BOOL;
+		if(name.equals("ivec2"))		return GL20.GL_INT_VEC2;
+		if(name.equals("ivec3"))		return GL20.GL_INT_VEC3;
+		if(name.equals("ivec4"))		return GL20.GL_INT_VEC4;
+		if(name.equals("sampler1D"))	return GL20.GL_SAMPLER_1D;
+		if(name.equals("sampler2D"))	return GL20.GL_SAMPLER_2D;
+		if(name.equals("sampler3D"))	return GL20.GL_SAMPLER_3D;
+		if(name.equals("samplerCube"))	return GL20.GL_SAMPLER_CUBE;
+		if(name.equals("sampler2DShadow"))	return GL20.GL_SAMPLER_2D_SHADOW;
+		if(name.equals("sampler2DArray"))	return GL30.GL_SAMPLER_2D_ARRAY;
+		return 0;
+	}
+
+	@Override
+	public void validateProgram(int program) {
+	}
+
+	@Override
+	public int getProgram(int program, int pname) {
+		ProgramObject p = program(program);
+		switch(pname) {
+		case GL20.GL_ACTIVE_UNIFORMS:
+			return (p == null) ? 0 : p.names.size();
+		case GL20.GL_ACTIVE_UNIFORM_MAX_LENGTH:
+			return (p == null) ? 0 : p.maxLength;
+		case GL20.GL_LINK_STATUS:
+			return (p == null || p.linked) ? GL11.GL_TRUE : GL11.GL_FALSE;
+		case GL41.GL_PROGRAM_BINARY_LENGTH:
+			return (p == null) ? 0 : binary(p).length;
+		default:
+			//Validate and completion status
+			return GL11.GL_TRUE;
+		}
+	}
+
+	@Override
+	public void deleteProgram(int program) {
+		delete(program, ProgramObject.class);
+	}
+
+	@Override
+	public void programParameteri(int program, int pname, int value) {
+	}
+
+	@Override
+	public void programBinary(int program, int format, ByteBuffer binary) {
+		ProgramObject p = program(program);
+		if(p == null) {
+			return;
+		}
+		p.linkedSources.clear();
+		//Count, then the length and UTF-8 bytes of every source
+		ByteBuffer b = binary.duplicate().order(ByteOrder.BIG_ENDIAN);
+		boolean ok = format == BINARY_FORMAT && b.remaining() >= 4;
+		int count = ok ? b.getInt() : 0;
+		for(int i = 0; ok && i < count; i++) {
+			int length = (b.remaining() >= 4) ? b.getInt() : -1;
+			if(length < 0 || length > b.remaining()) {
+				ok = false;
+				break;
+			}
+			byte[] source = new byte[length];
+			b.get(source);
+			p.linkedSources.add(new String(source, StandardCharsets.UTF_8));
+		}
+		link(p, ok && count > 0 && !b.hasRemaining());
+	}
+
+	@Override
+	public void getProgramBinary(int program, IntBuffer length, IntBuffer format, ByteBuffer binary) {
+		ProgramObject p = program(program);
+		byte[] bytes = (p == null) ? new byte[0] : binary(p);
+		int n = Math.min(bytes.length, binary.remaining());
+		binary.duplicate().put(bytes, 0, n);
+		length.put(length.position(), n);
+		format.put(format.position(), BINARY_FORMAT);
+	}
+
+	private static byte[] binary(ProgramObject p) {
+		List<byte[]> sources = new ArrayList<byte[]>();
+		int size = 4;
+		for(String source : p.linkedSources) {
+			byte[] bytes = source.getBytes(StandardCharsets.UTF_8);
+			sources.add(bytes);
+			size += 4 + bytes.length;
+		}
+		ByteBuffer b = ByteBuffer.allocate(size);
+		b.putInt(sources.size());
+		for(byte[] bytes : sources) {
+			b.putInt(bytes.length).put(bytes);
+		}
+		return b.array();
+	}
+
+	@Override
+	public String getActiveUniform(int program, int index, int maxLength, IntBuffer sizeType) {
+		ProgramObject p = program(program);
+		int[] ts = p.typeSize.get(index);
+		sizeType.put(sizeType.position(), ts[1]);
+		sizeType.put(sizeType.position() + 1, ts[0]);
+		return p.names.get(index);
+	}
+
+	@Override
+	public int getUniformLocation(int program, CharSequence name) {
+		ProgramObject p = program(program);
+		if(p == null) {
+			return -1;
+		}
+		String key = name.toString();
+		int index = p.names.indexOf(key);
+		if(index == -1) {
+			index = p.names.indexOf(key + "[0]");
+		}
+		if(index != -1) {
+			return p.typeSize.get(index)[3];
+		}
+		//An element of an array, like colors[2]
+		int bracket = key.lastIndexOf('[');
+		if(bracket == -1 || !key.endsWith("]")) {
+			return -1;
+		}
+		index = p.names.indexOf(key.substring(0, bracket) + "[0]");
+		int element;
+		try {
+			element = Integer.parseInt(key.substring(bracket + 1, key.length() - 1));
+		} catch(NumberFormatException e) {
+			return -1;
+		}
+		return (index == -1 || element < 0 || element >= p.typeSize.get(index)[1]) ? -1 : p.typeSize.get(index)[3] + element;
+	}
+
+	@Override
+	public int getUniformi(int program, int location) {
+		ProgramObject p = program(program);
+		if(p != null) {
+			for(int[] ts : p.typeSize) {
+				if(location >= ts[3] && location < ts[3] + ts[1]) {
+					//Elements of a sampler array follow its binding
+					return (ts[2] == 0) ? 0 : ts[2] + location - ts[3];
+				}
+			}
+		}
+		return 0;
+	}
+
+	@Override
+	public void useProgram(int program) {
+		calls++;
+	}
+
+	@Override
+	public int genBuffers() {
+		return create(new BufferObject());
+	}
+
+	@Override
+	public void bindBuffer(int target, int buffer) {
+	}
+
+	@Override
+	public void bufferData(int target, long size, int usage) {
+	}
+
+	@Override
+	public void bufferSubData(int target, long offset, ByteBuffer data) {
+		calls++;
+	}
+
+	@Override
+	public void bindBufferBase(int target, int index, int buffer) {
+	}
+
+	@Override
+	public void deleteBuffers(int buffer) {
+		delete(buffer, BufferObject.class);
+	}
+
+	@Override
+	public void activeTexture(int unit) {
+	}
+
+	@Override
+	public void bindTexture(int target, int texture) {
+		calls++;
+	}
+
+	@Override
+	public void deleteTextures(int texture) {
+	}
+
+	@Override
+	public void dispatchCompute(int groupsX, int groupsY, int groupsZ) {
+		calls++;
+	}
+
+	@Override
+	public void memoryBarrier(int barriers) {
+	}
+
+	@Override
+	public int getUniformBlockIndex(int program, CharSequence name) {
+		return GL31.GL_INVALID_INDEX;
+	}
+
+	@Override
+	public void uniformBlockBinding(int program, int index, int binding) {
+	}
+
+	@Override
+	public void uniform1f(int location, float x) {
+		calls++;
+	}
+
+	@Override
+	public void uniform2f(int location, float x, float y) {
+		calls++;
+	}
+
+	@Override
+	public void uniform3f(int location, float x, float y, float z) {
+		calls++;
+	}
+
+	@Override
+	public void uniform4f(int location, float x, float y, float z, float w) {
+		calls++;
+	}
+
+	@Override
+	public void uniform1i(int location, int x) {
+		calls++;
+	}
+
+	@Override
+	public void uniform1fv(int location, FloatBuffer values) {
+		upload(values);
+	}
+
+	@Override
+	public void uniform2fv(int location, FloatBuffer values) {
+		upload(values);
+	}
+
+	@Override
+	public void uniform3fv(int location, FloatBuffer values) {
+		upload(values);
+	}
+
+	@Override
+	public void uniform4fv(int location, FloatBuffer values) {
+		upload(values);
+	}
+
+	@Override
+	public void uniform1iv(int location, IntBuffer values) {
+		calls++;
+	}
+
+	@Override
+	public void uniformMatrix2fv(int location, boolean transpose, FloatBuffer values) {
+		upload(values);
+	}
+
+	@Override
+	public void uniformMatrix3fv(int location, boolean transpose, FloatBuffer values) {
+		upload(values);
+	}
+
+	@Override
+	public void uniformMatrix4fv(int location, boolean transpose, FloatBuffer values) {
+		upload(values);
+	}
+}
@@ -0,0 +1,111 @@
+/**
+ *	Author: Jack Ramey
+ *	File: HotReloadTest.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/*
+ * Watched directories and their subdirectories, including ones created after
+ * hot reload was enabled.
+ */
+public class HotReloadTest {
+
+	//Long enough for the watch service to report a change, short enough to fail quickly
+	private static final long TIMEOUT_MILLIS = 10000;
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private final ShaderManager sm = ShaderManager.INSTANCE;
+	private final RecordingBackend gl = (RecordingBackend) sm.getBackend();
+	private final ShaderSourceLoader loader = new ShaderSourceLoader();
+
+	@After
+	public void tearDown() {
+		sm.disableHotReload();
+		sm.deleteShader("reload.nested");
+		sm.deleteShader("reload.created");
+		sm.unbind();
+		gl.clear();
+	}
+
+	private Path write(Path path, String text) throws IOException {
+		Files.createDirectories(path.getParent());
+		Files.write(path, text.getBytes(StandardCharsets.UTF_8));
+		return path;
+	}
+
+	/*
+	 * Rewrite the file until a reload picks it up. Rewriting covers the time the
+	 * watcher needs to register a directory that was just created.
+	 */
+	private boolean reloads(Path file, String name) throws IOException, InterruptedException {
+		long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		int version = 0;
+		while(System.currentTimeMillis() < deadline) {
+			if(version % 20 == 0) {
+				write(file, "uniform float " + name + version + ";\n");
+			}
+			version++;
+			if(sm.updateHotReload(Long.MAX_VALUE) > 0) {
+				return true;
+			}
+			Thread.sleep(10);
+		}
+		return false;
+	}
+
+	@Test
+	public void includesInSubdirectoriesAreWatched() throws Exception {
+		Path root = folder.getRoot().toPath();
+		Path include = write(root.resolve("lib/deep/common.glsl"), "uniform float nested;\n");
+		write(root.resolve("nested.frag"), "#include \"lib/deep/common.glsl\"\nvoid main(){}\n");
+		write(root.resolve("nested.vert"), "void main(){}\n");
+		sm.createShaderFromFiles("reload.nested", loader, root.resolve("nested.vert").toString(),
+				root.resolve("nested.frag").toString());
+		sm.enableHotReload(10, root.toString());
+		assertTrue(reloads(include, "nested_changed"));
+	}
+
+	@Test
+	public void directoriesCreatedLaterAreWatched() throws Exception {
+		Path root = folder.getRoot().toPath();
+		sm.enableHotReload(10, root.toString());
+		Path include = write(root.resolve("late/common.glsl"), "uniform float created;\n");
+		write(root.resolve("created.frag"), "#include \"late/common.glsl\"\nvoid main(){}\n");
+		write(root.resolve("created.vert"), "void main(){}\n");
+		sm.createShaderFromFiles("reload.created", loader, root.resolve("created.vert").toString(),
+				root.resolve("created.frag").toString());
+		//Drop the rebuild caused by creating the files
+		Thread.sleep(100);
+		sm.updateHotReload(Long.MAX_VALUE);
+		assertTrue(reloads(include, "created_changed"));
+	}
+}
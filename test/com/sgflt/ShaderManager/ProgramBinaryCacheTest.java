@@ -0,0 +1,229 @@
+/**
+ *	Author: Jack Ramey
+ *	File: ProgramBinaryCacheTest.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ProgramBinaryCacheTest {
+
+	private static final String VS = "uniform mat4 mvp; void main(){}";
+	private static final String FS = "uniform vec4 tint; void main(){}";
+	private static final String FS2 = "uniform float fade; void main(){}";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final ShaderManager sm = ShaderManager.INSTANCE;
+	private RecordingBackend gl;
+	private File file;
+
+	@Before
+	public void setUp() {
+		gl = (RecordingBackend) sm.getBackend();
+		file = new File(folder.getRoot(), "shaders.cache");
+	}
+
+	@After
+	public void tearDown() {
+		sm.setProgramBinaryCache(null);
+		sm.dispose();
+		gl.clear();
+	}
+
+	private ProgramBinaryCache open() throws IOException {
+		ProgramBinaryCache cache = new ProgramBinaryCache(file);
+		sm.setProgramBinaryCache(cache);
+		return cache;
+	}
+
+	/*
+	 * Fill the cache file with the binaries of the test programs, then start over without them.
+	 */
+	private void populate() throws IOException {
+		ProgramBinaryCache cache = open();
+		sm.createShader("a", VS, FS);
+		sm.createShader("b", VS, FS2);
+		cache.save();
+		sm.setProgramBinaryCache(null);
+		sm.dispose();
+	}
+
+	@Test
+	public void missCompilesAndStoresBinary() throws IOException {
+		ProgramBinaryCache cache = open();
+		gl.clear();
+		sm.createShader("a", VS, FS);
+		assertEquals(0, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertEquals(1, cache.size());
+		assertEquals(2, gl.count(RecordingBackend.COMPILE_SHADER));
+		assertEquals(1, gl.count(RecordingBackend.GET_PROGRAM_BINARY));
+	}
+
+	@Test
+	public void hitLoadsBinaryWithoutCompiling() throws IOException {
+		populate();
+		ProgramBinaryCache cache = open();
+		gl.clear();
+		ShaderHandle a = sm.createShader("a", VS, FS);
+		assertEquals(1, cache.getHits());
+		assertEquals(0, cache.getMisses());
+		assertEquals(1, gl.count(RecordingBackend.PROGRAM_BINARY));
+		assertEquals(0, gl.count(RecordingBackend.COMPILE_SHADER));
+		//The restored program is reflected like a linked one
+		sm.bind(a);
+		gl.clear();
+		sm.putVec4("tint", 1, 0, 0, 1);
+		assertEquals(1, gl.count(RecordingBackend.UNIFORM_4F));
+	}
+
+	@Test
+	public void rejectedBinaryIsDroppedAndRecompiled() throws IOException {
+		populate();
+		//Every entry gets a format the driver does not know
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.seek(8);
+			int count = raf.readInt();
+			for(int i = 0; i < count; i++) {
+				raf.seek(12 + i * 24 + 8);
+				raf.writeInt(FakeGLBackend.BINARY_FORMAT + 1);
+			}
+		} finally {
+			raf.close();
+		}
+		ProgramBinaryCache cache = open();
+		assertEquals(2, cache.size());
+		gl.clear();
+		ShaderHandle a = sm.createShader("a", VS, FS);
+		assertEquals(0, cache.getHits());
+		assertEquals(1, cache.getRejected());
+		assertEquals(1, cache.getMisses());
+		assertEquals(2, gl.count(RecordingBackend.COMPILE_SHADER));
+		sm.bind(a);
+		gl.clear();
+		sm.putVec4("tint", 1, 0, 0, 1);
+		assertEquals(1, gl.count(RecordingBackend.UNIFORM_4F));
+		//The rejected entry was replaced by the recompiled program
+		cache.save();
+		sm.setProgramBinaryCache(null);
+		sm.dispose();
+		cache = open();
+		sm.createShader("a", VS, FS);
+		assertEquals(1, cache.getHits());
+		assertEquals(0, cache.getRejected());
+	}
+
+	@Test
+	public void wrongVersionIsIgnored() throws IOException {
+		populate();
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.seek(4);
+			raf.writeInt(2);
+		} finally {
+			raf.close();
+		}
+		ProgramBinaryCache cache = open();
+		assertEquals(0, cache.size());
+		sm.createShader("a", VS, FS);
+		assertEquals(0, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	@Test
+	public void corruptFilesAreIgnored() throws IOException {
+		//Not a cache at all
+		Files.write(file.toPath(), "#version 330\nvoid main(){}\n".getBytes("UTF-8"));
+		assertEquals(0, new ProgramBinaryCache(file).size());
+		//An index running past the end of the file
+		ByteBuffer header = ByteBuffer.allocate(12).putInt(0x534d5042).putInt(1).putInt(1000);
+		Files.write(file.toPath(), header.array());
+		assertEquals(0, new ProgramBinaryCache(file).size());
+		//Shorter than a header
+		Files.write(file.toPath(), new byte[] {0x53, 0x4d});
+		assertEquals(0, new ProgramBinaryCache(file).size());
+	}
+
+	@Test
+	public void damagedBinaryIsRejected() throws IOException {
+		populate();
+		//Cut the first binary short by claiming one byte less
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.seek(12 + 20);
+			int length = raf.readInt();
+			raf.seek(12 + 20);
+			raf.writeInt(length - 1);
+		} finally {
+			raf.close();
+		}
+		ProgramBinaryCache cache = open();
+		sm.createShader("a", VS, FS);
+		sm.createShader("b", VS, FS2);
+		assertEquals(1, cache.getRejected());
+		assertEquals(1, cache.getHits());
+	}
+
+	@Test
+	public void saveAndReopenRoundTrip() throws IOException {
+		ProgramBinaryCache cache = open();
+		cache.save();
+		assertFalse("Nothing to save for an unchanged cache", file.exists());
+		sm.createShader("a", VS, FS);
+		sm.createShader("b", VS, FS2);
+		cache.save();
+		assertTrue(file.isFile());
+		sm.setProgramBinaryCache(null);
+		sm.dispose();
+
+		//Reopen, add a program and save over the file the entries were read from
+		cache = open();
+		assertEquals(2, cache.size());
+		sm.createShader("c", "void main(){}", FS);
+		assertEquals(1, cache.getMisses());
+		cache.save();
+		assertFalse(new File(file.getPath() + ".tmp").exists());
+		sm.setProgramBinaryCache(null);
+		sm.dispose();
+
+		cache = open();
+		assertEquals(3, cache.size());
+		sm.createShader("a", VS, FS);
+		sm.createShader("b", VS, FS2);
+		sm.createShader("c", "void main(){}", FS);
+		assertEquals(3, cache.getHits());
+		assertEquals(0, cache.getMisses());
+	}
+}
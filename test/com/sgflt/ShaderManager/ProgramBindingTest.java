@@ -0,0 +1,102 @@
+/**
+ *	Author: Jack Ramey
+ *	File: ProgramBindingTest.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/*
+ * glUseProgram is only issued when the program to use is not the one the
+ * manager last bound.
+ */
+public class ProgramBindingTest {
+
+	private static final String VS = "void main(){}";
+
+	private final ShaderManager sm = ShaderManager.INSTANCE;
+	private final RecordingBackend gl = (RecordingBackend) sm.getBackend();
+
+	@Before
+	public void setUp() {
+		sm.unbind();
+		gl.clear();
+	}
+
+	@After
+	public void tearDown() {
+		sm.unbind();
+		sm.invalidateState();
+		gl.clear();
+	}
+
+	@Test
+	public void bindingTheBoundProgramAgainIsSkipped() {
+		ShaderHandle h = sm.createShader("binding.again", VS, "uniform float again; void main(){}");
+		gl.clear();
+		assertTrue(sm.bind(h));
+		assertTrue(sm.bind(h));
+		assertTrue(sm.bind("binding.again"));
+		assertTrue(sm.bind());
+		assertEquals(1, gl.count(RecordingBackend.USE_PROGRAM));
+		assertEquals(sm.shaders[h.getId()].shaderProgram, gl.getInt(0, 0));
+	}
+
+	@Test
+	public void switchingProgramsIssuesOneCallPerSwitch() {
+		ShaderHandle a = sm.createShader("binding.a", VS, "uniform float switch_a; void main(){}");
+		ShaderHandle b = sm.createShader("binding.b", VS, "uniform float switch_b; void main(){}");
+		gl.clear();
+		sm.bind(a);
+		sm.bind(b);
+		sm.bind(b);
+		sm.bind(a);
+		assertEquals(3, gl.count(RecordingBackend.USE_PROGRAM));
+	}
+
+	@Test
+	public void unbindingTwiceIssuesOneCall() {
+		ShaderHandle h = sm.createShader("binding.unbind", VS, "uniform float unbind; void main(){}");
+		sm.bind(h);
+		gl.clear();
+		sm.unbind();
+		sm.unbind();
+		sm.bindDefault();
+		assertFalse(sm.bind((ShaderHandle) null));
+		assertEquals(1, gl.count(RecordingBackend.USE_PROGRAM));
+		assertEquals(0, gl.getInt(0, 0));
+	}
+
+	@Test
+	public void invalidateStateForcesTheNextBind() {
+		ShaderHandle h = sm.createShader("binding.invalidate", VS, "uniform float invalidate; void main(){}");
+		sm.bind(h);
+		gl.clear();
+		sm.invalidateState();
+		sm.bind(h);
+		sm.bind(h);
+		assertEquals(1, gl.count(RecordingBackend.USE_PROGRAM));
+		assertEquals(sm.shaders[h.getId()].shaderProgram, gl.getInt(0, 0));
+	}
+}
@@ -0,0 +1,218 @@
+/**
+ *	Author: Jack Ramey
+ *	File: ProgramRegistryTest.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/*
+ * Bounded program registry: LRU eviction, rebuilding on bind and the sources
+ * kept for it. Every test starts from a disposed manager so the resident count
+ * holds only its own programs.
+ */
+public class ProgramRegistryTest {
+
+	private final ShaderManager sm = ShaderManager.INSTANCE;
+	private final RecordingBackend gl = (RecordingBackend) sm.getBackend();
+	private final ShaderMetrics metrics = sm.getMetrics();
+
+	@Before
+	public void setUp() {
+		sm.dispose();
+		gl.clear();
+	}
+
+	@After
+	public void tearDown() {
+		sm.setProgramCapacity(0);
+		sm.dispose();
+		gl.clear();
+	}
+
+	private ShaderHandle create(String key) {
+		return sm.createShader(key, "uniform mat4 " + key.replace('.', '_') + "; void main(){}",
+				"uniform float fade; void main(){}");
+	}
+
+	private int program(ShaderHandle h) {
+		return sm.shaders[h.id].shaderProgram;
+	}
+
+	private boolean deleted(int program) {
+		for(int i = 0; i < gl.getCallCount(); i++) {
+			if(gl.getOpcode(i) == RecordingBackend.DELETE_PROGRAM && gl.getInt(i, 0) == program) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Test
+	public void newProgramEvictsTheLeastRecentlyBound() {
+		sm.setProgramCapacity(2);
+		ShaderHandle a = create("lru.a");
+		ShaderHandle b = create("lru.b");
+		int programB = program(b);
+		sm.bind(a);
+		sm.unbind();
+		long evictions = metrics.getProgramEvictions();
+		gl.clear();
+
+		create("lru.c");
+		assertTrue(deleted(programB));
+		assertEquals(1, gl.count(RecordingBackend.DELETE_PROGRAM));
+		assertEquals(evictions + 1, metrics.getProgramEvictions());
+		assertEquals(2, metrics.getResidentPrograms());
+	}
+
+	@Test
+	public void evictedShaderIsRebuiltWhenBound() {
+		sm.setProgramCapacity(1);
+		ShaderHandle a = create("lru.rebuild.a");
+		create("lru.rebuild.b");
+		long rebuilds = metrics.getProgramRebuilds();
+		gl.clear();
+
+		assertTrue(sm.bind(a));
+		assertEquals(1, gl.count(RecordingBackend.LINK_PROGRAM));
+		assertEquals(rebuilds + 1, metrics.getProgramRebuilds());
+		assertEquals(program(a), gl.getInt(gl.getCallCount() - 1, 0));
+		//Rebuilding made room by evicting the other one
+		assertEquals(1, metrics.getResidentPrograms());
+		sm.putFloat("fade", 0.5f);
+		assertEquals(1, gl.count(RecordingBackend.UNIFORM_1F));
+	}
+
+	@Test
+	public void activeShaderIsNotEvicted() {
+		sm.setProgramCapacity(1);
+		ShaderHandle a = create("lru.active.a");
+		sm.bind(a);
+		gl.clear();
+		create("lru.active.b");
+		assertEquals(0, gl.count(RecordingBackend.DELETE_PROGRAM));
+		assertEquals(2, metrics.getResidentPrograms());
+	}
+
+	@Test
+	public void loweringTheCapacityEvicts() {
+		sm.setProgramCapacity(3);
+		create("lru.lower.a");
+		create("lru.lower.b");
+		create("lru.lower.c");
+		gl.clear();
+		sm.setProgramCapacity(1);
+		assertEquals(2, gl.count(RecordingBackend.DELETE_PROGRAM));
+		assertEquals(1, metrics.getResidentPrograms());
+	}
+
+	@Test
+	public void shadersCreatedUnboundedArePinned() {
+		create("lru.pinned.a");
+		create("lru.pinned.b");
+		assertEquals(0, metrics.getRetainedSourceBytes());
+		gl.clear();
+		sm.setProgramCapacity(1);
+		assertEquals(0, gl.count(RecordingBackend.DELETE_PROGRAM));
+		assertEquals(2, metrics.getResidentPrograms());
+	}
+
+	@Test
+	public void sourcesAreReleasedWithTheShader() {
+		sm.setProgramCapacity(4);
+		create("lru.bytes");
+		assertTrue(metrics.getRetainedSourceBytes() > 0);
+		assertTrue(sm.deleteShader("lru.bytes"));
+		assertEquals(0, metrics.getRetainedSourceBytes());
+		assertFalse(sm.bind(sm.getHandle("lru.bytes")));
+	}
+
+	@Test
+	public void negativeCapacityIsRejected() {
+		try {
+			sm.setProgramCapacity(-1);
+			fail("Expected a negative capacity to be rejected");
+		} catch(IllegalArgumentException e) {
+			assertEquals(0, sm.getProgramCapacity());
+		}
+	}
+
+	private static byte[] deflate(byte[] input) {
+		Deflater deflater = new Deflater();
+		deflater.setInput(input);
+		deflater.finish();
+		byte[] out = new byte[input.length + 64];
+		int n = deflater.deflate(out);
+		deflater.end();
+		return Arrays.copyOf(out, n);
+	}
+
+	@Test
+	public void keptSourcesInflateToTheirLength() {
+		byte[] text = "uniform float fade; void main(){}".getBytes(StandardCharsets.UTF_8);
+		byte[] out = new byte[text.length];
+		ProgramRegistry.inflate(new Inflater(), deflate(text), out, text.length);
+		assertArrayEquals(text, out);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void truncatedSourcesAreRejected() {
+		byte[] text = "uniform float fade; void main(){}".getBytes(StandardCharsets.UTF_8);
+		byte[] deflated = deflate(text);
+		ProgramRegistry.inflate(new Inflater(), Arrays.copyOf(deflated, deflated.length / 2), new byte[text.length], text.length);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void sourcesShorterThanTheirLengthAreRejected() {
+		byte[] text = "void main(){}".getBytes(StandardCharsets.UTF_8);
+		ProgramRegistry.inflate(new Inflater(), deflate(text), new byte[64], 64);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void corruptSourcesAreRejected() {
+		ProgramRegistry.inflate(new Inflater(), new byte[] {1, 2, 3, 4, 5, 6, 7, 8}, new byte[16], 16);
+	}
+
+	@Test
+	public void residentCountFollowsDeletes() {
+		sm.setProgramCapacity(2);
+		create("lru.count.a");
+		create("lru.count.b");
+		assertTrue(sm.deleteShader("lru.count.a"));
+		assertEquals(1, metrics.getResidentPrograms());
+		gl.clear();
+		//The deleted program left room, nothing is evicted
+		create("lru.count.c");
+		assertEquals(0, gl.count(RecordingBackend.DELETE_PROGRAM));
+		assertEquals(2, metrics.getResidentPrograms());
+	}
+}
@@ -0,0 +1,107 @@
+/**
+ *	Author: Jack Ramey
+ *	File: RecordingBackendTest.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.FloatBuffer;
+
+import org.junit.Test;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL20;
+
+public class RecordingBackendTest {
+
+	private final FakeGLBackend fake = new FakeGLBackend();
+	private final RecordingBackend gl = new RecordingBackend(fake);
+
+	@Test
+	public void managerRunsOnTheRecordingBackend() {
+		ShaderManager sm = ShaderManager.INSTANCE;
+		assertTrue(sm.getBackend() instanceof RecordingBackend);
+		assertTrue(((RecordingBackend) sm.getBackend()).getDelegate() instanceof FakeGLBackend);
+		assertSame(fake, gl.getDelegate());
+	}
+
+	@Test
+	public void callsAreRecordedWithTheirArguments() {
+		gl.useProgram(7);
+		gl.uniform3f(2, 1.0f, -0.5f, 0.25f);
+		assertEquals(2, gl.getCallCount());
+		assertEquals(RecordingBackend.USE_PROGRAM, gl.getOpcode(0));
+		assertEquals(1, gl.getArgCount(0));
+		assertEquals(7, gl.getInt(0, 0));
+		assertEquals(RecordingBackend.UNIFORM_3F, gl.getOpcode(1));
+		assertEquals(4, gl.getArgCount(1));
+		assertEquals(2, gl.getInt(1, 0));
+		assertEquals(-0.5f, gl.getFloat(1, 2), 0.0f);
+		assertEquals(0.25f, gl.getFloat(1, 3), 0.0f);
+	}
+
+	@Test
+	public void resultsAreRecordedAsTheLastArgument() {
+		int program = gl.createProgram();
+		assertEquals(program, gl.getInt(0, 0));
+		int location = gl.getUniformLocation(program, "tint");
+		assertEquals(-1, location);
+		assertEquals("tint", gl.getString(1, 1));
+		assertEquals(-1, gl.getInt(1, 2));
+	}
+
+	@Test
+	public void buffersAreRecordedByTheirLength() {
+		FloatBuffer values = BufferUtils.createFloatBuffer(16);
+		values.limit(12);
+		gl.uniformMatrix4fv(3, true, values);
+		assertEquals(3, gl.getInt(0, 0));
+		assertEquals(1, gl.getInt(0, 1));
+		assertEquals(12, gl.getInt(0, 2));
+	}
+
+	@Test
+	public void callsArePassedOnToTheDelegate() {
+		int shader = gl.createShader(GL20.GL_FRAGMENT_SHADER);
+		gl.shaderSource(shader, ShaderSource.of("#error unfinished\nvoid main(){}").bytes());
+		gl.compileShader(shader);
+		assertEquals(GL11.GL_FALSE, gl.getShader(shader, GL20.GL_COMPILE_STATUS));
+		gl.uniform1f(0, 1.0f);
+		assertEquals(1, fake.getCalls());
+	}
+
+	@Test
+	public void countAndClear() {
+		gl.useProgram(1);
+		gl.useProgram(2);
+		gl.uniform1i(0, 4);
+		assertEquals(2, gl.count(RecordingBackend.USE_PROGRAM));
+		assertEquals(1, gl.count(RecordingBackend.UNIFORM_1I));
+		assertEquals("glUniform1i(0, 4)", gl.toString(2));
+		gl.clear();
+		assertEquals(0, gl.getCallCount());
+		assertEquals(0, gl.count(RecordingBackend.USE_PROGRAM));
+		//Strings recorded before the clear keep their ids
+		gl.getUniformLocation(1, "tint");
+		gl.getUniformLocation(1, "tint");
+		assertEquals(gl.getInt(0, 1), gl.getInt(1, 1));
+	}
+}
@@ -0,0 +1,179 @@
+/**
+ *	Author: Jack Ramey
+ *	File: RenderQueueTest.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RenderQueueTest {
+
+	private static final String VS = "void main(){}";
+	private static final String FS = "uniform vec4 tint; void main(){}";
+
+	private final ShaderManager sm = ShaderManager.INSTANCE;
+	private final RecordingBackend gl = (RecordingBackend) sm.getBackend();
+	private final List<String> drawn = new ArrayList<String>();
+	private ShaderHandle a;
+	private ShaderHandle b;
+
+	@Before
+	public void setUp() {
+		a = sm.createShader("queue.a", VS, FS);
+		b = sm.createShader("queue.b", VS, FS);
+	}
+
+	@After
+	public void tearDown() {
+		sm.unbind();
+		gl.clear();
+	}
+
+	/*
+	 * Draw that logs its name when it runs.
+	 */
+	private RenderQueue.Draw draw(final String name) {
+		return new RenderQueue.Draw() {
+			@Override
+			public void draw() {
+				drawn.add(name);
+			}
+		};
+	}
+
+	private List<String> expected(String... names) {
+		List<String> list = new ArrayList<String>();
+		for(String name : names) {
+			list.add(name);
+		}
+		return list;
+	}
+
+	@Test
+	public void drawsRunByProgramThenMaterialThenDepth() {
+		RenderQueue queue = sm.createRenderQueue(4);
+		queue.submit(b, 1, 5.0f, draw("b1 far"));
+		queue.submit(a, 2, 1.0f, draw("a2"));
+		queue.submit(b, 0, 3.0f, draw("b0"));
+		queue.submit(a, 1, -2.0f, draw("a1 near"));
+		queue.submit(b, 1, -7.5f, draw("b1 near"));
+		queue.submit(a, 1, 0.5f, draw("a1 far"));
+		assertEquals(6, queue.getSize());
+		gl.clear();
+		assertEquals(6, queue.flush());
+		assertEquals(expected("a1 near", "a1 far", "a2", "b0", "b1 near", "b1 far"), drawn);
+		//Every program is bound once
+		assertEquals(2, gl.count(RecordingBackend.USE_PROGRAM));
+		assertEquals(0, queue.getSize());
+	}
+
+	@Test
+	public void defaultPipelineDrawsLast() {
+		RenderQueue queue = sm.createRenderQueue(4);
+		queue.submit(null, 0, 0.0f, draw("default"));
+		queue.submit(b, 0, 0.0f, draw("b"));
+		queue.flush();
+		assertEquals(expected("b", "default"), drawn);
+		assertEquals(0, gl.getInt(gl.getCallCount() - 1, 0));
+	}
+
+	@Test
+	public void equalKeysKeepSubmissionOrder() {
+		RenderQueue queue = sm.createRenderQueue(2);
+		for(int i = 0; i < 5; i++) {
+			queue.submit(a, 3, 1.0f, draw("a" + i));
+		}
+		queue.flush();
+		assertEquals(expected("a0", "a1", "a2", "a3", "a4"), drawn);
+	}
+
+	@Test
+	public void sharedMaterialUploadsItsValuesOnce() {
+		UniformRef tint = sm.uniform(a, "tint");
+		RenderQueue queue = sm.createRenderQueue(4);
+		queue.submit(a, 1, 2.0f, draw("second"));
+		queue.set(tint, 1.0f, 0.5f, 0.25f, 1.0f);
+		queue.submit(a, 1, 1.0f, draw("first"));
+		queue.set(tint, 1.0f, 0.5f, 0.25f, 1.0f);
+		gl.clear();
+		queue.flush();
+		assertEquals(expected("first", "second"), drawn);
+		assertEquals(1, gl.count(RecordingBackend.UNIFORM_4F));
+	}
+
+	@Test
+	public void valuesFollowTheirDraw() {
+		UniformRef tint = sm.uniform(a, "tint");
+		RenderQueue queue = sm.createRenderQueue(4);
+		queue.submit(a, 2, 0.0f, draw("red"));
+		queue.set(tint, 1.0f, 0.0f, 0.0f, 1.0f);
+		queue.submit(a, 1, 0.0f, draw("green"));
+		queue.set(tint, 0.0f, 1.0f, 0.0f, 1.0f);
+		gl.clear();
+		queue.flush();
+		assertEquals(expected("green", "red"), drawn);
+		int first = -1;
+		for(int i = 0; i < gl.getCallCount(); i++) {
+			if(gl.getOpcode(i) == RecordingBackend.UNIFORM_4F) {
+				first = (first == -1) ? i : first;
+			}
+		}
+		assertEquals(1.0f, gl.getFloat(first, 2), 0.0f);
+	}
+
+	@Test
+	public void clearDropsTheDraws() {
+		RenderQueue queue = sm.createRenderQueue(4);
+		queue.submit(a, 0, 0.0f, draw("dropped"));
+		queue.clear();
+		assertEquals(0, queue.flush());
+		assertEquals(0, drawn.size());
+	}
+
+	@Test
+	public void rejectsBadSubmissions() {
+		RenderQueue queue = sm.createRenderQueue(4);
+		try {
+			queue.set(sm.uniform(a, "tint"), 1.0f);
+			fail("Expected a value without a draw to be rejected");
+		} catch(IllegalStateException e) {
+			//expected
+		}
+		try {
+			queue.submit(a, RenderQueue.MAX_MATERIAL + 1, 0.0f, draw("x"));
+			fail("Expected the material to be rejected");
+		} catch(IllegalArgumentException e) {
+			//expected
+		}
+		queue.submit(b, 0, 0.0f, draw("b"));
+		try {
+			queue.set(sm.uniform(a, "tint"), 1.0f);
+			fail("Expected a uniform of another shader to be rejected");
+		} catch(IllegalArgumentException e) {
+			//expected
+		}
+	}
+}
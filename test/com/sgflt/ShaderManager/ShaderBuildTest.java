@@ -0,0 +1,104 @@
+/**
+ *	Author: Jack Ramey
+ *	File: ShaderBuildTest.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Test;
+
+/*
+ * Building programs on the fake driver, which fails to compile a source with an
+ * #error and fails to link a program with a stage that has no main.
+ */
+public class ShaderBuildTest {
+
+	private static final String VS = "uniform mat4 mvp; void main(){}";
+	private static final String FS = "uniform vec4 tint; uniform float fade; void main(){}";
+	private static final String BROKEN = "#error unfinished\nvoid main(){}";
+	private static final String NO_MAIN = "uniform vec4 tint;";
+
+	private final ShaderManager sm = ShaderManager.INSTANCE;
+	private final RecordingBackend gl = (RecordingBackend) sm.getBackend();
+
+	@After
+	public void tearDown() {
+		sm.unbind();
+		gl.clear();
+	}
+
+	private void assertBuildFails(String key, String vertex, String fragment, String message) {
+		try {
+			sm.createShader(key, vertex, fragment);
+			fail("Expected " + key + " to fail");
+		} catch(IllegalArgumentException e) {
+			assertEquals(message, e.getMessage());
+		}
+	}
+
+	@Test
+	public void linkedProgramHasItsUniforms() {
+		ShaderHandle h = sm.createShader("build.ok", VS, FS);
+		Shader shader = sm.shaders[h.id];
+		assertTrue(shader.isShaderProgramLinkStatus());
+		assertEquals(3, shader.uniforms.size());
+		assertTrue(shader.uniforms.slot("tint") >= 0);
+		assertEquals(-1, shader.uniforms.slot("missing"));
+	}
+
+	@Test
+	public void fragmentCompileFailure() {
+		long failed = sm.getMetrics().getFailedCompiles();
+		assertBuildFails("build.fragment", VS, BROKEN, "Fragment shader failed to compile.");
+		assertEquals(failed + 1, sm.getMetrics().getFailedCompiles());
+		assertNull(sm.getHandle("build.fragment"));
+	}
+
+	@Test
+	public void vertexCompileFailure() {
+		long failed = sm.getMetrics().getFailedCompiles();
+		assertBuildFails("build.vertex", BROKEN, FS, "Vertex shader failed to compile.");
+		assertEquals(failed + 1, sm.getMetrics().getFailedCompiles());
+		assertNull(sm.getHandle("build.vertex"));
+	}
+
+	@Test
+	public void linkFailure() {
+		long failed = sm.getMetrics().getFailedLinks();
+		assertBuildFails("build.link", VS, NO_MAIN, "Shader program failed to link shaders.");
+		assertEquals(failed + 1, sm.getMetrics().getFailedLinks());
+		assertNull(sm.getHandle("build.link"));
+	}
+
+	@Test
+	public void failedRebuildKeepsTheShaderUnderTheKey() {
+		ShaderHandle h = sm.createShader("build.keep", VS, FS);
+		Shader shader = sm.shaders[h.id];
+		assertBuildFails("build.keep", VS, BROKEN, "Fragment shader failed to compile.");
+		assertBuildFails("build.keep", VS, NO_MAIN, "Shader program failed to link shaders.");
+		assertSame(h, sm.getHandle("build.keep"));
+		assertSame(shader, sm.shaders[h.id]);
+		assertTrue(sm.bind(h));
+	}
+}
@@ -0,0 +1,136 @@
+/**
+ *	Author: Jack Ramey
+ *	File: ShaderHandleTest.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+/*
+ * Handles given out per key and uniforms resolved through UniformRefs, which
+ * follow the shader stored under their handle.
+ */
+public class ShaderHandleTest {
+
+	private static final String VS = "void main(){}";
+
+	private final ShaderManager sm = ShaderManager.INSTANCE;
+	private final RecordingBackend gl = (RecordingBackend) sm.getBackend();
+
+	@After
+	public void tearDown() {
+		sm.unbind();
+		gl.clear();
+	}
+
+	private int location(ShaderHandle handle, String name) {
+		UniformTable uniforms = sm.shaders[handle.getId()].uniforms;
+		return uniforms.getLocation(uniforms.slot(name));
+	}
+
+	@Test
+	public void keyAndHandleBindTheSameShader() {
+		ShaderHandle h = sm.createShader("handle.same", VS, "uniform float same; void main(){}");
+		assertSame(h, sm.getHandle("handle.same"));
+		assertEquals("handle.same", h.getKey());
+		assertTrue(sm.bind("handle.same"));
+		gl.clear();
+		assertTrue(sm.bind(h));
+		assertEquals(0, gl.count(RecordingBackend.USE_PROGRAM));
+	}
+
+	@Test
+	public void unknownKeysHaveNoHandle() {
+		assertEquals(null, sm.getHandle("handle.missing"));
+		assertFalse(sm.bind("handle.missing"));
+	}
+
+	@Test
+	public void replacingAShaderKeepsItsHandle() {
+		ShaderHandle h = sm.createShader("handle.replace", VS, "uniform float first; void main(){}");
+		int program = sm.shaders[h.getId()].shaderProgram;
+		ShaderHandle again = sm.createShader("handle.replace", VS, "uniform float second; void main(){}");
+		assertSame(h, again);
+		assertNotEquals(program, sm.shaders[h.getId()].shaderProgram);
+	}
+
+	@Test
+	public void refSetsTheResolvedLocation() {
+		ShaderHandle h = sm.createShader("handle.ref", VS, "uniform float pad; uniform float ref_value; void main(){}");
+		UniformRef ref = sm.uniform(h, "ref_value");
+		assertTrue(ref.isActive());
+		assertEquals("ref_value", ref.getName());
+		sm.bind(h);
+		gl.clear();
+		ref.set(0.5f);
+		assertEquals(1, gl.count(RecordingBackend.UNIFORM_1F));
+		assertEquals(location(h, "ref_value"), gl.getInt(0, 0));
+		assertEquals(0.5f, gl.getFloat(0, 1), 0f);
+	}
+
+	@Test
+	public void refFollowsTheShaderThatReplacesItsOwn() {
+		ShaderHandle h = sm.createShader("handle.follow", VS, "uniform float follow; void main(){}");
+		UniformRef ref = sm.uniform(h, "follow");
+		sm.bind(h);
+		ref.set(1f);
+		//The uniform moves to another location in the new program
+		sm.createShader("handle.follow", VS, "uniform vec4 before; uniform float follow; void main(){}");
+		sm.bind(h);
+		gl.clear();
+		ref.set(1f);
+		assertEquals(1, gl.count(RecordingBackend.UNIFORM_1F));
+		assertEquals(location(h, "follow"), gl.getInt(0, 0));
+	}
+
+	@Test
+	public void refToAMissingUniformIsIgnored() {
+		ShaderHandle h = sm.createShader("handle.inactive", VS, "uniform float present; void main(){}");
+		UniformRef ref = sm.uniform(h, "absent");
+		assertFalse(ref.isActive());
+		sm.bind(h);
+		gl.clear();
+		ref.set(1f);
+		ref.set(2);
+		assertEquals(0, gl.getCallCount());
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void refNeedsAHandle() {
+		sm.uniform(null, "value");
+	}
+
+	@Test
+	public void deletedKeyBindsTheDefaultPipeline() {
+		ShaderHandle h = sm.createShader("handle.deleted", VS, "uniform float deleted; void main(){}");
+		sm.bind(h);
+		assertTrue(sm.deleteShader("handle.deleted"));
+		gl.clear();
+		sm.bind(h);
+		assertEquals(1, gl.count(RecordingBackend.USE_PROGRAM));
+		assertEquals(0, gl.getInt(0, 0));
+		assertEquals(null, sm.getHandle("handle.deleted"));
+	}
+}
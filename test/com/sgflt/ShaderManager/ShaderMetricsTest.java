@@ -0,0 +1,115 @@
+/**
+ *	Author: Jack Ramey
+ *	File: ShaderMetricsTest.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Test;
+
+/*
+ * Per program values released with their handle ids, and metrics turned off.
+ */
+public class ShaderMetricsTest {
+
+	private final ShaderManager sm = ShaderManager.INSTANCE;
+	private final RecordingBackend gl = (RecordingBackend) sm.getBackend();
+
+	@After
+	public void tearDown() {
+		sm.unbind();
+		gl.clear();
+	}
+
+	private static Set<String> keys(ShaderMetrics.Snapshot snapshot) {
+		Set<String> keys = new HashSet<String>();
+		for(String key : snapshot.getKeys()) {
+			keys.add(key);
+		}
+		return keys;
+	}
+
+	@Test
+	public void releasedIdStartsOverForTheNextProgram() {
+		ShaderMetrics metrics = new ShaderMetrics(true);
+		metrics.program(0, "first");
+		metrics.bound(0);
+		metrics.bound(0);
+		metrics.built(0, 10, 20);
+		metrics.released(0);
+		assertTrue(metrics.getProgramBinds().isEmpty());
+		metrics.program(0, "second");
+		ShaderMetrics.Snapshot snapshot = metrics.snapshot();
+		assertEquals(0, snapshot.getBinds("second"));
+		assertEquals(0, snapshot.getCompileNanos("second"));
+		assertEquals(0, snapshot.getBinds("first"));
+	}
+
+	@Test
+	public void programsAfterAReleasedIdAreStillReported() {
+		ShaderMetrics metrics = new ShaderMetrics(true);
+		metrics.program(0, "gone");
+		metrics.program(1, "kept");
+		metrics.bound(1);
+		metrics.released(0);
+		assertEquals(Long.valueOf(1), metrics.getProgramBinds().get("kept"));
+		assertFalse(metrics.getProgramBinds().containsKey("gone"));
+		assertEquals(1, metrics.snapshot().getBinds("kept"));
+	}
+
+	@Test
+	public void deletedShadersLeaveTheMetrics() {
+		ShaderHandle h = sm.createShader("metrics.deleted", "void main(){}", "uniform float metrics_deleted; void main(){}");
+		sm.bind(h);
+		assertTrue(keys(sm.getMetrics().snapshot()).contains("metrics.deleted"));
+		sm.deleteShader("metrics.deleted");
+		assertFalse(keys(sm.getMetrics().snapshot()).contains("metrics.deleted"));
+		assertFalse(sm.getMetrics().getProgramBinds().containsKey("metrics.deleted"));
+	}
+
+	@Test
+	public void disabledMetricsIgnoreWrites() {
+		ShaderMetrics metrics = new ShaderMetrics(false);
+		assertFalse(metrics.isEnabled());
+		metrics.count(ShaderMetrics.PROGRAM_SWITCHES);
+		metrics.add(ShaderMetrics.COMPILE_NANOS, 100);
+		metrics.set(ShaderMetrics.RESIDENT_PROGRAMS, 3);
+		metrics.program(0, "off");
+		metrics.bound(0);
+		metrics.built(0, 10, 20);
+		assertEquals(0, metrics.getProgramSwitches());
+		assertEquals(0, metrics.getCompileNanos());
+		assertEquals(0, metrics.getResidentPrograms());
+		assertEquals(0, metrics.getShadersBuilt());
+		assertTrue(metrics.getProgramBinds().isEmpty());
+		assertEquals(0, metrics.snapshot().getBinds("off"));
+	}
+
+	@Test
+	public void metricsAreOnByDefault() {
+		assertTrue(ShaderMetrics.ENABLED);
+		assertTrue(sm.getMetrics().isEnabled());
+	}
+}
@@ -0,0 +1,156 @@
+/**
+ *	Author: Jack Ramey
+ *	File: ShaderSourceLoaderTest.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/*
+ * Include expansion, the #line directives around spliced files and the
+ * include graph used to invalidate cached sources.
+ */
+public class ShaderSourceLoaderTest {
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private final ShaderSourceLoader loader = new ShaderSourceLoader();
+
+	private Path write(String name, String text) throws IOException {
+		Path path = folder.getRoot().toPath().resolve(name);
+		Files.createDirectories(path.getParent());
+		Files.write(path, text.getBytes(StandardCharsets.UTF_8));
+		return ShaderSourceLoader.normalize(path);
+	}
+
+	@Test
+	public void includesAreFramedByLineDirectives() throws IOException {
+		write("light.glsl", "vec3 light;\n");
+		Path root = write("root.frag", "uniform float a;\n#include \"light.glsl\"\nvoid main(){}\n");
+		assertEquals("uniform float a;\n#line 1 1\nvec3 light;\n#line 3 0\nvoid main(){}\n", loader.load(root));
+	}
+
+	@Test
+	public void versionStaysFirst() throws IOException {
+		write("chunk.glsl", "float chunk;");
+		Path root = write("version.frag", "// header\n#version 330\n#include \"chunk.glsl\"\nvoid main(){}");
+		String source = loader.load(root);
+		assertTrue(source.startsWith("// header\n#version 330\n#line 1 1\nfloat chunk;\n#line 4 0\n"));
+	}
+
+	@Test
+	public void nestedIncludesGetTheirOwnSourceStrings() throws IOException {
+		write("lib/inner.glsl", "float inner;\n");
+		Path outer = write("lib/outer.glsl", "float outer;\n#include \"inner.glsl\"\nfloat after;\n");
+		Path root = write("nested.frag", "#include \"lib/outer.glsl\"\nvoid main(){}\n");
+		assertEquals("#line 1 1\nfloat outer;\n#line 1 2\nfloat inner;\n#line 3 1\nfloat after;\n#line 2 0\nvoid main(){}\n",
+				loader.load(root));
+		assertEquals(Arrays.asList(root, outer, outer.resolveSibling("inner.glsl")), loader.getSourceFiles(root));
+	}
+
+	@Test
+	public void fileIsIncludedOnce() throws IOException {
+		write("once.glsl", "float once;\n");
+		Path root = write("twice.frag", "#include \"once.glsl\"\n#include \"once.glsl\"\nvoid main(){}\n");
+		//The skipped directive leaves an empty line so main stays on line 3
+		assertEquals("#line 1 1\nfloat once;\n#line 2 0\n\nvoid main(){}\n", loader.load(root));
+	}
+
+	@Test
+	public void cyclesAreRejected() throws IOException {
+		write("cycle_a.glsl", "#include \"cycle_b.glsl\"\n");
+		write("cycle_b.glsl", "#include \"cycle_a.glsl\"\n");
+		Path root = write("cycle.frag", "#include \"cycle_a.glsl\"\nvoid main(){}\n");
+		try {
+			loader.load(root);
+			fail("An include cycle must not load.");
+		} catch(IOException e) {
+			assertTrue(e.getMessage().startsWith("Include cycle"));
+		}
+	}
+
+	@Test
+	public void malformedIncludesAreRejected() throws IOException {
+		Path root = write("malformed.frag", "#include lighting.glsl\nvoid main(){}\n");
+		try {
+			loader.load(root);
+			fail("An include without quotes must not load.");
+		} catch(IOException e) {
+			assertTrue(e.getMessage().contains("malformed include"));
+		}
+	}
+
+	@Test
+	public void sharedFilesAreReadOnce() throws IOException {
+		write("shared.glsl", "float shared;\n");
+		Path a = write("shared_a.frag", "#include \"shared.glsl\"\nvoid main(){}\n");
+		Path b = write("shared_b.frag", "#include \"shared.glsl\"\nvoid main(){}\n");
+		loader.load(a);
+		loader.load(b);
+		assertEquals(3, loader.getFilesRead());
+		String source = loader.load(a);
+		assertEquals(3, loader.getFilesRead());
+		assertEquals(loader.load(a), source);
+	}
+
+	@Test
+	public void invalidatingAnIncludeDropsOnlyItsUsers() throws IOException {
+		Path shared = write("graph.glsl", "float graph;\n");
+		Path user = write("graph_user.frag", "#include \"graph.glsl\"\nvoid main(){}\n");
+		Path other = write("graph_other.frag", "void main(){}\n");
+		loader.load(user);
+		loader.load(other);
+		Set<Path> affected = loader.invalidate(shared);
+		assertEquals(Collections.singleton(user), affected);
+		assertNull(loader.getSourceFiles(user));
+		assertEquals(Collections.singletonList(other), loader.getSourceFiles(other));
+
+		Files.write(shared, "float changed;\n".getBytes(StandardCharsets.UTF_8));
+		int read = loader.getFilesRead();
+		assertTrue(loader.load(user).contains("float changed;"));
+		//The user itself is still cached, only the include is read again
+		assertEquals(read + 1, loader.getFilesRead());
+	}
+
+	@Test
+	public void refreshFindsChangedFiles() throws IOException {
+		Path shared = write("refresh.glsl", "float refresh;\n");
+		Path user = write("refresh.frag", "#include \"refresh.glsl\"\nvoid main(){}\n");
+		loader.load(user);
+		assertTrue(loader.refresh().isEmpty());
+		Files.setLastModifiedTime(shared, FileTime.fromMillis(Files.getLastModifiedTime(shared).toMillis() + 10000));
+		assertEquals(Collections.singleton(user), loader.refresh());
+	}
+}
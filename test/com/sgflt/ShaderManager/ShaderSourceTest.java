@@ -0,0 +1,166 @@
+/**
+ *	Author: Jack Ramey
+ *	File: ShaderSourceTest.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ShaderSourceTest {
+
+	private static final String FS = "uniform float source_fade; void main(){}";
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private final ShaderManager sm = ShaderManager.INSTANCE;
+	private final RecordingBackend gl = (RecordingBackend) sm.getBackend();
+
+	@After
+	public void tearDown() {
+		sm.unbind();
+		gl.clear();
+	}
+
+	private Path write(String name, String text) throws IOException {
+		File file = folder.newFile(name);
+		Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+		return file.toPath();
+	}
+
+	@Test
+	public void textIsEncodedAsUtf8() {
+		ShaderSource source = ShaderSource.of("//é\nvoid main(){}");
+		assertEquals(18, source.length());
+		assertTrue(source.bytes().isDirect());
+		assertEquals("//é\nvoid main(){}", source.asString());
+	}
+
+	@Test
+	public void heapBufferIsCopiedToADirectOne() {
+		ByteBuffer heap = ByteBuffer.wrap(FS.getBytes(StandardCharsets.US_ASCII));
+		ShaderSource source = ShaderSource.wrap(heap);
+		assertTrue(source.bytes().isDirect());
+		assertEquals(FS, source.asString());
+		assertEquals(0, heap.position());
+	}
+
+	@Test
+	public void bytesAreAView() {
+		ShaderSource source = ShaderSource.of(FS);
+		ByteBuffer view = source.bytes();
+		view.position(view.limit());
+		assertEquals(FS.length(), source.bytes().remaining());
+	}
+
+	@Test
+	public void fileIsReadIntoADirectBuffer() throws IOException {
+		Path path = write("read.frag", FS);
+		ShaderSource source = ShaderSource.read(path);
+		assertEquals(FS, source.asString());
+		assertEquals(path.toString(), source.getName());
+		assertTrue(source.bytes().isDirect());
+	}
+
+	@Test
+	public void readFileCanBeReplaced() throws IOException {
+		Path path = write("replaced.frag", FS);
+		ShaderSource source = ShaderSource.read(path);
+		//Nothing keeps the file open or mapped, so it can be deleted or rewritten right away
+		Files.delete(path);
+		Files.write(path, "void main(){}".getBytes(StandardCharsets.UTF_8));
+		assertEquals(FS, source.asString());
+		assertEquals("void main(){}", ShaderSource.read(path).asString());
+	}
+
+	@Test
+	public void emptyFileIsAnEmptySource() throws IOException {
+		assertEquals(0, ShaderSource.read(write("empty.frag", "")).length());
+	}
+
+	@Test
+	public void missingResourceThrows() {
+		try {
+			ShaderSource.resource("shaders/missing.frag");
+			fail("Expected a missing resource to throw");
+		} catch(IOException e) {
+			assertEquals("Shader resource not found: shaders/missing.frag", e.getMessage());
+		}
+	}
+
+	@Test
+	public void glShaderSourceGetsTheBytes() {
+		String vs = "uniform mat4 source_bytes; void main(){}";
+		String fs = "uniform vec4 source_bytes; void main(){}";
+		sm.createShader("source.bytes", ShaderSource.of(vs), ShaderSource.of(fs));
+		assertEquals(2, gl.count(RecordingBackend.SHADER_SOURCE));
+		for(int i = 0; i < gl.getCallCount(); i++) {
+			if(gl.getOpcode(i) == RecordingBackend.SHADER_SOURCE) {
+				assertEquals(vs.length(), gl.getInt(i, 1));
+			}
+		}
+	}
+
+	@Test
+	public void textAndBytesShareStages() throws IOException {
+		String vs = "uniform mat4 source_shared; void main(){}";
+		sm.createShader("source.text", vs, FS);
+		gl.clear();
+		sm.createShader("source.read", ShaderSource.read(write("shared.vert", vs)), ShaderSource.wrap(
+				ByteBuffer.wrap(FS.getBytes(StandardCharsets.US_ASCII))));
+		assertEquals(0, gl.count(RecordingBackend.CREATE_SHADER));
+		assertEquals(1, gl.count(RecordingBackend.LINK_PROGRAM));
+	}
+
+	@Test
+	public void directoryIsLoadedRecursively() throws Exception {
+		write("a.vert", "void main(){}");
+		write("b.frag", FS);
+		write("notes.txt", "not a shader");
+		folder.newFolder("sub");
+		write("sub/c.vert", "void main(){}");
+		ExecutorService io = Executors.newFixedThreadPool(2);
+		try {
+			Map<Path, Future<ShaderSource>> sources = ShaderSource.loadDirectory(folder.getRoot().toPath(), "*.{vert,frag}", io);
+			assertEquals(3, sources.size());
+			for(Map.Entry<Path, Future<ShaderSource>> e : sources.entrySet()) {
+				assertEquals(Files.size(e.getKey()), e.getValue().get().length());
+			}
+		} finally {
+			io.shutdown();
+		}
+	}
+}
@@ -0,0 +1,169 @@
+/**
+ *	Author: Jack Ramey
+ *	File: ShaderStageTest.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Test;
+import org.lwjgl.opengl.GL20;
+
+/*
+ * Stages shared between programs and the GL objects deleted with them. Every
+ * test uses sources of its own so stages left by other tests are not shared.
+ */
+public class ShaderStageTest {
+
+	private final ShaderManager sm = ShaderManager.INSTANCE;
+	private final RecordingBackend gl = (RecordingBackend) sm.getBackend();
+	private final FakeGLBackend fake = (FakeGLBackend) gl.getDelegate();
+
+	@After
+	public void tearDown() {
+		sm.unbind();
+		gl.clear();
+	}
+
+	private static String vertex(String name) {
+		return "uniform mat4 " + name + "; void main(){}";
+	}
+
+	private static String fragment(String name) {
+		return "uniform vec4 " + name + "; void main(){}";
+	}
+
+	/*
+	 * Whether a call with the opcode was made on the name since the last clear.
+	 */
+	private boolean deleted(int opcode, int name) {
+		for(int i = 0; i < gl.getCallCount(); i++) {
+			if(gl.getOpcode(i) == opcode && gl.getInt(i, 0) == name) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Name returned by the first glCreateShader of a stage type since the last clear.
+	 */
+	private int createdShader(int type) {
+		for(int i = 0; i < gl.getCallCount(); i++) {
+			if(gl.getOpcode(i) == RecordingBackend.CREATE_SHADER && gl.getInt(i, 0) == type) {
+				return gl.getInt(i, 1);
+			}
+		}
+		return -1;
+	}
+
+	@Test
+	public void sameVertexSourceCompilesOnce() {
+		String vs = vertex("stage_shared");
+		sm.createShader("stage.shared.a", vs, fragment("stage_shared_a"));
+		sm.createShader("stage.shared.b", vs, fragment("stage_shared_b"));
+		assertEquals(3, gl.count(RecordingBackend.CREATE_SHADER));
+		assertEquals(3, gl.count(RecordingBackend.COMPILE_SHADER));
+		assertEquals(2, gl.count(RecordingBackend.LINK_PROGRAM));
+	}
+
+	@Test
+	public void stagesAreDetachedAfterLinking() {
+		sm.createShader("stage.detach", vertex("stage_detach"), fragment("stage_detach"));
+		assertEquals(2, gl.count(RecordingBackend.ATTACH_SHADER));
+		assertEquals(2, gl.count(RecordingBackend.DETACH_SHADER));
+		assertEquals(0, gl.count(RecordingBackend.DELETE_SHADER));
+	}
+
+	@Test
+	public void sharedStageIsDeletedWithTheLastProgram() {
+		String vs = vertex("stage_last");
+		ShaderHandle a = sm.createShader("stage.last.a", vs, fragment("stage_last_a"));
+		sm.createShader("stage.last.b", vs, fragment("stage_last_b"));
+		int shared = createdShader(GL20.GL_VERTEX_SHADER);
+		int programA = sm.shaders[a.id].shaderProgram;
+		int live = fake.getLiveObjects();
+		gl.clear();
+
+		assertTrue(sm.deleteShader("stage.last.a"));
+		assertTrue(deleted(RecordingBackend.DELETE_PROGRAM, programA));
+		assertEquals(1, gl.count(RecordingBackend.DELETE_SHADER));
+		assertFalse(deleted(RecordingBackend.DELETE_SHADER, shared));
+		assertEquals(live - 2, fake.getLiveObjects());
+
+		assertTrue(sm.deleteShader("stage.last.b"));
+		assertTrue(deleted(RecordingBackend.DELETE_SHADER, shared));
+		assertEquals(live - 5, fake.getLiveObjects());
+	}
+
+	@Test
+	public void deletedKeyIsFree() {
+		sm.createShader("stage.free", vertex("stage_free"), fragment("stage_free"));
+		assertTrue(sm.deleteShader("stage.free"));
+		assertNull(sm.getHandle("stage.free"));
+		assertFalse(sm.deleteShader("stage.free"));
+		assertNotNull(sm.createShader("stage.free", vertex("stage_free"), fragment("stage_free")));
+		assertTrue(sm.deleteShader("stage.free"));
+	}
+
+	@Test
+	public void failedBuildDeletesItsObjects() {
+		int live = fake.getLiveObjects();
+		try {
+			sm.createShader("stage.broken", vertex("stage_broken"), "#error unfinished\nvoid main(){}");
+			fail("Expected stage.broken to fail");
+		} catch(IllegalArgumentException e) {
+			//Expected
+		}
+		assertEquals(1, gl.count(RecordingBackend.DELETE_PROGRAM));
+		assertEquals(2, gl.count(RecordingBackend.DELETE_SHADER));
+		assertEquals(live, fake.getLiveObjects());
+	}
+
+	@Test
+	public void rebuildDeletesTheReplacedProgram() {
+		ShaderHandle h = sm.createShader("stage.rebuild", vertex("stage_rebuild"), fragment("stage_rebuild"));
+		int old = sm.shaders[h.id].shaderProgram;
+		int live = fake.getLiveObjects();
+		gl.clear();
+		sm.createShader("stage.rebuild", vertex("stage_rebuild"), fragment("stage_rebuilt"));
+		assertTrue(deleted(RecordingBackend.DELETE_PROGRAM, old));
+		//Only the fragment stage changed, the vertex stage is shared by both
+		assertEquals(1, gl.count(RecordingBackend.DELETE_SHADER));
+		assertEquals(live, fake.getLiveObjects());
+		assertTrue(sm.deleteShader("stage.rebuild"));
+	}
+
+	@Test
+	public void disposeDeletesEveryObject() {
+		sm.dispose();
+		int live = fake.getLiveObjects();
+		sm.createShader("stage.dispose.a", vertex("stage_dispose"), fragment("stage_dispose_a"));
+		sm.createShader("stage.dispose.b", vertex("stage_dispose"), fragment("stage_dispose_b"));
+		assertEquals(live + 5, fake.getLiveObjects());
+		sm.dispose();
+		assertEquals(live, fake.getLiveObjects());
+		assertNull(sm.getHandle("stage.dispose.a"));
+	}
+}
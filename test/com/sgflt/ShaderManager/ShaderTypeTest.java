@@ -0,0 +1,187 @@
+/**
+ *	Author: Jack Ramey
+ *	File: ShaderTypeTest.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class ShaderTypeTest {
+
+	private static final ShaderSource VS = ShaderSource.of("void main(){}");
+	private static final ShaderSource TCS = ShaderSource.of("layout(vertices = 3) out; void main(){}");
+	private static final ShaderSource TES = ShaderSource.of("layout(triangles) in; void main(){}");
+	private static final ShaderSource GS = ShaderSource.of("layout(points) in; layout(points, max_vertices = 1) out; void main(){}");
+	private static final ShaderSource FS = ShaderSource.of("uniform vec4 tint; void main(){}");
+	private static final ShaderSource CS = ShaderSource.of("layout(local_size_x = 64) in; void main(){}");
+
+	private final ShaderManager sm = ShaderManager.INSTANCE;
+	private final RecordingBackend gl = (RecordingBackend) sm.getBackend();
+
+	@After
+	public void tearDown() {
+		sm.dispose();
+		gl.clear();
+	}
+
+	private static ShaderSource[] stages(Object... typeSource) {
+		ShaderSource[] stages = new ShaderSource[ShaderType.COUNT];
+		for(int i = 0; i < typeSource.length; i += 2) {
+			stages[((ShaderType) typeSource[i]).ordinal()] = (ShaderSource) typeSource[i + 1];
+		}
+		return stages;
+	}
+
+	private static Map<ShaderType, ShaderSource> map(Object... typeSource) {
+		Map<ShaderType, ShaderSource> map = new EnumMap<ShaderType, ShaderSource>(ShaderType.class);
+		for(int i = 0; i < typeSource.length; i += 2) {
+			map.put((ShaderType) typeSource[i], (ShaderSource) typeSource[i + 1]);
+		}
+		return map;
+	}
+
+	private static void assertRejected(ShaderSource[] stages) {
+		try {
+			ShaderType.check(stages);
+			fail("Expected the stages to be rejected");
+		} catch(IllegalArgumentException e) {
+			//expected
+		}
+	}
+
+	@Test
+	public void validStageCombinations() {
+		ShaderType.check(stages(ShaderType.VERTEX, VS));
+		ShaderType.check(stages(ShaderType.VERTEX, VS, ShaderType.FRAGMENT, FS));
+		ShaderType.check(stages(ShaderType.VERTEX, VS, ShaderType.GEOMETRY, GS, ShaderType.FRAGMENT, FS));
+		ShaderType.check(stages(ShaderType.VERTEX, VS, ShaderType.TESS_CONTROL, TCS, ShaderType.TESS_EVALUATION, TES,
+				ShaderType.FRAGMENT, FS));
+		//Tessellation without a control shader uses the default patch parameters
+		ShaderType.check(stages(ShaderType.VERTEX, VS, ShaderType.TESS_EVALUATION, TES, ShaderType.FRAGMENT, FS));
+		ShaderType.check(stages(ShaderType.COMPUTE, CS));
+	}
+
+	@Test
+	public void invalidStageCombinations() {
+		assertRejected(stages());
+		assertRejected(stages(ShaderType.FRAGMENT, FS));
+		assertRejected(stages(ShaderType.GEOMETRY, GS, ShaderType.FRAGMENT, FS));
+		assertRejected(stages(ShaderType.VERTEX, VS, ShaderType.TESS_CONTROL, TCS, ShaderType.FRAGMENT, FS));
+		assertRejected(stages(ShaderType.COMPUTE, CS, ShaderType.VERTEX, VS));
+		assertRejected(stages(ShaderType.COMPUTE, CS, ShaderType.FRAGMENT, FS));
+	}
+
+	@Test
+	public void invalidProgramIsNotCreated() {
+		gl.clear();
+		try {
+			sm.createShader("bad", map(ShaderType.COMPUTE, CS, ShaderType.VERTEX, VS, ShaderType.FRAGMENT, FS));
+			fail("Expected compute mixed with graphics stages to be rejected");
+		} catch(IllegalArgumentException e) {
+			//expected
+		}
+		assertNull(sm.getHandle("bad"));
+		assertEquals(0, gl.count(RecordingBackend.CREATE_PROGRAM));
+	}
+
+	@Test
+	public void stagesAreAttachedInPipelineOrder() {
+		gl.clear();
+		sm.createShader("terrain", map(ShaderType.FRAGMENT, FS, ShaderType.GEOMETRY, GS, ShaderType.TESS_EVALUATION, TES,
+				ShaderType.VERTEX, VS, ShaderType.TESS_CONTROL, TCS));
+		Map<Integer, Integer> types = new HashMap<Integer, Integer>();
+		List<Integer> attached = new ArrayList<Integer>();
+		for(int i = 0; i < gl.getCallCount(); i++) {
+			if(gl.getOpcode(i) == RecordingBackend.CREATE_SHADER) {
+				types.put(gl.getInt(i, 1), gl.getInt(i, 0));
+			} else if(gl.getOpcode(i) == RecordingBackend.ATTACH_SHADER) {
+				attached.add(types.get(gl.getInt(i, 1)));
+			}
+		}
+		List<Integer> expected = new ArrayList<Integer>();
+		for(ShaderType type : ShaderType.VALUES) {
+			if(type != ShaderType.COMPUTE) {
+				expected.add(type.getGLType());
+			}
+		}
+		assertEquals(expected, attached);
+		assertEquals(5, gl.count(RecordingBackend.COMPILE_SHADER));
+	}
+
+	@Test
+	public void geometryProgramCanBeBoundAndSet() {
+		ShaderHandle h = sm.createShader("grass", map(ShaderType.VERTEX, VS, ShaderType.GEOMETRY, GS, ShaderType.FRAGMENT, FS));
+		Shader shader = sm.shaders[h.id];
+		assertTrue(shader.getShader(ShaderType.GEOMETRY) != 0);
+		assertEquals(0, shader.getShader(ShaderType.TESS_CONTROL));
+		assertFalse(shader.isCompute());
+		sm.bind(h);
+		gl.clear();
+		sm.putVec4("tint", 1, 1, 1, 1);
+		assertEquals(1, gl.count(RecordingBackend.UNIFORM_4F));
+	}
+
+	@Test
+	public void vertexFragmentKeyIsTheTwoSourcesChained() {
+		long chained = FS.hash(VS.hash(SourceHash.SEED));
+		assertEquals(chained, SourceHash.hash(SourceHash.SEED, stages(ShaderType.VERTEX, VS, ShaderType.FRAGMENT, FS)));
+	}
+
+	@Test
+	public void keysTellStagesApart() {
+		long plain = SourceHash.hash(SourceHash.SEED, stages(ShaderType.VERTEX, VS, ShaderType.FRAGMENT, FS));
+		long geometry = SourceHash.hash(SourceHash.SEED, stages(ShaderType.VERTEX, VS, ShaderType.GEOMETRY, GS,
+				ShaderType.FRAGMENT, FS));
+		long tessellated = SourceHash.hash(SourceHash.SEED, stages(ShaderType.VERTEX, VS, ShaderType.TESS_EVALUATION, GS,
+				ShaderType.FRAGMENT, FS));
+		long[] keys = {plain, geometry, tessellated};
+		for(int i = 0; i < keys.length; i++) {
+			for(int j = i + 1; j < keys.length; j++) {
+				assertNotEquals(keys[i], keys[j]);
+			}
+		}
+		//The same source in another stage is another program
+		assertNotEquals(SourceHash.hash(SourceHash.SEED, stages(ShaderType.COMPUTE, CS)),
+				SourceHash.hash(SourceHash.SEED, stages(ShaderType.VERTEX, CS)));
+		//Stable for equal sources
+		assertEquals(geometry, SourceHash.hash(SourceHash.SEED,
+				stages(ShaderType.VERTEX, ShaderSource.of("void main(){}"), ShaderType.GEOMETRY, GS, ShaderType.FRAGMENT, FS)));
+	}
+
+	@Test
+	public void programsWithDifferentStagesGetTheirOwnHandles() {
+		ShaderHandle plain = sm.createShader("p", map(ShaderType.VERTEX, VS, ShaderType.FRAGMENT, FS));
+		ShaderHandle geometry = sm.createShader("g", map(ShaderType.VERTEX, VS, ShaderType.GEOMETRY, GS, ShaderType.FRAGMENT, FS));
+		assertNotEquals(sm.shaders[plain.id].getSourceHash(), sm.shaders[geometry.id].getSourceHash());
+		assertNotEquals(sm.shaders[plain.id].shaderProgram, sm.shaders[geometry.id].shaderProgram);
+	}
+}
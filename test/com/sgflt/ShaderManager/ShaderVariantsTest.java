@@ -0,0 +1,78 @@
+/**
+ *	Author: Jack Ramey
+ *	File: ShaderVariantsTest.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class ShaderVariantsTest {
+
+	private static final String DEFINES = "#define FOG 1\n";
+
+	@Test
+	public void definesGoFirstWithoutVersion() {
+		assertEquals(DEFINES + "void main(){}\n", ShaderVariants.inject("void main(){}\n", DEFINES));
+	}
+
+	@Test
+	public void definesFollowVersion() {
+		assertEquals("#version 330\n" + DEFINES + "void main(){}\n",
+				ShaderVariants.inject("#version 330\nvoid main(){}\n", DEFINES));
+	}
+
+	@Test
+	public void definesFollowVersionAfterLineCommentHeader() {
+		String header = "// Copyright 2012 Jack Ramey\n//\n// Licensed under the Apache License, Version 2.0\n\n";
+		assertEquals(header + "#version 330 core\n" + DEFINES + "void main(){}\n",
+				ShaderVariants.inject(header + "#version 330 core\nvoid main(){}\n", DEFINES));
+	}
+
+	@Test
+	public void definesFollowVersionAfterBlockCommentHeader() {
+		String header = "/*\n * hemisphere.frag\n * #version in a comment does not count\n */\n";
+		assertEquals(header + "  #  version 150\r\n" + DEFINES + "void main(){}\n",
+				ShaderVariants.inject(header + "  #  version 150\r\nvoid main(){}\n", DEFINES));
+	}
+
+	@Test
+	public void definesFollowVersionOnLastLine() {
+		assertEquals("#version 330\n" + DEFINES, ShaderVariants.inject("#version 330", DEFINES));
+	}
+
+	@Test
+	public void versionAfterCodeIsNotMoved() {
+		String source = "uniform float x;\n#version 330\n";
+		assertEquals(DEFINES + source, ShaderVariants.inject(source, DEFINES));
+	}
+
+	@Test
+	public void unterminatedCommentGetsDefinesFirst() {
+		String source = "/* no end #version 330\n";
+		assertEquals(DEFINES + source, ShaderVariants.inject(source, DEFINES));
+	}
+
+	@Test
+	public void noDefinesLeavesSourceAlone() {
+		String source = "// header\n#version 330\n";
+		assertSame(source, ShaderVariants.inject(source, ""));
+	}
+}
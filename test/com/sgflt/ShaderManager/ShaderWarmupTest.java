@@ -0,0 +1,148 @@
+/**
+ *	Author: Jack Ramey
+ *	File: ShaderWarmupTest.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ShaderWarmupTest {
+
+	private static final String VS = "void main(){}";
+	private static final String FS = "uniform float fade; void main(){}";
+	private static final String BROKEN = "#error unfinished\nvoid main(){}";
+
+	private final ShaderManager sm = ShaderManager.INSTANCE;
+	private final RecordingBackend gl = (RecordingBackend) sm.getBackend();
+	private final ShaderWarmup warmup = sm.getWarmup();
+
+	@Before
+	public void setUp() {
+		warmup.finish();
+		gl.clear();
+	}
+
+	@After
+	public void tearDown() {
+		warmup.finish();
+		sm.unbind();
+		gl.clear();
+	}
+
+	/*
+	 * Program of the last recorded glUseProgram.
+	 */
+	private int lastUsed() {
+		for(int i = gl.getCallCount() - 1; i >= 0; i--) {
+			if(gl.getOpcode(i) == RecordingBackend.USE_PROGRAM) {
+				return gl.getInt(i, 0);
+			}
+		}
+		return -1;
+	}
+
+	private boolean isBuilt(ShaderHandle h) {
+		return sm.shaders[h.id].shaderProgram != 0;
+	}
+
+	@Test
+	public void registeringCompilesNothing() {
+		int queued = warmup.getQueued();
+		ShaderHandle h = sm.registerShader("warmup.lazy", VS, FS);
+		assertEquals(0, gl.count(RecordingBackend.CREATE_PROGRAM));
+		assertEquals(queued + 1, warmup.getQueued());
+		assertFalse(isBuilt(h));
+	}
+
+	@Test
+	public void ticksCompileByPriorityWithinTheBudget() {
+		ShaderHandle low = sm.registerShader("warmup.low", VS, FS, 0);
+		ShaderHandle high = sm.registerShader("warmup.high", VS, FS, 10);
+		ShaderHandle mid = sm.registerShader("warmup.mid", VS, FS, 5);
+		ShaderHandle tie = sm.registerShader("warmup.tie", VS, FS, 5);
+		//Without any budget a tick still compiles one shader
+		assertEquals(1, warmup.tick(0));
+		assertTrue(isBuilt(high));
+		assertFalse(isBuilt(mid));
+		assertEquals(1, warmup.tick(0));
+		assertTrue(isBuilt(mid));
+		assertFalse(isBuilt(tie));
+		assertEquals(1, warmup.getLastTickCompiled());
+		assertEquals(2, warmup.finish());
+		assertTrue(isBuilt(tie) && isBuilt(low));
+		assertEquals(0, warmup.getQueued());
+		assertTrue(warmup.getAverageCompileNanos() > 0);
+	}
+
+	@Test
+	public void bindCompilesAWaitingShader() {
+		long onBind = warmup.getCompiledOnBind();
+		ShaderHandle h = sm.registerShader("warmup.bound", VS, FS);
+		assertTrue(sm.bind(h));
+		assertTrue(isBuilt(h));
+		assertEquals(onBind + 1, warmup.getCompiledOnBind());
+		assertEquals(sm.shaders[h.id].shaderProgram, lastUsed());
+		//The queued entry is stale now
+		assertEquals(0, warmup.tick(Long.MAX_VALUE));
+	}
+
+	@Test
+	public void failedShaderBindsTheDefaultPipeline() {
+		long failed = warmup.getFailed();
+		sm.bind(sm.createShader("warmup.other", VS, FS));
+		ShaderHandle h = sm.registerShader("warmup.broken", VS, BROKEN);
+		assertFalse(sm.bind(h));
+		assertEquals(failed + 1, warmup.getFailed());
+		assertEquals(0, warmup.getQueued());
+		assertEquals(0, lastUsed());
+	}
+
+	@Test
+	public void createShaderReplacesWaitingSources() {
+		ShaderHandle h = sm.registerShader("warmup.direct", VS, FS);
+		int program = sm.createShader("warmup.direct", VS, FS).id;
+		assertEquals(h.id, program);
+		assertEquals(0, warmup.getQueued());
+		gl.clear();
+		assertEquals(0, warmup.finish());
+		assertEquals(0, gl.count(RecordingBackend.CREATE_PROGRAM));
+	}
+
+	@Test
+	public void compiledShaderDoesNotBecomeActiveOnItsOwn() {
+		sm.bindDefault();
+		ShaderHandle h = sm.registerShader("warmup.inactive", VS, FS);
+		warmup.finish();
+		assertTrue(isBuilt(h));
+		gl.clear();
+		//Still on the default pipeline, so there is no program to upload to
+		sm.putFloat("fade", 1.0f);
+		assertEquals(0, gl.count(RecordingBackend.UNIFORM_1F));
+		assertTrue(sm.bind(h));
+		sm.putFloat("fade", 1.0f);
+		assertEquals(1, gl.count(RecordingBackend.UNIFORM_1F));
+		assertNotEquals(0, gl.getInt(0, 0));
+	}
+}
@@ -0,0 +1,170 @@
+/**
+ *	Author: Jack Ramey
+ *	File: TextureBindingTest.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL13;
+
+/*
+ * Sampler units given out at link time and the texture bind shadow.
+ */
+public class TextureBindingTest {
+
+	private static final String VS = "void main(){}";
+
+	private final ShaderManager sm = ShaderManager.INSTANCE;
+	private final RecordingBackend gl = (RecordingBackend) sm.getBackend();
+
+	@Before
+	public void setUp() {
+		sm.invalidateState();
+		gl.clear();
+	}
+
+	@After
+	public void tearDown() {
+		sm.unbind();
+		sm.invalidateState();
+		gl.clear();
+	}
+
+	@Test
+	public void everySamplerGetsItsOwnUnit() {
+		ShaderHandle h = sm.createShader("texture.units", VS,
+				"uniform sampler2D units_a; uniform samplerCube units_b; uniform float fade; void main(){}");
+		int a = sm.getTextureUnit(h, "units_a");
+		int b = sm.getTextureUnit(h, "units_b");
+		assertTrue(a == 0 || a == 1);
+		assertEquals(1 - a, b);
+		assertEquals(-1, sm.getTextureUnit(h, "fade"));
+		assertEquals(-1, sm.getTextureUnit(h, "missing"));
+	}
+
+	@Test
+	public void layoutBindingIsKept() {
+		ShaderHandle h = sm.createShader("texture.layout", VS,
+				"layout(binding = 3) uniform sampler2D layout_shadow; uniform sampler2D layout_base; void main(){}");
+		assertEquals(3, sm.getTextureUnit(h, "layout_shadow"));
+		assertEquals(0, sm.getTextureUnit(h, "layout_base"));
+	}
+
+	@Test
+	public void collidingBindingGetsAFreeUnit() {
+		ShaderHandle h = sm.createShader("texture.collide", VS,
+				"layout(binding = 2) uniform sampler2D collide_a; layout(binding = 2) uniform sampler2D collide_b; void main(){}");
+		int a = sm.getTextureUnit(h, "collide_a");
+		int b = sm.getTextureUnit(h, "collide_b");
+		assertNotEquals(a, b);
+		assertTrue(a == 2 || b == 2);
+	}
+
+	@Test
+	public void samplerArrayElementsGetUnitsOfTheirOwn() {
+		ShaderHandle h = sm.createShader("texture.array", VS,
+				"uniform sampler2D array_layers[3]; uniform sampler2D array_after; void main(){}");
+		int layers = sm.getTextureUnit(h, "array_layers");
+		int after = sm.getTextureUnit(h, "array_after");
+		assertTrue(after < layers || after >= layers + 3);
+	}
+
+	@Test
+	public void unitsAreSetOnTheFirstBindOnly() {
+		ShaderHandle h = sm.createShader("texture.first", VS,
+				"layout(binding = 0) uniform sampler2D first_a; uniform sampler2D first_b; void main(){}");
+		ShaderHandle other = sm.createShader("texture.first.other", VS, "uniform float fade; void main(){}");
+		gl.clear();
+		sm.bind(h);
+		//first_a has its unit already, only first_b is set
+		assertEquals(1, gl.count(RecordingBackend.UNIFORM_1I));
+		sm.bind(other);
+		sm.bind(h);
+		assertEquals(1, gl.count(RecordingBackend.UNIFORM_1I));
+		//The shadow holds the unit, so setting it again is redundant
+		sm.putInt("first_b", sm.getTextureUnit(h, "first_b"));
+		assertEquals(1, gl.count(RecordingBackend.UNIFORM_1I));
+	}
+
+	@Test
+	public void redundantTextureBindIsSkipped() {
+		long skipped = sm.getMetrics().getTextureBindsSkipped();
+		assertTrue(sm.bindTexture(0, GL11.GL_TEXTURE_2D, 5));
+		assertFalse(sm.bindTexture(0, GL11.GL_TEXTURE_2D, 5));
+		assertTrue(sm.bindTexture(0, GL13.GL_TEXTURE_CUBE_MAP, 5));
+		assertTrue(sm.bindTexture(1, GL11.GL_TEXTURE_2D, 5));
+		assertEquals(3, gl.count(RecordingBackend.BIND_TEXTURE));
+		assertEquals(2, gl.count(RecordingBackend.ACTIVE_TEXTURE));
+		assertEquals(skipped + 1, sm.getMetrics().getTextureBindsSkipped());
+	}
+
+	@Test
+	public void deletedTextureIsBoundAgain() {
+		assertTrue(sm.bindTexture(2, GL11.GL_TEXTURE_2D, 7));
+		sm.deleteTexture(7);
+		assertEquals(1, gl.count(RecordingBackend.DELETE_TEXTURES));
+		assertTrue(sm.bindTexture(2, GL11.GL_TEXTURE_2D, 7));
+	}
+
+	@Test
+	public void invalidateStateBindsAgain() {
+		assertTrue(sm.bindTexture(0, GL11.GL_TEXTURE_2D, 9));
+		sm.invalidateState();
+		assertTrue(sm.bindTexture(0, GL11.GL_TEXTURE_2D, 9));
+		assertEquals(2, gl.count(RecordingBackend.ACTIVE_TEXTURE));
+	}
+
+	@Test
+	public void textureSetBindsWithTheSamplerTargets() {
+		ShaderHandle h = sm.createShader("texture.set", VS,
+				"uniform sampler2D set_diffuse; uniform samplerCube set_sky; void main(){}");
+		TextureSet set = sm.createTextureSet(h, "set_diffuse", "set_sky", "set_missing");
+		set.set(0, 11).set("set_sky", 12);
+		assertEquals(2, set.bind());
+		assertEquals(0, set.bind());
+		for(int i = 0; i < gl.getCallCount(); i++) {
+			if(gl.getOpcode(i) == RecordingBackend.BIND_TEXTURE) {
+				int target = gl.getInt(i, 0);
+				int texture = gl.getInt(i, 1);
+				assertEquals((texture == 11) ? GL11.GL_TEXTURE_2D : GL13.GL_TEXTURE_CUBE_MAP, target);
+			}
+		}
+		set.set(0, 13);
+		assertEquals(1, set.bind());
+	}
+
+	@Test
+	public void textureSetFollowsARebuild() {
+		ShaderHandle h = sm.createShader("texture.rebuild", VS,
+				"layout(binding = 4) uniform sampler2D rebuild_diffuse; void main(){}");
+		TextureSet set = sm.createTextureSet(h, "rebuild_diffuse").set(0, 21);
+		set.bind();
+		sm.createShader("texture.rebuild", VS, "layout(binding = 5) uniform sampler2D rebuild_diffuse; void main(){}");
+		gl.clear();
+		assertEquals(1, set.bind());
+		assertEquals(5, gl.getInt(0, 0));
+	}
+}
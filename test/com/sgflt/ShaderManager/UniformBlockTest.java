@@ -0,0 +1,114 @@
+/**
+ *	Author: Jack Ramey
+ *	File: UniformBlockTest.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.lwjgl.opengl.GL31;
+
+/*
+ * Binding points of uniform blocks and the buffer bindings they leave behind.
+ * Every test starts from a disposed manager so it owns every binding point.
+ */
+public class UniformBlockTest {
+
+	private final ShaderManager sm = ShaderManager.INSTANCE;
+	private final RecordingBackend gl = (RecordingBackend) sm.getBackend();
+
+	@Before
+	public void setUp() {
+		sm.dispose();
+		gl.clear();
+	}
+
+	@After
+	public void tearDown() {
+		sm.dispose();
+		gl.clear();
+	}
+
+	/*
+	 * Buffer bound to the generic GL_UNIFORM_BUFFER target by the last call that
+	 * changed it since the last clear.
+	 */
+	private int genericBinding() {
+		int buffer = -1;
+		for(int i = 0; i < gl.getCallCount(); i++) {
+			if(gl.getOpcode(i) == RecordingBackend.BIND_BUFFER && gl.getInt(i, 0) == GL31.GL_UNIFORM_BUFFER) {
+				buffer = gl.getInt(i, 1);
+			} else if(gl.getOpcode(i) == RecordingBackend.BIND_BUFFER_BASE && gl.getInt(i, 0) == GL31.GL_UNIFORM_BUFFER) {
+				buffer = gl.getInt(i, 2);
+			}
+		}
+		return buffer;
+	}
+
+	@Test
+	public void blocksGetConsecutiveBindingPoints() {
+		assertEquals(0, sm.createUniformBlock("Camera", 128).getBinding());
+		assertEquals(1, sm.createUniformBlock("Lights", 64).getBinding());
+	}
+
+	@Test
+	public void creatingABlockLeavesTheGenericBindingClear() {
+		sm.createUniformBlock("Generic", 64);
+		assertEquals(0, genericBinding());
+	}
+
+	@Test
+	public void uploadLeavesTheGenericBindingClear() {
+		UniformBlock block = sm.createUniformBlock("Upload", 64);
+		gl.clear();
+		block.begin().putFloat(1f);
+		block.upload();
+		assertEquals(1, gl.count(RecordingBackend.BUFFER_SUB_DATA));
+		assertEquals(0, genericBinding());
+	}
+
+	@Test
+	public void bindingPointsRunOut() {
+		for(int i = 0; i < FakeGLBackend.UNIFORM_BUFFER_BINDINGS; i++) {
+			sm.createUniformBlock("Block" + i, 16);
+		}
+		gl.clear();
+		try {
+			sm.createUniformBlock("OneTooMany", 16);
+			fail("A block past the last binding point must be rejected.");
+		} catch(IllegalStateException e) {
+			assertTrue(e.getMessage().contains("OneTooMany"));
+		}
+		//Rejected before a buffer was made for it, and the limit is only queried once
+		assertEquals(0, gl.count(RecordingBackend.GEN_BUFFERS));
+		assertEquals(0, gl.count(RecordingBackend.GET_INTEGER));
+		assertNull(sm.getUniformBlock("OneTooMany"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void namesAreUnique() {
+		sm.createUniformBlock("Twice", 16);
+		sm.createUniformBlock("Twice", 16);
+	}
+}
@@ -0,0 +1,156 @@
+/**
+ *	Author: Jack Ramey
+ *	File: UniformCommandBufferTest.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/*
+ * Uniform uploads recorded between beginRecording and flush.
+ */
+public class UniformCommandBufferTest {
+
+	private static final String VS = "void main(){}";
+
+	private final ShaderManager sm = ShaderManager.INSTANCE;
+	private final RecordingBackend gl = (RecordingBackend) sm.getBackend();
+	private ShaderHandle a;
+	private ShaderHandle b;
+
+	@Before
+	public void setUp() {
+		a = sm.createShader("commands.a", VS,
+				"uniform float fade; uniform vec3 tint; uniform float weights[3]; uniform mat4 bones[80]; void main(){}");
+		b = sm.createShader("commands.b", VS, "uniform float fade; void main(){}");
+		sm.bind(a);
+		gl.clear();
+		sm.beginRecording();
+	}
+
+	@After
+	public void tearDown() {
+		sm.invalidateState();
+		sm.endRecording();
+		sm.unbind();
+		gl.clear();
+	}
+
+	private int first(int opcode) {
+		for(int i = 0; i < gl.getCallCount(); i++) {
+			if(gl.getOpcode(i) == opcode) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Test
+	public void nothingIsIssuedBeforeTheFlush() {
+		assertTrue(sm.isRecording());
+		sm.putFloat("fade", 0.5f);
+		sm.putVec3("tint", 1, 2, 3);
+		assertEquals(0, gl.getCallCount());
+		sm.flush();
+		assertEquals(1, gl.count(RecordingBackend.UNIFORM_1F));
+		assertEquals(1, gl.count(RecordingBackend.UNIFORM_3F));
+	}
+
+	@Test
+	public void lastWriteWins() {
+		sm.putFloat("fade", 0.25f);
+		sm.putFloat("fade", 0.5f);
+		sm.putFloat("fade", 0.75f);
+		long issued = sm.getUniformUploadsIssued();
+		sm.flush();
+		assertEquals(1, gl.count(RecordingBackend.UNIFORM_1F));
+		assertEquals(0.75f, gl.getFloat(0, 1), 0f);
+		assertEquals(issued + 1, sm.getUniformUploadsIssued());
+	}
+
+	@Test
+	public void resizedWriteReplacesTheOldOne() {
+		sm.putFloatArray("weights", new float[] {1, 2}, 0, 2);
+		sm.putFloatArray("weights", new float[] {4, 5, 6}, 0, 3);
+		sm.flush();
+		assertEquals(1, gl.count(RecordingBackend.UNIFORM_1FV));
+		assertEquals(3, gl.getInt(0, 1));
+	}
+
+	@Test
+	public void shorterWriteKeepsTheLongerOne() {
+		sm.putFloatArray("weights", new float[] {1, 2, 3}, 0, 3);
+		sm.putFloatArray("weights", new float[] {7}, 0, 1);
+		sm.flush();
+		//The third element only reaches the driver through the first write
+		assertEquals(2, gl.count(RecordingBackend.UNIFORM_1FV));
+		assertEquals(3, gl.getInt(0, 1));
+		assertEquals(1, gl.getInt(1, 1));
+	}
+
+	@Test
+	public void bindingAnotherProgramFlushesFirst() {
+		sm.putFloat("fade", 0.5f);
+		sm.bind(b);
+		int upload = first(RecordingBackend.UNIFORM_1F);
+		int use = first(RecordingBackend.USE_PROGRAM);
+		assertTrue(upload != -1 && upload < use);
+		sm.flush();
+		assertEquals(1, gl.count(RecordingBackend.UNIFORM_1F));
+	}
+
+	@Test
+	public void bufferGrowsForLargeUploads() {
+		float[] bones = new float[80 * 16];
+		for(int i = 0; i < bones.length; i++) {
+			bones[i] = i;
+		}
+		sm.putFloat("fade", 0.5f);
+		sm.putMatrix4fArray("bones", bones, 0, 80, false);
+		sm.putVec3("tint", 4, 5, 6);
+		sm.flush();
+		assertEquals(1, gl.count(RecordingBackend.UNIFORM_1F));
+		assertEquals(1, gl.count(RecordingBackend.UNIFORM_MATRIX_4FV));
+		assertEquals(80 * 16, gl.getInt(first(RecordingBackend.UNIFORM_MATRIX_4FV), 2));
+		assertEquals(1, gl.count(RecordingBackend.UNIFORM_3F));
+	}
+
+	@Test
+	public void invalidateStateDropsRecordedUploads() {
+		sm.putFloat("fade", 0.5f);
+		sm.invalidateState();
+		sm.flush();
+		assertEquals(0, gl.count(RecordingBackend.UNIFORM_1F));
+	}
+
+	@Test
+	public void endRecordingFlushes() {
+		sm.putFloat("fade", 0.5f);
+		sm.endRecording();
+		assertFalse(sm.isRecording());
+		assertEquals(1, gl.count(RecordingBackend.UNIFORM_1F));
+		sm.putFloat("fade", 0.25f);
+		assertEquals(2, gl.count(RecordingBackend.UNIFORM_1F));
+	}
+}
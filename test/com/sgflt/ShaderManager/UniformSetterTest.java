@@ -0,0 +1,177 @@
+/**
+ *	Author: Jack Ramey
+ *	File: UniformSetterTest.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.FloatBuffer;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.util.vector.Matrix4f;
+
+/*
+ * Primitive, vector array and matrix setters staged through the pooled buffers.
+ */
+public class UniformSetterTest {
+
+	private static final String VS = "void main(){}";
+
+	private final ShaderManager sm = ShaderManager.INSTANCE;
+	private final RecordingBackend gl = (RecordingBackend) sm.getBackend();
+	private final FakeGLBackend fake = (FakeGLBackend) gl.getDelegate();
+
+	@Before
+	public void setUp() {
+		ShaderHandle h = sm.createShader("setters", VS, "uniform vec2 set_v2; uniform vec3 set_v3; uniform vec4 set_v4;"
+				+ " uniform mat3 set_m3; uniform mat4 set_m4; uniform vec4 set_va[3]; uniform mat4 set_bones[2];"
+				+ " uniform float set_fa[4]; void main(){}");
+		sm.bind(h);
+		sm.invalidateState();
+		gl.clear();
+	}
+
+	@After
+	public void tearDown() {
+		sm.unbind();
+		gl.clear();
+	}
+
+	private float[] uploaded() {
+		float[] values = new float[fake.getUploadedCount()];
+		for(int i = 0; i < values.length; i++) {
+			values[i] = fake.getUploaded(i);
+		}
+		return values;
+	}
+
+	@Test
+	public void primitiveVectors() {
+		sm.putVec2("set_v2", 1, 2);
+		sm.putVec3("set_v3", 1, 2, 3);
+		sm.putVec4("set_v4", 1, 2, 3, 4);
+		assertEquals(RecordingBackend.UNIFORM_2F, gl.getOpcode(0));
+		assertEquals(2f, gl.getFloat(0, 2), 0f);
+		assertEquals(RecordingBackend.UNIFORM_3F, gl.getOpcode(1));
+		assertEquals(3f, gl.getFloat(1, 3), 0f);
+		assertEquals(RecordingBackend.UNIFORM_4F, gl.getOpcode(2));
+		assertEquals(4f, gl.getFloat(2, 4), 0f);
+	}
+
+	@Test
+	public void vectorArrayStartsAtTheOffset() {
+		float[] values = {9, 9, 1, 2, 3, 4, 5, 6, 7, 8};
+		sm.putVec4Array("set_va", values, 2, 2);
+		assertEquals(RecordingBackend.UNIFORM_4FV, gl.getOpcode(0));
+		assertEquals(8, gl.getInt(0, 1));
+		assertArrayEquals(new float[] {1, 2, 3, 4, 5, 6, 7, 8}, uploaded(), 0f);
+	}
+
+	@Test
+	public void rowMajorMatricesAreUploadedColumnMajor() {
+		float[] rows = {
+				1, 2, 3, 4,
+				5, 6, 7, 8,
+				9, 10, 11, 12,
+				13, 14, 15, 16};
+		float[] copy = rows.clone();
+		sm.putMatrix4f("set_m4", rows, 0, true);
+		assertEquals(RecordingBackend.UNIFORM_MATRIX_4FV, gl.getOpcode(0));
+		//Transposed on the way in, the driver gets column major
+		assertEquals(0, gl.getInt(0, 1));
+		assertArrayEquals(new float[] {1, 5, 9, 13, 2, 6, 10, 14, 3, 7, 11, 15, 4, 8, 12, 16}, uploaded(), 0f);
+		assertArrayEquals(copy, rows, 0f);
+		//The same matrix passed column major is a redundant upload
+		sm.putMatrix4f("set_m4", uploaded(), 0, false);
+		assertEquals(1, gl.getCallCount());
+	}
+
+	@Test
+	public void matrix3WithOffset() {
+		float[] m = {0, 1, 0, 0, 0, 1, 0, 0, 0, 1};
+		sm.putMatrix3f("set_m3", m, 1, false);
+		assertEquals(RecordingBackend.UNIFORM_MATRIX_3FV, gl.getOpcode(0));
+		assertArrayEquals(new float[] {1, 0, 0, 0, 1, 0, 0, 0, 1}, uploaded(), 0f);
+	}
+
+	@Test
+	public void lwjglMatrixIsUploadedColumnMajor() {
+		Matrix4f m = new Matrix4f();
+		m.m30 = 5;
+		sm.putMatrix4f("set_m4", m);
+		assertEquals(5f, uploaded()[12], 0f);
+	}
+
+	@Test
+	public void matrixArrayPassesEveryMatrix() {
+		float[] bones = new float[32];
+		for(int i = 0; i < bones.length; i++) {
+			bones[i] = i;
+		}
+		sm.putMatrix4fArray("set_bones", bones, 0, 2, false);
+		assertEquals(32, gl.getInt(0, 2));
+		assertArrayEquals(bones, uploaded(), 0f);
+	}
+
+	@Test
+	public void refLeavesTheCallersBufferAlone() {
+		FloatBuffer buf = BufferUtils.createFloatBuffer(8);
+		buf.put(new float[] {1, 2, 3, 4}).flip();
+		sm.uniform(sm.getHandle("setters"), "set_fa").set(buf);
+		assertEquals(0, buf.position());
+		assertEquals(4, buf.limit());
+		assertEquals(1, gl.count(RecordingBackend.UNIFORM_1FV));
+	}
+
+	@Test
+	public void settersDoNotAllocate() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+		Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+		float[] bones = new float[32];
+		float[] colors = new float[12];
+		for(int i = 0; i < 2000; i++) {
+			frame(bones, colors, i);
+			gl.clear();
+		}
+		long id = Thread.currentThread().getId();
+		long before = threads.getThreadAllocatedBytes(id);
+		for(int i = 0; i < 100; i++) {
+			frame(bones, colors, i);
+			gl.clear();
+		}
+		assertEquals(0, threads.getThreadAllocatedBytes(id) - before);
+	}
+
+	private void frame(float[] bones, float[] colors, int i) {
+		bones[0] = i;
+		colors[0] = i;
+		sm.putMatrix4fArray("set_bones", bones, 0, 2, true);
+		sm.putVec4Array("set_va", colors, 0, 3);
+		sm.putVec3("set_v3", i, i, i);
+	}
+}
@@ -0,0 +1,151 @@
+/**
+ *	Author: Jack Ramey
+ *	File: UniformShadowTest.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.FloatBuffer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.lwjgl.BufferUtils;
+
+/*
+ * Uploads skipped because the uniform shadow holds the value already.
+ */
+public class UniformShadowTest {
+
+	private static final String VS = "uniform mat4 mvp; void main(){}";
+	private static final String FS =
+			"uniform float fade; uniform vec2 offset; uniform vec3 tint; uniform vec4 color; uniform int mode;\n"
+			+ "uniform float weights[4]; uniform vec4 palette[3]; uniform int flags[2];\n"
+			+ "void main(){}";
+
+	private final ShaderManager sm = ShaderManager.INSTANCE;
+	private final RecordingBackend gl = (RecordingBackend) sm.getBackend();
+	private final ShaderMetrics metrics = sm.getMetrics();
+
+	@Before
+	public void setUp() {
+		sm.bind(sm.createShader("shadow", VS, FS));
+		gl.clear();
+	}
+
+	@After
+	public void tearDown() {
+		sm.unbind();
+		gl.clear();
+	}
+
+	@Test
+	public void firstUploadOfZeroIsIssued() {
+		sm.putFloat("fade", 0);
+		sm.putInt("mode", 0);
+		assertEquals(1, gl.count(RecordingBackend.UNIFORM_1F));
+		assertEquals(1, gl.count(RecordingBackend.UNIFORM_1I));
+	}
+
+	@Test
+	public void unchangedValuesAreSkipped() {
+		long skipped = metrics.getUniformUploadsSkipped();
+		for(int i = 0; i < 3; i++) {
+			sm.putFloat("fade", 0.5f);
+			sm.putVec2("offset", 1, 2);
+			sm.putVec3("tint", 1, 2, 3);
+			sm.putVec4("color", 1, 2, 3, 4);
+			sm.putInt("mode", 7);
+			sm.putMatrix4f("mvp", new float[16], 0, false);
+		}
+		assertEquals(1, gl.count(RecordingBackend.UNIFORM_1F));
+		assertEquals(1, gl.count(RecordingBackend.UNIFORM_2F));
+		assertEquals(1, gl.count(RecordingBackend.UNIFORM_3F));
+		assertEquals(1, gl.count(RecordingBackend.UNIFORM_4F));
+		assertEquals(1, gl.count(RecordingBackend.UNIFORM_1I));
+		assertEquals(1, gl.count(RecordingBackend.UNIFORM_MATRIX_4FV));
+		assertEquals(skipped + 12, metrics.getUniformUploadsSkipped());
+	}
+
+	@Test
+	public void changedComponentIsUploaded() {
+		sm.putVec4("color", 1, 2, 3, 4);
+		sm.putVec4("color", 1, 2, 3, 5);
+		sm.putVec4("color", 1, 2, 3, 5);
+		assertEquals(2, gl.count(RecordingBackend.UNIFORM_4F));
+	}
+
+	@Test
+	public void unchangedArraysAreSkipped() {
+		float[] w = {1, 2, 3, 4};
+		sm.putFloatArray("weights", w, 0, 4);
+		sm.putFloatArray("weights", w, 0, 4);
+		sm.putVec4Array("palette", new float[12], 0, 3);
+		sm.putVec4Array("palette", new float[12], 0, 3);
+		sm.putIntArray("flags", new int[] {1, 2}, 0, 2);
+		sm.putIntArray("flags", new int[] {1, 2}, 0, 2);
+		assertEquals(1, gl.count(RecordingBackend.UNIFORM_1FV));
+		assertEquals(1, gl.count(RecordingBackend.UNIFORM_4FV));
+		assertEquals(1, gl.count(RecordingBackend.UNIFORM_1IV));
+	}
+
+	@Test
+	public void partialUploadThenFullUploadIsIssued() {
+		sm.putFloatArray("weights", new float[] {1, 2}, 0, 2);
+		//The last two elements were never uploaded, so zeros there are not known
+		sm.putFloatArray("weights", new float[] {1, 2, 0, 0}, 0, 4);
+		assertEquals(2, gl.count(RecordingBackend.UNIFORM_1FV));
+		sm.putFloatArray("weights", new float[] {1, 2, 0, 0}, 0, 4);
+		//A prefix of known elements is skipped
+		sm.putFloatArray("weights", new float[] {1, 2}, 0, 2);
+		assertEquals(2, gl.count(RecordingBackend.UNIFORM_1FV));
+	}
+
+	@Test
+	public void partialVectorArrayThenFullIsIssued() {
+		sm.putVec4Array("palette", new float[12], 0, 1);
+		sm.putVec4Array("palette", new float[12], 0, 3);
+		sm.putVec4Array("palette", new float[12], 0, 2);
+		assertEquals(2, gl.count(RecordingBackend.UNIFORM_4FV));
+	}
+
+	@Test
+	public void partialBufferThenFullBufferIsIssued() {
+		FloatBuffer buf = BufferUtils.createFloatBuffer(4);
+		buf.put(1).put(2);
+		sm.putFloatBuffer("weights", buf);
+		buf.clear();
+		buf.put(1).put(2).put(0).put(0);
+		sm.putFloatBuffer("weights", buf);
+		assertEquals(2, gl.count(RecordingBackend.UNIFORM_1FV));
+		assertEquals(4, gl.getInt(gl.getCallCount() - 1, 1));
+	}
+
+	@Test
+	public void invalidateStateUploadsAgain() {
+		sm.putFloat("fade", 0.25f);
+		sm.putFloatArray("weights", new float[] {1, 2, 3, 4}, 0, 4);
+		sm.invalidateState();
+		sm.bind(sm.getHandle("shadow"));
+		sm.putFloat("fade", 0.25f);
+		sm.putFloatArray("weights", new float[] {1, 2, 3, 4}, 0, 4);
+		assertEquals(2, gl.count(RecordingBackend.UNIFORM_1F));
+		assertEquals(2, gl.count(RecordingBackend.UNIFORM_1FV));
+	}
+}
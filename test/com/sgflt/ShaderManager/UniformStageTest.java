@@ -0,0 +1,149 @@
+/**
+ *	Author: Jack Ramey
+ *	File: UniformStageTest.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/*
+ * Values staged by a worker thread and applied on the GL thread.
+ */
+public class UniformStageTest {
+
+	private static final String VS = "void main(){}";
+
+	private final ShaderManager sm = ShaderManager.INSTANCE;
+	private final RecordingBackend gl = (RecordingBackend) sm.getBackend();
+	private ShaderHandle a;
+	private ShaderHandle b;
+
+	@Before
+	public void setUp() {
+		a = sm.createShader("stage.a", VS, "uniform float stage_fade; uniform vec4 stage_color; void main(){}");
+		b = sm.createShader("stage.b", VS, "uniform float stage_other; void main(){}");
+		sm.bind(a);
+		gl.clear();
+	}
+
+	@After
+	public void tearDown() {
+		//Stages stay registered, leave nothing queued for the next test
+		sm.applyStagedUniforms();
+		sm.unbind();
+		gl.clear();
+	}
+
+	@Test
+	public void capacityIsRoundedUpToAPowerOfTwo() {
+		assertEquals(8, sm.createUniformStage(5).getCapacity());
+		assertEquals(1, sm.createUniformStage(1).getCapacity());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void capacityMustBePositive() {
+		sm.createUniformStage(0);
+	}
+
+	@Test
+	public void lastStagedValueIsApplied() {
+		UniformStage stage = sm.createUniformStage(4);
+		UniformRef fade = sm.uniform(a, "stage_fade");
+		stage.set(fade, 0.25f);
+		stage.set(fade, 0.5f);
+		stage.set(fade, 0.75f);
+		assertEquals(1, stage.getPending());
+		assertEquals(1, sm.applyStagedUniforms());
+		assertEquals(0, stage.getPending());
+		assertEquals(1, gl.count(RecordingBackend.UNIFORM_1F));
+		assertEquals(0.75f, gl.getFloat(0, 1), 0f);
+	}
+
+	@Test
+	public void entriesAreQueuedAgainAfterAnApply() {
+		UniformStage stage = sm.createUniformStage(4);
+		UniformRef fade = sm.uniform(a, "stage_fade");
+		stage.set(fade, 0.1f);
+		sm.applyStagedUniforms();
+		assertEquals(0, sm.applyStagedUniforms());
+		stage.set(fade, 0.2f);
+		assertEquals(1, sm.applyStagedUniforms());
+		assertEquals(2, gl.count(RecordingBackend.UNIFORM_1F));
+	}
+
+	@Test
+	public void valuesAreDroppedOverCapacity() {
+		UniformStage stage = sm.createUniformStage(1);
+		assertTrue(stage.set(sm.uniform(a, "stage_fade"), 1f));
+		assertFalse(stage.set(sm.uniform(a, "stage_color"), 1f, 2f, 3f, 4f));
+		assertEquals(1, stage.getDropped());
+		assertEquals(1, sm.applyStagedUniforms());
+	}
+
+	@Test
+	public void applyBindsTheProgramOfEachUniform() {
+		UniformStage stage = sm.createUniformStage(4);
+		stage.set(sm.uniform(b, "stage_other"), 3f);
+		sm.applyStagedUniforms();
+		assertEquals(RecordingBackend.USE_PROGRAM, gl.getOpcode(0));
+		assertEquals(sm.shaders[b.getId()].shaderProgram, gl.getInt(0, 0));
+		assertEquals(RecordingBackend.UNIFORM_1F, gl.getOpcode(1));
+	}
+
+	@Test
+	public void workerValuesArriveWholeAndInOrder() throws InterruptedException {
+		final UniformStage stage = sm.createUniformStage(2);
+		final UniformRef color = sm.uniform(a, "stage_color");
+		final int count = 200000;
+		Thread worker = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				for(int i = 1; i <= count; i++) {
+					stage.set(color, i, i, i, i);
+				}
+			}
+		});
+		worker.start();
+		while(worker.isAlive()) {
+			sm.applyStagedUniforms();
+		}
+		worker.join();
+		sm.applyStagedUniforms();
+
+		float last = 0;
+		for(int i = 0; i < gl.getCallCount(); i++) {
+			if(gl.getOpcode(i) != RecordingBackend.UNIFORM_4F) {
+				continue;
+			}
+			float x = gl.getFloat(i, 1);
+			//A value read while the worker wrote it would mix two writes
+			assertEquals(x, gl.getFloat(i, 2), 0f);
+			assertEquals(x, gl.getFloat(i, 3), 0f);
+			assertEquals(x, gl.getFloat(i, 4), 0f);
+			assertTrue(x > last);
+			last = x;
+		}
+		assertEquals(count, last, 0f);
+	}
+}
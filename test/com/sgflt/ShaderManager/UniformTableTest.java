@@ -0,0 +1,193 @@
+/**
+ *	Author: Jack Ramey
+ *	File: UniformTableTest.java
+ *
+ *  Copyright 2012 Jack Ramey
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.sgflt.ShaderManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL20;
+
+/*
+ * The uniform table of a linked program: reflection, lookups, misses and the
+ * slots of array elements. The fake driver gives array elements consecutive
+ * locations and reports struct uniforms member by member, like a driver does.
+ */
+public class UniformTableTest {
+
+	private static final String VS = "uniform mat4 mvp; void main(){}";
+	private static final String FS =
+			"struct Light { vec3 color; float intensity; float falloff[3]; };\n"
+			+ "uniform Light lights[4];\n"
+			+ "uniform Light sun;\n"
+			+ "uniform vec4 colors[4];\n"
+			+ "uniform float weights[3];\n"
+			+ "uniform float fade;\n"
+			+ "void main(){}";
+
+	private final ShaderManager sm = ShaderManager.INSTANCE;
+	private final RecordingBackend gl = (RecordingBackend) sm.getBackend();
+	private ShaderHandle handle;
+	private UniformTable table;
+
+	@Before
+	public void setUp() {
+		handle = sm.createShader("table", VS, FS);
+		table = sm.shaders[handle.id].uniforms;
+		sm.bind(handle);
+		gl.clear();
+	}
+
+	@After
+	public void tearDown() {
+		if(sm.isRecording()) {
+			sm.endRecording();
+		}
+		sm.unbind();
+		gl.clear();
+	}
+
+	/*
+	 * Index of the last recorded call with the opcode, -1 if there is none.
+	 */
+	private int last(int opcode) {
+		for(int i = gl.getCallCount() - 1; i >= 0; i--) {
+			if(gl.getOpcode(i) == opcode) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Test
+	public void everyActiveUniformHasASlot() {
+		//mvp, 4 * 3 light members, 3 sun members, colors, weights and fade
+		assertEquals(1 + 12 + 3 + 3, table.size());
+		int fade = table.slot("fade");
+		assertEquals("fade", table.getName(fade));
+		assertEquals(GL11.GL_FLOAT, table.getType(fade));
+		assertEquals(1, table.getArraySize(fade));
+		assertEquals(GL20.GL_FLOAT_MAT4, table.getType(table.slot("mvp")));
+	}
+
+	@Test
+	public void arrayIsFoundByItsPlainName() {
+		int colors = table.slot("colors[0]");
+		assertTrue(colors != -1);
+		assertEquals(colors, table.slot("colors"));
+		assertEquals(4, table.getArraySize(colors));
+		assertEquals(GL20.GL_FLOAT_VEC4, table.getType(colors));
+	}
+
+	@Test
+	public void structMembersHaveSlots() {
+		int color = table.slot("sun.color");
+		assertEquals(GL20.GL_FLOAT_VEC3, table.getType(color));
+		int intensity = table.slot("lights[3].intensity");
+		assertTrue(intensity != -1);
+		assertNotEquals(table.getLocation(intensity), table.getLocation(table.slot("lights[2].intensity")));
+		assertEquals(3, table.getArraySize(table.slot("lights[1].falloff")));
+		assertEquals(-1, table.slot("lights"));
+		assertEquals(-1, table.slot("sun"));
+	}
+
+	@Test
+	public void unknownNamesMiss() {
+		int size = table.size();
+		assertEquals(-1, table.slot("missing"));
+		assertEquals(-1, table.slot("colors[4]"));
+		assertEquals(-1, table.slot("colors[-1]"));
+		assertEquals(-1, table.slot("colors[x]"));
+		assertEquals(-1, table.slot("colors[]"));
+		assertEquals(-1, table.slot("colors[99999999999]"));
+		assertEquals(-1, table.slot("fade[1]"));
+		assertEquals(-1, table.slot("lights[4].intensity"));
+		assertEquals(-1, table.slot("[1]"));
+		assertEquals(-1, UniformTable.EMPTY.slot("colors[1]"));
+		//Misses add no slots
+		assertEquals(size, table.size());
+	}
+
+	@Test
+	public void elementsResolveToTheArrayLocationPlusTheIndex() {
+		int colors = table.slot("colors");
+		int third = table.slot("colors[2]");
+		assertNotEquals(colors, third);
+		assertEquals(table.getLocation(colors) + 2, table.getLocation(third));
+		assertEquals(GL20.GL_FLOAT_VEC4, table.getType(third));
+		assertEquals(2, table.getArraySize(third));
+		assertEquals(third, table.slot("colors[2]"));
+		assertEquals(colors, table.slot("colors[0]"));
+		int falloff = table.slot("lights[1].falloff[2]");
+		assertEquals(table.getLocation(table.slot("lights[1].falloff")) + 2, table.getLocation(falloff));
+		assertTrue(table.isAliased(colors));
+		assertTrue(table.isAliased(third));
+		assertTrue(!table.isAliased(table.slot("fade")));
+	}
+
+	@Test
+	public void elementWriteIsUploaded() {
+		sm.putFloat("weights[2]", 0.5f);
+		int call = last(RecordingBackend.UNIFORM_1F);
+		assertTrue(call != -1);
+		assertEquals(table.getLocation(table.slot("weights")) + 2, gl.getInt(call, 0));
+		assertEquals(0.5f, gl.getFloat(call, 1), 0.0f);
+		sm.putVec4("colors[3]", 1, 2, 3, 4);
+		call = last(RecordingBackend.UNIFORM_4F);
+		assertEquals(table.getLocation(table.slot("colors")) + 3, gl.getInt(call, 0));
+		sm.putFloat("lights[3].intensity", 2.0f);
+		assertEquals(2, gl.count(RecordingBackend.UNIFORM_1F));
+	}
+
+	@Test
+	public void elementSharesTheArrayShadow() {
+		sm.putFloatArray("weights", new float[] {1, 2, 3}, 0, 3);
+		assertEquals(1, gl.count(RecordingBackend.UNIFORM_1FV));
+		//Not known through the element slot yet, so uploaded once
+		sm.putFloat("weights[1]", 2);
+		sm.putFloat("weights[1]", 2);
+		assertEquals(1, gl.count(RecordingBackend.UNIFORM_1F));
+		sm.putFloat("weights[1]", 5);
+		assertEquals(2, gl.count(RecordingBackend.UNIFORM_1F));
+		//The array compares against the value the element wrote
+		sm.putFloatArray("weights", new float[] {1, 5, 3}, 0, 3);
+		assertEquals(1, gl.count(RecordingBackend.UNIFORM_1FV));
+		sm.putFloatArray("weights", new float[] {1, 2, 3}, 0, 3);
+		assertEquals(2, gl.count(RecordingBackend.UNIFORM_1FV));
+	}
+
+	@Test
+	public void recordedElementWritesKeepTheirOrder() {
+		sm.beginRecording();
+		sm.putFloat("weights[1]", 7);
+		sm.putFloatArray("weights", new float[] {1, 2, 3}, 0, 3);
+		sm.putFloat("weights[1]", 8);
+		sm.flush();
+		int element = last(RecordingBackend.UNIFORM_1F);
+		int array = last(RecordingBackend.UNIFORM_1FV);
+		//The last write to weights[1] reaches the driver last
+		assertTrue(array < element);
+		assertEquals(8.0f, gl.getFloat(element, 1), 0.0f);
+	}
+}